@@ -55,6 +55,8 @@ public interface TAMEConstants
 	public static final String HEADER_TAME_RUNAWAY_MAX = "tame_runaway_max";
 	/** Header - TAME Option - Max Function Depth. */
 	public static final String HEADER_TAME_FUNCDEPTH_MAX = "tame_funcdepth_max";
+	/** Header - TAME Option - Random Seed (new contexts are seeded with it, if set). */
+	public static final String HEADER_TAME_RANDOM_SEED = "tame_random_seed";
 
 	/* ========= Known or suggested headers. ========= */
 
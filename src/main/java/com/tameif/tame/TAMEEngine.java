@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many sessions of one module and runs their requests concurrently.
+ * <p>
+ * Requests for different sessions run in parallel on a shared executor, and requests for the same
+ * session run one at a time, in order (see {@link TAMESession}). Each session has a bounded queue.
+ * If the engine has a {@link TAMESessionStore}, idle sessions are hibernated, and restored on their next task.
+ * <p>All methods on this class are thread-safe.
+ * @author Matthew Tropiano
+ */
+public class TAMEEngine implements AutoCloseable
+{
+	/** Default max amount of tasks waiting or running per session. */
+	public static final int DEFAULT_QUEUE_LIMIT = 16;
+
+	/** The factory for new contexts. */
+	private TAMESessionFactory factory;
+	/** The executor for all session tasks. */
+	private Executor executor;
+	/** The executor to shut down on close, if this engine created it. */
+	private ExecutorService ownedExecutor;
+	/** Max amount of tasks waiting or running per session. */
+	private int queueLimit;
+	/** Sessions by id. */
+	private ConcurrentHashMap<String, TAMESession> sessions;
+	/** The store for hibernated sessions (can be null). */
+	private TAMESessionStore store;
+
+	/**
+	 * Creates a new engine with the default executor and queue limit.
+	 * @param module the module to host.
+	 * @see #createDefaultExecutor()
+	 */
+	public TAMEEngine(TAMEModule module)
+	{
+		this(new TAMESessionFactory(module), null, DEFAULT_QUEUE_LIMIT);
+	}
+
+	/**
+	 * Creates a new engine.
+	 * @param factory the session factory to use for new contexts.
+	 * @param executor the executor to run session tasks on. If null, one is created via {@link #createDefaultExecutor()} and is shut down on {@link #close()}.
+	 * @param queueLimit the max amount of tasks waiting or running per session.
+	 * @throws IllegalArgumentException if queueLimit is less than 1.
+	 */
+	public TAMEEngine(TAMESessionFactory factory, Executor executor, int queueLimit)
+	{
+		this(factory, executor, queueLimit, null);
+	}
+
+	/**
+	 * Creates a new engine that hibernates idle sessions.
+	 * @param factory the session factory to use for new contexts.
+	 * @param executor the executor to run session tasks on. If null, one is created via {@link #createDefaultExecutor()} and is shut down on {@link #close()}.
+	 * @param queueLimit the max amount of tasks waiting or running per session.
+	 * @param store the store for hibernated sessions, or null to keep every session resident.
+	 * @throws IllegalArgumentException if queueLimit is less than 1.
+	 */
+	public TAMEEngine(TAMESessionFactory factory, Executor executor, int queueLimit, TAMESessionStore store)
+	{
+		if (queueLimit < 1)
+			throw new IllegalArgumentException("Queue limit must be at least 1.");
+
+		this.factory = factory;
+		if (executor == null)
+			this.executor = this.ownedExecutor = createDefaultExecutor();
+		else
+			this.executor = executor;
+		this.queueLimit = queueLimit;
+		this.sessions = new ConcurrentHashMap<>(64);
+		this.store = store;
+	}
+
+	/**
+	 * Creates the default executor for session tasks.
+	 * If the running VM has virtual threads, this is a virtual-thread-per-task executor, else
+	 * this is a fixed pool of daemon threads, one per available processor.
+	 * @return a new executor.
+	 */
+	public static ExecutorService createDefaultExecutor()
+	{
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			// Not available - fall through.
+		}
+
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		ThreadFactory threadFactory = (runnable) ->
+		{
+			Thread out = new Thread(runnable, "TAMEEngine-" + threadCount.incrementAndGet());
+			out.setDaemon(true);
+			return out;
+		};
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), threadFactory);
+	}
+
+	/**
+	 * @return the session factory used for new contexts.
+	 */
+	public TAMESessionFactory getFactory()
+	{
+		return factory;
+	}
+
+	/**
+	 * @return the store for hibernated sessions, or null if none.
+	 */
+	public TAMESessionStore getStore()
+	{
+		return store;
+	}
+
+	/**
+	 * @return the module that this engine hosts.
+	 */
+	public TAMEModule getModule()
+	{
+		return factory.getModule();
+	}
+
+	/**
+	 * Creates a new session with a new context.
+	 * The context is not initialized - see {@link TAMESession#submitInit(com.tameif.tame.lang.TraceType...)}.
+	 * @param id the session id.
+	 * @return the new session.
+	 * @throws IllegalArgumentException if a session with this id already exists.
+	 */
+	public TAMESession createSession(String id)
+	{
+		return addSession(id, factory.create());
+	}
+
+	/**
+	 * Adds a session for an existing context.
+	 * The context must not be used outside of this session's tasks afterward.
+	 * @param id the session id.
+	 * @param context the context to use.
+	 * @return the new session.
+	 * @throws IllegalArgumentException if a session with this id already exists.
+	 */
+	public TAMESession addSession(String id, TAMEModuleContext context)
+	{
+		TAMESession session = new TAMESession(id, context, executor, queueLimit, store);
+		if (sessions.putIfAbsent(id, session) != null)
+			throw new IllegalArgumentException("Session " + id + " already exists.");
+		return session;
+	}
+
+	/**
+	 * Gets a session by id.
+	 * @param id the session id.
+	 * @return the session, or null if no session with that id.
+	 */
+	public TAMESession getSession(String id)
+	{
+		return sessions.get(id);
+	}
+
+	/**
+	 * Removes a session by id.
+	 * Tasks already submitted to the session still run. If there is a store, the session's context is dropped after them.
+	 * @param id the session id.
+	 * @return the removed session, or null if no session with that id.
+	 */
+	public TAMESession removeSession(String id)
+	{
+		TAMESession out;
+		if ((out = sessions.remove(id)) != null && store != null)
+			out.release();
+		return out;
+	}
+
+	/**
+	 * @return all current sessions.
+	 */
+	public Collection<TAMESession> getSessions()
+	{
+		return sessions.values();
+	}
+
+	/**
+	 * @return the amount of current sessions.
+	 */
+	public int getSessionCount()
+	{
+		return sessions.size();
+	}
+
+	/**
+	 * Waits for all submitted tasks to finish, removes all sessions (discarding their hibernated contexts), 
+	 * and if this engine created its executor, shuts it down.
+	 * If the calling thread is interrupted while waiting, this stops waiting (but still removes all sessions
+	 * and shuts down the executor), and the thread's interrupt flag is set again.
+	 */
+	@Override
+	public void close()
+	{
+		boolean interrupted = false;
+		for (TAMESession session : sessions.values())
+		{
+			if (interrupted)
+				break;
+			try {
+				session.release().get();
+			} catch (ExecutionException e) {
+				// Already finished or rejected.
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		sessions.clear();
+		if (store != null)
+			store.clear();
+		if (ownedExecutor != null)
+		{
+			ownedExecutor.shutdown();
+			if (!interrupted)
+			{
+				try {
+					ownedExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+}
@@ -11,6 +11,9 @@ package com.tameif.tame;
 
 /**
  * A special throwable that interrupts a code block execution.
+ * <p>
+ * Interrupts that only steer control flow (break, continue, end, finish, quit) carry no state,
+ * so they are created once without a stack trace and thrown from a shared instance.
  * @author Matthew Tropiano
  */
 public class TAMEInterrupt extends Throwable
@@ -27,4 +30,15 @@ public class TAMEInterrupt extends Throwable
 		super(message);
 	}
 
+	/**
+	 * Creates a new interrupt that may skip filling in its stack trace.
+	 * Suppressed exceptions are disabled if there is no stack trace, so that the interrupt can be shared.
+	 * @param message the interrupt message.
+	 * @param stackTrace if false, no stack trace is filled in.
+	 */
+	protected TAMEInterrupt(String message, boolean stackTrace)
+	{
+		super(message, null, stackTrace, stackTrace);
+	}
+
 }
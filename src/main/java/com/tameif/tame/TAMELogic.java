@@ -11,8 +11,9 @@ package com.tameif.tame;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collection;
+import java.util.regex.Pattern;
 
+import com.tameif.tame.element.LineageIndex;
 import com.tameif.tame.element.ObjectContainer;
 import com.tameif.tame.element.TAction;
 import com.tameif.tame.element.TContainer;
@@ -42,6 +43,7 @@ import com.tameif.tame.lang.TraceType;
 import com.tameif.tame.lang.Value;
 import com.tameif.tame.lang.ValueSet;
 import com.tameif.tame.struct.IOUtils;
+import com.tameif.tame.struct.TokenTrie;
 
 /**
  * Rules class.
@@ -52,6 +54,10 @@ public final class TAMELogic implements TAMEConstants
 {
 	/** Version number. */
 	private static String VERSION = null;
+	/** No trace types. */
+	private static final TraceType[] NO_TRACE_TYPES = new TraceType[0];
+	/** Input token separator. */
+	private static final Pattern INPUT_SEPARATOR = Pattern.compile("\\s+");
 	
 	/**
 	 * Gets the embedded version string.
@@ -85,7 +91,7 @@ public final class TAMELogic implements TAMEConstants
 	 */
 	public static TAMEResponse handleInit(TAMEModuleContext moduleContext, boolean tracing)
 	{
-		return handleInit(moduleContext, TraceType.VALUES);
+		return handleInit(moduleContext, tracing ? TraceType.VALUES : NO_TRACE_TYPES);
 	}
 	
 	/**
@@ -96,9 +102,22 @@ public final class TAMELogic implements TAMEConstants
 	 * @return a TAMERequest a new request.
 	 */
 	public static TAMEResponse handleInit(TAMEModuleContext moduleContext, TraceType ... traceTypes)
+	{
+		return handleInit(moduleContext, new TAMEResponse(), traceTypes);
+	}
+	
+	/**
+	 * Handles context initialization, filling a response from an earlier request instead of a new one.
+	 * This method must be called for newly-created contexts NOT LOADED FROM A PERSISTED CONTEXT STATE.
+	 * @param moduleContext the module context.
+	 * @param response the response to clear and reuse.
+	 * @param traceTypes output trace cues for each request.
+	 * @return the response passed in.
+	 */
+	public static TAMEResponse handleInit(TAMEModuleContext moduleContext, TAMEResponse response, TraceType ... traceTypes)
 	{
 		TAMERequest request = TAMERequest.create(moduleContext, traceTypes);
-		TAMEResponse response = new TAMEResponse();
+		response.reset();
 
 		response.setInterpretNanos(0L);
 
@@ -130,7 +149,7 @@ public final class TAMELogic implements TAMEConstants
 	 */
 	public static TAMEResponse handleRequest(TAMEModuleContext moduleContext, String input, boolean tracing)
 	{
-		return handleRequest(moduleContext, input, TraceType.VALUES);
+		return handleRequest(moduleContext, input, tracing ? TraceType.VALUES : NO_TRACE_TYPES);
 	}
 	
 	/**
@@ -141,9 +160,24 @@ public final class TAMELogic implements TAMEConstants
 	 * @return a TAMERequest a new request.
 	 */
 	public static TAMEResponse handleRequest(TAMEModuleContext moduleContext, String input, TraceType ... traceTypes)
+	{
+		return handleRequest(moduleContext, input, new TAMEResponse(), traceTypes);
+	}
+	
+	/**
+	 * Handles a full request, filling a response from an earlier request instead of a new one.
+	 * A client that is done with each response before making the next request can use this
+	 * so that a turn does not allocate a new response and cue queue.
+	 * @param moduleContext the module context.
+	 * @param input the client input query.
+	 * @param response the response to clear and reuse.
+	 * @param traceTypes output trace cues for each request.
+	 * @return the response passed in.
+	 */
+	public static TAMEResponse handleRequest(TAMEModuleContext moduleContext, String input, TAMEResponse response, TraceType ... traceTypes)
 	{
 		TAMERequest request = TAMERequest.create(moduleContext, input, traceTypes);
-		TAMEResponse response = new TAMEResponse();
+		response.reset();
 		
 		// time this stuff.
 		long nanos;
@@ -185,7 +219,7 @@ public final class TAMELogic implements TAMEConstants
 		
 		try {
 			request.addCommand(command);
-			response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+			response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 			processCommandLoop(request, response, true, false, true);
 		} catch (TAMEFatalException exception) {
 			response.addCue(CUE_FATAL, exception.getMessage());
@@ -250,7 +284,7 @@ public final class TAMELogic implements TAMEConstants
 	 */
 	public static String[] tokenizeInput(TAMEModuleContext moduleContext, String inputMessage)
 	{
-		return inputMessage.trim().split("\\s+");
+		return INPUT_SEPARATOR.split(inputMessage.trim());
 	}
 
 	/**
@@ -290,7 +324,7 @@ public final class TAMELogic implements TAMEConstants
 					{
 						TAMECommand command = TAMECommand.create(action);
 						request.addCommand(command);
-						response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+						response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 						return true;
 					}
 				}
@@ -308,7 +342,7 @@ public final class TAMELogic implements TAMEConstants
 					{
 						TAMECommand command = TAMECommand.create(action, interpreterContext.getTarget());
 						request.addCommand(command);
-						response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+						response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 						return true;
 					}
 				}
@@ -340,7 +374,7 @@ public final class TAMELogic implements TAMEConstants
 					{
 						TAMECommand command = TAMECommand.create(action, interpreterContext.getMode());
 						request.addCommand(command);
-						response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+						response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 						return true;
 					}
 				}
@@ -379,7 +413,7 @@ public final class TAMELogic implements TAMEConstants
 					{
 						TAMECommand command = TAMECommand.create(action, interpreterContext.getObject1());
 						request.addCommand(command);
-						response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+						response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 						return true;
 					}
 				}
@@ -421,7 +455,7 @@ public final class TAMELogic implements TAMEConstants
 							response.trace(request, TraceType.INTERPRETER, "DITRANSITIVE ACTION %s: No Conjunction, Process TRANSITIVE", action.getIdentity());
 							TAMECommand command = TAMECommand.create(action, interpreterContext.getObject1());
 							request.addCommand(command);
-							response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+							response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 							return true;
 						}
 					}
@@ -457,7 +491,7 @@ public final class TAMELogic implements TAMEConstants
 					{
 						TAMECommand command = TAMECommand.create(action, interpreterContext.getObject1(), interpreterContext.getObject2());
 						request.addCommand(command);
-						response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+						response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 						return true;
 					}
 				}
@@ -476,8 +510,12 @@ public final class TAMELogic implements TAMEConstants
 	 */
 	public static void callBlock(TAMERequest request, TAMEResponse response, TElementContext<?> context, Block block) throws TAMEInterrupt
 	{
-		ValueSet blockLocal = new ValueSet();
-		callBlock(request, response, context, block, false, blockLocal);
+		ValueSet blockLocal = request.pushLocals(block.getLocalNames());
+		try {
+			callBlock(request, response, context, block, false, blockLocal);
+		} finally {
+			request.popLocals();
+		}
 	}
 	
 	/**
@@ -527,10 +565,12 @@ public final class TAMELogic implements TAMEConstants
 	{
 		Block blockToCall;
 		TElement element = context.getElement();
-		response.trace(request, TraceType.ENTRY, "RESOLVE %s.%s", element.getIdentity(), blockEntry.toFriendlyString());
+		if (request.traces(TraceType.ENTRY))
+			response.trace(request, TraceType.ENTRY, "RESOLVE %s.%s", element.getIdentity(), blockEntry.toFriendlyString());
 		if ((blockToCall = element.resolveBlock(blockEntry)) != null)
 		{
-			response.trace(request, TraceType.ENTRY, "CALL %s.%s", element.getIdentity(), blockEntry.toFriendlyString());
+			if (request.traces(TraceType.ENTRY))
+				response.trace(request, TraceType.ENTRY, "CALL %s.%s", element.getIdentity(), blockEntry.toFriendlyString());
 			callBlock(request, response, context, blockToCall);
 			return true;
 		}
@@ -553,23 +593,28 @@ public final class TAMELogic implements TAMEConstants
 	{
 		Block blockToCall;
 		TElement element = context.getElement();
-		response.trace(request, TraceType.ENTRY, "RESOLVE %s.%s", element.getIdentity(), blockEntry.toFriendlyString());
+		if (request.traces(TraceType.ENTRY))
+			response.trace(request, TraceType.ENTRY, "RESOLVE %s.%s", element.getIdentity(), blockEntry.toFriendlyString());
 		if ((blockToCall = element.resolveBlock(blockEntry)) != null)
 		{
-			response.trace(request, TraceType.ENTRY, "CALL %s.%s", element.getIdentity(), blockEntry.toFriendlyString());
+			if (request.traces(TraceType.ENTRY))
+				response.trace(request, TraceType.ENTRY, "CALL %s.%s", element.getIdentity(), blockEntry.toFriendlyString());
 			
 			Value target = Value.create(openTarget);
-			ValueSet blockLocal = new ValueSet();
-
-			// just get the first local.
-			for (String variableName : locals)
-			{
-				response.trace(request, TraceType.VALUE, "SET LOCAL %s %s", variableName, target);
-				blockLocal.put(variableName, target);
-				break;
+			ValueSet blockLocal = request.pushLocals(blockToCall.getLocalNames());
+			try {
+				// just get the first local.
+				for (String variableName : locals)
+				{
+					response.trace(request, TraceType.VALUE, "SET LOCAL %s %s", variableName, target);
+					blockLocal.put(variableName, target);
+					break;
+				}
+				
+				callBlock(request, response, context, blockToCall, false, blockLocal);
+			} finally {
+				request.popLocals();
 			}
-			
-			callBlock(request, response, context, blockToCall, false, blockLocal);
 			return true;
 		}
 		
@@ -594,22 +639,27 @@ public final class TAMELogic implements TAMEConstants
 			throw new ModuleException("No such function ("+functionName+") in lineage of element " + element);
 
 		response.trace(request, TraceType.FUNCTION, "CALL %s", functionName);
-		ValueSet blockLocal = new ValueSet();
-		String[] args = entry.getArguments();
-		for (int i = args.length - 1; i >= 0; i--)
-		{
-			Value localValue = request.popValue();
-			response.trace(request, TraceType.VALUE, "SET LOCAL %s %s", args[i], localValue.toString());
-			blockLocal.put(args[i], localValue);
-		}
+		Block block = entry.getBlock();
+		ValueSet blockLocal = request.pushLocals(block.getLocalNames());
+		try {
+			String[] args = entry.getArguments();
+			for (int i = args.length - 1; i >= 0; i--)
+			{
+				Value localValue = request.popValue();
+				response.trace(request, TraceType.VALUE, "SET LOCAL %s %s", args[i], localValue);
+				blockLocal.put(args[i], localValue);
+			}
 
-		response.incrementAndCheckFunctionDepth(request.getModuleContext().getFunctionDepthMax());
-		callBlock(request, response, originContext, entry.getBlock(), true, blockLocal);
-		response.decrementFunctionDepth();
-		if (blockLocal.containsKey(RETURN_VARIABLE))
-			return blockLocal.get(RETURN_VARIABLE);
-		else
-			return Value.create(false);
+			response.incrementAndCheckFunctionDepth(request.getModuleContext().getFunctionDepthMax());
+			callBlock(request, response, originContext, block, true, blockLocal);
+			response.decrementFunctionDepth();
+			if (blockLocal.containsKey(RETURN_VARIABLE))
+				return blockLocal.get(RETURN_VARIABLE);
+			else
+				return Value.create(false);
+		} finally {
+			request.popLocals();
+		}
 	}
 
 	/**
@@ -814,7 +864,7 @@ public final class TAMELogic implements TAMEConstants
 
 	/**
 	 * Initializes a newly-created context by executing each initialization block on each object.
-	 * Order is Containers, Objects, Rooms, Players, and the World.
+	 * Order is Containers, Objects, Rooms, Players, and the World, and each type is in declaration order.
 	 * @param request the request object containing the module context.
 	 * @param response the response object.
 	 * @throws TAMEInterrupt if an interrupt is thrown.
@@ -824,10 +874,10 @@ public final class TAMELogic implements TAMEConstants
 	{
 		TAMEModuleContext moduleContext = request.getModuleContext();
 		try {
-			callInitOnContexts(request, response, moduleContext.getContainerContexts());
-			callInitOnContexts(request, response, moduleContext.getObjectContexts());
-			callInitOnContexts(request, response, moduleContext.getRoomContexts());
-			callInitOnContexts(request, response, moduleContext.getPlayerContexts());
+			callInitOnElements(request, response, TContainer.class);
+			callInitOnElements(request, response, TObject.class);
+			callInitOnElements(request, response, TRoom.class);
+			callInitOnElements(request, response, TPlayer.class);
 			callElementBlock(request, response, moduleContext.getWorldContext(), BlockEntry.create(BlockEntryType.INIT));
 			callElementBlock(request, response, moduleContext.getWorldContext(), BlockEntry.create(BlockEntryType.START));
 		} catch (FinishInterrupt interrupt) {
@@ -1113,15 +1163,18 @@ public final class TAMELogic implements TAMEConstants
 	 */
 	private static boolean doActionAncestorSearch(TAMERequest request, TAMEResponse response, Value actionValue, TElement element, TObject start) throws TAMEInterrupt
 	{
+		LineageIndex index = element.getLineageIndex();
+		// skip the search if no element has an ancestor block (unless it would be traced).
+		if (index != null && index.isValid() && !index.hasEntryType(BlockEntryType.ONACTIONWITHANCESTOR) && !request.traces(TraceType.ENTRY))
+			return false;
+
 		TAMEModuleContext moduleContext = request.getModuleContext();
-		TObject ancestor = (TObject)start.getParent();
 		TElementContext<?> elementContext = moduleContext.getContextByIdentity(element.getIdentity());
 
-		while (ancestor != null)
+		for (TElement ancestor : start.getAncestors())
 		{
 			if (callElementBlock(request, response, elementContext, BlockEntry.create(BlockEntryType.ONACTIONWITHANCESTOR, actionValue, Value.createObject(ancestor.getIdentity()))))
 				return true;
-			ancestor = (TObject)ancestor.getParent();
 		}
 		
 		return false;
@@ -1291,11 +1344,23 @@ public final class TAMELogic implements TAMEConstants
 		return false;
 	}
 
-	// Call init on iterable contexts.
-	private static void callInitOnContexts(TAMERequest request, TAMEResponse response, Collection<? extends TElementContext<?>> contexts) throws TAMEInterrupt 
+	// Call init on every non-archetype element of one type, in declaration (symbol) order.
+	// Only elements with an init block get their context created here, so the rest stay unmaterialized.
+	private static void callInitOnElements(TAMERequest request, TAMEResponse response, Class<? extends TElement> elementType) throws TAMEInterrupt 
 	{
-		for (TElementContext<?> context : contexts)
-			callElementBlock(request, response, context, BlockEntry.create(BlockEntryType.INIT));
+		TAMEModuleContext moduleContext = request.getModuleContext();
+		TAMEModule module = moduleContext.getModule();
+		BlockEntry blockEntry = BlockEntry.create(BlockEntryType.INIT);
+		for (int i = 0; i < module.getElementSymbolCount(); i++)
+		{
+			TElement element = module.getElementBySymbol(i);
+			if (!elementType.isInstance(element) || element.isArchetype())
+				continue;
+			if (element.resolveBlock(blockEntry) != null)
+				callElementBlock(request, response, moduleContext.getContext(element), blockEntry);
+			else if (request.traces(TraceType.ENTRY))
+				response.trace(request, TraceType.ENTRY, "RESOLVE %s.%s", element.getIdentity(), blockEntry.toFriendlyString());
+		}
 	}
 
 	/**
@@ -1349,18 +1414,18 @@ public final class TAMELogic implements TAMEConstants
 	{
 		TAMEModuleContext moduleContext = request.getModuleContext();
 		TAMEModule module = moduleContext.getModule();
-		StringBuilder sb = new StringBuilder();
-		int index = interpreterContext.getTokenOffset();
+		TokenTrie.Node<TAction> node = module.getActionNameTrie().getRoot();
+		int start = interpreterContext.getTokenOffset();
+		int index = start;
 		String[] tokens = interpreterContext.getTokens();
+		String[] lowerTokens = interpreterContext.getLowerTokens();
 		
-		while (index < tokens.length)
+		while (index < tokens.length && (node = node.next(lowerTokens[index])) != null)
 		{
-			if (sb.length() > 0)
-				sb.append(' ');
-			sb.append(tokens[index]);
 			index++;
-			response.trace(request, TraceType.INTERPRETER, "TEST ACTION %s", sb.toString());
-			TAction next = module.getActionByName(sb.toString());
+			if (request.traces(TraceType.INTERPRETER))
+				response.trace(request, TraceType.INTERPRETER, "TEST ACTION %s", joinTokens(tokens, start, index));
+			TAction next = node.getValue();
 			if (next != null)
 			{
 				response.trace(request, TraceType.INTERPRETER, "MATCHED ACTION %s", next.getIdentity());
@@ -1377,28 +1442,34 @@ public final class TAMELogic implements TAMEConstants
 	 */
 	private static void interpretMode(TAMERequest request, TAMEResponse response, TAction action, InterpreterContext interpreterContext)
 	{
-		StringBuilder sb = new StringBuilder();
-		int index = interpreterContext.getTokenOffset();
+		TokenTrie.Node<String> node = action.getExtraStringTrie().getRoot();
+		int start = interpreterContext.getTokenOffset();
+		int index = start;
+		int matched = -1;
 		String[] tokens = interpreterContext.getTokens();
+		String[] lowerTokens = interpreterContext.getLowerTokens();
 		
-		while (index < tokens.length)
-		{
-			if (sb.length() > 0)
-				sb.append(' ');
-			sb.append(tokens[index]);
-			index++;
-			
+		if (index < tokens.length)
 			interpreterContext.setModeLookedUp(true);
 
-			String next = sb.toString();
-			response.trace(request, TraceType.INTERPRETER, "TEST MODE %s", next);
-			if (action.containsExtraString(next))
+		while (index < tokens.length && (node = node.next(lowerTokens[index])) != null)
+		{
+			index++;
+			if (request.traces(TraceType.INTERPRETER))
+				response.trace(request, TraceType.INTERPRETER, "TEST MODE %s", joinTokens(tokens, start, index));
+			if (node.getValue() != null)
 			{
-				response.trace(request, TraceType.INTERPRETER, "MATCHED MODE %s", next);
-				interpreterContext.setMode(next);
-				interpreterContext.setTokenOffset(index);
+				if (request.traces(TraceType.INTERPRETER))
+					response.trace(request, TraceType.INTERPRETER, "MATCHED MODE %s", joinTokens(tokens, start, index));
+				matched = index;
 			}
 		}
+		
+		if (matched >= 0)
+		{
+			interpreterContext.setMode(joinTokens(tokens, start, matched));
+			interpreterContext.setTokenOffset(matched);
+		}
 	}
 
 	/**
@@ -1422,7 +1493,7 @@ public final class TAMELogic implements TAMEConstants
 			index++;
 		}
 		
-		response.trace(request, TraceType.INTERPRETER, "READ OPEN TARGET %s", sb.toString());
+		response.trace(request, TraceType.INTERPRETER, "READ OPEN TARGET %s", sb);
 		interpreterContext.setTarget(sb.length() > 0 ? sb.toString() : null);
 		interpreterContext.setTokenOffset(index);
 	}
@@ -1436,24 +1507,25 @@ public final class TAMELogic implements TAMEConstants
 	 */
 	private static boolean interpretConjugate(TAMERequest request, TAMEResponse response, TAction action, InterpreterContext interpreterContext)
 	{
-		StringBuilder sb = new StringBuilder();
-		int index = interpreterContext.getTokenOffset();
+		TokenTrie.Node<String> node = action.getExtraStringTrie().getRoot();
+		int start = interpreterContext.getTokenOffset();
+		int index = start;
 		String[] tokens = interpreterContext.getTokens();
+		String[] lowerTokens = interpreterContext.getLowerTokens();
 		boolean out = false;
 		
-		while (index < tokens.length)
+		if (index < tokens.length)
+			interpreterContext.setConjugateLookedUp(true);
+
+		while (index < tokens.length && (node = node.next(lowerTokens[index])) != null)
 		{
-			if (sb.length() > 0)
-				sb.append(' ');
-			sb.append(tokens[index]);
 			index++;
-			
-			interpreterContext.setConjugateLookedUp(true);
-			String name = sb.toString();
-			response.trace(request, TraceType.INTERPRETER, "TEST CONJUNCTION %s", name);
-			if (action.containsExtraString(name))
+			if (request.traces(TraceType.INTERPRETER))
+				response.trace(request, TraceType.INTERPRETER, "TEST CONJUNCTION %s", joinTokens(tokens, start, index));
+			if (node.getValue() != null)
 			{
-				response.trace(request, TraceType.INTERPRETER, "MATCHED CONJUNCTION %s", name);
+				if (request.traces(TraceType.INTERPRETER))
+					response.trace(request, TraceType.INTERPRETER, "MATCHED CONJUNCTION %s", joinTokens(tokens, start, index));
 				interpreterContext.setTokenOffset(index);
 				out = true;
 			}
@@ -1477,20 +1549,21 @@ public final class TAMELogic implements TAMEConstants
 	 */
 	private static boolean interpretObject1(TAMERequest request, TAMEResponse response, TAMEModuleContext moduleContext, InterpreterContext interpreterContext)
 	{
-		StringBuilder sb = new StringBuilder();
-		int index = interpreterContext.getTokenOffset();
+		TOwnershipMap.NameMatcher matcher = moduleContext.createAccessibleNameMatcher();
+		int start = interpreterContext.getTokenOffset();
+		int index = start;
 		String[] tokens = interpreterContext.getTokens();
+		String[] lowerTokens = interpreterContext.getLowerTokens();
 		
-		while (index < tokens.length)
+		if (index < tokens.length)
+			interpreterContext.setObject1LookedUp(true);
+
+		while (index < tokens.length && matcher.next(lowerTokens[index]))
 		{
-			if (sb.length() > 0)
-				sb.append(' ');
-			sb.append(tokens[index]);
 			index++;
-
-			interpreterContext.setObject1LookedUp(true);
-			response.trace(request, TraceType.INTERPRETER, "TEST OBJECT 1 %s", sb.toString());
-			int out = moduleContext.getAccessibleObjectsByName(sb.toString(), interpreterContext.getObjects(), 0);
+			if (request.traces(TraceType.INTERPRETER))
+				response.trace(request, TraceType.INTERPRETER, "TEST OBJECT 1 %s", joinTokens(tokens, start, index));
+			int out = matcher.getObjects(interpreterContext.getObjects(), 0);
 			if (out > 1)
 			{
 				response.trace(request, TraceType.INTERPRETER, "MATCHED MULTIPLE OBJECTS");
@@ -1524,20 +1597,21 @@ public final class TAMELogic implements TAMEConstants
 	 */
 	private static boolean interpretObject2(TAMERequest request, TAMEResponse response, TAMEModuleContext moduleContext, InterpreterContext interpreterContext)
 	{
-		StringBuilder sb = new StringBuilder();
-		int index = interpreterContext.getTokenOffset();
+		TOwnershipMap.NameMatcher matcher = moduleContext.createAccessibleNameMatcher();
+		int start = interpreterContext.getTokenOffset();
+		int index = start;
 		String[] tokens = interpreterContext.getTokens();
+		String[] lowerTokens = interpreterContext.getLowerTokens();
 		
-		while (index < tokens.length)
+		if (index < tokens.length)
+			interpreterContext.setObject2LookedUp(true);
+
+		while (index < tokens.length && matcher.next(lowerTokens[index]))
 		{
-			if (sb.length() > 0)
-				sb.append(' ');
-			sb.append(tokens[index]);
 			index++;
-
-			interpreterContext.setObject2LookedUp(true);
-			response.trace(request, TraceType.INTERPRETER, "TEST OBJECT 2 %s", sb.toString());
-			int out = moduleContext.getAccessibleObjectsByName(sb.toString(), interpreterContext.getObjects(), 0);
+			if (request.traces(TraceType.INTERPRETER))
+				response.trace(request, TraceType.INTERPRETER, "TEST OBJECT 2 %s", joinTokens(tokens, start, index));
+			int out = matcher.getObjects(interpreterContext.getObjects(), 0);
 			if (out > 1)
 			{
 				response.trace(request, TraceType.INTERPRETER, "MATCHED MULTIPLE OBJECTS");
@@ -1557,12 +1631,26 @@ public final class TAMELogic implements TAMEConstants
 		return interpreterContext.getObject2() != null;
 	}
 	
+	// Joins a range of tokens with spaces.
+	private static String joinTokens(String[] tokens, int start, int end)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = start; i < end; i++)
+		{
+			if (i > start)
+				sb.append(' ');
+			sb.append(tokens[i]);
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * Context used when some input is getting parsed/interpreted.
 	 */
 	private static class InterpreterContext 
 	{
 		private String[] tokens;
+		private String[] lowerTokens;
 		private int tokenOffset;
 		private TObject[] objects;
 		private TAction action;
@@ -1581,6 +1669,9 @@ public final class TAMELogic implements TAMEConstants
 		private InterpreterContext(String[] tokens)
 		{
 			this.tokens = tokens;
+			this.lowerTokens = new String[tokens.length];
+			for (int i = 0; i < tokens.length; i++)
+				this.lowerTokens[i] = tokens[i].toLowerCase();
 			this.tokenOffset = 0;
 			this.objects = new TObject[2];
 			this.action = null;
@@ -1665,6 +1756,11 @@ public final class TAMELogic implements TAMEConstants
 			return tokens;
 		}
 
+		private String[] getLowerTokens() 
+		{
+			return lowerTokens;
+		}
+
 		private int getTokenOffset() 
 		{
 			return tokenOffset;
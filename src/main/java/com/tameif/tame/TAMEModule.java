@@ -9,17 +9,22 @@
  ******************************************************************************/
 package com.tameif.tame;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import com.tameif.tame.element.LineageIndex;
 import com.tameif.tame.element.TAction;
 import com.tameif.tame.element.TContainer;
 import com.tameif.tame.element.TElement;
@@ -28,13 +33,21 @@ import com.tameif.tame.element.TPlayer;
 import com.tameif.tame.element.TRoom;
 import com.tameif.tame.element.TWorld;
 import com.tameif.tame.exception.ModuleException;
+import com.tameif.tame.lang.Block;
+import com.tameif.tame.lang.BlockEntry;
+import com.tameif.tame.lang.BlockEntryType;
+import com.tameif.tame.lang.ConstantPool;
+import com.tameif.tame.lang.FunctionEntry;
 import com.tameif.tame.lang.Saveable;
+import com.tameif.tame.lang.Value;
+import com.tameif.tame.struct.ByteBufferInputStream;
+import com.tameif.tame.struct.ByteBufferOutputStream;
 import com.tameif.tame.struct.CaseInsensitiveStringSet;
 import com.tameif.tame.struct.CaseInsensitiveStringMap;
 import com.tameif.tame.struct.EncodingUtils;
-import com.tameif.tame.struct.IOUtils;
 import com.tameif.tame.struct.SerialReader;
 import com.tameif.tame.struct.SerialWriter;
+import com.tameif.tame.struct.TokenTrie;
 
 /**
  * An instantiated module.
@@ -42,6 +55,19 @@ import com.tameif.tame.struct.SerialWriter;
  */
 public class TAMEModule implements Saveable
 {
+	/** Module format version 1: everything is written inline. */
+	public static final int FORMAT_VERSION_1 = 0x01;
+	/** 
+	 * Module format version 2: strings and values are written once to a constant pool, 
+	 * and blocks are written apart from elements and decoded the first time they are used. 
+	 */
+	public static final int FORMAT_VERSION_2 = 0x02;
+
+	/** Element flag (version 2): archetype. */
+	private static final byte ELEMENT_ARCHETYPE = 0x01;
+	/** Element flag (version 2): has parent. */
+	private static final byte ELEMENT_PARENT = 0x02;
+
 	/** Module header. */
 	private Header header;
 	
@@ -60,6 +86,8 @@ public class TAMEModule implements Saveable
 
 	/** Maps action common names to action objects (not saved). */
 	private CaseInsensitiveStringMap<TAction> actionNameTable;
+	/** Maps action names to actions by token, for the interpreter. */
+	private TokenTrie<TAction> actionNameTrie;
 
 	/** Data digest (generated if read by script). */
 	private byte[] digest;
@@ -68,6 +96,11 @@ public class TAMEModule implements Saveable
 	/** Not saved, used for checking - known identities. */
 	private CaseInsensitiveStringSet knownIdentities; 
 	
+	/** Elements by symbol (a dense id given to each element in the order that they are added). Not saved. */
+	private List<TElement> elementSymbols;
+	/** Element symbols by identity. Not saved. */
+	private CaseInsensitiveStringMap<Integer> elementSymbolTable;
+	
 	/**
 	 * Creates a new module.
 	 */
@@ -82,9 +115,13 @@ public class TAMEModule implements Saveable
 		this.objects = new CaseInsensitiveStringMap<TObject>(20);
 		this.containers = new CaseInsensitiveStringMap<TContainer>(5);
 		this.actionNameTable = new CaseInsensitiveStringMap<TAction>(15);
+		this.actionNameTrie = new TokenTrie<TAction>();
 		this.digest = null;
 		
 		this.knownIdentities = new CaseInsensitiveStringSet(200);
+		
+		this.elementSymbols = new ArrayList<>(64);
+		this.elementSymbolTable = new CaseInsensitiveStringMap<>(64);
 	}
 
 	/**
@@ -100,6 +137,83 @@ public class TAMEModule implements Saveable
 		return out;
 	}
 	
+	/**
+	 * Loads a module from a file by mapping it into memory, and verifies it.
+	 * @param path the path to the module file.
+	 * @return a deserialized module.
+	 * @throws IOException if the file can't be read.
+	 * @throws ModuleException if the module is not a readable module, or it could not be verified.
+	 * @see #load(Path, boolean)
+	 */
+	public static TAMEModule load(Path path) throws IOException
+	{
+		return load(path, true);
+	}
+	
+	/**
+	 * Loads a module from a file by mapping it into memory.
+	 * The module is read straight from the mapped file, without copying it first.
+	 * The blocks of version 2 modules are decoded from the mapped file when they are first used, 
+	 * so the file stays mapped (on some systems, that means locked) until the module is collected.
+	 * @param path the path to the module file.
+	 * @param verify if true, check the module data against its digest (should be false only for trusted modules that were verified already).
+	 * @return a deserialized module.
+	 * @throws IOException if the file can't be read.
+	 * @throws ModuleException if the module is not a readable module, or it could not be verified.
+	 */
+	public static TAMEModule load(Path path, boolean verify) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			return load(channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size()), verify);
+		}
+	}
+	
+	/**
+	 * Loads a module from a buffer, and verifies it.
+	 * @param buffer the buffer to read from.
+	 * @return a deserialized module.
+	 * @throws IOException if the buffer can't be read.
+	 * @throws ModuleException if the module is not a readable module, or it could not be verified.
+	 * @see #load(ByteBuffer, boolean)
+	 */
+	public static TAMEModule load(ByteBuffer buffer) throws IOException
+	{
+		return load(buffer, true);
+	}
+	
+	/**
+	 * Loads a module from a buffer, starting at its position (the buffer's position is not changed).
+	 * The module is read straight from the buffer, without copying it first.
+	 * The blocks of version 2 modules are decoded from the buffer when they are first used, 
+	 * so the buffer's contents must not change afterward.
+	 * @param buffer the buffer to read from.
+	 * @param verify if true, check the module data against its digest (should be false only for trusted modules that were verified already).
+	 * @return a deserialized module.
+	 * @throws IOException if the buffer can't be read.
+	 * @throws ModuleException if the module is not a readable module, or it could not be verified.
+	 */
+	public static TAMEModule load(ByteBuffer buffer, boolean verify) throws IOException
+	{
+		ByteBufferInputStream in = new ByteBufferInputStream(buffer.duplicate());
+		TAMEModule out = new TAMEModule();
+		out.header = readModuleHeader(in);
+		
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		int version = readVersion(sr, in);
+		byte[] readDigest = sr.readBytes(in, 20);
+		byte[] dataDigest = version == FORMAT_VERSION_2 ? sr.readBytes(in, 20) : readDigest;
+		int length = sr.readInt(in);
+		if (length < 0 || length > in.available())
+			throw new ModuleException("Module data is incomplete! Possible data corruption!");
+
+		// cast to Buffer - ByteBuffer overrides limit(int) after Java 8.
+		ByteBuffer data = in.getBuffer().slice();
+		((Buffer)data).limit(length);
+		out.readData(version, readDigest, dataDigest, data, verify);
+		return out;
+	}
+	
 	/**
 	 * Reads a module header and only the header from a module stream.
 	 * @param in the input stream to read from.
@@ -146,7 +260,10 @@ public class TAMEModule implements Saveable
 		identityCheck(a.getIdentity());
 		actions.put(a.getIdentity(), a);
 		for (String s : a.getNames())
+		{
 			actionNameTable.put(s, a);
+			actionNameTrie.put(s, a);
+		}
 	}
 
 	/**
@@ -159,6 +276,15 @@ public class TAMEModule implements Saveable
 		return actionNameTable.get(name);
 	}
 
+	/**
+	 * Gets the action names as a token trie, for matching input one token at a time.
+	 * @return the trie of action names to actions.
+	 */
+	public TokenTrie<TAction> getActionNameTrie()
+	{
+		return actionNameTrie;
+	}
+
 	/**
 	 * Retrieves an action by its identity.
 	 * @param identity the Action's identity.
@@ -176,6 +302,8 @@ public class TAMEModule implements Saveable
 	public void setWorld(TWorld world) 
 	{
 		this.world = world;
+		if (world != null)
+			addElementSymbol(world);
 	}
 
 	/**
@@ -195,6 +323,7 @@ public class TAMEModule implements Saveable
 	{
 		identityCheck(room.getIdentity());
 		rooms.put(room.getIdentity(), room);
+		addElementSymbol(room);
 	}
 
 	/**
@@ -215,6 +344,7 @@ public class TAMEModule implements Saveable
 	{
 		identityCheck(object.getIdentity());
 		objects.put(object.getIdentity(), object);
+		addElementSymbol(object);
 	}
 
 	/**
@@ -235,6 +365,7 @@ public class TAMEModule implements Saveable
 	{
 		identityCheck(container.getIdentity());
 		containers.put(container.getIdentity(), container);
+		addElementSymbol(container);
 	}
 
 	/**
@@ -255,6 +386,7 @@ public class TAMEModule implements Saveable
 	{
 		identityCheck(player.getIdentity());
 		players.put(player.getIdentity(), player);
+		addElementSymbol(player);
 	}
 
 	/**
@@ -298,6 +430,48 @@ public class TAMEModule implements Saveable
 			knownIdentities.put(identity);
 	}
 	
+	// Gives an element the next symbol.
+	private void addElementSymbol(TElement element)
+	{
+		element.setSymbol(elementSymbols.size());
+		elementSymbolTable.put(element.getIdentity(), elementSymbols.size());
+		elementSymbols.add(element);
+	}
+	
+	/**
+	 * Gets an element's symbol by its identity.
+	 * Every element (including the world) gets a symbol, a dense integer id, when it is added to this module.
+	 * @param identity the element's identity.
+	 * @return the corresponding symbol, or -1 if no such element.
+	 * @see TElement#getSymbol()
+	 */
+	public int getElementSymbol(String identity)
+	{
+		Integer out = elementSymbolTable.get(identity);
+		return out != null ? out : -1;
+	}
+	
+	/**
+	 * Retrieves an element by its symbol.
+	 * @param symbol the element's symbol.
+	 * @return the corresponding element.
+	 * @throws IndexOutOfBoundsException if the symbol is not a valid symbol.
+	 * @see #getElementSymbol(String)
+	 */
+	public TElement getElementBySymbol(int symbol)
+	{
+		return elementSymbols.get(symbol);
+	}
+	
+	/**
+	 * Gets how many element symbols there are in this module (the largest symbol plus one).
+	 * @return the number of symbols.
+	 */
+	public int getElementSymbolCount()
+	{
+		return elementSymbols.size();
+	}
+	
 	/**
 	 * Gets how many players are in this module.
 	 * @return the number of players.
@@ -383,6 +557,83 @@ public class TAMEModule implements Saveable
 		return containers;
 	}
 
+	/**
+	 * Links every block and function block in this module into flattened programs,
+	 * and builds every element's flattened lineage tables.
+	 * This is done automatically after a module is read from bytes, and should be done again if 
+	 * the module is changed afterward (until then, changed lineages are resolved the slow way).
+	 * @see Block#link()
+	 * @see LineageIndex
+	 */
+	public void link()
+	{
+		setLinked(true);
+		LineageIndex.build(getElements());
+	}
+	
+	/**
+	 * Unlinks every block and function block in this module, 
+	 * reverting execution to the tree interpreter, and clears every element's lineage tables.
+	 * @see Block#unlink()
+	 */
+	public void unlink()
+	{
+		setLinked(false);
+		LineageIndex.clear(getElements());
+	}
+	
+	// Gets all elements.
+	private List<TElement> getElements()
+	{
+		List<TElement> out = new ArrayList<>(players.size() + rooms.size() + objects.size() + containers.size() + 1);
+		if (world != null)
+			out.add(world);
+		for (Map.Entry<String, TPlayer> pair : players)
+			out.add(pair.getValue());
+		for (Map.Entry<String, TRoom> pair : rooms)
+			out.add(pair.getValue());
+		for (Map.Entry<String, TObject> pair : objects)
+			out.add(pair.getValue());
+		for (Map.Entry<String, TContainer> pair : containers)
+			out.add(pair.getValue());
+		return out;
+	}
+	
+	// Links or unlinks all blocks.
+	private void setLinked(boolean link)
+	{
+		if (world != null)
+			setLinked(world, link);
+		for (Map.Entry<String, TPlayer> pair : players)
+			setLinked(pair.getValue(), link);
+		for (Map.Entry<String, TRoom> pair : rooms)
+			setLinked(pair.getValue(), link);
+		for (Map.Entry<String, TObject> pair : objects)
+			setLinked(pair.getValue(), link);
+		for (Map.Entry<String, TContainer> pair : containers)
+			setLinked(pair.getValue(), link);
+	}
+	
+	// Links or unlinks all blocks on an element.
+	private static void setLinked(TElement element, boolean link)
+	{
+		for (Map.Entry<BlockEntry, Block> entry : element.getBlockEntries())
+			setLinked(entry.getValue(), link);
+		for (Map.Entry<String, FunctionEntry> entry : element.getFunctionEntries())
+			setLinked(entry.getValue().getBlock(), link);
+	}
+	
+	// Links or unlinks a block.
+	private static void setLinked(Block block, boolean link)
+	{
+		if (block == null)
+			return;
+		if (link)
+			block.link();
+		else
+			block.unlink();
+	}
+	
 	/**
 	 * Calculates this module's digest - only necessary if read 
 	 * from a script but never saved. Must be calculated to save
@@ -392,40 +643,58 @@ public class TAMEModule implements Saveable
 	 */
 	public byte[] calculateDigest()
 	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream(32768);
+		ByteBufferOutputStream bos = new ByteBufferOutputStream(32768);
 		try {
 			writeImmutableData(bos);
 		} catch (IOException e) {
 			throw new ModuleException("Could not calculate digest for module.");
-		} finally {
-			IOUtils.close(bos);
 		}
 
-		byte[] data = bos.toByteArray();
-		return (this.digest = EncodingUtils.sha1(data));
+		return (this.digest = EncodingUtils.sha1(bos.toByteBuffer()));
 	}
 	
 	@Override
 	public void writeBytes(OutputStream out) throws IOException
 	{
+		writeBytes(out, FORMAT_VERSION_1);
+	}
+	
+	/**
+	 * Writes this module in a specific format version.
+	 * Every version has the same digest, so saved module states work with all of them.
+	 * @param out the output stream.
+	 * @param version the format version ({@link #FORMAT_VERSION_1} or {@link #FORMAT_VERSION_2}).
+	 * @throws IOException if a write error occurs.
+	 * @throws IllegalArgumentException if the version is not a known version.
+	 */
+	public void writeBytes(OutputStream out, int version) throws IOException
+	{
+		if (version != FORMAT_VERSION_1 && version != FORMAT_VERSION_2)
+			throw new IllegalArgumentException("Unknown module format version: " + version);
+		
 		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
 
-		ByteArrayOutputStream bos = new ByteArrayOutputStream(32768);
+		ByteBufferOutputStream bos = new ByteBufferOutputStream(32768);
 		writeImmutableData(bos);
-		bos.close();
-
-		byte[] data = bos.toByteArray();
-		byte[] digest = EncodingUtils.sha1(data);
+		byte[] digest = EncodingUtils.sha1(bos.toByteBuffer());
 		
 		sw.writeBytes(out, "TAME".getBytes("ASCII"));
 
 		header.writeBytes(out);
 		
 		// write version
-		sw.writeByte(out, (byte)0x01);
+		sw.writeByte(out, (byte)version);
 		
 		sw.writeBytes(out, digest);
-		sw.writeByteArray(out, data);
+		if (version == FORMAT_VERSION_2)
+		{
+			bos.reset();
+			writeImmutableDataV2(bos);
+			// digest above is of the content - this is of the data, for checking it.
+			sw.writeBytes(out, EncodingUtils.sha1(bos.toByteBuffer()));
+		}
+		sw.writeInt(out, bos.size());
+		bos.writeTo(out);
 	}
 	
 	private void writeImmutableData(OutputStream out) throws IOException
@@ -500,38 +769,61 @@ public class TAMEModule implements Saveable
 		
 		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
 
-		if (sr.readByte(in) != 0x01)
-			throw new ModuleException("Module does not have a recognized version.");
-
+		int version = readVersion(sr, in);
 		byte[] readDigest = sr.readBytes(in, 20);
+		byte[] dataDigest = version == FORMAT_VERSION_2 ? sr.readBytes(in, 20) : readDigest;
 		byte[] data = sr.readByteArray(in);
-				
-		byte[] digest = EncodingUtils.sha1(data);
-		if (!Arrays.equals(readDigest, digest))
+		readData(version, readDigest, dataDigest, ByteBuffer.wrap(data), true);
+	}
+
+	// Reads and checks the format version.
+	private static int readVersion(SerialReader sr, InputStream in) throws IOException
+	{
+		int version = sr.readByte(in);
+		if (version != FORMAT_VERSION_1 && version != FORMAT_VERSION_2)
+			throw new ModuleException("Module does not have a recognized version.");
+		return version;
+	}
+	
+	// Reads the module data (after the header, version, and digests), and links the module.
+	private void readData(int version, byte[] readDigest, byte[] dataDigest, ByteBuffer data, boolean verify) throws IOException
+	{
+		if (verify && !Arrays.equals(dataDigest, EncodingUtils.sha1(data)))
 			throw new ModuleException("Module digest does not match data! Possible data corruption!");
 
-		ByteArrayInputStream bis = new ByteArrayInputStream(data);
-		readImmutableData(bis);
+		if (version == FORMAT_VERSION_2)
+			readImmutableDataV2(data);
+		else
+			readImmutableData(new ByteBufferInputStream(data.duplicate()));
 		this.digest = readDigest;
-		bis.close();
+		link();
 	}
 
-	private void readImmutableData(InputStream in) throws IOException
+	// Clears all elements and actions.
+	private void clear()
 	{
-		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
-		
 		actions.clear();
 		actionNameTable.clear();
+		actionNameTrie.clear();
 		players.clear();
 		rooms.clear();
 		objects.clear();
 		containers.clear();
 		
 		knownIdentities.clear();
+		elementSymbols.clear();
+		elementSymbolTable.clear();
+	}
+	
+	private void readImmutableData(InputStream in) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		
+		clear();
 
 		int size;
 		
-		world = TWorld.create(in);
+		setWorld(TWorld.create(in));
 		size = sr.readInt(in);
 		while(size-- > 0)
 			addAction(TAction.create(in));
@@ -577,6 +869,248 @@ public class TAMEModule implements Saveable
 		return out;
 	}
 
+	// Writes version 2 data: the constant pool, the blocks, then the actions and elements (which refer to blocks by offset).
+	private void writeImmutableDataV2(OutputStream out) throws IOException
+	{
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		ConstantPool pool = new ConstantPool();
+		ByteBufferOutputStream blocks = new ByteBufferOutputStream(16384);
+		ByteBufferOutputStream elements = new ByteBufferOutputStream(4096);
+		
+		writeElementV2(elements, blocks, pool, world);
+		sw.writeVariableLengthInt(elements, actions.size());
+		for (Map.Entry<String, TAction> pair : actions)
+			writeActionV2(elements, pool, pair.getValue());
+		sw.writeVariableLengthInt(elements, players.size());
+		for (Map.Entry<String, TPlayer> pair : players)
+			writeElementV2(elements, blocks, pool, pair.getValue());
+		sw.writeVariableLengthInt(elements, rooms.size());
+		for (Map.Entry<String, TRoom> pair : rooms)
+			writeElementV2(elements, blocks, pool, pair.getValue());
+		sw.writeVariableLengthInt(elements, objects.size());
+		for (Map.Entry<String, TObject> pair : objects)
+		{
+			TObject object = pair.getValue();
+			writeElementV2(elements, blocks, pool, object);
+			writeStringsV2(elements, pool, object.getNames());
+			writeStringsV2(elements, pool, object.getDeterminers());
+			writeStringsV2(elements, pool, object.getTags());
+		}
+		sw.writeVariableLengthInt(elements, containers.size());
+		for (Map.Entry<String, TContainer> pair : containers)
+			writeElementV2(elements, blocks, pool, pair.getValue());
+		
+		pool.writeBytes(out);
+		sw.writeInt(out, blocks.size());
+		blocks.writeTo(out);
+		elements.writeTo(out);
+	}
+	
+	// Writes an action (version 2).
+	private static void writeActionV2(OutputStream out, ConstantPool pool, TAction action) throws IOException
+	{
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		sw.writeVariableLengthInt(out, pool.addString(action.getIdentity()));
+		sw.writeByte(out, (byte)action.getType().ordinal());
+		
+		byte flags = 0x00;
+		flags |= action.isStrict() ? 0x01 : 0x00;
+		flags |= action.isReversed() ? 0x02 : 0x00;
+		sw.writeByte(out, flags);
+		
+		writeStringsV2(out, pool, action.getNames());
+		writeStringsV2(out, pool, action.getExtraStrings());
+	}
+	
+	// Writes an element's common data (version 2). Blocks are written to the block data, and referred to by offset.
+	private static void writeElementV2(OutputStream out, ByteBufferOutputStream blocks, ConstantPool pool, TElement element) throws IOException
+	{
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		sw.writeVariableLengthInt(out, pool.addString(element.getIdentity()));
+		
+		byte flags = 0x00;
+		flags |= element.isArchetype() ? ELEMENT_ARCHETYPE : 0x00;
+		flags |= element.getParent() != null ? ELEMENT_PARENT : 0x00;
+		sw.writeByte(out, flags);
+		if (element.getParent() != null)
+			sw.writeVariableLengthInt(out, pool.addString(element.getParent().getIdentity()));
+		
+		int size;
+		
+		size = 0;
+		for (Map.Entry<BlockEntry, Block> entry : element.getBlockEntries())
+			size++;
+		sw.writeVariableLengthInt(out, size);
+		for (Map.Entry<BlockEntry, Block> entry : element.getBlockEntries())
+		{
+			BlockEntry blockEntry = entry.getKey();
+			Value[] values = blockEntry.getValues();
+			sw.writeByte(out, (byte)blockEntry.getEntryType().ordinal());
+			sw.writeVariableLengthInt(out, values.length);
+			for (int i = 0; i < values.length; i++)
+				sw.writeVariableLengthInt(out, pool.addValue(values[i]));
+			sw.writeVariableLengthInt(out, blocks.size());
+			entry.getValue().writePooledBytes(pool, blocks);
+		}
+		
+		size = 0;
+		for (Map.Entry<String, FunctionEntry> entry : element.getFunctionEntries())
+			size++;
+		sw.writeVariableLengthInt(out, size);
+		for (Map.Entry<String, FunctionEntry> entry : element.getFunctionEntries())
+		{
+			String[] arguments = entry.getValue().getArguments();
+			sw.writeVariableLengthInt(out, pool.addString(entry.getKey()));
+			sw.writeVariableLengthInt(out, arguments.length);
+			for (int i = 0; i < arguments.length; i++)
+				sw.writeVariableLengthInt(out, pool.addString(arguments[i]));
+			sw.writeVariableLengthInt(out, blocks.size());
+			entry.getValue().getBlock().writePooledBytes(pool, blocks);
+		}
+	}
+	
+	// Writes a set of lowercase strings (version 2).
+	private static void writeStringsV2(OutputStream out, ConstantPool pool, Iterable<String> strings) throws IOException
+	{
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		int size = 0;
+		for (String s : strings)
+			size++;
+		sw.writeVariableLengthInt(out, size);
+		for (String s : strings)
+			sw.writeVariableLengthInt(out, pool.addString(s.toLowerCase()));
+	}
+	
+	// Reads version 2 data. Blocks are not decoded until they are used.
+	private void readImmutableDataV2(ByteBuffer data) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		ByteBufferInputStream in = new ByteBufferInputStream(data.duplicate());
+		
+		clear();
+		
+		ConstantPool pool = ConstantPool.create(in);
+		int blockLength = sr.readInt(in);
+		if (blockLength < 0 || blockLength > in.available())
+			throw new ModuleException("Module block data is incomplete! Possible data corruption!");
+		
+		// cast to Buffer - ByteBuffer overrides limit(int) after Java 8.
+		ByteBuffer blocks = in.getBuffer().slice();
+		((Buffer)blocks).limit(blockLength);
+		in.skip(blockLength);
+		
+		HashMap<String, String> parentMap = new HashMap<>();
+		int size;
+		
+		TWorld world = new TWorld();
+		sr.readVariableLengthInt(in); // identity is always the same.
+		readElementV2(in, pool, blocks, world, parentMap);
+		setWorld(world);
+		
+		size = sr.readVariableLengthInt(in);
+		while (size-- > 0)
+			addAction(readActionV2(in, pool));
+		size = sr.readVariableLengthInt(in);
+		while (size-- > 0)
+		{
+			TPlayer player = new TPlayer(pool.getString(sr.readVariableLengthInt(in)));
+			readElementV2(in, pool, blocks, player, parentMap);
+			addPlayer(player);
+		}
+		size = sr.readVariableLengthInt(in);
+		while (size-- > 0)
+		{
+			TRoom room = new TRoom(pool.getString(sr.readVariableLengthInt(in)));
+			readElementV2(in, pool, blocks, room, parentMap);
+			addRoom(room);
+		}
+		size = sr.readVariableLengthInt(in);
+		while (size-- > 0)
+		{
+			TObject object = new TObject(pool.getString(sr.readVariableLengthInt(in)));
+			readElementV2(in, pool, blocks, object, parentMap);
+			for (String s : readStringsV2(in, pool))
+				object.addName(s);
+			for (String s : readStringsV2(in, pool))
+				object.addDeterminer(s);
+			for (String s : readStringsV2(in, pool))
+				object.addTag(s);
+			addObject(object);
+		}
+		size = sr.readVariableLengthInt(in);
+		while (size-- > 0)
+		{
+			TContainer container = new TContainer(pool.getString(sr.readVariableLengthInt(in)));
+			readElementV2(in, pool, blocks, container, parentMap);
+			addContainer(container);
+		}
+		
+		for (Map.Entry<String, String> pair : parentMap.entrySet())
+			getElementByIdentity(pair.getKey()).setParent(getElementByIdentity(pair.getValue()));
+	}
+	
+	// Reads an action (version 2).
+	private static TAction readActionV2(InputStream in, ConstantPool pool) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		TAction action = new TAction(pool.getString(sr.readVariableLengthInt(in)));
+		action.setType(TAction.Type.values()[sr.readByte(in)]);
+		
+		byte flags = sr.readByte(in);
+		action.setStrict((flags & 0x01) != 0);
+		action.setReversed((flags & 0x02) != 0);
+		
+		for (String s : readStringsV2(in, pool))
+			action.addName(s);
+		for (String s : readStringsV2(in, pool))
+			action.addExtraStrings(s);
+		return action;
+	}
+	
+	// Reads an element's common data (version 2), after its identity. Parents are added to the parent map.
+	private static void readElementV2(InputStream in, ConstantPool pool, ByteBuffer blocks, TElement element, HashMap<String, String> parentMap) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		
+		byte flags = sr.readByte(in);
+		if ((flags & ELEMENT_ARCHETYPE) != 0)
+			element.setArchetype(true);
+		if ((flags & ELEMENT_PARENT) != 0)
+			parentMap.put(element.getIdentity(), pool.getString(sr.readVariableLengthInt(in)));
+		
+		int size;
+		
+		size = sr.readVariableLengthInt(in);
+		while (size-- > 0)
+		{
+			BlockEntryType type = BlockEntryType.VALUES[sr.readByte(in)];
+			Value[] values = new Value[sr.readVariableLengthInt(in)];
+			for (int i = 0; i < values.length; i++)
+				values[i] = pool.getValue(sr.readVariableLengthInt(in));
+			element.addBlock(BlockEntry.create(type, values), Block.create(pool, blocks, sr.readVariableLengthInt(in)));
+		}
+		
+		size = sr.readVariableLengthInt(in);
+		while (size-- > 0)
+		{
+			String name = pool.getString(sr.readVariableLengthInt(in));
+			String[] arguments = new String[sr.readVariableLengthInt(in)];
+			for (int i = 0; i < arguments.length; i++)
+				arguments[i] = pool.getString(sr.readVariableLengthInt(in));
+			element.addFunction(name, FunctionEntry.create(Block.create(pool, blocks, sr.readVariableLengthInt(in)), arguments));
+		}
+	}
+	
+	// Reads a set of strings (version 2).
+	private static String[] readStringsV2(InputStream in, ConstantPool pool) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		String[] out = new String[sr.readVariableLengthInt(in)];
+		for (int i = 0; i < out.length; i++)
+			out[i] = pool.getString(sr.readVariableLengthInt(in));
+		return out;
+	}
+
 	/**
 	 * TAME Module Header.
 	 * @author Matthew Tropiano
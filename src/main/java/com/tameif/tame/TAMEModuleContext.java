@@ -9,16 +9,20 @@
  ******************************************************************************/
 package com.tameif.tame;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -41,9 +45,12 @@ import com.tameif.tame.exception.ModuleException;
 import com.tameif.tame.exception.ModuleExecutionException;
 import com.tameif.tame.exception.ModuleStateException;
 import com.tameif.tame.interrupt.ErrorInterrupt;
+import com.tameif.tame.lang.RandomSource;
 import com.tameif.tame.lang.Saveable;
 import com.tameif.tame.lang.Value;
-import com.tameif.tame.struct.CaseInsensitiveStringMap;
+import com.tameif.tame.lang.XoshiroRandom;
+import com.tameif.tame.struct.ByteBufferInputStream;
+import com.tameif.tame.struct.ByteBufferOutputStream;
 import com.tameif.tame.struct.SerialReader;
 import com.tameif.tame.struct.SerialWriter;
 import com.tameif.tame.struct.ValueUtils;
@@ -57,22 +64,19 @@ import com.tameif.tame.struct.ValueUtils;
  */
 public class TAMEModuleContext implements TAMEConstants, Saveable
 {
-	/** A random number generator. */
+	/** Size of the buffer for saves written to streams other than {@link ByteBufferOutputStream}s. */
+	private static final int SAVE_BUFFER_SIZE = 8192;
+	
+	/** The module. */
 	private TAMEModule module;
 
-	/** A random number generator. */
-	private Random random;
+	/** The random number source. */
+	private RandomSource random;
 
 	/** World context. */
 	private TWorldContext worldContext;
-	/** List of players. */
-	private CaseInsensitiveStringMap<TPlayerContext> playerContextHash;
-	/** List of rooms. */
-	private CaseInsensitiveStringMap<TRoomContext> roomContextHash;
-	/** List of objects. */
-	private CaseInsensitiveStringMap<TObjectContext> objectContextHash;
-	/** List of containers. */
-	private CaseInsensitiveStringMap<TContainerContext> containerContextHash;
+	/** Element contexts by element symbol (null if not created yet). */
+	private TElementContext<?>[] elementContexts;
 	
 	/** Ownership map for players. */
 	private TOwnershipMap ownershipMap;
@@ -82,53 +86,245 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	/** Function call depth max from the Header. */
 	private long functionDepthMax;
 	
+	/** If true, every element context has been created. */
+	private boolean contextsMaterialized;
+	/** Deltas written or read since the last snapshot. */
+	private int deltaCount;
+
+	/** The request object reused by every request on this context (created when first needed). */
+	private TAMERequest request;
+	
 	/**
 	 * Creates a new module context.
 	 * @param module the module to create the context for.
 	 */
 	public TAMEModuleContext(TAMEModule module)
+	{
+		this(module, createOwnershipTemplate(module), getRunawayMax(module), getFunctionDepthMax(module));
+		materializeContexts();
+	}
+
+	/**
+	 * Creates a new module context that shares its starting object names and tags with a template.
+	 * Element contexts are created when they are first requested.
+	 * @param module the module to create the context for.
+	 * @param ownershipTemplate the ownership map to use as a starting template (not changed).
+	 * @param operationRunawayMax the operation runaway limit.
+	 * @param functionDepthMax the function depth limit.
+	 * @see TAMESessionFactory
+	 */
+	TAMEModuleContext(TAMEModule module, TOwnershipMap ownershipTemplate, long operationRunawayMax, long functionDepthMax)
 	{
 		this.module = module;
-		this.random = new Random();
+		this.random = createRandom(module);
 		
-		this.playerContextHash = new CaseInsensitiveStringMap<>(3);
-		this.roomContextHash = new CaseInsensitiveStringMap<>(20);
-		this.objectContextHash = new CaseInsensitiveStringMap<>(40);
-		this.containerContextHash = new CaseInsensitiveStringMap<>(10);
+		this.worldContext = new TWorldContext(module.getWorld());
+		this.elementContexts = new TElementContext<?>[module.getElementSymbolCount()];
+		this.contextsMaterialized = false;
+		
+		this.ownershipMap = new TOwnershipMap(ownershipTemplate);
+		
+		this.operationRunawayMax = operationRunawayMax;
+		this.functionDepthMax = functionDepthMax;
+		
+		this.request = null;
+	}
 
-		// Build contexts.
+	/**
+	 * Creates a copy of another context.
+	 * @param source the context to copy.
+	 * @see #copy()
+	 */
+	private TAMEModuleContext(TAMEModuleContext source)
+	{
+		Map<Object, Object> copiedLists = new IdentityHashMap<>();
+		
+		this.module = source.module;
+		this.random = source.random.copy();
 		
 		this.worldContext = new TWorldContext(module.getWorld());
-		for (Map.Entry<String, TPlayer> element : module.getPlayerList()) 
-			if (!element.getValue().isArchetype())
-				playerContextHash.put(element.getKey(), new TPlayerContext(element.getValue()));
-		for (Map.Entry<String, TRoom> element : module.getRoomList())
-			if (!element.getValue().isArchetype())
-				roomContextHash.put(element.getKey(), new TRoomContext(element.getValue()));
-		for (Map.Entry<String, TObject> element : module.getObjectList())
-			if (!element.getValue().isArchetype())
-				objectContextHash.put(element.getKey(), new TObjectContext(element.getValue()));
-		for (Map.Entry<String, TContainer> element : module.getContainerList())
-			if (!element.getValue().isArchetype())
-				containerContextHash.put(element.getKey(), new TContainerContext(element.getValue()));
+		this.worldContext.copyStateFrom(source.worldContext, copiedLists);
+		this.elementContexts = new TElementContext<?>[source.elementContexts.length];
+		for (int i = 0; i < elementContexts.length; i++)
+			if (source.elementContexts[i] != null && source.elementContexts[i] != source.worldContext)
+				getContextBySymbol(i).copyStateFrom(source.elementContexts[i], copiedLists);
+		this.contextsMaterialized = source.contextsMaterialized;
+		this.deltaCount = source.deltaCount;
+		
+		this.ownershipMap = source.ownershipMap.copy();
+		
+		this.operationRunawayMax = source.operationRunawayMax;
+		this.functionDepthMax = source.functionDepthMax;
 		
-		this.ownershipMap = new TOwnershipMap();
+		this.request = null;
+	}
+
+	/**
+	 * Creates a copy of this context, in the same state, that can be changed without changing this one.
+	 * The copy is made directly from this context's structures (not through a save state), 
+	 * shares this context's module, and keeps shared lists shared the same way that a save state would.
+	 * The copy also has this context's unwritten changes, so it can keep writing deltas after the same snapshot.
+	 * @return a new context.
+	 */
+	public TAMEModuleContext copy()
+	{
+		return new TAMEModuleContext(this);
+	}
 
-		for (Map.Entry<String, TObjectContext> element : objectContextHash)
+	/**
+	 * Gets the request object to reuse for requests on this context.
+	 * @return the request object.
+	 */
+	TAMERequest getRequest()
+	{
+		if (request == null)
+			request = new TAMERequest(this);
+		return request;
+	}
+
+	/**
+	 * Creates an ownership map with the starting names and tags of all of a module's objects.
+	 * @param module the module to use.
+	 * @return a new ownership map.
+	 */
+	static TOwnershipMap createOwnershipTemplate(TAMEModule module)
+	{
+		TOwnershipMap out = new TOwnershipMap();
+		for (Map.Entry<String, TObject> element : module.getObjectList())
 		{
-			TObjectContext context = element.getValue();
-			TObject object = context.getElement();
+			TObject object = element.getValue();
+			if (object.isArchetype())
+				continue;
 			for (String name : object.getNames())
-				ownershipMap.addObjectName(object, name);
+				out.addObjectName(object, name);
 			for (String tag : object.getTags())
-				ownershipMap.addObjectTag(object, tag);
+				out.addObjectTag(object, tag);
 		}
-		
+		return out;
+	}
+	
+	/**
+	 * Gets the operation runaway limit from a module header.
+	 * @param module the module to use.
+	 * @return the limit.
+	 */
+	static long getRunawayMax(TAMEModule module)
+	{
 		long cr = ValueUtils.parseLong(module.getHeader().getAttribute(HEADER_TAME_RUNAWAY_MAX));
+		return cr <= 0 ? DEFAULT_RUNAWAY_THRESHOLD : cr;
+	}
+	
+	/**
+	 * Creates the random number source for a new context, 
+	 * seeded from the module header's random seed, if it has one.
+	 * @param module the module to use.
+	 * @return a new random source.
+	 * @see TAMEConstants#HEADER_TAME_RANDOM_SEED
+	 */
+	static RandomSource createRandom(TAMEModule module)
+	{
+		String seed = module.getHeader().getAttribute(HEADER_TAME_RANDOM_SEED);
+		return seed != null ? new XoshiroRandom(ValueUtils.parseLong(seed)) : new XoshiroRandom();
+	}
+	
+	/**
+	 * Gets the function depth limit from a module header.
+	 * @param module the module to use.
+	 * @return the limit.
+	 */
+	static long getFunctionDepthMax(TAMEModule module)
+	{
 		long fd = ValueUtils.parseLong(module.getHeader().getAttribute(HEADER_TAME_FUNCDEPTH_MAX));
+		return fd <= 0 ? DEFAULT_FUNCTION_DEPTH : fd;
+	}
+	
+	/**
+	 * Creates every element context that has not been created yet.
+	 */
+	private void materializeContexts()
+	{
+		if (contextsMaterialized)
+			return;
+		for (int i = 0; i < module.getElementSymbolCount(); i++)
+			getContextBySymbol(i);
+		contextsMaterialized = true;
+	}
+
+	// Gets (or creates) an element context by element symbol. Returns null for archetypes.
+	private TElementContext<?> getContextBySymbol(int symbol)
+	{
+		if (symbol >= elementContexts.length)
+			elementContexts = Arrays.copyOf(elementContexts, module.getElementSymbolCount());
 		
-		this.operationRunawayMax = cr <= 0 ? DEFAULT_RUNAWAY_THRESHOLD: cr;
-		this.functionDepthMax = fd <= 0 ? DEFAULT_FUNCTION_DEPTH: fd;
+		TElementContext<?> out;
+		if ((out = elementContexts[symbol]) == null)
+		{
+			TElement element = module.getElementBySymbol(symbol);
+			if (element.isArchetype())
+				return null;
+			else if (element instanceof TPlayer)
+				out = new TPlayerContext((TPlayer)element);
+			else if (element instanceof TRoom)
+				out = new TRoomContext((TRoom)element);
+			else if (element instanceof TObject)
+				out = new TObjectContext((TObject)element);
+			else if (element instanceof TContainer)
+				out = new TContainerContext((TContainer)element);
+			else if (element == module.getWorld())
+				out = worldContext;
+			else
+				return null;
+			elementContexts[symbol] = out;
+		}
+		return out;
+	}
+
+	// Gets (or creates) an element context by element identity.
+	private TElementContext<?> getContextBySymbol(String identity)
+	{
+		int symbol = module.getElementSymbol(identity);
+		return symbol >= 0 ? getContextBySymbol(symbol) : null;
+	}
+
+	// Gets (or creates) an element context for an element, by its symbol if it is this module's element.
+	private TElementContext<?> getContextBySymbol(TElement element)
+	{
+		int symbol = element.getSymbol();
+		if (symbol >= 0 && symbol < module.getElementSymbolCount() && module.getElementBySymbol(symbol) == element)
+			return getContextBySymbol(symbol);
+		return getContextBySymbol(element.getIdentity());
+	}
+
+	/**
+	 * Gets an element's context, creating it if it was not created yet.
+	 * @param element the element (from this context's module).
+	 * @return the element's context, or null if the element is an archetype.
+	 */
+	TElementContext<?> getContext(TElement element)
+	{
+		return getContextBySymbol(element);
+	}
+
+	/**
+	 * Checks if an element's context was created.
+	 * Contexts made by a {@link TAMESessionFactory} create element contexts when they are first requested.
+	 * @param element the element (from this context's module).
+	 * @return true if so, false if not.
+	 */
+	boolean hasContext(TElement element)
+	{
+		int symbol = element.getSymbol();
+		return symbol >= 0 && symbol < elementContexts.length && elementContexts[symbol] != null;
+	}
+
+	// Gets the contexts of one type that were created, in symbol order (does not create any).
+	private <C extends TElementContext<?>> Collection<C> getContexts(Class<C> contextType)
+	{
+		List<C> out = new ArrayList<>();
+		for (TElementContext<?> context : elementContexts)
+			if (contextType.isInstance(context))
+				out.add(contextType.cast(context));
+		return out;
 	}
 
 	/**
@@ -141,13 +337,26 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	}
 	
 	/**
-	 * Gets the context random number generator.
-	 * @return the current random generator.
+	 * Gets the context random number source.
+	 * @return the current random source.
 	 */
-	public Random getRandom()
+	public RandomSource getRandom()
 	{
 		return random;
 	}
+
+	/**
+	 * Sets the context random number source.
+	 * Its state is saved with this context's state, so a source read back must be the same type.
+	 * @param random the new random source.
+	 * @throws NullPointerException if random is null.
+	 */
+	public void setRandom(RandomSource random)
+	{
+		if (random == null)
+			throw new NullPointerException("random cannot be null");
+		this.random = random;
+	}
 	
 	/**
 	 * @return the operation runaway detection limit.
@@ -166,39 +375,39 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	}
 	
 	/**
-	 * Get the player contexts.
+	 * Get the player contexts that were created.
 	 * @return the context map.
 	 */
 	public Collection<TPlayerContext> getPlayerContexts()
 	{
-		return playerContextHash.values();
+		return getContexts(TPlayerContext.class);
 	}
 
 	/**
-	 * Get the room contexts.
+	 * Get the room contexts that were created.
 	 * @return the context map.
 	 */
 	public Collection<TRoomContext> getRoomContexts()
 	{
-		return roomContextHash.values();
+		return getContexts(TRoomContext.class);
 	}
 
 	/**
-	 * Get the object contexts.
+	 * Get the object contexts that were created.
 	 * @return the context map.
 	 */
 	public Collection<TObjectContext> getObjectContexts()
 	{
-		return objectContextHash.values();
+		return getContexts(TObjectContext.class);
 	}
 
 	/**
-	 * Get the container contexts.
+	 * Get the container contexts that were created.
 	 * @return the context map.
 	 */
 	public Collection<TContainerContext> getContainerContexts()
 	{
-		return containerContextHash.values();
+		return getContexts(TContainerContext.class);
 	}
 
 	/**
@@ -243,7 +452,8 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	 */
 	public TPlayerContext getPlayerContext(TPlayer player)
 	{
-		return playerContextHash.get(player.getIdentity());
+		TElementContext<?> out = getContextBySymbol(player);
+		return out instanceof TPlayerContext ? (TPlayerContext)out : null;
 	}
 
 	/**
@@ -253,7 +463,8 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	 */
 	public TRoomContext getRoomContext(TRoom room)
 	{
-		return roomContextHash.get(room.getIdentity());
+		TElementContext<?> out = getContextBySymbol(room);
+		return out instanceof TRoomContext ? (TRoomContext)out : null;
 	}
 
 	/**
@@ -263,7 +474,8 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	 */
 	public TObjectContext getObjectContext(TObject object)
 	{
-		return objectContextHash.get(object.getIdentity());
+		TElementContext<?> out = getContextBySymbol(object);
+		return out instanceof TObjectContext ? (TObjectContext)out : null;
 	}
 
 	/**
@@ -273,7 +485,8 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	 */
 	public TContainerContext getContainerContext(TContainer container)
 	{
-		return containerContextHash.get(container.getIdentity());
+		TElementContext<?> out = getContextBySymbol(container);
+		return out instanceof TContainerContext ? (TContainerContext)out : null;
 	}
 
 	/**
@@ -285,16 +498,16 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	{
 		if (TAMEConstants.IDENTITY_CURRENT_WORLD.equalsIgnoreCase(identity))
 			return worldContext;
-		else if (playerContextHash.containsKey(identity))
-			return playerContextHash.get(identity);
-		else if (roomContextHash.containsKey(identity))
-			return roomContextHash.get(identity);
-		else if (objectContextHash.containsKey(identity))
-			return objectContextHash.get(identity);
-		else if (containerContextHash.containsKey(identity))
-			return containerContextHash.get(identity);
+		
+		TElementContext<?> out;
+		if ((out = getPlayerContextByIdentity(identity)) != null)
+			return out;
+		else if ((out = getRoomContextByIdentity(identity)) != null)
+			return out;
+		else if ((out = getObjectContextByIdentity(identity)) != null)
+			return out;
 		else
-			return null;
+			return getContainerContextByIdentity(identity);
 	}
 
 	/**
@@ -304,7 +517,8 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	 */
 	public TPlayerContext getPlayerContextByIdentity(String identity)
 	{
-		return playerContextHash.get(identity);
+		TElementContext<?> out = getContextBySymbol(identity);
+		return out instanceof TPlayerContext ? (TPlayerContext)out : null;
 	}
 
 	/**
@@ -314,7 +528,8 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	 */
 	public TRoomContext getRoomContextByIdentity(String identity)
 	{
-		return roomContextHash.get(identity);
+		TElementContext<?> out = getContextBySymbol(identity);
+		return out instanceof TRoomContext ? (TRoomContext)out : null;
 	}
 
 	/**
@@ -324,7 +539,8 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	 */
 	public TObjectContext getObjectContextByIdentity(String identity)
 	{
-		return objectContextHash.get(identity);
+		TElementContext<?> out = getContextBySymbol(identity);
+		return out instanceof TObjectContext ? (TObjectContext)out : null;
 	}
 
 	/**
@@ -334,7 +550,8 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 	 */
 	public TContainerContext getContainerContextByIdentity(String identity)
 	{
-		return containerContextHash.get(identity);
+		TElementContext<?> out = getContextBySymbol(identity);
+		return out instanceof TContainerContext ? (TContainerContext)out : null;
 	}
 
 	/**
@@ -397,39 +614,40 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 		TWorldContext worldContext = getWorldContext();
 		int start = arrayOffset;
 		
-		if (playerContext != null) for (TObject obj : ownershipMap.getObjectsOwnedByElement(playerContext.getElement()))
+		if (playerContext != null)
 		{
-			if (ownershipMap.checkObjectHasName(obj, name))
-			{
-				outputArray[arrayOffset++] = obj;
-				if (arrayOffset == outputArray.length)
-					return arrayOffset - start;
-			}
+			arrayOffset += ownershipMap.getObjectsOwnedByElementWithName(playerContext.getElement(), name, outputArray, arrayOffset);
+			if (arrayOffset == outputArray.length)
+				return arrayOffset - start;
 		}
 		
-		if (roomContext != null) for (TObject obj : ownershipMap.getObjectsOwnedByElement(roomContext.getElement()))
+		if (roomContext != null)
 		{
-			if (ownershipMap.checkObjectHasName(obj, name))
-			{
-				outputArray[arrayOffset++] = obj;
-				if (arrayOffset == outputArray.length)
-					return arrayOffset - start;
-			}
+			arrayOffset += ownershipMap.getObjectsOwnedByElementWithName(roomContext.getElement(), name, outputArray, arrayOffset);
+			if (arrayOffset == outputArray.length)
+				return arrayOffset - start;
 		}
-	
-		for (TObject obj : ownershipMap.getObjectsOwnedByElement(worldContext.getElement()))
-		{
-			if (ownershipMap.checkObjectHasName(obj, name))
-			{
-				outputArray[arrayOffset++] = obj;
-				if (arrayOffset == outputArray.length)
-					return arrayOffset - start;
-			}
-		}
-	
+		
+		arrayOffset += ownershipMap.getObjectsOwnedByElementWithName(worldContext.getElement(), name, outputArray, arrayOffset);
 		return arrayOffset - start;
 	}
 
+	/**
+	 * Creates a matcher for finding objects in the accessible area by name, one input token at a time.
+	 * The matcher finds objects in the same priority order as {@link #getAccessibleObjectsByName(String, TObject[], int)}.
+	 * @return a new name matcher.
+	 */
+	public TOwnershipMap.NameMatcher createAccessibleNameMatcher()
+	{
+		TPlayerContext playerContext = getCurrentPlayerContext();
+		TRoomContext roomContext = getCurrentRoomContext();
+		return ownershipMap.createNameMatcher(
+			playerContext != null ? playerContext.getElement() : null,
+			roomContext != null ? roomContext.getElement() : null,
+			getWorldContext().getElement()
+		);
+	}
+
 	/**
 	 * Resolves an action by its identity.
 	 * @param actionIdentity the action identity.
@@ -458,13 +676,13 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 			default:
 				return null;
 			case OBJECT:
-				return resolveObject(varElement.asString());
+				return resolveObject(varElement);
 			case ROOM:
-				return resolveRoom(varElement.asString());
+				return resolveRoom(varElement);
 			case PLAYER:
-				return resolvePlayer(varElement.asString());
+				return resolvePlayer(varElement);
 			case CONTAINER:
-				return resolveContainer(varElement.asString());
+				return resolveContainer(varElement);
 			case WORLD:
 				return resolveWorld();
 		}
@@ -484,13 +702,13 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 			default:
 				return null;
 			case OBJECT:
-				return resolveObjectContext(varElement.asString());
+				return resolveObjectContext(varElement);
 			case ROOM:
-				return resolveRoomContext(varElement.asString());
+				return resolveRoomContext(varElement);
 			case PLAYER:
-				return resolvePlayerContext(varElement.asString());
+				return resolvePlayerContext(varElement);
 			case CONTAINER:
-				return resolveContainerContext(varElement.asString());
+				return resolveContainerContext(varElement);
 			case WORLD:
 				return resolveWorldContext();
 		}
@@ -508,6 +726,19 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 		return getOwnershipMap().getObjectsOwnedByElement((ObjectContainer)resolveElement(varObjectContainer));
 	}
 
+	/**
+	 * Resolves a cursor over all objects contained by an object container, without copying them.
+	 * Object ownership must not change while the cursor is read - see {@link #resolveObjectList(Value)} for that.
+	 * The cursor is reused by the next call, so it must be read to the end (or dropped) before then.
+	 * @param varObjectContainer the value to resolve via module context.
+	 * @return a cursor over the objects, or null if the value does not refer to an object container.
+	 * @throws ErrorInterrupt if a major error occurs.
+	 */
+	public TOwnershipMap.ObjectCursor resolveObjectCursor(Value varObjectContainer) throws ErrorInterrupt 
+	{
+		return getOwnershipMap().getSharedObjectCursor((ObjectContainer)resolveElement(varObjectContainer));
+	}
+
 	/**
 	 * Resolves a world context.
 	 * @return the context resolved.
@@ -682,14 +913,212 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 		return element;
 	}
 
+	// Gets the symbol of the element that an element value refers to, remembering it on the value. Returns -1 if no such element.
+	private int resolveSymbol(Value varElement)
+	{
+		String identity = varElement.asString();
+		int symbol = varElement.getElementSymbol();
+		if (symbol >= 0 && symbol < module.getElementSymbolCount() && module.getElementBySymbol(symbol).getIdentity().equalsIgnoreCase(identity))
+			return symbol;
+		if ((symbol = module.getElementSymbol(identity)) >= 0)
+			varElement.setElementSymbol(symbol);
+		return symbol;
+	}
+
+	/**
+	 * Resolves a player by a player value.
+	 * Same as {@link #resolvePlayer(String)}, but remembers the player's symbol on the value for later lookups.
+	 * @param varPlayer the player value.
+	 * @return the element resolved.
+	 * @throws ModuleExecutionException if the non-current player identity cannot be found, or if no current player if requesed.
+	 */
+	public TPlayer resolvePlayer(Value varPlayer)
+	{
+		String identity = varPlayer.asString();
+		if (identity.equals(TAMEConstants.IDENTITY_CURRENT_PLAYER))
+			return resolvePlayer(identity);
+		int symbol = resolveSymbol(varPlayer);
+		TElement element = symbol >= 0 ? module.getElementBySymbol(symbol) : null;
+		if (!(element instanceof TPlayer))
+			throw new ModuleExecutionException("Expected player '%s' in module context!", identity);
+		return (TPlayer)element;
+	}
+
+	/**
+	 * Resolves a player context by a player value.
+	 * Same as {@link #resolvePlayerContext(String)}, but remembers the player's symbol on the value for later lookups.
+	 * @param varPlayer the player value.
+	 * @return the context resolved.
+	 * @throws ModuleExecutionException if the non-current player identity cannot be found, or if no current player when requested.
+	 */
+	public TPlayerContext resolvePlayerContext(Value varPlayer)
+	{
+		String identity = varPlayer.asString();
+		if (identity.equals(IDENTITY_CURRENT_PLAYER))
+			return resolvePlayerContext(identity);
+		int symbol = resolveSymbol(varPlayer);
+		TElementContext<?> context = symbol >= 0 ? getContextBySymbol(symbol) : null;
+		if (!(context instanceof TPlayerContext))
+			throw new ModuleExecutionException("Expected player '%s' in module context!", identity);
+		return (TPlayerContext)context;
+	}
+
+	/**
+	 * Resolves a room by a room value.
+	 * Same as {@link #resolveRoom(String)}, but remembers the room's symbol on the value for later lookups.
+	 * @param varRoom the room value.
+	 * @return the element resolved.
+	 * @throws ModuleExecutionException if the non-current room identity cannot be found, or if not current room if requested.
+	 */
+	public TRoom resolveRoom(Value varRoom)
+	{
+		String identity = varRoom.asString();
+		if (identity.equals(TAMEConstants.IDENTITY_CURRENT_ROOM))
+			return resolveRoom(identity);
+		int symbol = resolveSymbol(varRoom);
+		TElement element = symbol >= 0 ? module.getElementBySymbol(symbol) : null;
+		if (!(element instanceof TRoom))
+			throw new ModuleExecutionException("Expected room '%s' in module context!", identity);
+		return (TRoom)element;
+	}
+
+	/**
+	 * Resolves a room context by a room value.
+	 * Same as {@link #resolveRoomContext(String)}, but remembers the room's symbol on the value for later lookups.
+	 * @param varRoom the room value.
+	 * @return the context resolved.
+	 * @throws ModuleExecutionException if the non-current room identity cannot be found, or if no current room if requested.
+	 */
+	public TRoomContext resolveRoomContext(Value varRoom)
+	{
+		String identity = varRoom.asString();
+		if (identity.equals(IDENTITY_CURRENT_ROOM))
+			return resolveRoomContext(identity);
+		int symbol = resolveSymbol(varRoom);
+		TElementContext<?> context = symbol >= 0 ? getContextBySymbol(symbol) : null;
+		if (!(context instanceof TRoomContext))
+			throw new ModuleExecutionException("Expected room '%s' in module context!", identity);
+		return (TRoomContext)context;
+	}
+
+	/**
+	 * Resolves an object by an object value.
+	 * Same as {@link #resolveObject(String)}, but remembers the object's symbol on the value for later lookups.
+	 * @param varObject the object value.
+	 * @return the element resolved.
+	 * @throws ModuleExecutionException if object not found.
+	 */
+	public TObject resolveObject(Value varObject)
+	{
+		int symbol = resolveSymbol(varObject);
+		TElement element = symbol >= 0 ? module.getElementBySymbol(symbol) : null;
+		if (!(element instanceof TObject))
+			throw new ModuleExecutionException("Expected object '%s' in module context!", varObject.asString());
+		return (TObject)element;
+	}
+
+	/**
+	 * Resolves an object context by an object value.
+	 * Same as {@link #resolveObjectContext(String)}, but remembers the object's symbol on the value for later lookups.
+	 * @param varObject the object value.
+	 * @return the context resolved.
+	 * @throws ModuleExecutionException if object not found.
+	 */
+	public TObjectContext resolveObjectContext(Value varObject)
+	{
+		int symbol = resolveSymbol(varObject);
+		TElementContext<?> context = symbol >= 0 ? getContextBySymbol(symbol) : null;
+		if (!(context instanceof TObjectContext))
+			throw new ModuleExecutionException("Expected object '%s' in module context!", varObject.asString());
+		return (TObjectContext)context;
+	}
+
+	/**
+	 * Resolves a container by a container value.
+	 * Same as {@link #resolveContainer(String)}, but remembers the container's symbol on the value for later lookups.
+	 * @param varContainer the container value.
+	 * @return the element resolved.
+	 * @throws ModuleExecutionException if container not found.
+	 */
+	public TContainer resolveContainer(Value varContainer)
+	{
+		int symbol = resolveSymbol(varContainer);
+		TElement element = symbol >= 0 ? module.getElementBySymbol(symbol) : null;
+		if (!(element instanceof TContainer))
+			throw new ModuleExecutionException("Expected container '%s' in module context!", varContainer.asString());
+		return (TContainer)element;
+	}
+
+	/**
+	 * Resolves a container context by a container value.
+	 * Same as {@link #resolveContainerContext(String)}, but remembers the container's symbol on the value for later lookups.
+	 * @param varContainer the container value.
+	 * @return the context resolved.
+	 * @throws ModuleExecutionException if container not found.
+	 */
+	public TContainerContext resolveContainerContext(Value varContainer)
+	{
+		int symbol = resolveSymbol(varContainer);
+		TElementContext<?> context = symbol >= 0 ? getContextBySymbol(symbol) : null;
+		if (!(context instanceof TContainerContext))
+			throw new ModuleExecutionException("Expected container '%s' in module context!", varContainer.asString());
+		return (TContainerContext)context;
+	}
+
+	// Writes the states of one type of element in symbol order, prefixed with their count.
+	// Elements without a context write an empty state, so no contexts are created.
+	private void writeContextStates(SerialWriter sw, Class<? extends TElement> elementType, AtomicLong refCounter, Map<Object, Long> refSet, OutputStream out) throws IOException
+	{
+		int symbolCount = module.getElementSymbolCount();
+		int count = 0;
+		for (int i = 0; i < symbolCount; i++)
+			if (isSavedElement(module.getElementBySymbol(i), elementType))
+				count++;
+		
+		sw.writeInt(out, count);
+		for (int i = 0; i < symbolCount; i++)
+		{
+			TElement element = module.getElementBySymbol(i);
+			if (!isSavedElement(element, elementType))
+				continue;
+			sw.writeString(out, element.getIdentity().toLowerCase(), "UTF-8");
+			TElementContext<?> context = i < elementContexts.length ? elementContexts[i] : null;
+			if (context != null)
+				context.writeStateBytes(module, refCounter, refSet, out);
+			else
+				TElementContext.writeEmptyStateBytes(refCounter, refSet, out);
+		}
+	}
+
+	// Checks if an element of a type has a context state in a save (archetypes do not).
+	private static boolean isSavedElement(TElement element, Class<? extends TElement> elementType)
+	{
+		return elementType.isInstance(element) && !element.isArchetype();
+	}
+
 	@Override
 	public void writeBytes(OutputStream out) throws IOException 
+	{
+		if (out instanceof ByteBufferOutputStream)
+		{
+			writeState(out);
+			return;
+		}
+		
+		// callers that write many saves can pass (and reuse) their own ByteBufferOutputStream instead.
+		BufferedOutputStream bos = new BufferedOutputStream(out, SAVE_BUFFER_SIZE);
+		writeState(bos);
+		bos.flush();
+	}
+	
+	// Writes the save state.
+	private void writeState(OutputStream out) throws IOException 
 	{
 		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
 
 		sw.writeBytes(out, "TSAV".getBytes("ASCII"));
 		// write version
-		sw.writeByte(out, (byte)0x01);
+		sw.writeByte(out, (byte)0x02);
 		
 		byte[] digest;
 		if ((digest = module.getDigest()) == null)
@@ -702,35 +1131,17 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 		sw.writeString(out, worldContext.getElement().getIdentity(), "UTF-8");
 		worldContext.writeStateBytes(module, refCounter, refSet, out);
 		
-		sw.writeInt(out, playerContextHash.size());
-		for (Map.Entry<String, TPlayerContext> entry : playerContextHash)
-		{
-			sw.writeString(out, entry.getKey(), "UTF-8");
-			entry.getValue().writeStateBytes(module, refCounter, refSet, out);
-		}
+		writeContextStates(sw, TPlayer.class, refCounter, refSet, out);
 
-		sw.writeInt(out, roomContextHash.size());
-		for (Map.Entry<String, TRoomContext> entry : roomContextHash)
-		{
-			sw.writeString(out, entry.getKey(), "UTF-8");
-			entry.getValue().writeStateBytes(module, refCounter, refSet, out);
-		}
+		writeContextStates(sw, TRoom.class, refCounter, refSet, out);
 		
-		sw.writeInt(out, objectContextHash.size());
-		for (Map.Entry<String, TObjectContext> entry : objectContextHash)
-		{
-			sw.writeString(out, entry.getKey(), "UTF-8");
-			entry.getValue().writeStateBytes(module, refCounter, refSet, out);
-		}
+		writeContextStates(sw, TObject.class, refCounter, refSet, out);
 
-		sw.writeInt(out, containerContextHash.size());
-		for (Map.Entry<String, TContainerContext> entry : containerContextHash)
-		{
-			sw.writeString(out, entry.getKey(), "UTF-8");
-			entry.getValue().writeStateBytes(module, refCounter, refSet, out);
-		}
+		writeContextStates(sw, TContainer.class, refCounter, refSet, out);
 
 		ownershipMap.writeStateBytes(module, refCounter, refSet, out);
+		
+		sw.writeByteArray(out, random.toBytes());
 	}
 
 	@Override
@@ -743,7 +1154,9 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 		if (!(new String(sr.readBytes(in, 4), "ASCII")).equals("TSAV"))
 			throw new ModuleException("Not a TAME module save state.");
 		
-		if (sr.readByte(in) != 0x01)
+		// version 1 has no random state.
+		byte version = sr.readByte(in);
+		if (version != 0x01 && version != 0x02)
 			throw new ModuleException("Module save state does not have a recognized version.");
 
 		byte[] digest = sr.readBytes(in, 20);
@@ -764,43 +1177,231 @@ public class TAMEModuleContext implements TAMEConstants, Saveable
 		while (size-- > 0)
 		{
 			identity = sr.readString(in, "UTF-8");
-			if (!playerContextHash.containsKey(identity))
+			TPlayerContext context = getPlayerContextByIdentity(identity);
+			if (context == null)
 				throw new ModuleStateException("Expected player '%s' in module context!", identity);
 			else
-				playerContextHash.get(identity).readStateBytes(module, refMap, in);
+				context.readStateBytes(module, refMap, in);
 		}
 		
 		size = sr.readInt(in);
 		while (size-- > 0)
 		{
 			identity = sr.readString(in, "UTF-8");
-			if (!roomContextHash.containsKey(identity))
+			TRoomContext context = getRoomContextByIdentity(identity);
+			if (context == null)
 				throw new ModuleStateException("Expected room '%s' in module context!", identity);
 			else
-				roomContextHash.get(identity).readStateBytes(module, refMap, in);
+				context.readStateBytes(module, refMap, in);
 		}
 
 		size = sr.readInt(in);
 		while (size-- > 0)
 		{
 			identity = sr.readString(in, "UTF-8");
-			if (!objectContextHash.containsKey(identity))
+			TObjectContext context = getObjectContextByIdentity(identity);
+			if (context == null)
 				throw new ModuleStateException("Expected object '%s' in module context!", identity);
 			else
-				objectContextHash.get(identity).readStateBytes(module, refMap, in);
+				context.readStateBytes(module, refMap, in);
 		}
 		
 		size = sr.readInt(in);
 		while (size-- > 0)
 		{
 			identity = sr.readString(in, "UTF-8");
-			if (!containerContextHash.containsKey(identity))
+			TContainerContext context = getContainerContextByIdentity(identity);
+			if (context == null)
 				throw new ModuleStateException("Expected container '%s' in module context!", identity);
 			else
-				containerContextHash.get(identity).readStateBytes(module, refMap, in);
+				context.readStateBytes(module, refMap, in);
 		}
 		
 		ownershipMap.readStateBytes(module, refMap, in);
+		
+		if (version >= 0x02)
+			random.fromBytes(sr.readByteArray(in));
+		
+		markSnapshot();
+	}
+	
+	/**
+	 * Marks the current state as the base for the next delta.
+	 * Call this after writing a full save state that later deltas will be applied to.
+	 * Reading a full save state does this automatically.
+	 * @see #writeDeltaBytes(OutputStream)
+	 */
+	public void markSnapshot()
+	{
+		clearDirty();
+		deltaCount = 0;
+	}
+
+	// Forgets all changes on every created context and the ownership map.
+	private void clearDirty()
+	{
+		for (TElementContext<?> context : elementContexts)
+			if (context != null)
+				context.clearDirty();
+		worldContext.clearDirty();
+		ownershipMap.clearDirty();
+	}
+
+	/**
+	 * Writes the changes to this context since the last snapshot or delta (a "TDLT" stream).
+	 * Only the changed variables of each element context, the changed parts of the ownership map, 
+	 * and the random state are written, so a delta's size depends on what changed, not on the size of the module.
+	 * List values are always written, since they can change in place.
+	 * <p>Deltas are numbered, and must be read in the order that they were written, 
+	 * onto the same snapshot that they were written after.
+	 * <p>Writing to a {@link ByteBufferOutputStream} is fastest, and a caller that writes many deltas can reset and reuse one.
+	 * @param out the output stream to write to.
+	 * @throws IOException if a write problem occurs.
+	 * @see #markSnapshot()
+	 * @see #readDeltaBytes(InputStream)
+	 */
+	public void writeDeltaBytes(OutputStream out) throws IOException 
+	{
+		if (out instanceof ByteBufferOutputStream)
+			writeDelta(out);
+		else
+		{
+			BufferedOutputStream bos = new BufferedOutputStream(out, SAVE_BUFFER_SIZE);
+			writeDelta(bos);
+			bos.flush();
+		}
+		clearDirty();
+		deltaCount++;
+	}
+
+	/**
+	 * Writes the changes to this context since the last snapshot or delta to a new byte array.
+	 * @return the delta as bytes.
+	 * @throws IOException if a write problem occurs.
+	 * @see #writeDeltaBytes(OutputStream)
+	 */
+	public byte[] toDeltaBytes() throws IOException
+	{
+		ByteBufferOutputStream bos = new ByteBufferOutputStream();
+		writeDeltaBytes(bos);
+		return bos.toByteArray();
+	}
+
+	// Writes the changes since the last snapshot or delta.
+	private void writeDelta(OutputStream out) throws IOException 
+	{
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+
+		sw.writeBytes(out, "TDLT".getBytes("ASCII"));
+		// write version
+		sw.writeByte(out, (byte)0x01);
+		
+		byte[] digest;
+		if ((digest = module.getDigest()) == null)
+			digest = module.calculateDigest();
+		sw.writeBytes(out, digest);
+		sw.writeInt(out, deltaCount + 1);
+
+		AtomicLong refCounter = new AtomicLong(0L);
+		HashMap<Object, Long> refSet = new HashMap<>(16);
+		
+		List<TElementContext<?>> dirty = new ArrayList<>();
+		if (worldContext.isDirty())
+			dirty.add(worldContext);
+		for (TElementContext<?> context : elementContexts)
+			if (context != null && context != worldContext && context.isDirty())
+				dirty.add(context);
+
+		sw.writeInt(out, dirty.size());
+		for (TElementContext<?> context : dirty)
+		{
+			sw.writeString(out, context.getElement().getIdentity(), "UTF-8");
+			context.writeDeltaBytes(refCounter, refSet, out);
+		}
+		
+		ownershipMap.writeDeltaBytes(module, out);
+		
+		sw.writeByteArray(out, random.toBytes());
+	}
+
+	/**
+	 * Reads and applies a delta written by {@link #writeDeltaBytes(OutputStream)}.
+	 * @param in the input stream to read from.
+	 * @throws IOException if a read problem occurs.
+	 * @throws ModuleException if the stream is not a delta.
+	 * @throws ModuleStateException if the delta is not for this module or is out of sequence.
+	 */
+	public void readDeltaBytes(InputStream in) throws IOException 
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		
+		if (!(new String(sr.readBytes(in, 4), "ASCII")).equals("TDLT"))
+			throw new ModuleException("Not a TAME module save state delta.");
+		
+		byte version = sr.readByte(in);
+		if (version != 0x01)
+			throw new ModuleException("Module save state delta does not have a recognized version.");
+
+		byte[] digest = sr.readBytes(in, 20);
+		byte[] moduleDigest;
+		if ((moduleDigest = module.getDigest()) == null)
+			moduleDigest = module.calculateDigest();
+		if (!Arrays.equals(digest, moduleDigest))
+			throw new ModuleStateException("Module and delta digests do not match. Delta may not be for this module.");
+		
+		int sequence = sr.readInt(in);
+		if (sequence != deltaCount + 1)
+			throw new ModuleStateException("Expected delta %d, but got delta %d.", deltaCount + 1, sequence);
+		
+		HashMap<Long, Value> refMap = new HashMap<>(16);
+
+		int size = sr.readInt(in);
+		while (size-- > 0)
+		{
+			String identity = sr.readString(in, "UTF-8");
+			TElementContext<?> context = getContextBySymbol(identity);
+			if (context == null)
+				throw new ModuleStateException("Expected element '%s' in module context!", identity);
+			context.readDeltaBytes(refMap, in);
+		}
+		
+		ownershipMap.readDeltaBytes(module, in);
+		
+		random.fromBytes(sr.readByteArray(in));
+		
+		clearDirty();
+		deltaCount = sequence;
+	}
+
+	/**
+	 * Reads and applies a delta from a byte array.
+	 * @param data the delta bytes.
+	 * @throws IOException if a read problem occurs.
+	 * @see #readDeltaBytes(InputStream)
+	 */
+	public void fromDeltaBytes(byte[] data) throws IOException
+	{
+		readDeltaBytes(new ByteBufferInputStream(ByteBuffer.wrap(data)));
+	}
+
+	/**
+	 * Folds a snapshot and the deltas written after it into one full save state.
+	 * @param module the module that the states are for.
+	 * @param snapshot the full save state, or null to start from a new context.
+	 * @param deltas the deltas written after the snapshot, in order.
+	 * @return the resultant full save state.
+	 * @throws IOException if a read or write problem occurs.
+	 * @throws ModuleException if a state is not a save state or delta.
+	 * @throws ModuleStateException if a state is not for this module, or a delta is out of sequence.
+	 */
+	public static byte[] compactState(TAMEModule module, byte[] snapshot, Iterable<byte[]> deltas) throws IOException
+	{
+		TAMEModuleContext context = new TAMEModuleContext(module);
+		if (snapshot != null)
+			context.fromBytes(snapshot);
+		for (byte[] delta : deltas)
+			context.fromDeltaBytes(delta);
+		return context.toBytes();
 	}
 	
 }
@@ -9,7 +9,6 @@
  ******************************************************************************/
 package com.tameif.tame;
 
-import java.util.Random;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -38,6 +37,7 @@ import com.tameif.tame.lang.ArgumentType;
 import com.tameif.tame.lang.Block;
 import com.tameif.tame.lang.Operation;
 import com.tameif.tame.lang.OperationType;
+import com.tameif.tame.lang.RandomSource;
 import com.tameif.tame.lang.TraceType;
 import com.tameif.tame.lang.Value;
 import com.tameif.tame.lang.ValueSet;
@@ -108,14 +108,15 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected variable type in POPVALUE call.");
 			
 			String variableName = varvalue.asString();
-			if (blockLocal.containsKey(variableName))
+			int slot = operation.getLocalSlot();
+			if (blockLocal.containsKey(slot, variableName))
 			{
-				response.trace(request, TraceType.VALUE, "SET LOCAL %s %s", variableName, value.toString());
-				blockLocal.put(variableName, value);
+				response.trace(request, TraceType.VALUE, "SET LOCAL %s %s", variableName, value);
+				blockLocal.put(slot, variableName, value);
 			}
 			else
 			{
-				response.trace(request, TraceType.VALUE, "SET %s.%s %s", request.peekContext().getElement().getIdentity(), variableName, value.toString());
+				response.trace(request, TraceType.VALUE, "SET %s.%s %s", request.peekContext().getElement().getIdentity(), variableName, value);
 				request.peekContext().setValue(variableName, value);
 			}
 		}
@@ -141,8 +142,8 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected variable type in POPLOCALVALUE call.");
 			
 			String variableName = varvalue.asString();
-			response.trace(request, TraceType.VALUE, "SET LOCAL %s %s", variableName, value.toString());
-			blockLocal.put(variableName, value);
+			response.trace(request, TraceType.VALUE, "SET LOCAL %s %s", variableName, value);
+			blockLocal.put(operation.getLocalSlot(), variableName, value);
 		}
 		
 	},
@@ -171,7 +172,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			
 			String variableName = variable.asString();
 			TElementContext<?> context = request.getModuleContext().resolveElementContext(varElement); 
-			response.trace(request, TraceType.VALUE, "SET %s.%s %s", context.getElement().getIdentity(), variableName, value.toString());
+			response.trace(request, TraceType.VALUE, "SET %s.%s %s", context.getElement().getIdentity(), variableName, value);
 			context.setValue(variableName, value);
 		}
 		
@@ -202,7 +203,8 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			if (!listValue.isList())
 				return;
 			
-			response.trace(request, TraceType.VALUE, "SET LIST [%d] %s", (int)index.asLong(), value.toString());
+			if (request.traces(TraceType.VALUE))
+				response.trace(request, TraceType.VALUE, "SET LIST [%d] %s", (int)index.asLong(), value);
 			listValue.listSet((int)index.asLong(), value);
 		}
 		
@@ -223,9 +225,10 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			if (value.isVariable())
 			{
 				String variableName = value.asString();
+				Value local;
 				
-				if (blockLocal.containsKey(variableName))
-					request.pushValue(blockLocal.get(variableName));
+				if ((local = blockLocal.get(operation.getLocalSlot(), variableName)) != null)
+					request.pushValue(local);
 				else
 					request.pushValue(request.peekContext().getValue(variableName));
 			}
@@ -353,10 +356,11 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected variable type in CLEARVALUE call.");
 
 			String variableName = variable.asString();
-			if (blockLocal.containsKey(variableName))
+			int slot = operation.getLocalSlot();
+			if (blockLocal.containsKey(slot, variableName))
 			{
 				response.trace(request, TraceType.VALUE, "CLEAR LOCAL %s", variableName);
-				blockLocal.remove(variableName);
+				blockLocal.remove(slot, variableName);
 			}
 			else
 			{
@@ -608,7 +612,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 		protected void doOperation(TAMERequest request, TAMEResponse response, ValueSet blockLocal, Operation operation) throws TAMEInterrupt
 		{
 			response.trace(request, TraceType.CONTROL, "THROW BREAK");
-			throw new BreakInterrupt();
+			throw BreakInterrupt.INSTANCE;
 		}
 		
 	},
@@ -623,7 +627,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 		protected void doOperation(TAMERequest request, TAMEResponse response, ValueSet blockLocal, Operation operation) throws TAMEInterrupt
 		{
 			response.trace(request, TraceType.CONTROL, "THROW CONTINUE");
-			throw new ContinueInterrupt();
+			throw ContinueInterrupt.INSTANCE;
 		}
 		
 	},
@@ -639,7 +643,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 		{
 			response.addCue(CUE_QUIT);
 			response.trace(request, TraceType.CONTROL, "THROW QUIT");
-			throw new QuitInterrupt();
+			throw QuitInterrupt.INSTANCE;
 		}
 		
 	},
@@ -654,7 +658,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 		protected void doOperation(TAMERequest request, TAMEResponse response, ValueSet blockLocal, Operation operation) throws TAMEInterrupt
 		{
 			response.trace(request, TraceType.CONTROL, "THROW FINISH");
-			throw new FinishInterrupt();
+			throw FinishInterrupt.INSTANCE;
 		}
 		
 	},
@@ -669,7 +673,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 		protected void doOperation(TAMERequest request, TAMEResponse response, ValueSet blockLocal, Operation operation) throws TAMEInterrupt
 		{
 			response.trace(request, TraceType.CONTROL, "THROW END");
-			throw new EndInterrupt();
+			throw EndInterrupt.INSTANCE;
 		}
 		
 	},
@@ -684,10 +688,10 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 		protected void doOperation(TAMERequest request, TAMEResponse response, ValueSet blockLocal, Operation operation) throws TAMEInterrupt
 		{
 			Value retVal = request.popValue();
-			response.trace(request, TraceType.FUNCTION, "RETURN "+retVal.toString());
-			blockLocal.put(RETURN_VARIABLE, retVal);
+			response.trace(request, TraceType.FUNCTION, "RETURN %s", retVal);
+			blockLocal.put(operation.getLocalSlot(), RETURN_VARIABLE, retVal);
 			response.trace(request, TraceType.CONTROL, "THROW END");
-			throw new EndInterrupt();
+			throw EndInterrupt.INSTANCE;
 		}
 		
 	},
@@ -763,7 +767,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			{
 				TAMECommand command = TAMECommand.create(action);
 				request.addCommand(command);
-				response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+				response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 			}
 		}
 
@@ -803,7 +807,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			{
 				TAMECommand command = TAMECommand.create(action, target);
 				request.addCommand(command);
-				response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+				response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 			}
 		}
 
@@ -836,7 +840,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
 			TAction action = moduleContext.resolveAction(varAction.asString());
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TObject object = moduleContext.resolveObject(varObject);
 			
 			if (action.getType() != Type.TRANSITIVE && action.getType() != Type.DITRANSITIVE)
 				throw new UnexpectedValueTypeException("BAD TYPE: " + action.getIdentity() + " is not a transitive nor ditransitive action.");
@@ -844,7 +848,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			{
 				TAMECommand command = TAMECommand.create(action, object);
 				request.addCommand(command);
-				response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+				response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 			}
 		}
 
@@ -883,14 +887,14 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			Iterable<TObject> objectList;
 			
-			if ((objectList = moduleContext.resolveObjectList(varObjectContainer)) == null)
+			if ((objectList = moduleContext.resolveObjectCursor(varObjectContainer)) == null)
 				throw new UnexpectedValueTypeException("INTERNAL ERROR IN QUEUEACTIONFOROBJECTSIN.");
 			
 			for (TObject object : objectList)
 			{
 				TAMECommand command = TAMECommand.create(action, object);
 				request.addCommand(command);
-				response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+				response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 			}
 		}
 
@@ -933,7 +937,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			Iterable<TObject> objectList;
 			
-			if ((objectList = moduleContext.resolveObjectList(varObjectContainer)) == null)
+			if ((objectList = moduleContext.resolveObjectCursor(varObjectContainer)) == null)
 				throw new UnexpectedValueTypeException("INTERNAL ERROR IN QUEUEACTIONFORTAGGEDOBJECTSIN.");
 	
 			String tagName = varTag.asString();
@@ -942,7 +946,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			{
 				TAMECommand command = TAMECommand.create(action, object);
 				request.addCommand(command);
-				response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+				response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 			}
 			
 		}
@@ -980,8 +984,8 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
 			TAction action = moduleContext.resolveAction(varAction.asString());
-			TObject object = moduleContext.resolveObject(varObject.asString());
-			TObject object2 = moduleContext.resolveObject(varObject2.asString());
+			TObject object = moduleContext.resolveObject(varObject);
+			TObject object2 = moduleContext.resolveObject(varObject2);
 			
 			if (action.getType() != Type.DITRANSITIVE)
 				throw new UnexpectedValueTypeException("BAD TYPE: " + action.getIdentity() + " is not a ditransitive action.");
@@ -989,7 +993,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			{
 				TAMECommand command = TAMECommand.create(action, object, object2);
 				request.addCommand(command);
-				response.trace(request, TraceType.CONTROL, "Enqueue command "+command);
+				response.trace(request, TraceType.CONTROL, "Enqueue command %s", command);
 			}
 			
 		}
@@ -2044,10 +2048,8 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			if (!valPattern.isLiteral())
 				throw new UnexpectedValueTypeException("Expected literal type in ISREGEX call.");
 
-			String pattern = valPattern.asString(); 
-			
 			try {
-				PatternCache.get(pattern);
+				getPattern(operation, valPattern);
 				request.pushValue(Value.create(true));
 			} catch (PatternSyntaxException e) {
 				request.pushValue(Value.create(false));
@@ -2083,7 +2085,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			Pattern pattern;
 			try {
-				pattern = PatternCache.get(valPattern.asString()); 
+				pattern = getPattern(operation, valPattern);
 			} catch (PatternSyntaxException e) {
 				throw new BadParameterException("RegEx could not be compiled:\n" + e.getMessage());
 			}
@@ -2120,7 +2122,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			Pattern pattern;
 			try {
-				pattern = PatternCache.get(valPattern.asString()); 
+				pattern = getPattern(operation, valPattern);
 			} catch (PatternSyntaxException e) {
 				throw new BadParameterException("RegEx could not be compiled:\n" + e.getMessage());
 			}
@@ -2161,7 +2163,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			Pattern pattern;
 			try {
-				pattern = PatternCache.get(valPattern.asString()); 
+				pattern = getPattern(operation, valPattern);
 			} catch (PatternSyntaxException e) {
 				throw new BadParameterException("RegEx could not be compiled:\n" + e.getMessage());
 			}
@@ -2202,7 +2204,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			Pattern pattern;
 			try {
-				pattern = PatternCache.get(valPattern.asString()); 
+				pattern = getPattern(operation, valPattern);
 			} catch (PatternSyntaxException e) {
 				throw new BadParameterException("RegEx could not be compiled:\n" + e.getMessage());
 			}
@@ -2243,7 +2245,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			Pattern pattern;
 			try {
-				pattern = PatternCache.get(valPattern.asString()); 
+				pattern = getPattern(operation, valPattern);
 			} catch (PatternSyntaxException e) {
 				throw new BadParameterException("RegEx could not be compiled:\n" + e.getMessage());
 			}
@@ -2284,7 +2286,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			Pattern pattern;
 			try {
-				pattern = PatternCache.get(valPattern.asString()); 
+				pattern = getPattern(operation, valPattern);
 			} catch (PatternSyntaxException e) {
 				throw new BadParameterException("RegEx could not be compiled:\n" + e.getMessage());
 			}
@@ -2325,7 +2327,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			Pattern pattern;
 			try {
-				pattern = PatternCache.get(valPattern.asString()); 
+				pattern = getPattern(operation, valPattern);
 			} catch (PatternSyntaxException e) {
 				throw new BadParameterException("RegEx could not be compiled:\n" + e.getMessage());
 			}
@@ -2362,7 +2364,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			Pattern pattern;
 			try {
-				pattern = PatternCache.get(valPattern.asString()); 
+				pattern = getPattern(operation, valPattern);
 			} catch (PatternSyntaxException e) {
 				throw new BadParameterException("RegEx could not be compiled:\n" + e.getMessage());
 			}
@@ -2406,7 +2408,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			Pattern pattern;
 			try {
-				pattern = PatternCache.get(valPattern.asString()); 
+				pattern = getPattern(operation, valPattern);
 			} catch (PatternSyntaxException e) {
 				throw new BadParameterException("RegEx could not be compiled:\n" + e.getMessage());
 			}
@@ -3071,7 +3073,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			long value = valueInput.asLong();
 
-			Random random = request.getModuleContext().getRandom();
+			RandomSource random = request.getModuleContext().getRandom();
 			
 			if (value == 0)
 				request.pushValue(Value.create(0));
@@ -3099,7 +3101,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 		@Override
 		protected void doOperation(TAMERequest request, TAMEResponse response, ValueSet blockLocal, Operation operation) throws TAMEInterrupt
 		{
-			Random random = request.getModuleContext().getRandom();
+			RandomSource random = request.getModuleContext().getRandom();
 			request.pushValue(Value.create(random.nextDouble()));
 		}
 		
@@ -3132,7 +3134,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 
 			// Box-Muller Approximate algorithm c/o Maxwell Collard on StackOverflow
 
-			Random random = request.getModuleContext().getRandom();
+			RandomSource random = request.getModuleContext().getRandom();
 
 			double stdDev = valueStdDev.asDouble();
 			double mean = valueMean.asDouble();
@@ -3228,7 +3230,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected object type in OBJECTHASNAME call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TObject object = moduleContext.resolveObject(varObject);
 			request.pushValue(Value.create(moduleContext.getOwnershipMap().checkObjectHasName(object, nameValue.asString())));
 		}
 		
@@ -3260,7 +3262,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected object type in OBJECTHASTAG call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TObject object = moduleContext.resolveObject(varObject);
 			request.pushValue(Value.create(moduleContext.getOwnershipMap().checkObjectHasTag(object, tagValue.asString())));
 		}
 		
@@ -3292,7 +3294,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected object type in ADDOBJECTNAME call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TObject object = moduleContext.resolveObject(varObject);
 			moduleContext.getOwnershipMap().addObjectName(object, nameValue.asString());
 		}
 		
@@ -3324,7 +3326,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected object type in ADDOBJECTTAG call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TObject object = moduleContext.resolveObject(varObject);
 			moduleContext.getOwnershipMap().addObjectTag(object, tagValue.asString());
 		}
 		
@@ -3359,7 +3361,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			
 			Iterable<TObject> objectList;
 			
-			if ((objectList = moduleContext.resolveObjectList(varObjectContainer)) == null)
+			if ((objectList = moduleContext.resolveObjectCursor(varObjectContainer)) == null)
 				throw new UnexpectedValueTypeException("INTERNAL ERROR IN ADDOBJECTTOALLIN.");
 			
 			for (TObject object : objectList)
@@ -3395,7 +3397,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected object type in REMOVEOBJECTNAME call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TObject object = moduleContext.resolveObject(varObject);
 			moduleContext.getOwnershipMap().removeObjectName(object, nameValue.asString());
 		}
 		
@@ -3427,7 +3429,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected object type in REMOVEOBJECTTAG call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TObject object = moduleContext.resolveObject(varObject);
 			moduleContext.getOwnershipMap().removeObjectTag(object, tagValue.asString());
 		}
 		
@@ -3462,7 +3464,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			
 			Iterable<TObject> objectList;
 			
-			if ((objectList = moduleContext.resolveObjectList(varObjectContainer)) == null)
+			if ((objectList = moduleContext.resolveObjectCursor(varObjectContainer)) == null)
 				throw new UnexpectedValueTypeException("INTERNAL ERROR IN REMOVEOBJECTTAGFROMALLIN.");
 			
 			for (TObject object : objectList)
@@ -3498,7 +3500,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected object-container type in GIVEOBJECT call.");
 			
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TObject object = moduleContext.resolveObject(varObject);
 			
 			ObjectContainer element = (ObjectContainer)moduleContext.resolveElement(varObjectContainer);
 			moduleContext.getOwnershipMap().addObjectToElement(object, element);
@@ -3528,7 +3530,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected object type in REMOVEOBJECT call.");
 			
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TObject object = moduleContext.resolveObject(varObject);
 			request.getModuleContext().getOwnershipMap().removeObject(object);
 		}
 		
@@ -3633,7 +3635,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected object-container type in HASOBJECT call.");
 			
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TObject object = moduleContext.resolveObject(varObject);
 			ObjectContainer element = (ObjectContainer)moduleContext.resolveElement(varObjectContainer);
 			request.pushValue(Value.create(moduleContext.getOwnershipMap().checkElementHasObject(element, object)));
 		}
@@ -3662,7 +3664,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected object type in OBJECTHASNOOWNER call.");
 			
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TObject object = moduleContext.resolveObject(varObject);
 			request.pushValue(Value.create(request.getModuleContext().getOwnershipMap().checkObjectHasNoOwner(object)));
 		}
 		
@@ -3694,8 +3696,8 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected player type in PLAYERHASROOMINSTACK call.");
 			
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TPlayer player = moduleContext.resolvePlayer(varPlayer.asString());
-			TRoom room = moduleContext.resolveRoom(varRoom.asString());
+			TPlayer player = moduleContext.resolvePlayer(varPlayer);
+			TRoom room = moduleContext.resolveRoom(varRoom);
 			request.pushValue(Value.create(request.getModuleContext().getOwnershipMap().checkPlayerHasRoomInStack(player, room)));
 		}
 		
@@ -3728,8 +3730,8 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			
 			TAMEModuleContext moduleContext = request.getModuleContext();
 
-			TPlayer player = moduleContext.resolvePlayer(varPlayer.asString());
-			TObject object = moduleContext.resolveObject(varObject.asString());
+			TPlayer player = moduleContext.resolvePlayer(varPlayer);
+			TObject object = moduleContext.resolveObject(varObject);
 			
 			request.pushValue(Value.create(TAMELogic.checkObjectAccessibility(request, response, player, object)));
 		}
@@ -3863,7 +3865,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			if (varPlayer.getType() != ValueType.PLAYER)
 				throw new UnexpectedValueTypeException("Expected player type in SETPLAYER call.");
 
-			TPlayer nextPlayer = request.getModuleContext().resolvePlayer(varPlayer.asString());
+			TPlayer nextPlayer = request.getModuleContext().resolvePlayer(varPlayer);
 			TAMELogic.doPlayerSwitch(request, response, nextPlayer);
 		}
 		
@@ -3894,8 +3896,8 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected player type in SETROOM call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TRoom nextRoom = moduleContext.resolveRoom(varRoom.asString());
-			TPlayer player = moduleContext.resolvePlayer(varPlayer.asString());
+			TRoom nextRoom = moduleContext.resolveRoom(varRoom);
+			TPlayer player = moduleContext.resolvePlayer(varPlayer);
 
 			TAMELogic.doRoomSwitch(request, response, player, nextRoom);
 		}
@@ -3927,8 +3929,8 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected player type in PUSHROOM call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TRoom nextRoom = moduleContext.resolveRoom(varRoom.asString());
-			TPlayer player = moduleContext.resolvePlayer(varPlayer.asString());
+			TRoom nextRoom = moduleContext.resolveRoom(varRoom);
+			TPlayer player = moduleContext.resolvePlayer(varPlayer);
 			
 			// push new room on the player's stack and call focus.
 			TAMELogic.doRoomPush(request, response, player, nextRoom);
@@ -3958,7 +3960,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected player type in POPROOM call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TPlayer player = moduleContext.resolvePlayer(varPlayer.asString());
+			TPlayer player = moduleContext.resolvePlayer(varPlayer);
 			
 			TRoom currentRoom = moduleContext.getOwnershipMap().getCurrentRoom(player);
 			
@@ -4001,7 +4003,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 			if (player == null)
 				throw new ErrorInterrupt("No current player!");
 
-			TRoom nextRoom = moduleContext.resolveRoom(varRoom.asString()); 
+			TRoom nextRoom = moduleContext.resolveRoom(varRoom); 
 			TRoom currentRoom = moduleContext.getOwnershipMap().getCurrentRoom(player);
 			
 			if (currentRoom == null)
@@ -4035,7 +4037,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected player type in CURRENTPLAYERIS call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TPlayer player = moduleContext.resolvePlayer(varPlayer.asString());
+			TPlayer player = moduleContext.resolvePlayer(varPlayer);
 			TPlayer currentPlayer = moduleContext.getOwnershipMap().getCurrentPlayer();
 			
 			request.pushValue(Value.create(currentPlayer != null && player.equals(currentPlayer)));
@@ -4091,8 +4093,8 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected room type in CURRENTROOMIS call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TPlayer player = moduleContext.resolvePlayer(varPlayer.asString());
-			TRoom room = moduleContext.resolveRoom(varRoom.asString());
+			TPlayer player = moduleContext.resolvePlayer(varPlayer);
+			TRoom room = moduleContext.resolveRoom(varRoom);
 			TRoom currentRoom = moduleContext.getOwnershipMap().getCurrentRoom(player);
 			
 			request.pushValue(Value.create(currentRoom != null && room.equals(currentRoom)));
@@ -4122,7 +4124,7 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 				throw new UnexpectedValueTypeException("Expected player type in NOCURRENTROOM call.");
 
 			TAMEModuleContext moduleContext = request.getModuleContext();
-			TPlayer player = moduleContext.resolvePlayer(varPlayer.asString());
+			TPlayer player = moduleContext.resolvePlayer(varPlayer);
 			TRoom room = moduleContext.getOwnershipMap().getCurrentRoom(player);
 			request.pushValue(Value.create(room == null));
 		}
@@ -4272,4 +4274,21 @@ public enum TAMEOperation implements OperationType, TAMEConstants
 		response.incrementAndCheckOperationsExecuted(request.getModuleContext().getOperationRunawayMax());
 	}
 	
+	/**
+	 * Gets the compiled RegEx for a pattern argument: the one precompiled on the operation, if it is for the same pattern, 
+	 * or the one from the {@link PatternCache} if not.
+	 * @param operation the operation object.
+	 * @param valPattern the pattern argument.
+	 * @return the compiled pattern.
+	 * @throws PatternSyntaxException if the pattern cannot be compiled.
+	 */
+	private static Pattern getPattern(Operation operation, Value valPattern)
+	{
+		String regex = valPattern.asString();
+		Pattern out = operation.getPattern();
+		if (out != null && out.pattern().equals(regex))
+			return out;
+		return PatternCache.get(regex);
+	}
+	
 }
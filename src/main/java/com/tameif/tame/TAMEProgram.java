@@ -0,0 +1,577 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.tameif.tame.exception.UnexpectedValueTypeException;
+import com.tameif.tame.interrupt.BreakInterrupt;
+import com.tameif.tame.interrupt.ContinueInterrupt;
+import com.tameif.tame.lang.Block;
+import com.tameif.tame.lang.CallableType;
+import com.tameif.tame.lang.Operation;
+import com.tameif.tame.lang.TraceType;
+import com.tameif.tame.lang.ArgumentType;
+import com.tameif.tame.lang.ArithmeticOperator;
+import com.tameif.tame.lang.Value;
+import com.tameif.tame.lang.ValueSet;
+
+/**
+ * A linked, flattened representation of a {@link Block}.
+ * <p>Control operations ({@link TAMEOperation#IF}, {@link TAMEOperation#WHILE}, {@link TAMEOperation#FOR})
+ * have their child blocks inlined into one contiguous instruction array with jump targets,
+ * and lexical BREAK/CONTINUEs are turned into jumps. Everything else is dispatched to its operation as-is.
+ * <p>Every variable that the block's operations read or write is given a local variable slot, so that
+ * locals are stored in an array (see {@link ValueSet#reset(String[])}) instead of looked up by name.
+ * <p>RegEx operations whose pattern is a string constant get it precompiled (see {@link Operation#getPattern()}).
+ * <p>Executing a program is equivalent to executing the block it was linked from with the tree interpreter:
+ * same traces, same runaway operation counts, same interrupt behavior.
+ * @author Matthew Tropiano
+ */
+public final class TAMEProgram implements CallableType
+{
+	/** Execute the operation. */
+	private static final int OP_EXEC = 0;
+	/** Trace the call of a flattened control operation. */
+	private static final int OP_ENTER = 1;
+	/** Trace a control message. */
+	private static final int OP_TRACE = 2;
+	/** Pop a conditional result, jump if false. */
+	private static final int OP_BRANCH = 3;
+	/** Unconditional jump. */
+	private static final int OP_JUMP = 4;
+	/** Lexical BREAK (jump). */
+	private static final int OP_BREAK = 5;
+	/** Lexical CONTINUE (jump). */
+	private static final int OP_CONTINUE = 6;
+	/** Count a completed control operation. */
+	private static final int OP_COUNT = 7;
+
+	/** Instruction opcodes. */
+	private int[] opcodes;
+	/** Originating operation per instruction. */
+	private Operation[] operations;
+	/** Jump targets per instruction (-1 if none). */
+	private int[] jumps;
+	/** Enclosing loop's BREAK target per instruction (-1 if none). */
+	private int[] breakTargets;
+	/** Enclosing loop's CONTINUE target per instruction (-1 if none). */
+	private int[] continueTargets;
+	/** Trace message per instruction, if any. */
+	private String[] messages;
+	/** Local variable slot names (lowercase). */
+	private String[] localNames;
+
+	// Private constructor.
+	private TAMEProgram(int[] opcodes, Operation[] operations, int[] jumps, int[] breakTargets, int[] continueTargets, String[] messages, String[] localNames)
+	{
+		this.opcodes = opcodes;
+		this.operations = operations;
+		this.jumps = jumps;
+		this.breakTargets = breakTargets;
+		this.continueTargets = continueTargets;
+		this.messages = messages;
+		this.localNames = localNames;
+	}
+
+	/**
+	 * Links a block into a flattened program.
+	 * @param block the block to link.
+	 * @return a new program.
+	 */
+	public static TAMEProgram link(Block block)
+	{
+		Map<String, Integer> slots = new LinkedHashMap<>(8);
+		assignLocalSlots(block, slots);
+		precompilePatterns(block);
+		Linker linker = new Linker();
+		linker.emit(block, -1, -1);
+		return linker.build(slots.keySet().toArray(new String[slots.size()]));
+	}
+
+	// Sets the local variable slot on every operation in a block (and its child blocks) that uses a variable.
+	private static void assignLocalSlots(Block block, Map<String, Integer> slots)
+	{
+		if (block == null)
+			return;
+		
+		for (Operation operation : block)
+		{
+			switch (operation.getOperation())
+			{
+				case PUSHVALUE:
+				case POPVALUE:
+				case POPLOCALVALUE:
+				case CLEARVALUE:
+					if (operation.getOperand0() != null && operation.getOperand0().isVariable())
+						operation.setLocalSlot(getLocalSlot(slots, operation.getOperand0().asString()));
+					break;
+				case FUNCTIONRETURN:
+					operation.setLocalSlot(getLocalSlot(slots, TAMEConstants.RETURN_VARIABLE));
+					break;
+				default:
+					break;
+			}
+			assignLocalSlots(operation.getInitBlock(), slots);
+			assignLocalSlots(operation.getConditionalBlock(), slots);
+			assignLocalSlots(operation.getStepBlock(), slots);
+			assignLocalSlots(operation.getSuccessBlock(), slots);
+			assignLocalSlots(operation.getFailureBlock(), slots);
+		}
+	}
+	
+	// Attaches precompiled patterns to RegEx operations in a block (and its child blocks) whose pattern is pushed as a string constant.
+	private static void precompilePatterns(Block block)
+	{
+		if (block == null)
+			return;
+		
+		List<Operation> operations = new ArrayList<>(block.getCount());
+		for (Operation operation : block)
+			operations.add(operation);
+		
+		for (int i = 0; i < operations.size(); i++)
+		{
+			Operation operation = operations.get(i);
+			switch (operation.getOperation())
+			{
+				case ISREGEX:
+				case REGEXCONTAINS:
+				case REGEXFIND:
+				case REGEXFINDLAST:
+				case REGEXGET:
+				case REGEXGETLAST:
+				case REGEXGETALL:
+				case REGEXMATCHES:
+				case REGEXSPLIT:
+				case REGEXREPLACE:
+				{
+					// the pattern is the first argument (deepest on the stack).
+					Operation source = findArgumentSource(operations, i, operation.getOperation().getArgumentTypes().length - 1);
+					Value value;
+					if (source != null && source.getOperation() == TAMEOperation.PUSHVALUE && (value = source.getOperand0()) != null && value.isString())
+					{
+						try {
+							operation.setPattern(Pattern.compile(value.asString()));
+						} catch (PatternSyntaxException e) {
+							// Bad patterns are reported when run.
+						}
+					}
+					break;
+				}
+				default:
+					break;
+			}
+			precompilePatterns(operation.getInitBlock());
+			precompilePatterns(operation.getConditionalBlock());
+			precompilePatterns(operation.getStepBlock());
+			precompilePatterns(operation.getSuccessBlock());
+			precompilePatterns(operation.getFailureBlock());
+		}
+	}
+	
+	// Finds the operation that pushed a stack value for an operation, walking back through straight-line operations with known stack effects.
+	// Depth is the value's position below the top of the stack (0 is the top). Returns null if not known.
+	private static Operation findArgumentSource(List<Operation> operations, int index, int depth)
+	{
+		for (int i = index - 1; i >= 0; i--)
+		{
+			Operation operation = operations.get(i);
+			int pops, pushes;
+			switch (operation.getOperation())
+			{
+				case PUSHVALUE:
+				case PUSHELEMENTVALUE:
+					pops = 0;
+					pushes = 1;
+					break;
+				case ARITHMETICFUNC:
+				{
+					Value function = operation.getOperand0();
+					if (function == null || !function.isInteger() || function.asLong() < 0 || function.asLong() >= ArithmeticOperator.VALUES.length)
+						return null;
+					pops = ArithmeticOperator.VALUES[(int)function.asLong()].isBinary() ? 2 : 1;
+					pushes = 1;
+					break;
+				}
+				default:
+				{
+					ArgumentType[] argumentTypes = operation.getOperation().getArgumentTypes();
+					if (operation.getOperation().isInternal() || argumentTypes == null)
+						return null;
+					pops = argumentTypes.length;
+					pushes = operation.getOperation().getReturnType() != null ? 1 : 0;
+					break;
+				}
+			}
+			if (pushes == 1 && depth == 0)
+				return operation;
+			depth = depth - pushes + pops;
+		}
+		return null;
+	}
+	
+	// Gets or adds a slot for a variable name.
+	private static int getLocalSlot(Map<String, Integer> slots, String name)
+	{
+		name = name.toLowerCase();
+		Integer out;
+		if ((out = slots.get(name)) == null)
+			slots.put(name, out = slots.size());
+		return out;
+	}
+
+	/**
+	 * @return the amount of instructions in this program.
+	 */
+	public int getLength()
+	{
+		return opcodes.length;
+	}
+
+	/**
+	 * @return the local variable slot names (lowercase), by slot.
+	 */
+	public String[] getLocalNames()
+	{
+		return localNames;
+	}
+
+	@Override
+	public void execute(TAMERequest request, TAMEResponse response, ValueSet blockLocal) throws TAMEInterrupt
+	{
+		final int end = opcodes.length;
+		int pc = 0;
+		while (pc < end)
+		{
+			try {
+				while (pc < end)
+				{
+					Operation operation = operations[pc];
+					switch (opcodes[pc])
+					{
+						default:
+						case OP_EXEC:
+							traceCall(request, response, operation);
+							operation.execute(request, response, blockLocal);
+							pc++;
+							break;
+
+						case OP_ENTER:
+							traceCall(request, response, operation);
+							pc++;
+							break;
+
+						case OP_TRACE:
+							response.trace(request, TraceType.CONTROL, messages[pc]);
+							pc++;
+							break;
+
+						case OP_BRANCH:
+						{
+							Value value = request.popValue();
+							if (!value.isLiteral())
+								throw new UnexpectedValueTypeException("Expected literal type after "+operation.getOperation().name()+" conditional block execution.");
+							boolean result = value.asBoolean();
+							response.trace(request, TraceType.CONTROL, messages[pc], value, result);
+							pc = result ? pc + 1 : jumps[pc];
+							break;
+						}
+
+						case OP_JUMP:
+							pc = jumps[pc];
+							break;
+
+						case OP_BREAK:
+							traceCall(request, response, operation);
+							response.trace(request, TraceType.CONTROL, "THROW BREAK");
+							pc = jumps[pc];
+							break;
+
+						case OP_CONTINUE:
+							traceCall(request, response, operation);
+							response.trace(request, TraceType.CONTROL, "THROW CONTINUE");
+							pc = jumps[pc];
+							break;
+
+						case OP_COUNT:
+							response.incrementAndCheckOperationsExecuted(request.getModuleContext().getOperationRunawayMax());
+							pc++;
+							break;
+					}
+				}
+			} catch (BreakInterrupt interrupt) {
+				// thrown from a call made inside a loop body.
+				if (breakTargets[pc] < 0)
+					throw interrupt;
+				pc = breakTargets[pc];
+			} catch (ContinueInterrupt interrupt) {
+				if (continueTargets[pc] < 0)
+					throw interrupt;
+				pc = continueTargets[pc];
+			}
+		}
+	}
+
+	// Traces an operation call like the tree interpreter does.
+	private static void traceCall(TAMERequest request, TAMEResponse response, Operation operation)
+	{
+		TraceType traceType = operation.getOperation().isInternal() ? TraceType.INTERNAL : TraceType.FUNCTION;
+		if (request.traces(traceType))
+			response.trace(request, traceType, "CALL %s %s %s",
+				operation.getOperation().toString(),
+				operation.getOperand0() != null ? operation.getOperand0().toString() : "",
+				operation.getOperand1() != null ? operation.getOperand1().toString() : ""
+			);
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < opcodes.length; i++)
+		{
+			sb.append(i).append(": ");
+			switch (opcodes[i])
+			{
+				default:
+				case OP_EXEC:
+					sb.append(operations[i].getOperation().name());
+					break;
+				case OP_ENTER:
+					sb.append("ENTER ").append(operations[i].getOperation().name());
+					break;
+				case OP_TRACE:
+					sb.append("TRACE \"").append(messages[i]).append('"');
+					break;
+				case OP_BRANCH:
+					sb.append("BRANCH ").append(jumps[i]);
+					break;
+				case OP_JUMP:
+					sb.append("JUMP ").append(jumps[i]);
+					break;
+				case OP_BREAK:
+					sb.append("BREAK ").append(jumps[i]);
+					break;
+				case OP_CONTINUE:
+					sb.append("CONTINUE ").append(jumps[i]);
+					break;
+				case OP_COUNT:
+					sb.append("COUNT ").append(operations[i].getOperation().name());
+					break;
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Program builder.
+	 * Jump targets are label ids until the program is built.
+	 */
+	private static class Linker
+	{
+		private int length;
+		private int[] opcodes;
+		private Operation[] operations;
+		private int[] jumps;
+		private int[] breakLabels;
+		private int[] continueLabels;
+		private String[] messages;
+
+		private int labelCount;
+		private int[] labels;
+
+		private Linker()
+		{
+			this.length = 0;
+			this.opcodes = new int[16];
+			this.operations = new Operation[16];
+			this.jumps = new int[16];
+			this.breakLabels = new int[16];
+			this.continueLabels = new int[16];
+			this.messages = new String[16];
+			this.labelCount = 0;
+			this.labels = new int[8];
+		}
+
+		// Creates a new unplaced label.
+		private int newLabel()
+		{
+			if (labelCount == labels.length)
+				labels = Arrays.copyOf(labels, labels.length * 2);
+			labels[labelCount] = -1;
+			return labelCount++;
+		}
+
+		// Places a label at the next instruction.
+		private void place(int label)
+		{
+			labels[label] = length;
+		}
+
+		private void add(int opcode, Operation operation, int jumpLabel, int breakLabel, int continueLabel, String message)
+		{
+			if (length == opcodes.length)
+			{
+				int newLength = length * 2;
+				opcodes = Arrays.copyOf(opcodes, newLength);
+				operations = Arrays.copyOf(operations, newLength);
+				jumps = Arrays.copyOf(jumps, newLength);
+				breakLabels = Arrays.copyOf(breakLabels, newLength);
+				continueLabels = Arrays.copyOf(continueLabels, newLength);
+				messages = Arrays.copyOf(messages, newLength);
+			}
+			opcodes[length] = opcode;
+			operations[length] = operation;
+			jumps[length] = jumpLabel;
+			breakLabels[length] = breakLabel;
+			continueLabels[length] = continueLabel;
+			messages[length] = message;
+			length++;
+		}
+
+		// Emits a block's operations. Break/continue labels are for the innermost enclosing loop body, or -1.
+		private void emit(Block block, int breakLabel, int continueLabel)
+		{
+			for (Operation operation : block)
+			{
+				switch (operation.getOperation())
+				{
+					case IF:
+						if (operation.getConditionalBlock() != null && operation.getSuccessBlock() != null)
+							emitIf(operation, breakLabel, continueLabel);
+						else
+							add(OP_EXEC, operation, -1, breakLabel, continueLabel, null);
+						break;
+
+					case WHILE:
+						if (operation.getConditionalBlock() != null && operation.getSuccessBlock() != null)
+							emitWhile(operation, breakLabel, continueLabel);
+						else
+							add(OP_EXEC, operation, -1, breakLabel, continueLabel, null);
+						break;
+
+					case FOR:
+						if (operation.getInitBlock() != null && operation.getConditionalBlock() != null && operation.getStepBlock() != null && operation.getSuccessBlock() != null)
+							emitFor(operation, breakLabel, continueLabel);
+						else
+							add(OP_EXEC, operation, -1, breakLabel, continueLabel, null);
+						break;
+
+					case BREAK:
+						if (breakLabel >= 0)
+							add(OP_BREAK, operation, breakLabel, breakLabel, continueLabel, null);
+						else
+							add(OP_EXEC, operation, -1, breakLabel, continueLabel, null);
+						break;
+
+					case CONTINUE:
+						if (continueLabel >= 0)
+							add(OP_CONTINUE, operation, continueLabel, breakLabel, continueLabel, null);
+						else
+							add(OP_EXEC, operation, -1, breakLabel, continueLabel, null);
+						break;
+
+					default:
+						add(OP_EXEC, operation, -1, breakLabel, continueLabel, null);
+						break;
+				}
+			}
+		}
+
+		private void emitIf(Operation operation, int breakLabel, int continueLabel)
+		{
+			int elseLabel = newLabel();
+			int endLabel = newLabel();
+
+			add(OP_ENTER, operation, -1, breakLabel, continueLabel, null);
+			add(OP_TRACE, operation, -1, breakLabel, continueLabel, "IF Conditional");
+			emit(operation.getConditionalBlock(), breakLabel, continueLabel);
+			add(OP_BRANCH, operation, elseLabel, breakLabel, continueLabel, "IF Conditional %s is %b");
+			emit(operation.getSuccessBlock(), breakLabel, continueLabel);
+			add(OP_JUMP, operation, endLabel, breakLabel, continueLabel, null);
+			place(elseLabel);
+			if (operation.getFailureBlock() != null)
+				emit(operation.getFailureBlock(), breakLabel, continueLabel);
+			place(endLabel);
+			add(OP_COUNT, operation, -1, breakLabel, continueLabel, null);
+		}
+
+		private void emitWhile(Operation operation, int breakLabel, int continueLabel)
+		{
+			int conditionalLabel = newLabel();
+			int endLabel = newLabel();
+
+			add(OP_ENTER, operation, -1, breakLabel, continueLabel, null);
+			place(conditionalLabel);
+			add(OP_TRACE, operation, -1, breakLabel, continueLabel, "WHILE Conditional");
+			emit(operation.getConditionalBlock(), breakLabel, continueLabel);
+			add(OP_BRANCH, operation, endLabel, breakLabel, continueLabel, "WHILE Conditional %s is %b");
+			emit(operation.getSuccessBlock(), endLabel, conditionalLabel);
+			add(OP_JUMP, operation, conditionalLabel, endLabel, conditionalLabel, null);
+			place(endLabel);
+			add(OP_COUNT, operation, -1, breakLabel, continueLabel, null);
+		}
+
+		private void emitFor(Operation operation, int breakLabel, int continueLabel)
+		{
+			int conditionalLabel = newLabel();
+			int stepLabel = newLabel();
+			int endLabel = newLabel();
+
+			add(OP_ENTER, operation, -1, breakLabel, continueLabel, null);
+			add(OP_TRACE, operation, -1, breakLabel, continueLabel, "FOR Init");
+			emit(operation.getInitBlock(), breakLabel, continueLabel);
+			place(conditionalLabel);
+			add(OP_TRACE, operation, -1, breakLabel, continueLabel, "FOR Contitional");
+			emit(operation.getConditionalBlock(), breakLabel, continueLabel);
+			add(OP_BRANCH, operation, endLabel, breakLabel, continueLabel, "FOR Conditional %s is %b");
+			add(OP_TRACE, operation, -1, endLabel, stepLabel, "FOR Success");
+			emit(operation.getSuccessBlock(), endLabel, stepLabel);
+			place(stepLabel);
+			add(OP_TRACE, operation, -1, breakLabel, continueLabel, "FOR Step");
+			emit(operation.getStepBlock(), breakLabel, continueLabel);
+			add(OP_JUMP, operation, conditionalLabel, breakLabel, continueLabel, null);
+			place(endLabel);
+			add(OP_COUNT, operation, -1, breakLabel, continueLabel, null);
+		}
+
+		// Resolves labels and builds the program.
+		private TAMEProgram build(String[] localNames)
+		{
+			int[] outJumps = new int[length];
+			int[] outBreaks = new int[length];
+			int[] outContinues = new int[length];
+			for (int i = 0; i < length; i++)
+			{
+				outJumps[i] = jumps[i] < 0 ? -1 : labels[jumps[i]];
+				outBreaks[i] = breakLabels[i] < 0 ? -1 : labels[breakLabels[i]];
+				outContinues[i] = continueLabels[i] < 0 ? -1 : labels[continueLabels[i]];
+			}
+			return new TAMEProgram(
+				Arrays.copyOf(opcodes, length),
+				Arrays.copyOf(operations, length),
+				outJumps,
+				outBreaks,
+				outContinues,
+				Arrays.copyOf(messages, length),
+				localNames
+			);
+		}
+	}
+
+}
@@ -9,69 +9,88 @@
  ******************************************************************************/
 package com.tameif.tame;
 
-import java.util.Deque;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Set;
+import java.util.Arrays;
 
 import com.tameif.tame.element.context.TElementContext;
 import com.tameif.tame.exception.ArithmeticStackStateException;
 import com.tameif.tame.lang.TraceType;
 import com.tameif.tame.lang.Value;
+import com.tameif.tame.lang.ValueSet;
+import com.tameif.tame.struct.ArrayStack;
+import com.tameif.tame.struct.RingQueue;
 
 /**
  * Request object generated by the engine to be interpreted and then
  * have a response returned back. 
+ * <p>
+ * Each module context keeps one request object that is reset and reused for every request on it,
+ * so that its stacks and queues do not need to be rebuilt every turn.
  * @author Matthew Tropiano
  */
 public class TAMERequest
 {
-	private static final Set<TraceType> NO_TRACE_TYPES = new HashSet<>();
-	private static final Set<TraceType> ALL_TRACE_TYPES = new HashSet<TraceType>()
-	{
-		private static final long serialVersionUID = -7933024056207369672L;
-		{
-			for (TraceType t : TraceType.values())
-				add(t);
-		}
-	};
+	private static final int NO_TRACE_TYPES = 0;
+	private static final int ALL_TRACE_TYPES = traceMask(TraceType.VALUES);
 	
 	/** The input message. */
 	private String inputMessage;
-	/** Is the trace enabled, and if so, for which types? */
-	private Set<TraceType> traceTypes;
+	/** Is the trace enabled, and if so, for which types? Bitmask of trace type ordinals. */
+	private int traceTypes;
 
 	/** Belayed action queue. */
-	private Queue<TAMECommand> commandQueue;
+	private RingQueue<TAMECommand> commandQueue;
 
 	/** Module. */
 	private TAMEModuleContext moduleContext;
 	/** Arithmetic stack. */
-	private Deque<Value> valueStack;
+	private ArrayStack<Value> valueStack;
 	/** Context stack. */
-	private Deque<TElementContext<?>> contextStack;
+	private ArrayStack<TElementContext<?>> contextStack;
+	/** Local variable sets, by block call depth (reused). */
+	private ValueSet[] localsStack;
+	/** Current block call depth. */
+	private int localsDepth;
 	
 	/**
 	 * Creates a new request object.
+	 * @param moduleContext the module context.
 	 */
-	private TAMERequest()
+	TAMERequest(TAMEModuleContext moduleContext)
 	{
 		inputMessage = null;
-		traceTypes = null;
+		traceTypes = NO_TRACE_TYPES;
 		
-		commandQueue = new LinkedList<>();
+		commandQueue = new RingQueue<>(8);
 		
-		moduleContext = null;
-		valueStack = new LinkedList<Value>();
-		contextStack = new LinkedList<TElementContext<?>>();
+		this.moduleContext = moduleContext;
+		valueStack = new ArrayStack<>(16);
+		contextStack = new ArrayStack<>(8);
+		localsStack = new ValueSet[4];
+		localsDepth = 0;
+	}
+
+	/**
+	 * Clears this request's state for a new request.
+	 * Anything left over from an earlier request that ended early (on an error or runaway) is discarded.
+	 * @param input the client input query.
+	 * @param traceTypes the trace type bitmask.
+	 */
+	private void reset(String input, int traceTypes)
+	{
+		this.inputMessage = input;
+		this.traceTypes = traceTypes;
+		commandQueue.clear();
+		valueStack.clear();
+		contextStack.clear();
+		while (localsDepth > 0)
+			popLocals();
 	}
 
 	/**
 	 * Creates the request object.
 	 * @param moduleContext the module context.
 	 * @param tracing if true, this does tracing.
-	 * @return a TAMERequest a new request.
+	 * @return the module context's request object, reset for a new request.
 	 */
 	static TAMERequest create(TAMEModuleContext moduleContext, boolean tracing)
 	{
@@ -82,7 +101,7 @@ public class TAMERequest
 	 * Creates the request object.
 	 * @param moduleContext the module context.
 	 * @param types the types to trace.
-	 * @return a TAMERequest a new request.
+	 * @return the module context's request object, reset for a new request.
 	 */
 	static TAMERequest create(TAMEModuleContext moduleContext, TraceType ... types)
 	{
@@ -94,14 +113,12 @@ public class TAMERequest
 	 * @param moduleContext the module context.
 	 * @param input the client input query.
 	 * @param tracing if true, this does tracing.
-	 * @return a TAMERequest a new request.
+	 * @return the module context's request object, reset for a new request.
 	 */
 	static TAMERequest create(TAMEModuleContext moduleContext, String input, boolean tracing)
 	{
-		TAMERequest out = new TAMERequest();
-		out.moduleContext = moduleContext;
-		out.inputMessage = input;
-		out.traceTypes = tracing ? ALL_TRACE_TYPES : NO_TRACE_TYPES;
+		TAMERequest out = moduleContext.getRequest();
+		out.reset(input, tracing ? ALL_TRACE_TYPES : NO_TRACE_TYPES);
 		return out;
 	}
 	
@@ -110,21 +127,21 @@ public class TAMERequest
 	 * @param moduleContext the module context.
 	 * @param input the client input query.
 	 * @param types the types to trace.
-	 * @return a TAMERequest a new request.
+	 * @return the module context's request object, reset for a new request.
 	 */
 	static TAMERequest create(TAMEModuleContext moduleContext, String input, TraceType ... types)
 	{
-		TAMERequest out = new TAMERequest();
-		out.moduleContext = moduleContext;
-		out.inputMessage = input;
-		if (types.length == 0)
-			out.traceTypes = NO_TRACE_TYPES;
-		else
-		{
-			out.traceTypes = new HashSet<>();
-			for (TraceType t : types)
-				out.traceTypes.add(t);
-		}
+		TAMERequest out = moduleContext.getRequest();
+		out.reset(input, traceMask(types));
+		return out;
+	}
+	
+	// Creates a trace mask from a set of trace types.
+	private static int traceMask(TraceType ... types)
+	{
+		int out = 0;
+		for (TraceType t : types)
+			out |= 1 << t.ordinal();
 		return out;
 	}
 	
@@ -145,7 +162,16 @@ public class TAMERequest
 	 */
 	public boolean traces(TraceType type)
 	{
-		return traceTypes.contains(type);
+		return (traceTypes & (1 << type.ordinal())) != 0;
+	}
+
+	/**
+	 * Checks if this request is performing any kind of trace.
+	 * @return true if so, false if not.
+	 */
+	public boolean isTracing()
+	{
+		return traceTypes != NO_TRACE_TYPES;
 	}
 
 	/**
@@ -199,7 +225,7 @@ public class TAMERequest
 	 */
 	TElementContext<?> popContext()
 	{
-		return contextStack.pollFirst();
+		return contextStack.pop();
 	}
 
 	/**
@@ -229,7 +255,7 @@ public class TAMERequest
 	{
 		if (valueStack.isEmpty())
 			throw new ArithmeticStackStateException("Attempt to pop an empty arithmetic stack.");
-		return valueStack.pollFirst();
+		return valueStack.pop();
 	}
 	
 	/**
@@ -243,4 +269,31 @@ public class TAMERequest
 			throw new ArithmeticStackStateException("Arithmetic stack is not empty.");
 	}
 
+	/**
+	 * Gets a cleared local variable set for a new block call, reusing one from an earlier call at the same depth if possible.
+	 * Must be matched by a call to {@link #popLocals()} once the block call is done with it.
+	 * @param slotNames the local variable slot names for the block, or null for none.
+	 * @return the local variable set.
+	 * @see ValueSet#reset(String[])
+	 */
+	ValueSet pushLocals(String[] slotNames)
+	{
+		if (localsDepth == localsStack.length)
+			localsStack = Arrays.copyOf(localsStack, localsStack.length * 2);
+		ValueSet out;
+		if ((out = localsStack[localsDepth]) == null)
+			localsStack[localsDepth] = out = new ValueSet();
+		localsDepth++;
+		out.reset(slotNames);
+		return out;
+	}
+	
+	/**
+	 * Releases the local variable set from the last call to {@link #pushLocals(String[])}.
+	 */
+	void popLocals()
+	{
+		localsStack[--localsDepth].reset(null);
+	}
+
 }
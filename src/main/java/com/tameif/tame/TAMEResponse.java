@@ -10,12 +10,12 @@
 package com.tameif.tame;
 
 import java.util.Formatter;
-import java.util.LinkedList;
 import java.util.Queue;
 
 import com.tameif.tame.exception.RunawayRequestException;
 import com.tameif.tame.lang.Cue;
 import com.tameif.tame.lang.TraceType;
+import com.tameif.tame.struct.RingQueue;
 
 /**
  * Response object generated by the engine in which error
@@ -25,8 +25,16 @@ import com.tameif.tame.lang.TraceType;
  */
 public class TAMEResponse implements TAMEConstants
 {
+	/** Trace cue types, by trace type ordinal. */
+	private static final String[] TRACE_CUE_TYPES = new String[TraceType.VALUES.length];
+	static
+	{
+		for (TraceType type : TraceType.VALUES)
+			TRACE_CUE_TYPES[type.ordinal()] = CUE_TRACE + "-" + type.name().toLowerCase();
+	}
+	
 	/** The output message. */
-	private Queue<Cue> responseCues;
+	private RingQueue<Cue> responseCues;
 	/** Operation counter. */
 	private long operationsExecuted;
 	/** Function depth. */
@@ -41,7 +49,19 @@ public class TAMEResponse implements TAMEConstants
 	 */
 	TAMEResponse()
 	{
-		this.responseCues = new LinkedList<>();
+		this.responseCues = new RingQueue<>(16);
+		this.operationsExecuted = 0;
+		this.functionDepth = 0;
+		this.requestNanos = 0L;
+		this.interpretNanos = 0L;
+	}
+
+	/**
+	 * Clears this response so that it can be filled by another request.
+	 */
+	void reset()
+	{
+		this.responseCues.clear();
 		this.operationsExecuted = 0;
 		this.functionDepth = 0;
 		this.requestNanos = 0L;
@@ -165,6 +185,66 @@ public class TAMEResponse implements TAMEConstants
 	
 	/**
 	 * Adds a trace cue, but only if a specific trace type is set on the request.
+	 * The message is not formatted.
+	 * @param request the request to examine for the trace flag.
+	 * @param type the trace type for this trace output.
+	 * @param message the message.
+	 */
+	public void trace(TAMERequest request, TraceType type, String message)
+	{
+		if (request.traces(type)) 
+			addCue(TRACE_CUE_TYPES[type.ordinal()], message);
+	}
+
+	/**
+	 * Adds a trace cue, but only if a specific trace type is set on the request.
+	 * @param request the request to examine for the trace flag.
+	 * @param type the trace type for this trace output.
+	 * @param format the formatter string.
+	 * @param arg0 the first formatter argument.
+	 * @see Formatter
+	 */
+	public void trace(TAMERequest request, TraceType type, String format, Object arg0)
+	{
+		if (request.traces(type)) 
+			addCue(TRACE_CUE_TYPES[type.ordinal()], String.format(format, arg0));
+	}
+
+	/**
+	 * Adds a trace cue, but only if a specific trace type is set on the request.
+	 * @param request the request to examine for the trace flag.
+	 * @param type the trace type for this trace output.
+	 * @param format the formatter string.
+	 * @param arg0 the first formatter argument.
+	 * @param arg1 the second formatter argument.
+	 * @see Formatter
+	 */
+	public void trace(TAMERequest request, TraceType type, String format, Object arg0, Object arg1)
+	{
+		if (request.traces(type)) 
+			addCue(TRACE_CUE_TYPES[type.ordinal()], String.format(format, arg0, arg1));
+	}
+
+	/**
+	 * Adds a trace cue, but only if a specific trace type is set on the request.
+	 * @param request the request to examine for the trace flag.
+	 * @param type the trace type for this trace output.
+	 * @param format the formatter string.
+	 * @param arg0 the first formatter argument.
+	 * @param arg1 the second formatter argument.
+	 * @param arg2 the third formatter argument.
+	 * @see Formatter
+	 */
+	public void trace(TAMERequest request, TraceType type, String format, Object arg0, Object arg1, Object arg2)
+	{
+		if (request.traces(type)) 
+			addCue(TRACE_CUE_TYPES[type.ordinal()], String.format(format, arg0, arg1, arg2));
+	}
+
+	/**
+	 * Adds a trace cue, but only if a specific trace type is set on the request.
+	 * <p>Arguments are evaluated before this is called - if arguments are costly to build, 
+	 * guard the call with {@link TAMERequest#traces(TraceType)}.
 	 * @param request the request to examine for the trace flag.
 	 * @param type the trace type for this trace output.
 	 * @param format the formatter string.
@@ -174,7 +254,7 @@ public class TAMEResponse implements TAMEConstants
 	public void trace(TAMERequest request, TraceType type, String format, Object ... args)
 	{
 		if (request.traces(type)) 
-			addCue(CUE_TRACE+"-"+type.name().toLowerCase(), String.format(format, args));
+			addCue(TRACE_CUE_TYPES[type.ordinal()], String.format(format, args));
 	}
 
 	/**
@@ -0,0 +1,450 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import com.tameif.tame.lang.TraceType;
+
+/**
+ * A single module context hosted by a {@link TAMEEngine}.
+ * <p>
+ * Every task submitted to a session is run on the engine's executor, one at a time, in the order submitted,
+ * so the context itself never needs to be locked. The amount of tasks that can be waiting (or running) on a session
+ * is bounded: the "submit" methods wait for room in the queue, and the "trySubmit" methods fail right away.
+ * <p>
+ * If the engine has a {@link TAMESessionStore}, an idle session's context can be hibernated (saved and dropped),
+ * and it is restored before the session's next task runs.
+ * <p>All methods on this class are thread-safe.
+ * @author Matthew Tropiano
+ */
+public class TAMESession
+{
+	/** Max tasks run in a row before giving up the thread to other sessions. */
+	private static final int DRAIN_LIMIT = 8;
+
+	/**
+	 * A task to run against a session's context.
+	 * @param <T> the result type.
+	 */
+	@FunctionalInterface
+	public interface Task<T>
+	{
+		/**
+		 * Runs the task.
+		 * @param context the session's module context.
+		 * @return the result.
+		 * @throws Exception if something goes wrong. The exception completes the returned future.
+		 */
+		T run(TAMEModuleContext context) throws Exception;
+	}
+
+	/** Session id. */
+	private String id;
+	/** The session's context (null if hibernated). */
+	private volatile TAMEModuleContext context;
+	/** The executor to run tasks on. */
+	private Executor executor;
+	/** The store that hibernates this session (can be null). */
+	private TAMESessionStore store;
+	/** True if a task used the context during the current drain. */
+	private boolean used;
+	/** Time that a task last used the context, in nanoseconds. */
+	private volatile long lastUsed;
+	/** True if a hibernation is waiting in the queue. */
+	private AtomicBoolean hibernatePending;
+	/** The response reused by requests whose response is consumed in the task (created when first needed). */
+	private TAMEResponse response;
+
+	/** Room left in the queue. */
+	private Semaphore queuePermits;
+	/** Waiting jobs. */
+	private ConcurrentLinkedQueue<Job<?>> queue;
+	/** True if a drain is scheduled or running. */
+	private AtomicBoolean scheduled;
+	/** The drain runnable. */
+	private Runnable drainer;
+
+	/**
+	 * Creates a new session.
+	 * @param id the session id.
+	 * @param context the module context.
+	 * @param executor the executor to run tasks on.
+	 * @param queueLimit the max amount of tasks waiting or running.
+	 * @param store the store that hibernates this session, or null for none.
+	 */
+	TAMESession(String id, TAMEModuleContext context, Executor executor, int queueLimit, TAMESessionStore store)
+	{
+		if (queueLimit < 1)
+			throw new IllegalArgumentException("Queue limit must be at least 1.");
+		this.id = id;
+		this.context = context;
+		this.executor = executor;
+		this.store = store;
+		this.used = false;
+		this.lastUsed = System.nanoTime();
+		this.hibernatePending = new AtomicBoolean(false);
+		this.response = null;
+		this.queuePermits = new Semaphore(queueLimit);
+		this.queue = new ConcurrentLinkedQueue<>();
+		this.scheduled = new AtomicBoolean(false);
+		this.drainer = this::drain;
+	}
+
+	/**
+	 * @return this session's id.
+	 */
+	public String getId()
+	{
+		return id;
+	}
+
+	/**
+	 * Gets this session's context.
+	 * The context must only be read or changed from inside a submitted task.
+	 * @return the module context, or null if the session is hibernated.
+	 */
+	public TAMEModuleContext getContext()
+	{
+		return context;
+	}
+
+	/**
+	 * @return true if this session's context is hibernated, false if not.
+	 * @see TAMESessionStore
+	 */
+	public boolean isHibernated()
+	{
+		return context == null;
+	}
+
+	/**
+	 * @return the time that a task last used the context, in nanoseconds (see {@link System#nanoTime()}).
+	 */
+	long getLastUsed()
+	{
+		return lastUsed;
+	}
+
+	/**
+	 * @return the amount of tasks waiting or running on this session.
+	 */
+	public int getQueuedCount()
+	{
+		return queue.size();
+	}
+
+	/**
+	 * Submits a task, waiting for room in the queue if it is full.
+	 * If the calling thread is interrupted while waiting, the returned future completes with an {@link InterruptedException}.
+	 * @param <T> the result type.
+	 * @param task the task to run.
+	 * @return a future for the task result.
+	 */
+	public <T> CompletableFuture<T> submit(Task<T> task)
+	{
+		try {
+			queuePermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return failed(e);
+		}
+		return enqueue(task);
+	}
+
+	/**
+	 * Submits a task if there is room in the queue.
+	 * If there is no room, the returned future completes with a {@link RejectedExecutionException}.
+	 * @param <T> the result type.
+	 * @param task the task to run.
+	 * @return a future for the task result.
+	 */
+	public <T> CompletableFuture<T> trySubmit(Task<T> task)
+	{
+		if (!queuePermits.tryAcquire())
+			return failed(new RejectedExecutionException("Session " + id + " queue is full."));
+		return enqueue(task);
+	}
+
+	/**
+	 * Submits module initialization, waiting for room in the queue if it is full.
+	 * @param traceTypes the trace types to include.
+	 * @return a future for the response.
+	 * @see TAMELogic#handleInit(TAMEModuleContext, TraceType...)
+	 */
+	public CompletableFuture<TAMEResponse> submitInit(TraceType ... traceTypes)
+	{
+		return submit((context) -> TAMELogic.handleInit(context, traceTypes));
+	}
+
+	/**
+	 * Submits a request, waiting for room in the queue if it is full.
+	 * @param input the client input query.
+	 * @param traceTypes the trace types to include.
+	 * @return a future for the response.
+	 * @see TAMELogic#handleRequest(TAMEModuleContext, String, TraceType...)
+	 */
+	public CompletableFuture<TAMEResponse> submitRequest(String input, TraceType ... traceTypes)
+	{
+		return submit((context) -> TAMELogic.handleRequest(context, input, traceTypes));
+	}
+
+	/**
+	 * Submits a request that reuses this session's response object, waiting for room in the queue if it is full.
+	 * The consumer is called on the session's task with the response, which is only valid until the consumer returns,
+	 * since the next such request clears and refills it.
+	 * @param input the client input query.
+	 * @param consumer the consumer for the response.
+	 * @param traceTypes the trace types to include.
+	 * @return a future that completes after the consumer is called.
+	 * @see TAMELogic#handleRequest(TAMEModuleContext, String, TAMEResponse, TraceType...)
+	 */
+	public CompletableFuture<Void> submitRequest(String input, Consumer<TAMEResponse> consumer, TraceType ... traceTypes)
+	{
+		return submit((context) -> 
+		{
+			if (response == null)
+				response = new TAMEResponse();
+			consumer.accept(TAMELogic.handleRequest(context, input, response, traceTypes));
+			return null;
+		});
+	}
+
+	/**
+	 * Submits a request if there is room in the queue.
+	 * @param input the client input query.
+	 * @param traceTypes the trace types to include.
+	 * @return a future for the response.
+	 * @see TAMELogic#handleRequest(TAMEModuleContext, String, TraceType...)
+	 */
+	public CompletableFuture<TAMEResponse> trySubmitRequest(String input, TraceType ... traceTypes)
+	{
+		return trySubmit((context) -> TAMELogic.handleRequest(context, input, traceTypes));
+	}
+
+	/**
+	 * Hibernates this session's context after the tasks before it, if no tasks are waiting by then.
+	 * Does nothing if there is no store, a hibernation is already waiting, or the queue is full.
+	 */
+	void requestHibernate()
+	{
+		if (store == null || !hibernatePending.compareAndSet(false, true))
+			return;
+		if (!queuePermits.tryAcquire())
+		{
+			hibernatePending.set(false);
+			return;
+		}
+		enqueue(new HibernateJob());
+	}
+
+	/**
+	 * Waits for room in the queue, then, after the tasks before it, drops this session's context and discards its save
+	 * (if there is a store - else this only waits for the tasks before it).
+	 * Used when a session is removed from its engine.
+	 * @return a future that completes after the context is dropped.
+	 */
+	CompletableFuture<Void> release()
+	{
+		try {
+			queuePermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return failed(e);
+		}
+		return enqueue(new ReleaseJob());
+	}
+
+	// Gets the context for a task, restoring it if hibernated.
+	private TAMEModuleContext resident() throws IOException
+	{
+		TAMEModuleContext out;
+		if ((out = context) == null)
+			context = out = store.restore(this);
+		used = true;
+		return out;
+	}
+
+	// Adds a job (permit already acquired) and schedules a drain.
+	private <T> CompletableFuture<T> enqueue(Task<T> task)
+	{
+		return enqueue(new Job<>(task));
+	}
+
+	// Adds a job (permit already acquired) and schedules a drain.
+	private <T> CompletableFuture<T> enqueue(Job<T> job)
+	{
+		queue.add(job);
+		schedule();
+		return job.future;
+	}
+
+	// Schedules a drain if one is not scheduled.
+	private void schedule()
+	{
+		if (!scheduled.compareAndSet(false, true))
+			return;
+
+		try {
+			executor.execute(drainer);
+		} catch (RejectedExecutionException e) {
+			Job<?> job;
+			while ((job = queue.poll()) != null)
+			{
+				queuePermits.release();
+				job.future.completeExceptionally(e);
+			}
+			scheduled.set(false);
+		}
+	}
+
+	// Runs waiting jobs.
+	private void drain()
+	{
+		int count = 0;
+		Job<?> job;
+		while (count++ < DRAIN_LIMIT && (job = queue.peek()) != null)
+		{
+			job.run(this);
+			// leave the queue before completing, so that callbacks on the future can submit to this session.
+			queue.poll();
+			queuePermits.release();
+			job.complete();
+		}
+
+		if (used)
+		{
+			used = false;
+			lastUsed = System.nanoTime();
+			if (store != null)
+				store.touch(this);
+		}
+
+		scheduled.set(false);
+		if (!queue.isEmpty())
+			schedule();
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable t)
+	{
+		CompletableFuture<T> out = new CompletableFuture<>();
+		out.completeExceptionally(t);
+		return out;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TAMESession:" + id;
+	}
+
+	/**
+	 * A task and its future.
+	 * The job is run while it is at the head of the queue, and its future is completed after it leaves.
+	 * @param <T> the result type.
+	 */
+	private static class Job<T>
+	{
+		protected Task<T> task;
+		protected CompletableFuture<T> future;
+		/** The result, once run. */
+		protected T result;
+		/** The failure, once run (null if none). */
+		protected Throwable failure;
+
+		private Job(Task<T> task)
+		{
+			this.task = task;
+			this.future = new CompletableFuture<>();
+			this.result = null;
+			this.failure = null;
+		}
+
+		void run(TAMESession session)
+		{
+			try {
+				result = task.run(session.resident());
+			} catch (Throwable t) {
+				failure = t;
+			}
+		}
+
+		// Completes the future with the outcome of the run.
+		void complete()
+		{
+			if (failure != null)
+				future.completeExceptionally(failure);
+			else
+				future.complete(result);
+		}
+	}
+
+	/**
+	 * Hibernates the session's context, unless other tasks are waiting.
+	 */
+	private static class HibernateJob extends Job<Boolean>
+	{
+		private HibernateJob()
+		{
+			super(null);
+		}
+
+		@Override
+		void run(TAMESession session)
+		{
+			session.hibernatePending.set(false);
+			TAMEModuleContext context = session.context;
+			try {
+				// this job is still at the head of the queue.
+				if (context == null || session.queue.size() > 1 || !session.store.hibernate(session, context))
+				{
+					result = false;
+					return;
+				}
+				session.context = null;
+				session.response = null;
+				result = true;
+			} catch (Throwable t) {
+				failure = t;
+			}
+		}
+	}
+
+	/**
+	 * Drops the session's context and discards its save, if the session has a store.
+	 */
+	private static class ReleaseJob extends Job<Void>
+	{
+		private ReleaseJob()
+		{
+			super(null);
+		}
+
+		@Override
+		void run(TAMESession session)
+		{
+			// without a store, the context stays, so that tasks submitted afterward still run.
+			if (session.store != null)
+			{
+				session.store.discard(session);
+				session.context = null;
+				session.response = null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame;
+
+import com.tameif.tame.element.context.TOwnershipMap;
+
+/**
+ * Creates module contexts (sessions) for a single module that is shared between all of them.
+ * <p>
+ * The starting state that every new context would otherwise build for itself (object names, object tags,
+ * and header limits) is built once, here, and never changed afterward. Each created context reads from it
+ * until it changes something, and element contexts and their variables are created as they are used.
+ * <p>
+ * The module must not be changed while contexts created by this factory are in use.
+ * This factory is thread-safe, but each created context is not.
+ * @author Matthew Tropiano
+ */
+public class TAMESessionFactory
+{
+	/** The shared module. */
+	private TAMEModule module;
+	/** The starting ownership state (names and tags). Never changed. */
+	private TOwnershipMap ownershipTemplate;
+	/** Operation runaway max from the Header. */
+	private long operationRunawayMax;
+	/** Function call depth max from the Header. */
+	private long functionDepthMax;
+
+	/**
+	 * Creates a new session factory.
+	 * @param module the module to create contexts for.
+	 */
+	public TAMESessionFactory(TAMEModule module)
+	{
+		this.module = module;
+		this.ownershipTemplate = TAMEModuleContext.createOwnershipTemplate(module);
+		this.operationRunawayMax = TAMEModuleContext.getRunawayMax(module);
+		this.functionDepthMax = TAMEModuleContext.getFunctionDepthMax(module);
+	}
+
+	/**
+	 * Gets the module that this factory creates contexts for.
+	 * @return the module.
+	 */
+	public TAMEModule getModule()
+	{
+		return module;
+	}
+
+	/**
+	 * Creates a new module context in its starting state.
+	 * The context still needs to be initialized via {@link TAMELogic#handleInit(TAMEModuleContext, boolean)}.
+	 * @return a new context.
+	 */
+	public TAMEModuleContext create()
+	{
+		return new TAMEModuleContext(module, ownershipTemplate, operationRunawayMax, functionDepthMax);
+	}
+
+}
@@ -0,0 +1,714 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.tameif.tame.exception.ModuleStateException;
+import com.tameif.tame.struct.ByteBufferOutputStream;
+
+/**
+ * Hibernates idle sessions of a {@link TAMEEngine}: their contexts are saved, compressed, and dropped,
+ * and are restored from their saves on their next task.
+ * <p>
+ * A session is hibernated when it has been idle for longer than the idle time, or when more sessions
+ * are resident than the resident limit (least-recently-used first). Compressed saves are kept in an
+ * off-heap arena of a fixed size (the memory budget), and if a spill directory is set, saves that do not fit
+ * are written to files there, oldest first. If a save fits nowhere, its session stays resident.
+ * Files are deleted when their sessions are restored or discarded, or the store is cleared, so files
+ * left behind by a process that did not clear its store can be deleted once it has exited.
+ * <p>
+ * Idle sessions are found while other sessions are running tasks, or by calling {@link #sweep()}.
+ * Hibernation and restoring happen on each session's own tasks, so contexts are never touched by two threads at once.
+ * Files are read and written without holding the store's lock.
+ * <p>All methods on this class are thread-safe.
+ * @author Matthew Tropiano
+ */
+public class TAMESessionStore
+{
+	/** Default idle time before hibernation, in milliseconds. */
+	public static final long DEFAULT_IDLE_MILLIS = 60000L;
+	/** Default max amount of resident sessions. */
+	public static final int DEFAULT_RESIDENT_LIMIT = Integer.MAX_VALUE;
+	/** Max sessions picked for hibernation per touch. */
+	private static final int EVICT_LIMIT = 4;
+
+	/** Max idle compressors (and decompressors) kept for reuse. */
+	private static final int CODEC_POOL_LIMIT = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	/** The factory for restored contexts. */
+	private TAMESessionFactory factory;
+	/** Idle time before hibernation, in nanoseconds. */
+	private volatile long idleNanos;
+	/** Max amount of resident sessions. */
+	private volatile int residentLimit;
+	/** Directory for saves that do not fit in the arena (can be null). */
+	private File spillDirectory;
+
+	/** Arena for compressed saves (created when first needed). */
+	private ByteBuffer arena;
+	/** Arena capacity (memory budget) in bytes. */
+	private int arenaCapacity;
+	/** Next free arena position. */
+	private int arenaTop;
+	/** Bytes in the arena used by saves (the rest before arenaTop is garbage). */
+	private int arenaUsed;
+
+	/** Resident sessions, least-recently-used first. */
+	private LinkedHashMap<TAMESession, Boolean> resident;
+	/** Saves of hibernated sessions, oldest first. */
+	private LinkedHashMap<TAMESession, Slot> hibernated;
+	/** Time of the last sweep, in nanoseconds. */
+	private volatile long lastSweep;
+
+	/** Hibernated saves in files. */
+	private int spilledCount;
+	/** Idle compressors, for reuse. */
+	private ArrayDeque<Deflater> deflaters;
+	/** Idle decompressors, for reuse. */
+	private ArrayDeque<Inflater> inflaters;
+
+	/** Total hibernations. */
+	private AtomicLong hibernations;
+	/** Total restores. */
+	private AtomicLong restores;
+	/** Total time spent restoring, in nanoseconds. */
+	private AtomicLong restoreNanos;
+	/** Longest restore, in nanoseconds. */
+	private AtomicLong restoreNanosMax;
+
+	/**
+	 * Creates a new session store with the default idle time and resident limit.
+	 * @param factory the factory for restored contexts (should be the same one that the engine uses).
+	 * @param memoryBudget the size of the off-heap arena for compressed saves, in bytes (0 for none).
+	 * @param spillDirectory the directory for saves that do not fit in the arena, or null for none.
+	 * @throws IllegalArgumentException if memoryBudget is negative, or there is no arena nor spill directory.
+	 */
+	public TAMESessionStore(TAMESessionFactory factory, int memoryBudget, File spillDirectory)
+	{
+		if (memoryBudget < 0)
+			throw new IllegalArgumentException("Memory budget cannot be negative.");
+		if (memoryBudget == 0 && spillDirectory == null)
+			throw new IllegalArgumentException("Store needs a memory budget or a spill directory.");
+
+		this.factory = factory;
+		this.idleNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDLE_MILLIS);
+		this.residentLimit = DEFAULT_RESIDENT_LIMIT;
+		this.spillDirectory = spillDirectory;
+
+		this.arena = null;
+		this.arenaCapacity = memoryBudget;
+		this.arenaTop = 0;
+		this.arenaUsed = 0;
+
+		this.resident = new LinkedHashMap<>(64, 0.75f, true);
+		this.hibernated = new LinkedHashMap<>(64);
+		this.lastSweep = System.nanoTime();
+
+		this.spilledCount = 0;
+		this.deflaters = new ArrayDeque<>(CODEC_POOL_LIMIT);
+		this.inflaters = new ArrayDeque<>(CODEC_POOL_LIMIT);
+		this.hibernations = new AtomicLong(0L);
+		this.restores = new AtomicLong(0L);
+		this.restoreNanos = new AtomicLong(0L);
+		this.restoreNanosMax = new AtomicLong(0L);
+	}
+
+	/**
+	 * Sets how long a session must be idle before it is hibernated.
+	 * @param millis the idle time in milliseconds.
+	 */
+	public void setIdleMillis(long millis)
+	{
+		this.idleNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * @return how long a session must be idle before it is hibernated, in milliseconds.
+	 */
+	public long getIdleMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(idleNanos);
+	}
+
+	/**
+	 * Sets the max amount of resident sessions.
+	 * Past this amount, the least-recently-used sessions are hibernated.
+	 * @param limit the max amount of resident sessions.
+	 * @throws IllegalArgumentException if limit is less than 1.
+	 */
+	public void setResidentLimit(int limit)
+	{
+		if (limit < 1)
+			throw new IllegalArgumentException("Resident limit must be at least 1.");
+		this.residentLimit = limit;
+	}
+
+	/**
+	 * @return the max amount of resident sessions.
+	 */
+	public int getResidentLimit()
+	{
+		return residentLimit;
+	}
+
+	/**
+	 * @return the size of the arena for compressed saves, in bytes.
+	 */
+	public int getMemoryBudget()
+	{
+		return arenaCapacity;
+	}
+
+	/**
+	 * @return the amount of resident sessions that have run a task.
+	 */
+	public synchronized int getResidentCount()
+	{
+		return resident.size();
+	}
+
+	/**
+	 * @return the amount of hibernated sessions.
+	 */
+	public synchronized int getHibernatedCount()
+	{
+		return hibernated.size();
+	}
+
+	/**
+	 * @return the amount of hibernated sessions whose saves are in files.
+	 */
+	public synchronized int getSpilledCount()
+	{
+		return spilledCount;
+	}
+
+	/**
+	 * @return the amount of arena bytes used by compressed saves.
+	 */
+	public synchronized int getMemoryUsed()
+	{
+		return arenaUsed;
+	}
+
+	/**
+	 * @return the total amount of hibernations.
+	 */
+	public long getHibernationCount()
+	{
+		return hibernations.get();
+	}
+
+	/**
+	 * @return the total amount of restores.
+	 */
+	public long getRestoreCount()
+	{
+		return restores.get();
+	}
+
+	/**
+	 * @return the average time to restore a session, in nanoseconds (0 if none were restored).
+	 */
+	public long getRestoreNanosAverage()
+	{
+		long count = restores.get();
+		return count > 0 ? restoreNanos.get() / count : 0L;
+	}
+
+	/**
+	 * @return the longest time to restore a session, in nanoseconds.
+	 */
+	public long getRestoreNanosMax()
+	{
+		return restoreNanosMax.get();
+	}
+
+	/**
+	 * Hibernates every resident session that has been idle for longer than the idle time.
+	 * Sessions are hibernated on their own tasks, so this returns before they are.
+	 */
+	public void sweep()
+	{
+		long now = System.nanoTime();
+		lastSweep = now;
+		List<TAMESession> idle = new ArrayList<>();
+		synchronized (this)
+		{
+			// least-recently-used first, so stop at the first session that is not idle.
+			for (TAMESession session : resident.keySet())
+			{
+				if (now - session.getLastUsed() <= idleNanos)
+					break;
+				idle.add(session);
+			}
+		}
+		for (TAMESession session : idle)
+			session.requestHibernate();
+	}
+
+	/**
+	 * Marks a session as used, and hibernates sessions past the resident limit.
+	 * Called on the session's task.
+	 * @param session the session.
+	 */
+	void touch(TAMESession session)
+	{
+		List<TAMESession> evicted = null;
+		synchronized (this)
+		{
+			resident.put(session, Boolean.TRUE);
+			int excess = Math.min(resident.size() - residentLimit, EVICT_LIMIT);
+			if (excess > 0)
+			{
+				// least-recently-used sessions with nothing queued (busy ones are touched again soon anyway).
+				evicted = new ArrayList<>(excess);
+				for (TAMESession eldest : resident.keySet())
+				{
+					if (evicted.size() == excess)
+						break;
+					if (eldest != session && eldest.getQueuedCount() == 0)
+						evicted.add(eldest);
+				}
+				// stay in the map until hibernated, but not in the way of the next eviction.
+				for (TAMESession eldest : evicted)
+					resident.get(eldest);
+			}
+		}
+		if (evicted != null) for (TAMESession eldest : evicted)
+			eldest.requestHibernate();
+		if (System.nanoTime() - lastSweep > (idleNanos >> 2))
+			sweep();
+	}
+
+	/**
+	 * Saves, compresses, and stores a context. Called on the session's task.
+	 * @param session the session.
+	 * @param context the session's context.
+	 * @return true if stored (the context can be dropped), false if not.
+	 * @throws IOException if the context could not be saved.
+	 */
+	boolean hibernate(TAMESession session, TAMEModuleContext context) throws IOException
+	{
+		byte[] state = context.toBytes();
+		ByteBuffer compressed = compress(state);
+
+		Slot slot;
+		List<Slot> moved = new ArrayList<>(0);
+		synchronized (this)
+		{
+			if ((slot = storeInArena(compressed, moved)) != null)
+				hibernated(session, slot, state.length);
+			else if (spillDirectory == null)
+				// stays resident - move it out of the way of the next eviction.
+				resident.get(session);
+		}
+		writeMoved(moved);
+
+		if (slot == null)
+		{
+			if (spillDirectory == null)
+				return false;
+			byte[] bytes = new byte[compressed.remaining()];
+			compressed.get(bytes);
+			File file = writeFile(bytes);
+			synchronized (this)
+			{
+				slot = new Slot(-1, bytes.length);
+				slot.file = file;
+				spilledCount++;
+				hibernated(session, slot, state.length);
+			}
+		}
+		hibernations.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Restores a hibernated session's context. Called on the session's task.
+	 * The save is kept until the context is restored, so if this fails, it can be tried again.
+	 * @param session the session.
+	 * @return the restored context.
+	 * @throws IOException if the save could not be read.
+	 * @throws ModuleStateException if the session has no save, or the save is corrupt.
+	 */
+	TAMEModuleContext restore(TAMESession session) throws IOException
+	{
+		long start = System.nanoTime();
+		Slot slot;
+		byte[] compressed = null;
+		File file = null;
+		synchronized (this)
+		{
+			if ((slot = hibernated.get(session)) == null)
+				throw new ModuleStateException("Session %s has no saved context.", session.getId());
+			if (slot.offset >= 0)
+				compressed = readArena(slot);
+			else if (slot.pending != null)
+				compressed = slot.pending;
+			else
+				file = slot.file;
+		}
+		// only this session's task frees its file, so it can be read without the lock.
+		if (compressed == null)
+			compressed = Files.readAllBytes(file.toPath());
+
+		TAMEModuleContext context = factory.create();
+		context.fromBytes(decompress(session, compressed, slot.stateLength));
+
+		File delete;
+		synchronized (this)
+		{
+			hibernated.remove(session);
+			delete = free(slot);
+			resident.put(session, Boolean.TRUE);
+		}
+		if (delete != null)
+			delete.delete();
+
+		long nanos = System.nanoTime() - start;
+		restores.incrementAndGet();
+		restoreNanos.addAndGet(nanos);
+		restoreNanosMax.accumulateAndGet(nanos, Math::max);
+		return context;
+	}
+
+	/**
+	 * Forgets a session, discarding its save, if any. Called on the session's task.
+	 * @param session the session.
+	 */
+	void discard(TAMESession session)
+	{
+		File delete = null;
+		synchronized (this)
+		{
+			resident.remove(session);
+			Slot slot;
+			if ((slot = hibernated.remove(session)) != null)
+				delete = free(slot);
+		}
+		if (delete != null)
+			delete.delete();
+	}
+
+	/**
+	 * Discards every save, and deletes their files.
+	 */
+	public void clear()
+	{
+		List<File> delete = new ArrayList<>();
+		synchronized (this)
+		{
+			for (Slot slot : hibernated.values())
+			{
+				File file;
+				if ((file = free(slot)) != null)
+					delete.add(file);
+			}
+			hibernated.clear();
+			resident.clear();
+			spilledCount = 0;
+			arenaTop = 0;
+			arenaUsed = 0;
+		}
+		for (File file : delete)
+			file.delete();
+	}
+
+	// Adds a stored save for a session. Called while locked.
+	private void hibernated(TAMESession session, Slot slot, int stateLength)
+	{
+		slot.stateLength = stateLength;
+		hibernated.put(session, slot);
+		resident.remove(session);
+	}
+
+	// Compresses a save.
+	private ByteBuffer compress(byte[] state)
+	{
+		Deflater deflater;
+		synchronized (deflaters)
+		{
+			deflater = deflaters.pollFirst();
+		}
+		if (deflater == null)
+			deflater = new Deflater(Deflater.BEST_SPEED);
+
+		try {
+			ByteBufferOutputStream bos = new ByteBufferOutputStream(Math.max(256, state.length >> 2));
+			deflater.setInput(state);
+			deflater.finish();
+			while (!deflater.finished())
+			{
+				ByteBuffer buf = bos.reserve(Math.max(256, state.length >> 2));
+				// cast to Buffer - ByteBuffer overrides position(int) after Java 8.
+				int len = deflater.deflate(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+				((Buffer)buf).position(buf.position() + len);
+			}
+			return bos.toByteBuffer();
+		} finally {
+			deflater.reset();
+			synchronized (deflaters)
+			{
+				if (deflaters.size() < CODEC_POOL_LIMIT)
+				{
+					deflaters.addFirst(deflater);
+					deflater = null;
+				}
+			}
+			if (deflater != null)
+				deflater.end();
+		}
+	}
+
+	// Decompresses a save.
+	private byte[] decompress(TAMESession session, byte[] compressed, int stateLength)
+	{
+		Inflater inflater;
+		synchronized (inflaters)
+		{
+			inflater = inflaters.pollFirst();
+		}
+		if (inflater == null)
+			inflater = new Inflater();
+
+		try {
+			byte[] out = new byte[stateLength];
+			inflater.setInput(compressed);
+			int len = 0;
+			while (len < out.length && !inflater.finished() && !inflater.needsInput())
+				len += inflater.inflate(out, len, out.length - len);
+			if (len != out.length)
+				throw new ModuleStateException("Saved context for session %s is incomplete.", session.getId());
+			return out;
+		} catch (DataFormatException e) {
+			throw new ModuleStateException("Saved context for session %s is corrupt.", session.getId());
+		} finally {
+			inflater.reset();
+			synchronized (inflaters)
+			{
+				if (inflaters.size() < CODEC_POOL_LIMIT)
+				{
+					inflaters.addFirst(inflater);
+					inflater = null;
+				}
+			}
+			if (inflater != null)
+				inflater.end();
+		}
+	}
+
+	// Stores compressed bytes in the arena, making room if needed. Returns null if they do not fit. Called while locked.
+	// Saves moved out of the arena to make room are added to the moved list, and must be written to files afterward.
+	private Slot storeInArena(ByteBuffer data, List<Slot> moved)
+	{
+		int length = data.remaining();
+		if (length > arenaCapacity || !makeRoom(length, moved))
+			return null;
+
+		if (arena == null)
+			arena = ByteBuffer.allocateDirect(arenaCapacity);
+		ByteBuffer target = arena.duplicate();
+		((Buffer)target).position(arenaTop);
+		target.put(data.duplicate());
+		Slot out = new Slot(arenaTop, length);
+		arenaTop += length;
+		arenaUsed += length;
+		return out;
+	}
+
+	// Makes room at the top of the arena, compacting it or moving the oldest saves out. Returns false if not possible.
+	// Moved saves are kept on the heap until written to files (see writeMoved()). Called while locked.
+	private boolean makeRoom(int length, List<Slot> moved)
+	{
+		if (arenaTop + length <= arenaCapacity)
+			return true;
+
+		if (arenaCapacity - arenaUsed < length)
+		{
+			if (spillDirectory == null)
+				return false;
+			Iterator<Slot> it = hibernated.values().iterator();
+			while (arenaCapacity - arenaUsed < length && it.hasNext())
+			{
+				Slot slot = it.next();
+				if (slot.offset < 0)
+					continue;
+				slot.pending = readArena(slot);
+				arenaUsed -= slot.length;
+				slot.offset = -1;
+				moved.add(slot);
+			}
+		}
+
+		compact();
+		return arenaTop + length <= arenaCapacity;
+	}
+
+	// Moves every save in the arena down to remove gaps. Called while locked.
+	private void compact()
+	{
+		List<Slot> slots = new ArrayList<>(hibernated.size());
+		for (Slot slot : hibernated.values())
+			if (slot.offset >= 0)
+				slots.add(slot);
+		slots.sort((a, b) -> Integer.compare(a.offset, b.offset));
+
+		int top = 0;
+		for (Slot slot : slots)
+		{
+			if (slot.offset != top)
+			{
+				// copied out first - the old and new places can overlap.
+				byte[] bytes = readArena(slot);
+				ByteBuffer target = arena.duplicate();
+				((Buffer)target).position(top);
+				target.put(bytes);
+				slot.offset = top;
+			}
+			top += slot.length;
+		}
+		arenaTop = top;
+	}
+
+	// Writes saves that were moved out of the arena to files. Not called while locked.
+	// If a file cannot be written, its save stays on the heap.
+	private void writeMoved(List<Slot> moved)
+	{
+		for (Slot slot : moved)
+		{
+			byte[] bytes;
+			synchronized (this)
+			{
+				// the save may have been restored or discarded since it was moved.
+				if ((bytes = slot.pending) == null)
+					continue;
+			}
+
+			File file;
+			try {
+				file = writeFile(bytes);
+			} catch (IOException e) {
+				continue;
+			}
+
+			boolean kept;
+			synchronized (this)
+			{
+				// ...or while its file was written.
+				if (kept = !slot.freed)
+				{
+					slot.file = file;
+					slot.pending = null;
+					spilledCount++;
+				}
+			}
+			if (!kept)
+				file.delete();
+		}
+	}
+
+	// Writes compressed bytes to a new file in the spill directory. Not called while locked.
+	private File writeFile(byte[] bytes) throws IOException
+	{
+		File file = File.createTempFile("tame", ".sav", spillDirectory);
+		try {
+			Files.write(file.toPath(), bytes);
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+		return file;
+	}
+
+	// Reads a save's compressed bytes from the arena. Called while locked.
+	private byte[] readArena(Slot slot)
+	{
+		byte[] out = new byte[slot.length];
+		ByteBuffer source = arena.duplicate();
+		((Buffer)source).position(slot.offset);
+		source.get(out);
+		return out;
+	}
+
+	// Frees a save's space, once. Returns its file, to delete after unlocking, or null if none. Called while locked.
+	private File free(Slot slot)
+	{
+		if (slot.freed)
+			return null;
+		slot.freed = true;
+
+		if (slot.offset >= 0)
+		{
+			arenaUsed -= slot.length;
+			// the top save can be taken back right away.
+			if (slot.offset + slot.length == arenaTop)
+				arenaTop = slot.offset;
+			if (arenaUsed == 0)
+				arenaTop = 0;
+			return null;
+		}
+		else if (slot.file != null)
+		{
+			spilledCount--;
+			return slot.file;
+		}
+		else
+		{
+			slot.pending = null;
+			return null;
+		}
+	}
+
+	/**
+	 * Where a compressed save is.
+	 */
+	private static class Slot
+	{
+		/** Arena offset, or -1 if not in the arena. */
+		private int offset;
+		/** Compressed length in bytes. */
+		private int length;
+		/** Uncompressed length in bytes. */
+		private int stateLength;
+		/** File, if not in the arena. */
+		private File file;
+		/** Compressed bytes, if moved out of the arena but not written to a file yet. */
+		private byte[] pending;
+		/** If true, this save was discarded or restored. */
+		private boolean freed;
+
+		private Slot(int offset, int length)
+		{
+			this.offset = offset;
+			this.length = length;
+			this.stateLength = 0;
+			this.file = null;
+			this.pending = null;
+			this.freed = false;
+		}
+	}
+
+}
@@ -56,6 +56,8 @@ public final class TAMECompilerMain
 	/** Switch - set input charset. */
 	private static final String SWITCH_CHARSET0 = "--charset"; 
 	private static final String SWITCH_CHARSET1 = "-c"; 
+	/** Switch - write module format version 2. */
+	private static final String SWITCH_MODULEV2 = "--module-v2"; 
 
 	/** Switch - JS export, add wrapper. */
 	private static final String SWITCH_JSWRAPPER0 = "--js-wrapper"; 
@@ -148,6 +150,10 @@ public final class TAMECompilerMain
 		out.println("    -n                    Does not optimize blocks. DEBUG ONLY");
 		out.println("    --no-optimize");
 		out.println();
+		out.println("    --module-v2           Writes the module (or the module embedded in JS)");
+		out.println("                          in format version 2: smaller, and its blocks are");
+		out.println("                          read on first use. Older engines cannot read it.");
+		out.println();
 		out.println("    -js [name]            Export to JS, and optionally declare a wrapper to");
 		out.println("    --js-wrapper [name]   use for the JavaScript exporter.");
 		out.println();
@@ -317,6 +323,12 @@ public final class TAMECompilerMain
 						options.optimizing = false;
 						state = STATE_INPATH;
 					}
+					else if (arg.equals(SWITCH_MODULEV2))
+					{
+						options.moduleVersion = TAMEModule.FORMAT_VERSION_2;
+						jsOptions.moduleVersion = TAMEModule.FORMAT_VERSION_2;
+						state = STATE_INPATH;
+					}
 					else if (arg.equals(SWITCH_VERBOSE0) || arg.equals(SWITCH_VERBOSE1))
 					{
 						options.verboseOut = System.out;
@@ -529,7 +541,7 @@ public final class TAMECompilerMain
 			File outFile = new File(options.fileOutPath);
 			try {
 				fos = new FileOutputStream(new File(options.fileOutPath));
-				module.writeBytes(fos);
+				module.writeBytes(fos, options.moduleVersion);
 				out.println("Wrote "+outFile.getPath()+" successfully.");
 			} catch (IOException e) {
 				out.println("ERROR: Could not write output file: "+outFile.getPath());
@@ -551,11 +563,13 @@ public final class TAMECompilerMain
 	{
 		private String startingPath;
 		private PrintStream verbose;
+		private int moduleVersion;
 		
 		JSOptions()
 		{
 			startingPath = null;
 			verbose = null;
+			moduleVersion = TAMEModule.FORMAT_VERSION_1;
 		}
 
 		@Override
@@ -576,6 +590,12 @@ public final class TAMECompilerMain
 			return verbose;
 		}
 		
+		@Override
+		public int getModuleFormatVersion()
+		{
+			return moduleVersion;
+		}
+		
 	}
 	
 	private static class Options implements TAMEScriptReaderOptions
@@ -583,6 +603,7 @@ public final class TAMECompilerMain
 		private String fileInPath;
 		private String fileOutPath;
 		private boolean jsOut;
+		private int moduleVersion;
 		
 		private boolean optimizing;
 		private PrintStream verboseOut;
@@ -594,6 +615,7 @@ public final class TAMECompilerMain
 			fileInPath = null;
 			fileOutPath = null;
 			jsOut = false;
+			moduleVersion = TAMEModule.FORMAT_VERSION_1;
 			
 			optimizing = true;
 			verboseOut = null;
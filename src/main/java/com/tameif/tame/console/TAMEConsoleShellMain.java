@@ -14,6 +14,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -389,10 +390,8 @@ public class TAMEConsoleShellMain implements TAMEConstants
 		}
 		
 		TAMEModule out = null;
-		FileInputStream in = null;
 		try {
-			in = new FileInputStream(file);
-			out = TAMEModule.create(in);
+			out = TAMEModule.load(file.toPath());
 		} catch (ModuleException e) {
 			System.out.println("ERROR: "+file.getPath()+" is not a TAME module.");
 			return null;
@@ -403,8 +402,6 @@ public class TAMEConsoleShellMain implements TAMEConstants
 			System.out.println("ERROR: Could not read from "+file.getPath());
 			System.out.println(StringUtils.getExceptionString(e));
 			return null;
-		} finally {
-			IOUtils.close(in);
 		}
 		
 		return out;
@@ -443,10 +440,8 @@ public class TAMEConsoleShellMain implements TAMEConstants
 			return false;
 		}
 		
-		FileInputStream in = null;
 		try {
-			in = new FileInputStream(file);
-			context.readBytes(in);
+			context.fromBytes(Files.readAllBytes(file.toPath()));
 		} catch (ModuleStateException e) {
 			System.out.println("ERROR: Could not read from "+file.getPath()+". " + e.getMessage());
 			return false;
@@ -457,8 +452,6 @@ public class TAMEConsoleShellMain implements TAMEConstants
 			System.out.println("ERROR: Could not read from "+file.getPath());
 			e.printStackTrace(System.err);
 			return false;
-		} finally {
-			IOUtils.close(in);
 		}
 		
 		return true;
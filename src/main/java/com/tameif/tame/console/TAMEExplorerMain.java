@@ -0,0 +1,708 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.console;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tameif.tame.TAMEConstants;
+import com.tameif.tame.TAMELogic;
+import com.tameif.tame.TAMEModule;
+import com.tameif.tame.TAMEModuleContext;
+import com.tameif.tame.TAMEResponse;
+import com.tameif.tame.element.ObjectContainer;
+import com.tameif.tame.element.TAction;
+import com.tameif.tame.element.TObject;
+import com.tameif.tame.element.TPlayer;
+import com.tameif.tame.element.TRoom;
+import com.tameif.tame.element.context.TOwnershipMap;
+import com.tameif.tame.lang.Cue;
+import com.tameif.tame.struct.EncodingUtils;
+import com.tameif.tame.struct.ValueUtils;
+
+/**
+ * A headless explorer that plays a module by itself, looking for rooms that cannot be reached
+ * and inputs that crash it.
+ * <p>
+ * The explorer does a breadth-first search over the command space: at each step, every action
+ * is tried alone and with each accessible object (or with each mode, for modal actions), each
+ * on its own copy of the context. States that were already visited (by a hash of their saved state)
+ * are not explored again. If a beam width is set, only that many states are kept per step, preferring
+ * the ones that reached a room first.
+ * @author Matthew Tropiano
+ */
+public final class TAMEExplorerMain implements TAMEConstants
+{
+	/** Default max amount of steps from the start. */
+	private static final int DEFAULT_DEPTH = 8;
+	/** Default max amount of states to visit. */
+	private static final int DEFAULT_MAX_STATES = 20000;
+
+	/** Errors */
+	private static final int ERROR_NONE = 0;
+	private static final int ERROR_BADOPTIONS = 1;
+	private static final int ERROR_BADCOMPILE = 2;
+	private static final int ERROR_BADREAD = 3;
+	private static final int ERROR_NOINPUTFILE = 4;
+	private static final int ERROR_FAILURES = 5;
+	private static final int ERROR_IOERROR = 6;
+
+	private static void printVersion(PrintStream out)
+	{
+		out.println("TAME Explorer v" + TAMELogic.getVersion() + " by Matt Tropiano");
+		out.println("Running on: " + System.getProperty("os.name") + " " + System.getProperty("os.arch") + ", " + System.getProperty("java.vm.name") + ", v" +System.getProperty("java.version") + " (" + System.getProperty("java.vendor") + ")");
+	}
+
+	private static void printHelp(PrintStream out)
+	{
+		printVersion(out);
+		out.println("Usage: TAMEExplorerMain [help | module] <switches> <search>");
+		out.println("[help]:");
+		out.println("    -h                       Print help and quit.");
+		out.println("    --help");
+		out.println("    --version                Print version and quit.");
+		out.println();
+		out.println("[module]:");
+		out.println("    [binaryfile]             The compiled module to explore.");
+		out.println();
+		out.println("<switches>:");
+		out.println("    -s                       The input file is an uncompiled script.");
+		out.println("    --script");
+		out.println();
+		out.println("    -v                       Verbose script compiler output.");
+		out.println("    --verbose");
+		out.println();
+		out.println("    -d [tokens ...]          Defines predefined preprocessor tokens.");
+		out.println("    --defines [tokens ...]");
+		out.println();
+		out.println("    -c [charset]             Sets the charset to use for reading by name.");
+		out.println("    --charset [charset]");
+		out.println();
+		out.println("<search>:");
+		out.println("    --depth [steps]          Max amount of inputs from the start (default " + DEFAULT_DEPTH + ").");
+		out.println();
+		out.println("    --beam [width]           Keeps only this many states per step (default 0,");
+		out.println("                             all of them).");
+		out.println();
+		out.println("    --max-states [count]     Stops after this many states (default " + DEFAULT_MAX_STATES + ").");
+		out.println();
+		out.println("    --threads [count]        Amount of threads to search with (default: one per");
+		out.println("                             available processor).");
+		out.println();
+		out.println("    --errors                 Also counts error cues as failures.");
+		out.println();
+		out.println("    --out [directory]        Writes each failing transcript to a file in this");
+		out.println("                             directory, one input per line.");
+		out.println();
+		out.println("The exit code is " + ERROR_FAILURES + " if any input failed (an exception, or a fatal cue,");
+		out.println("such as a runaway request).");
+	}
+
+	// Entry point.
+	public static void main(String ... args)
+	{
+		boolean help = false;
+		boolean version = false;
+		boolean verbose = false;
+		boolean errors = false;
+
+		final int STATE_INIT = 0;
+		final int STATE_DEFINES = 1;
+		final int STATE_SCRIPT = 2;
+		final int STATE_CHARSET = 3;
+		final int STATE_DEPTH = 4;
+		final int STATE_BEAM = 5;
+		final int STATE_MAXSTATES = 6;
+		final int STATE_THREADS = 7;
+		final int STATE_OUT = 8;
+
+		String path = null;
+		String binpath = null;
+		String outpath = null;
+		List<String> defineList = new ArrayList<>();
+		Charset charset = Charset.defaultCharset();
+		int depth = DEFAULT_DEPTH;
+		int beam = 0;
+		int maxStates = DEFAULT_MAX_STATES;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		int state = STATE_INIT;
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+
+			if (arg.equalsIgnoreCase("--version"))
+			{
+				version = true;
+				state = STATE_INIT;
+			}
+			else if (arg.equalsIgnoreCase("-h") || arg.equalsIgnoreCase("--help"))
+			{
+				help = true;
+				state = STATE_INIT;
+			}
+			else if (arg.equalsIgnoreCase("-v") || arg.equalsIgnoreCase("--verbose"))
+			{
+				verbose = true;
+				state = STATE_INIT;
+			}
+			else if (arg.equalsIgnoreCase("--errors"))
+			{
+				errors = true;
+				state = STATE_INIT;
+			}
+			else if (arg.equalsIgnoreCase("-s") || arg.equalsIgnoreCase("--script"))
+				state = STATE_SCRIPT;
+			else if (arg.equalsIgnoreCase("-d") || arg.equalsIgnoreCase("--defines"))
+				state = STATE_DEFINES;
+			else if (arg.equalsIgnoreCase("-c") || arg.equalsIgnoreCase("--charset"))
+				state = STATE_CHARSET;
+			else if (arg.equalsIgnoreCase("--depth"))
+				state = STATE_DEPTH;
+			else if (arg.equalsIgnoreCase("--beam"))
+				state = STATE_BEAM;
+			else if (arg.equalsIgnoreCase("--max-states"))
+				state = STATE_MAXSTATES;
+			else if (arg.equalsIgnoreCase("--threads"))
+				state = STATE_THREADS;
+			else if (arg.equalsIgnoreCase("--out"))
+				state = STATE_OUT;
+			else switch (state)
+			{
+				default:
+				case STATE_INIT:
+					binpath = arg;
+					break;
+				case STATE_DEFINES:
+					defineList.add(arg);
+					break;
+				case STATE_SCRIPT:
+					path = arg;
+					state = STATE_INIT;
+					break;
+				case STATE_CHARSET:
+					if (Charset.isSupported(arg))
+						charset = Charset.forName(arg);
+					else
+					{
+						System.out.println("ERROR: Charset \""+arg+"\" is not supported!");
+						System.exit(ERROR_BADOPTIONS);
+						return;
+					}
+					state = STATE_INIT;
+					break;
+				case STATE_DEPTH:
+					depth = parseCount(arg, 1);
+					state = STATE_INIT;
+					break;
+				case STATE_BEAM:
+					beam = parseCount(arg, 0);
+					state = STATE_INIT;
+					break;
+				case STATE_MAXSTATES:
+					maxStates = parseCount(arg, 1);
+					state = STATE_INIT;
+					break;
+				case STATE_THREADS:
+					threads = parseCount(arg, 1);
+					state = STATE_INIT;
+					break;
+				case STATE_OUT:
+					outpath = arg;
+					state = STATE_INIT;
+					break;
+			}
+		}
+
+		if (args.length == 0 || help)
+		{
+			printHelp(System.out);
+			System.exit(ERROR_NONE);
+			return;
+		}
+
+		if (version)
+		{
+			printVersion(System.out);
+			System.exit(ERROR_NONE);
+			return;
+		}
+
+		if (depth < 0 || beam < 0 || maxStates < 0 || threads < 0)
+		{
+			System.out.println("ERROR: Expected a positive number for --depth, --beam, --max-states, and --threads.");
+			System.exit(ERROR_BADOPTIONS);
+			return;
+		}
+
+		TAMEModule module;
+		if (state == STATE_SCRIPT)
+		{
+			System.out.println("ERROR: No module script file specified!");
+			System.exit(ERROR_NOINPUTFILE);
+			return;
+		}
+		else if (!ValueUtils.isStringEmpty(path))
+		{
+			if ((module = TAMEConsoleShellMain.parseScript(path, charset, verbose, true, defineList)) == null)
+			{
+				System.exit(ERROR_BADCOMPILE);
+				return;
+			}
+		}
+		else if (ValueUtils.isStringEmpty(binpath))
+		{
+			System.out.println("ERROR: No module file specified!");
+			System.exit(ERROR_NOINPUTFILE);
+			return;
+		}
+		else if ((module = TAMEConsoleShellMain.readBinary(binpath)) == null)
+		{
+			System.exit(ERROR_BADREAD);
+			return;
+		}
+
+		Explorer explorer = new Explorer(module, errors);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			explorer.explore(pool, depth, beam, maxStates);
+		} finally {
+			pool.shutdown();
+		}
+		explorer.printReport(System.out);
+
+		if (outpath != null)
+		{
+			try {
+				explorer.writeTranscripts(new File(outpath));
+			} catch (IOException e) {
+				System.out.println("ERROR: Could not write transcripts to " + outpath + ": " + e.getMessage());
+				System.exit(ERROR_IOERROR);
+				return;
+			}
+		}
+
+		System.exit(explorer.failures.isEmpty() ? ERROR_NONE : ERROR_FAILURES);
+	}
+
+	// Parses a count from the command line, or returns -1 if it is not a number at least min.
+	private static int parseCount(String arg, int min)
+	{
+		int out = ValueUtils.parseInt(arg, -1);
+		return out < min ? -1 : out;
+	}
+
+	/**
+	 * A visited state: the input that led to it, and the outcome of that input.
+	 */
+	private static class Node
+	{
+		/** The state before the input (null for the initial state). */
+		private Node parent;
+		/** The input that led here (null for the initial state). */
+		private String input;
+		/** The amount of inputs from the start. */
+		private int depth;
+		/** The context in this state, or null once expanded, or if the branch ended. */
+		private TAMEModuleContext context;
+		/** The hash of the saved state, or null if the branch ended. */
+		private ByteBuffer hash;
+		/** The current room's identity after the input (can be null). */
+		private String roomIdentity;
+		/** The reason that the input failed (null if it did not). */
+		private String failure;
+
+		private Node(Node parent, String input)
+		{
+			this.parent = parent;
+			this.input = input;
+			this.depth = parent != null ? parent.depth + 1 : 0;
+		}
+
+		/**
+		 * @return the inputs from the start to this state, in order.
+		 */
+		private List<String> getTranscript()
+		{
+			LinkedList<String> out = new LinkedList<>();
+			for (Node node = this; node.parent != null; node = node.parent)
+				out.addFirst(node.input);
+			return out;
+		}
+
+	}
+
+	/**
+	 * The search state.
+	 */
+	private static class Explorer
+	{
+		/** The module to explore. */
+		private TAMEModule module;
+		/** If true, error cues count as failures. */
+		private boolean errorsFail;
+		/** Hashes of visited states. */
+		private Set<ByteBuffer> visited;
+		/** First state to reach each room, by room identity. */
+		private Map<String, Node> rooms;
+		/** First failing state for each distinct failure, by failure. */
+		private Map<String, Node> failures;
+		/** Amount of inputs run. */
+		private AtomicLong inputCount;
+		/** Amount of steps searched. */
+		private int stepCount;
+		/** If true, the search stopped at the max states before it ran out of states. */
+		private boolean truncated;
+		/** Search time in nanoseconds. */
+		private long nanos;
+
+		private Explorer(TAMEModule module, boolean errorsFail)
+		{
+			this.module = module;
+			this.errorsFail = errorsFail;
+			this.visited = new HashSet<>();
+			this.rooms = new LinkedHashMap<>();
+			this.failures = new LinkedHashMap<>();
+			this.inputCount = new AtomicLong(0L);
+			this.stepCount = 0;
+			this.truncated = false;
+			this.nanos = 0L;
+		}
+
+		/**
+		 * Searches the module, one step at a time.
+		 * The steps are searched in parallel, but the results are merged in input order,
+		 * so each room and failure keeps the same (shortest) transcript between runs.
+		 * @param pool the pool to search on.
+		 * @param maxDepth the max amount of inputs from the start.
+		 * @param beam the max amount of states kept per step, or 0 for no limit.
+		 * @param maxStates the max amount of states to visit.
+		 */
+		private void explore(ForkJoinPool pool, int maxDepth, int beam, int maxStates)
+		{
+			long start = System.nanoTime();
+
+			Node root = new Node(null, null);
+			root.context = new TAMEModuleContext(module);
+			try {
+				boolean open = outcome(root, TAMELogic.handleInit(root.context, false));
+				root.roomIdentity = getRoomIdentity(root.context);
+				if (open)
+					root.hash = ByteBuffer.wrap(EncodingUtils.sha1(root.context.toBytes()));
+			} catch (RuntimeException | StackOverflowError | IOException e) {
+				root.failure = describe(e);
+			}
+
+			List<Node> frontier = new ArrayList<>();
+			if (merge(root))
+				frontier.add(root);
+
+			while (!frontier.isEmpty() && stepCount < maxDepth && !truncated)
+			{
+				final Node[] parents = frontier.toArray(new Node[frontier.size()]);
+				final Node[][] children = new Node[parents.length][];
+				pool.invoke(new ExpandTask(this, parents, children, 0, parents.length));
+				stepCount++;
+
+				List<Node> next = new ArrayList<>();
+				List<Node> nextNewRoom = new ArrayList<>();
+				for (int i = 0; i < children.length && !truncated; i++)
+				{
+					parents[i].context = null;
+					for (Node child : children[i])
+					{
+						if (visited.size() >= maxStates)
+						{
+							truncated = true;
+							break;
+						}
+						boolean newRoom = child.roomIdentity != null && !rooms.containsKey(child.roomIdentity);
+						if (merge(child))
+							(newRoom ? nextNewRoom : next).add(child);
+					}
+				}
+
+				nextNewRoom.addAll(next);
+				frontier = nextNewRoom;
+				if (beam > 0)
+				{
+					for (int i = beam; i < frontier.size(); i++)
+						frontier.get(i).context = null;
+					if (frontier.size() > beam)
+						frontier = new ArrayList<>(frontier.subList(0, beam));
+				}
+			}
+
+			nanos = System.nanoTime() - start;
+		}
+
+		// Adds a state to the results. Returns true if the state is new and can be explored.
+		private boolean merge(Node node)
+		{
+			if (node.roomIdentity != null && !rooms.containsKey(node.roomIdentity))
+				rooms.put(node.roomIdentity, node);
+			if (node.failure != null && !failures.containsKey(node.failure))
+				failures.put(node.failure, node);
+			if (node.hash == null || !visited.add(node.hash))
+			{
+				node.context = null;
+				return false;
+			}
+			return true;
+		}
+
+		// Runs every input on its own copy of a state's context.
+		// Called in parallel - only reads the visited states, which do not change until the step is merged.
+		private Node[] expand(Node parent)
+		{
+			List<Node> out = new ArrayList<>();
+			for (String input : getInputs(parent.context))
+			{
+				Node node = new Node(parent, input);
+				inputCount.incrementAndGet();
+				try {
+					node.context = parent.context.copy();
+					boolean open = outcome(node, TAMELogic.handleRequest(node.context, input, false));
+					node.roomIdentity = getRoomIdentity(node.context);
+					if (open)
+					{
+						node.hash = ByteBuffer.wrap(EncodingUtils.sha1(node.context.toBytes()));
+						if (visited.contains(node.hash))
+							continue;
+					}
+				} catch (RuntimeException | StackOverflowError | IOException e) {
+					node.failure = describe(e);
+				}
+				if (node.hash == null)
+					node.context = null;
+				out.add(node);
+			}
+			return out.toArray(new Node[out.size()]);
+		}
+
+		// Reads the cues of a response, and returns true if the branch can continue (no failure or quit).
+		private boolean outcome(Node node, TAMEResponse response)
+		{
+			boolean out = true;
+			for (Cue cue : response.getCues())
+			{
+				if (cue.isType(CUE_FATAL))
+					node.failure = "fatal: " + cue.getContent();
+				else if (errorsFail && cue.isType(CUE_ERROR))
+					node.failure = "error: " + cue.getContent();
+				else if (cue.isType(CUE_QUIT))
+					out = false;
+				if (node.failure != null)
+					return false;
+			}
+			return out;
+		}
+
+		// Gets the inputs to try from a state.
+		// Each action is tried by its first name in sorted order: alone, with each accessible object, or with each mode.
+		private List<String> getInputs(TAMEModuleContext context)
+		{
+			List<String> objectNames = getAccessibleObjectNames(context);
+			Set<TAction> seen = new HashSet<>();
+			List<String> out = new ArrayList<>();
+			for (String actionName : context.getAvailableActionNames())
+			{
+				TAction action = module.getActionByName(actionName);
+				if (action == null || !seen.add(action))
+					continue;
+
+				switch (action.getType())
+				{
+					default:
+					case GENERAL:
+					case OPEN:
+						out.add(actionName);
+						break;
+					case MODAL:
+						out.add(actionName);
+						for (String mode : action.getExtraStrings())
+							out.add(actionName + " " + mode);
+						break;
+					case TRANSITIVE:
+						out.add(actionName);
+						for (String objectName : objectNames)
+							out.add(actionName + " " + objectName);
+						break;
+					case DITRANSITIVE:
+					{
+						out.add(actionName);
+						String conjunction = null;
+						for (String s : action.getExtraStrings())
+						{
+							conjunction = s;
+							break;
+						}
+						for (String objectName : objectNames)
+						{
+							out.add(actionName + " " + objectName);
+							if (conjunction != null) for (String objectName2 : objectNames)
+							{
+								if (!objectName.equals(objectName2))
+									out.add(actionName + " " + objectName + " " + conjunction + " " + objectName2);
+							}
+						}
+						break;
+					}
+				}
+			}
+			return out;
+		}
+
+		// Gets the first current name of each object in the accessible area (player, then room, then world).
+		private static List<String> getAccessibleObjectNames(TAMEModuleContext context)
+		{
+			TOwnershipMap ownershipMap = context.getOwnershipMap();
+			TPlayer player = context.getCurrentPlayer();
+			TRoom room = context.getCurrentRoom();
+			ObjectContainer[] owners = {player, room, context.getWorldContext().getElement()};
+
+			List<String> out = new ArrayList<>();
+			for (ObjectContainer owner : owners)
+			{
+				if (owner == null)
+					continue;
+				for (TObject object : ownershipMap.getObjectsOwnedByElement(owner))
+				{
+					for (String name : object.getNames())
+					{
+						if (ownershipMap.checkObjectHasName(object, name))
+						{
+							out.add(name);
+							break;
+						}
+					}
+				}
+			}
+			return out;
+		}
+
+		private static String getRoomIdentity(TAMEModuleContext context)
+		{
+			TRoom room = context.getCurrentRoom();
+			return room != null ? room.getIdentity() : null;
+		}
+
+		private static String describe(Throwable t)
+		{
+			return "exception: " + t.getClass().getSimpleName() + (t.getMessage() != null ? ": " + t.getMessage() : "");
+		}
+
+		/**
+		 * Prints the coverage report and the failing transcripts.
+		 * @param out the stream to print to.
+		 */
+		private void printReport(PrintStream out)
+		{
+			Map<String, TRoom> allRooms = new TreeMap<>();
+			for (Map.Entry<String, TRoom> entry : module.getRoomList())
+				if (!entry.getValue().isArchetype())
+					allRooms.put(entry.getKey(), entry.getValue());
+
+			out.printf("Explored %d states in %d steps, %d inputs, %.1f ms (%s).\n",
+				visited.size(), stepCount, inputCount.get(), nanos / 1000000.0,
+				truncated ? "stopped at max states" : "search space exhausted or at max depth"
+			);
+			out.printf("Rooms reached: %d of %d\n", rooms.size(), allRooms.size());
+			for (Map.Entry<String, Node> entry : rooms.entrySet())
+				out.printf("    %-30s %d step(s): %s\n", entry.getKey(), entry.getValue().depth, String.join(", ", entry.getValue().getTranscript()));
+			for (String identity : allRooms.keySet())
+				if (!rooms.containsKey(identity))
+					out.printf("    %-30s NOT REACHED\n", identity);
+
+			out.printf("Failures: %d\n", failures.size());
+			for (Map.Entry<String, Node> entry : failures.entrySet())
+			{
+				out.println("    " + entry.getKey());
+				for (String input : entry.getValue().getTranscript())
+					out.println("        > " + input);
+			}
+		}
+
+		/**
+		 * Writes each failing transcript to its own file, one input per line.
+		 * @param directory the directory to write to (created if it does not exist).
+		 * @throws IOException if a file could not be written.
+		 */
+		private void writeTranscripts(File directory) throws IOException
+		{
+			if (!directory.exists() && !directory.mkdirs())
+				throw new IOException("Could not create directory.");
+			int i = 0;
+			for (Node node : failures.values())
+			{
+				StringBuilder sb = new StringBuilder();
+				for (String input : node.getTranscript())
+					sb.append(input).append('\n');
+				Files.write(new File(directory, String.format("failure-%04d.txt", ++i)).toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+	}
+
+	/**
+	 * Expands a range of states, splitting it in half until it is one state.
+	 */
+	private static class ExpandTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 5034474717452541813L;
+
+		private Explorer explorer;
+		private Node[] parents;
+		private Node[][] children;
+		private int start;
+		private int end;
+
+		private ExpandTask(Explorer explorer, Node[] parents, Node[][] children, int start, int end)
+		{
+			this.explorer = explorer;
+			this.parents = parents;
+			this.children = children;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (end - start == 1)
+			{
+				children[start] = explorer.expand(parents[start]);
+				return;
+			}
+			int mid = (start + end) >>> 1;
+			invokeAll(
+				new ExpandTask(explorer, parents, children, start, mid),
+				new ExpandTask(explorer, parents, children, mid, end)
+			);
+		}
+	}
+
+}
@@ -0,0 +1,529 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.console;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.tameif.tame.TAMELogic;
+import com.tameif.tame.TAMEModule;
+import com.tameif.tame.TAMEModuleContext;
+import com.tameif.tame.TAMEResponse;
+import com.tameif.tame.TAMESessionFactory;
+import com.tameif.tame.lang.Cue;
+import com.tameif.tame.struct.ValueUtils;
+
+/**
+ * Replays recorded transcripts against one loaded module, concurrently, and compares
+ * their cues with golden files.
+ * <p>
+ * A transcript is a text file with one input per line, as typed into the console shell.
+ * Blank lines, lines that start with "#" (comments), and lines that start with "!" (shell commands) are skipped.
+ * Each transcript is replayed on its own context, seeded with the same random seed, so that a module
+ * that uses random numbers replays the same way each time.
+ * <p>
+ * A golden file has the cues from initialization, then for each input, a line with "&gt; " and the input,
+ * followed by its cues. Each cue is a line of its type, ":", and its content, with backslashes,
+ * carriage returns, and newlines escaped as "\\", "\r", and "\n".
+ * @author Matthew Tropiano
+ */
+public final class TAMETranscriptRunnerMain
+{
+	/** Default random seed. */
+	private static final long DEFAULT_SEED = 0L;
+	/** Default golden file extension. */
+	private static final String GOLDEN_EXTENSION = ".golden";
+	/** Transcript file extension, for transcript directories. */
+	private static final String TRANSCRIPT_EXTENSION = ".txt";
+
+	/** Errors */
+	private static final int ERROR_NONE = 0;
+	private static final int ERROR_BADOPTIONS = 1;
+	private static final int ERROR_BADCOMPILE = 2;
+	private static final int ERROR_BADREAD = 3;
+	private static final int ERROR_NOINPUTFILE = 4;
+	private static final int ERROR_FAILURES = 5;
+	private static final int ERROR_IOERROR = 6;
+
+	private static void printVersion(PrintStream out)
+	{
+		out.println("TAME Transcript Runner v" + TAMELogic.getVersion() + " by Matt Tropiano");
+		out.println("Running on: " + System.getProperty("os.name") + " " + System.getProperty("os.arch") + ", " + System.getProperty("java.vm.name") + ", v" +System.getProperty("java.version") + " (" + System.getProperty("java.vendor") + ")");
+	}
+
+	private static void printHelp(PrintStream out)
+	{
+		printVersion(out);
+		out.println("Usage: TAMETranscriptRunnerMain [help | module] <switches> [transcripts ...]");
+		out.println("[help]:");
+		out.println("    -h                       Print help and quit.");
+		out.println("    --help");
+		out.println("    --version                Print version and quit.");
+		out.println();
+		out.println("[module]:");
+		out.println("    [binaryfile]             The compiled module to run.");
+		out.println();
+		out.println("<switches>:");
+		out.println("    -s [scriptfile]          The module is an uncompiled script.");
+		out.println("    --script [scriptfile]");
+		out.println();
+		out.println("    -v                       Verbose script compiler output.");
+		out.println("    --verbose");
+		out.println();
+		out.println("    -d [tokens ...]          Defines predefined preprocessor tokens.");
+		out.println("    --defines [tokens ...]");
+		out.println();
+		out.println("    -c [charset]             Sets the charset to use for reading by name.");
+		out.println("    --charset [charset]");
+		out.println();
+		out.println("    -t [files ...]           The transcripts to replay. A directory replays");
+		out.println("    --transcripts [files ...]");
+		out.println("                             every \"" + TRANSCRIPT_EXTENSION + "\" file in it.");
+		out.println();
+		out.println("    --golden [directory]     The directory of golden files (default: next to each");
+		out.println("                             transcript). Each is named after its transcript,");
+		out.println("                             plus \"" + GOLDEN_EXTENSION + "\".");
+		out.println();
+		out.println("    --update                 Writes the golden files from this run instead of");
+		out.println("                             comparing them.");
+		out.println();
+		out.println("    --seed [number]          The random seed for each transcript (default " + DEFAULT_SEED + ").");
+		out.println();
+		out.println("    --threads [count]        Amount of transcripts to replay at once (default:");
+		out.println("                             one per available processor).");
+		out.println();
+		out.println("The exit code is " + ERROR_FAILURES + " if any transcript does not match its golden file.");
+	}
+
+	// Entry point.
+	public static void main(String ... args)
+	{
+		boolean help = false;
+		boolean version = false;
+		boolean verbose = false;
+		boolean update = false;
+
+		final int STATE_INIT = 0;
+		final int STATE_DEFINES = 1;
+		final int STATE_SCRIPT = 2;
+		final int STATE_CHARSET = 3;
+		final int STATE_TRANSCRIPTS = 4;
+		final int STATE_GOLDEN = 5;
+		final int STATE_SEED = 6;
+		final int STATE_THREADS = 7;
+
+		String path = null;
+		String binpath = null;
+		String goldenPath = null;
+		List<String> defineList = new ArrayList<>();
+		List<String> transcriptPaths = new ArrayList<>();
+		Charset charset = Charset.defaultCharset();
+		long seed = DEFAULT_SEED;
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		int state = STATE_INIT;
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+
+			if (arg.equalsIgnoreCase("--version"))
+			{
+				version = true;
+				state = STATE_INIT;
+			}
+			else if (arg.equalsIgnoreCase("-h") || arg.equalsIgnoreCase("--help"))
+			{
+				help = true;
+				state = STATE_INIT;
+			}
+			else if (arg.equalsIgnoreCase("-v") || arg.equalsIgnoreCase("--verbose"))
+			{
+				verbose = true;
+				state = STATE_INIT;
+			}
+			else if (arg.equalsIgnoreCase("--update"))
+			{
+				update = true;
+				state = STATE_INIT;
+			}
+			else if (arg.equalsIgnoreCase("-s") || arg.equalsIgnoreCase("--script"))
+				state = STATE_SCRIPT;
+			else if (arg.equalsIgnoreCase("-d") || arg.equalsIgnoreCase("--defines"))
+				state = STATE_DEFINES;
+			else if (arg.equalsIgnoreCase("-c") || arg.equalsIgnoreCase("--charset"))
+				state = STATE_CHARSET;
+			else if (arg.equalsIgnoreCase("-t") || arg.equalsIgnoreCase("--transcripts"))
+				state = STATE_TRANSCRIPTS;
+			else if (arg.equalsIgnoreCase("--golden"))
+				state = STATE_GOLDEN;
+			else if (arg.equalsIgnoreCase("--seed"))
+				state = STATE_SEED;
+			else if (arg.equalsIgnoreCase("--threads"))
+				state = STATE_THREADS;
+			else switch (state)
+			{
+				default:
+				case STATE_INIT:
+					binpath = arg;
+					break;
+				case STATE_DEFINES:
+					defineList.add(arg);
+					break;
+				case STATE_TRANSCRIPTS:
+					transcriptPaths.add(arg);
+					break;
+				case STATE_SCRIPT:
+					path = arg;
+					state = STATE_INIT;
+					break;
+				case STATE_CHARSET:
+					if (Charset.isSupported(arg))
+						charset = Charset.forName(arg);
+					else
+					{
+						System.out.println("ERROR: Charset \""+arg+"\" is not supported!");
+						System.exit(ERROR_BADOPTIONS);
+						return;
+					}
+					state = STATE_INIT;
+					break;
+				case STATE_GOLDEN:
+					goldenPath = arg;
+					state = STATE_INIT;
+					break;
+				case STATE_SEED:
+					try {
+						seed = Long.parseLong(arg);
+					} catch (NumberFormatException e) {
+						System.out.println("ERROR: Expected a number for --seed.");
+						System.exit(ERROR_BADOPTIONS);
+						return;
+					}
+					state = STATE_INIT;
+					break;
+				case STATE_THREADS:
+					if ((threads = ValueUtils.parseInt(arg, 0)) < 1)
+					{
+						System.out.println("ERROR: Expected a positive number for --threads.");
+						System.exit(ERROR_BADOPTIONS);
+						return;
+					}
+					state = STATE_INIT;
+					break;
+			}
+		}
+
+		if (args.length == 0 || help)
+		{
+			printHelp(System.out);
+			System.exit(ERROR_NONE);
+			return;
+		}
+
+		if (version)
+		{
+			printVersion(System.out);
+			System.exit(ERROR_NONE);
+			return;
+		}
+
+		TAMEModule module;
+		if (state == STATE_SCRIPT)
+		{
+			System.out.println("ERROR: No module script file specified!");
+			System.exit(ERROR_NOINPUTFILE);
+			return;
+		}
+		else if (!ValueUtils.isStringEmpty(path))
+		{
+			if ((module = TAMEConsoleShellMain.parseScript(path, charset, verbose, true, defineList)) == null)
+			{
+				System.exit(ERROR_BADCOMPILE);
+				return;
+			}
+			module.link();
+		}
+		else if (ValueUtils.isStringEmpty(binpath))
+		{
+			System.out.println("ERROR: No module file specified!");
+			System.exit(ERROR_NOINPUTFILE);
+			return;
+		}
+		else if ((module = TAMEConsoleShellMain.readBinary(binpath)) == null)
+		{
+			System.exit(ERROR_BADREAD);
+			return;
+		}
+
+		List<File> transcriptFiles = new ArrayList<>();
+		for (String transcriptPath : transcriptPaths)
+		{
+			File file = new File(transcriptPath);
+			if (file.isDirectory())
+			{
+				File[] files = file.listFiles((dir, name) -> name.toLowerCase().endsWith(TRANSCRIPT_EXTENSION));
+				Arrays.sort(files);
+				transcriptFiles.addAll(Arrays.asList(files));
+			}
+			else
+				transcriptFiles.add(file);
+		}
+
+		if (transcriptFiles.isEmpty())
+		{
+			System.out.println("ERROR: No transcripts specified!");
+			System.exit(ERROR_NOINPUTFILE);
+			return;
+		}
+
+		final TAMESessionFactory factory = new TAMESessionFactory(module);
+		final long randomSeed = seed;
+		File goldenDirectory = goldenPath != null ? new File(goldenPath) : null;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Replay>> futures = new ArrayList<>(transcriptFiles.size());
+		long nanos = System.nanoTime();
+		for (final File file : transcriptFiles)
+			futures.add(executor.submit(() -> replay(factory, file, randomSeed)));
+
+		int failures = 0;
+		int turns = 0;
+		List<long[]> allLatencies = new ArrayList<>(futures.size());
+		try {
+			for (int i = 0; i < futures.size(); i++)
+			{
+				File transcript = transcriptFiles.get(i);
+				Replay replay = futures.get(i).get();
+				File golden = new File(goldenDirectory != null ? goldenDirectory : transcript.getAbsoluteFile().getParentFile(), transcript.getName() + GOLDEN_EXTENSION);
+				if (!report(System.out, transcript, golden, replay, update))
+					failures++;
+				if (replay.latencies != null)
+				{
+					turns += replay.latencies.length;
+					allLatencies.add(replay.latencies);
+				}
+			}
+		} catch (InterruptedException e) {
+			System.out.println("ERROR: Interrupted.");
+			System.exit(ERROR_IOERROR);
+			return;
+		} catch (ExecutionException e) {
+			System.out.println("ERROR: " + e.getCause());
+			System.exit(ERROR_IOERROR);
+			return;
+		} catch (IOException e) {
+			System.out.println("ERROR: Could not write golden file: " + e.getMessage());
+			System.exit(ERROR_IOERROR);
+			return;
+		} finally {
+			executor.shutdown();
+		}
+		nanos = System.nanoTime() - nanos;
+
+		long[] latencies = new long[turns];
+		int n = 0;
+		for (long[] l : allLatencies)
+		{
+			System.arraycopy(l, 0, latencies, n, l.length);
+			n += l.length;
+		}
+		Arrays.sort(latencies);
+
+		System.out.printf("%d transcript(s), %d failed, %d turns in %.1f ms on %d thread(s): %.1f turns/s, p50 %.1f us, p99 %.1f us\n",
+			transcriptFiles.size(), failures, turns, nanos / 1000000.0, threads, turns / (nanos / 1000000000.0),
+			percentile(latencies, 0.50) / 1000.0, percentile(latencies, 0.99) / 1000.0
+		);
+		System.exit(failures == 0 ? ERROR_NONE : ERROR_FAILURES);
+	}
+
+	/**
+	 * The outcome of one transcript's replay.
+	 */
+	private static class Replay
+	{
+		/** The golden lines. */
+		private List<String> lines;
+		/** Each turn's time (interpret plus request) in nanoseconds, in order, or null if the replay failed. */
+		private long[] latencies;
+		/** The replay's time in nanoseconds. */
+		private long nanos;
+		/** The reason that the replay failed (null if it did not). */
+		private String error;
+	}
+
+	// Replays a transcript on a new context. Called in parallel.
+	private static Replay replay(TAMESessionFactory factory, File file, long seed)
+	{
+		Replay out = new Replay();
+		String[] inputs;
+		try {
+			inputs = readTranscript(file);
+		} catch (IOException e) {
+			out.error = "Could not read transcript: " + e.getMessage();
+			return out;
+		}
+
+		out.lines = new ArrayList<>();
+		long[] latencies = new long[inputs.length];
+		long nanos = System.nanoTime();
+		try {
+			TAMEModuleContext context = factory.create();
+			context.getRandom().setSeed(seed);
+			TAMEResponse response = TAMELogic.handleInit(context);
+			appendCues(out.lines, response);
+			for (int i = 0; i < inputs.length; i++)
+			{
+				out.lines.add("> " + inputs[i]);
+				TAMELogic.handleRequest(context, inputs[i], response);
+				latencies[i] = response.getInterpretNanos() + response.getRequestNanos();
+				appendCues(out.lines, response);
+			}
+		} catch (RuntimeException | StackOverflowError e) {
+			out.error = "Exception during replay: " + e;
+			return out;
+		}
+		out.nanos = System.nanoTime() - nanos;
+		out.latencies = latencies;
+		return out;
+	}
+
+	// Prints one transcript's result, or writes its golden file if updating. Returns false if it failed.
+	private static boolean report(PrintStream out, File transcript, File golden, Replay replay, boolean update) throws IOException
+	{
+		if (replay.error != null)
+		{
+			out.println("FAIL " + transcript.getPath() + ": " + replay.error);
+			return false;
+		}
+
+		long[] sorted = Arrays.copyOf(replay.latencies, replay.latencies.length);
+		Arrays.sort(sorted);
+		String stats = String.format("%d turns, %.1f ms, %.1f turns/s, p50 %.1f us, p99 %.1f us",
+			sorted.length, replay.nanos / 1000000.0, sorted.length / (replay.nanos / 1000000000.0),
+			percentile(sorted, 0.50) / 1000.0, percentile(sorted, 0.99) / 1000.0
+		);
+
+		if (update)
+		{
+			File parent = golden.getAbsoluteFile().getParentFile();
+			if (!parent.exists() && !parent.mkdirs())
+				throw new IOException("Could not create directory " + parent.getPath());
+			Files.write(golden.toPath(), replay.lines, StandardCharsets.UTF_8);
+			out.println("WROTE " + golden.getPath() + " (" + stats + ")");
+			return true;
+		}
+
+		if (!golden.exists())
+		{
+			out.println("FAIL " + transcript.getPath() + ": No golden file " + golden.getPath() + " (" + stats + ")");
+			return false;
+		}
+
+		List<String> expected = Files.readAllLines(golden.toPath(), StandardCharsets.UTF_8);
+		List<String> actual = replay.lines;
+		int mismatch = -1;
+		for (int i = 0; i < Math.max(expected.size(), actual.size()); i++)
+		{
+			if (i >= expected.size() || i >= actual.size() || !expected.get(i).equals(actual.get(i)))
+			{
+				mismatch = i;
+				break;
+			}
+		}
+
+		if (mismatch < 0)
+		{
+			out.println("PASS " + transcript.getPath() + " (" + stats + ")");
+			return true;
+		}
+
+		String turn = "init";
+		for (int i = Math.min(mismatch, actual.size() - 1); i >= 0; i--)
+		{
+			if (actual.get(i).startsWith("> "))
+			{
+				turn = actual.get(i);
+				break;
+			}
+		}
+		out.println("FAIL " + transcript.getPath() + " (" + stats + ")");
+		out.println("    at " + turn);
+		out.println("    expected: " + (mismatch < expected.size() ? expected.get(mismatch) : "(end)"));
+		out.println("    actual:   " + (mismatch < actual.size() ? actual.get(mismatch) : "(end)"));
+		return false;
+	}
+
+	// Reads transcript lines.
+	private static String[] readTranscript(File file) throws IOException
+	{
+		List<String> out = new ArrayList<>();
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+		{
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#") || line.startsWith("!"))
+				continue;
+			out.add(line);
+		}
+		return out.toArray(new String[out.size()]);
+	}
+
+	// Adds a response's cues as golden lines.
+	private static void appendCues(List<String> out, TAMEResponse response)
+	{
+		for (Cue cue : response.getCues())
+			out.add(cue.getType() + ":" + escape(cue.getContent()));
+	}
+
+	private static String escape(String content)
+	{
+		if (content == null)
+			return "";
+		StringBuilder sb = new StringBuilder(content.length());
+		for (int i = 0; i < content.length(); i++)
+		{
+			char c = content.charAt(i);
+			switch (c)
+			{
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				default:
+					sb.append(c);
+					break;
+			}
+		}
+		return sb.toString();
+	}
+
+	private static long percentile(long[] sorted, double p)
+	{
+		if (sorted.length == 0)
+			return 0L;
+		return sorted[Math.min(sorted.length - 1, (int)(sorted.length * p))];
+	}
+
+}
@@ -9,6 +9,6 @@
  *     Matt Tropiano - initial API and implementation
  *******************************************************************************/
 /**
- * Contains the main for the console client.
+ * Contains the mains for the console client, the module explorer, and the transcript runner.
  */
 package com.tameif.tame.console;
\ No newline at end of file
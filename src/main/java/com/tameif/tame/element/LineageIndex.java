@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.element;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.tameif.tame.lang.Block;
+import com.tameif.tame.lang.BlockEntry;
+import com.tameif.tame.lang.BlockEntryType;
+import com.tameif.tame.lang.FunctionEntry;
+import com.tameif.tame.lang.Value;
+import com.tameif.tame.struct.CaseInsensitiveStringMap;
+
+/**
+ * Flattened block and function lookup tables for a set of elements, built when a module is linked.
+ * <p>
+ * Every block entry defined on any indexed element is given a small integer id, and every indexed element
+ * gets an array of the blocks visible through its lineage by id, a map of the functions visible through its lineage,
+ * and a list of its ancestors. Resolving a block or function is then one lookup instead of a walk up the lineage.
+ * <p>
+ * Block entries are looked up by a hash of their type and values, and not {@link BlockEntry#hashCode()},
+ * which builds the entry's string the first time it is called on each new entry.
+ * <p>
+ * If an indexed element is changed afterward (blocks, functions, or parent), the index is invalidated,
+ * and all elements go back to walking their lineage until the index is rebuilt.
+ * @author Matthew Tropiano
+ */
+public class LineageIndex
+{
+	/** Block entry ids, while building. */
+	private HashMap<BlockEntry, Integer> entryIds;
+	/** Amount of block entry ids. */
+	private int entryCount;
+	/** Id table keys (open addressing). */
+	private BlockEntry[] idKeys;
+	/** Id table values, by key slot. */
+	private int[] idValues;
+	/** Block entry types that have at least one entry in this index. */
+	private boolean[] entryTypes;
+	/** If false, this index no longer matches its elements. */
+	private boolean valid;
+
+	private LineageIndex()
+	{
+		this.entryIds = new HashMap<>();
+		this.entryCount = 0;
+		this.entryTypes = new boolean[BlockEntryType.VALUES.length];
+		this.valid = true;
+	}
+
+	/**
+	 * Builds a new index for a set of elements, and sets each element's tables.
+	 * All of the elements' ancestors must also be in the set.
+	 * @param elements the elements to index.
+	 * @return the new index.
+	 */
+	public static LineageIndex build(Iterable<? extends TElement> elements)
+	{
+		LineageIndex out = new LineageIndex();
+		for (TElement element : elements)
+		{
+			for (Map.Entry<BlockEntry, Block> entry : element.getBlockEntries())
+			{
+				if (!out.entryIds.containsKey(entry.getKey()))
+					out.entryIds.put(entry.getKey(), out.entryIds.size());
+				out.entryTypes[entry.getKey().getEntryType().ordinal()] = true;
+			}
+		}
+
+		out.buildIdTable();
+
+		for (TElement element : elements)
+		{
+			TElement[] lineage = lineageOf(element);
+
+			// nearest definition wins, so add from the farthest ancestor down.
+			Block[] blocks = new Block[out.entryCount];
+			for (int i = lineage.length - 1; i >= 0; i--)
+				for (Map.Entry<BlockEntry, Block> entry : lineage[i].getBlockEntries())
+					blocks[out.getId(entry.getKey())] = entry.getValue();
+
+			CaseInsensitiveStringMap<FunctionEntry> functions = new CaseInsensitiveStringMap<>(8);
+			for (int i = lineage.length - 1; i >= 0; i--)
+				for (Map.Entry<String, FunctionEntry> entry : lineage[i].getFunctionEntries())
+					functions.put(entry.getKey(), entry.getValue());
+
+			TElement[] ancestors = new TElement[lineage.length - 1];
+			System.arraycopy(lineage, 1, ancestors, 0, ancestors.length);
+			element.setLineageTables(out, blocks, functions, ancestors);
+		}
+		return out;
+	}
+
+	/**
+	 * Clears the tables on a set of elements that were set by an index.
+	 * @param elements the elements.
+	 */
+	public static void clear(Iterable<? extends TElement> elements)
+	{
+		for (TElement element : elements)
+			element.setLineageTables(null, null, null, null);
+	}
+
+	// Builds the id lookup table from the entry id map.
+	private void buildIdTable()
+	{
+		int capacity = 4;
+		while (capacity < entryIds.size() * 2)
+			capacity <<= 1;
+		idKeys = new BlockEntry[capacity];
+		idValues = new int[capacity];
+		for (Map.Entry<BlockEntry, Integer> entry : entryIds.entrySet())
+		{
+			int slot = entryHash(entry.getKey()) & (capacity - 1);
+			while (idKeys[slot] != null)
+				slot = (slot + 1) & (capacity - 1);
+			idKeys[slot] = entry.getKey();
+			idValues[slot] = entry.getValue();
+		}
+		entryCount = entryIds.size();
+		entryIds = null;
+	}
+
+	// Hashes a block entry by type and values.
+	private static int entryHash(BlockEntry entry)
+	{
+		int out = entry.getEntryType().ordinal();
+		for (Value value : entry.getValues())
+			out = 31 * out + value.hashCode();
+		return out ^ (out >>> 16);
+	}
+
+	// Gets an element and its ancestors, nearest first.
+	static TElement[] lineageOf(TElement element)
+	{
+		int count = 0;
+		for (TElement e = element; e != null; e = e.getParent())
+			count++;
+		TElement[] out = new TElement[count];
+		count = 0;
+		for (TElement e = element; e != null; e = e.getParent())
+			out[count++] = e;
+		return out;
+	}
+
+	/**
+	 * Gets the id for a block entry.
+	 * @param entry the block entry.
+	 * @return the id, or -1 if no indexed element has a block for that entry.
+	 */
+	public int getId(BlockEntry entry)
+	{
+		int mask = idKeys.length - 1;
+		int slot = entryHash(entry) & mask;
+		BlockEntry key;
+		while ((key = idKeys[slot]) != null)
+		{
+			if (key.equals(entry))
+				return idValues[slot];
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if any indexed element has a block with a specific entry type.
+	 * @param type the entry type.
+	 * @return true if so, false if not.
+	 */
+	public boolean hasEntryType(BlockEntryType type)
+	{
+		return entryTypes[type.ordinal()];
+	}
+
+	/**
+	 * @return true if this index still matches its elements, false if an element changed since it was built.
+	 */
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	/**
+	 * Marks this index as no longer matching its elements.
+	 */
+	void invalidate()
+	{
+		valid = false;
+	}
+
+}
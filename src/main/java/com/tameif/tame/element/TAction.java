@@ -9,16 +9,18 @@
  ******************************************************************************/
 package com.tameif.tame.element;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import com.tameif.tame.lang.Saveable;
+import com.tameif.tame.struct.ByteBufferInputStream;
+import com.tameif.tame.struct.ByteBufferOutputStream;
 import com.tameif.tame.struct.CaseInsensitiveStringSet;
 import com.tameif.tame.struct.SerialReader;
 import com.tameif.tame.struct.SerialWriter;
+import com.tameif.tame.struct.TokenTrie;
 import com.tameif.tame.struct.ValueUtils;
 
 /**
@@ -73,12 +75,15 @@ public class TAction implements Comparable<TAction>, Saveable
 	 * </ul>
 	 */
 	private CaseInsensitiveStringSet extraStrings;
+	/** Extra strings by token, for the interpreter. */
+	private TokenTrie<String> extraStringTrie;
 	
 	// Empty constructor.
 	private TAction()
 	{
 		this.names = new CaseInsensitiveStringSet();
 		this.extraStrings = new CaseInsensitiveStringSet();
+		this.extraStringTrie = new TokenTrie<String>();
 		this.type = Type.GENERAL;
 		this.strict = false;
 		this.reversed = false;
@@ -222,7 +227,9 @@ public class TAction implements Comparable<TAction>, Saveable
 	 */
 	public void addExtraStrings(String extraString)
 	{
-		extraStrings.put(extraString.replaceAll("\\s+", " "));
+		extraString = extraString.replaceAll("\\s+", " ");
+		extraStrings.put(extraString);
+		extraStringTrie.put(extraString, extraString);
 	}
 
 	/**
@@ -245,6 +252,15 @@ public class TAction implements Comparable<TAction>, Saveable
 		return extraStrings;
 	}
 
+	/**
+	 * Gets this action's extra strings as a token trie, for matching input one token at a time.
+	 * @return the trie of extra strings.
+	 */
+	public TokenTrie<String> getExtraStringTrie()
+	{
+		return extraStringTrie;
+	}
+
 	@Override
 	public int compareTo(TAction action)
 	{
@@ -322,6 +338,7 @@ public class TAction implements Comparable<TAction>, Saveable
 	{
 		names.clear();
 		extraStrings.clear();
+		extraStringTrie.clear();
 		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
 		setIdentity(sr.readString(in, "UTF-8"));
 		type = Type.VALUES[(int)sr.readByte(in)];
@@ -338,13 +355,17 @@ public class TAction implements Comparable<TAction>, Saveable
 		
 		size = sr.readInt(in);
 		while (size-- > 0)
-			extraStrings.put(sr.readString(in, "UTF-8"));
+		{
+			String extraString = sr.readString(in, "UTF-8");
+			extraStrings.put(extraString);
+			extraStringTrie.put(extraString, extraString);
+		}
 	}
 
 	@Override
 	public byte[] toBytes() throws IOException
 	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ByteBufferOutputStream bos = new ByteBufferOutputStream();
 		writeBytes(bos);
 		return bos.toByteArray();
 	}
@@ -352,9 +373,7 @@ public class TAction implements Comparable<TAction>, Saveable
 	@Override
 	public void fromBytes(byte[] data) throws IOException 
 	{
-		ByteArrayInputStream bis = new ByteArrayInputStream(data);
-		readBytes(bis);
-		bis.close();
+		readBytes(new ByteBufferInputStream(ByteBuffer.wrap(data)));
 	}
 
 }
@@ -9,11 +9,10 @@
  ******************************************************************************/
 package com.tameif.tame.element;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import com.tameif.tame.exception.ModuleException;
@@ -24,6 +23,9 @@ import com.tameif.tame.lang.BlockTable;
 import com.tameif.tame.lang.FunctionEntry;
 import com.tameif.tame.lang.FunctionTable;
 import com.tameif.tame.lang.Saveable;
+import com.tameif.tame.struct.ByteBufferInputStream;
+import com.tameif.tame.struct.ByteBufferOutputStream;
+import com.tameif.tame.struct.CaseInsensitiveStringMap;
 import com.tameif.tame.struct.CaseInsensitiveStringSet;
 import com.tameif.tame.struct.SerialReader;
 import com.tameif.tame.struct.SerialWriter;
@@ -44,6 +46,8 @@ public abstract class TElement implements Saveable
 	
 	/** Element's primary identity. */
 	private String identity;
+	/** Element's symbol in its module (not saved). */
+	private int symbol;
 	/** Element is an archetype (defines behavior, is not physical). */
 	private boolean archetype;
 	/** Element parent. */
@@ -53,14 +57,28 @@ public abstract class TElement implements Saveable
 	/** Function map. */
 	private FunctionTable functionTable;
 
+	/** The lineage index that built this element's lineage tables, or null if not indexed. */
+	private LineageIndex lineageIndex;
+	/** Blocks visible through this element's lineage, by block entry id. */
+	private Block[] lineageBlocks;
+	/** Functions visible through this element's lineage. */
+	private CaseInsensitiveStringMap<FunctionEntry> lineageFunctions;
+	/** This element's ancestors, nearest first. */
+	private TElement[] ancestors;
+
 	/**
 	 * Prepares a new element.
 	 */
 	protected TElement()
 	{
+		this.symbol = -1;
 		this.archetype = false;
 		this.blockTable = new BlockTable();
 		this.functionTable = new FunctionTable();
+		this.lineageIndex = null;
+		this.lineageBlocks = null;
+		this.lineageFunctions = null;
+		this.ancestors = null;
 	}
 	
 	/** 
@@ -72,6 +90,26 @@ public abstract class TElement implements Saveable
 		return identity;
 	}
 	
+	/**
+	 * Gets this element's symbol, a dense integer id given to it when it was added to its module.
+	 * @return the symbol, or -1 if not added to a module.
+	 * @see com.tameif.tame.TAMEModule#getElementSymbol(String)
+	 */
+	public int getSymbol()
+	{
+		return symbol;
+	}
+
+	/**
+	 * Sets this element's symbol.
+	 * This is set by the module that this element is added to, and should not be set otherwise.
+	 * @param symbol the symbol.
+	 */
+	public void setSymbol(int symbol)
+	{
+		this.symbol = symbol;
+	}
+
 	/** 
 	 * Sets the identity (primary identifier name). 
 	 * @param identity the identity to set.
@@ -111,6 +149,7 @@ public abstract class TElement implements Saveable
 	public void addBlock(BlockEntry blockEntry, Block block)
 	{
 		blockTable.add(blockEntry, block);
+		invalidateLineageIndex();
 	}
 	
 	/**
@@ -139,6 +178,11 @@ public abstract class TElement implements Saveable
 	 */
 	public Block resolveBlock(BlockEntry blockEntry)
 	{
+		if (lineageIndex != null && lineageIndex.isValid())
+		{
+			int id = lineageIndex.getId(blockEntry);
+			return id >= 0 ? lineageBlocks[id] : null;
+		}
 		Block out = getBlock(blockEntry);
 		return out != null ? out : (parent != null ? parent.resolveBlock(blockEntry) : null);
 	}
@@ -151,6 +195,7 @@ public abstract class TElement implements Saveable
 	public void addFunction(String functionName, FunctionEntry entry)
 	{
 		functionTable.add(functionName, entry);
+		invalidateLineageIndex();
 	}
 	
 	/**
@@ -179,6 +224,8 @@ public abstract class TElement implements Saveable
 	 */
 	public FunctionEntry resolveFunction(String functionName)
 	{
+		if (lineageIndex != null && lineageIndex.isValid())
+			return lineageFunctions.get(functionName);
 		FunctionEntry out = getFunction(functionName);
 		return out != null ? out : (parent != null ? parent.resolveFunction(functionName) : null);
 	}
@@ -205,6 +252,7 @@ public abstract class TElement implements Saveable
 		if (this.parent != null && this.parent != parent)
 			throw new ModuleException("Parent elements cannot be reassigned once set.");
 		this.parent = parent;
+		invalidateLineageIndex();
 	}
 	
 	/**
@@ -218,6 +266,53 @@ public abstract class TElement implements Saveable
 		return parent;
 	}
 
+	/**
+	 * Gets this element's ancestors (its parent, its parent's parent, and so on).
+	 * If this element is indexed, the returned array is shared, and must not be changed.
+	 * @return the ancestors, nearest first.
+	 * @see LineageIndex
+	 */
+	public TElement[] getAncestors()
+	{
+		if (lineageIndex != null && lineageIndex.isValid())
+			return ancestors;
+		TElement[] lineage = LineageIndex.lineageOf(this);
+		TElement[] out = new TElement[lineage.length - 1];
+		System.arraycopy(lineage, 1, out, 0, out.length);
+		return out;
+	}
+
+	/**
+	 * Gets the lineage index that this element's lineage tables belong to.
+	 * @return the index, or null if this element is not indexed.
+	 */
+	public LineageIndex getLineageIndex()
+	{
+		return lineageIndex;
+	}
+
+	/**
+	 * Sets this element's lineage tables.
+	 * @param index the index that built the tables, or null to clear them.
+	 * @param blocks the blocks visible through this element's lineage, by block entry id.
+	 * @param functions the functions visible through this element's lineage.
+	 * @param ancestors this element's ancestors, nearest first.
+	 */
+	void setLineageTables(LineageIndex index, Block[] blocks, CaseInsensitiveStringMap<FunctionEntry> functions, TElement[] ancestors)
+	{
+		this.lineageIndex = index;
+		this.lineageBlocks = blocks;
+		this.lineageFunctions = functions;
+		this.ancestors = ancestors;
+	}
+
+	// Invalidates this element's lineage index, if any, since lineage tables that include this element are now out of date.
+	private void invalidateLineageIndex()
+	{
+		if (lineageIndex != null)
+			lineageIndex.invalidate();
+	}
+
 	/**
 	 * Checks if this element is an Archetype.
 	 * Archetypes do not hold state nor have contexts - they only define code.
@@ -293,12 +388,13 @@ public abstract class TElement implements Saveable
 		archetype = sr.readBoolean(in);
 		blockTable = BlockTable.create(in);
 		functionTable = FunctionTable.create(in);
+		invalidateLineageIndex();
 	}
 
 	@Override
 	public byte[] toBytes() throws IOException
 	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ByteBufferOutputStream bos = new ByteBufferOutputStream();
 		writeBytes(bos);
 		return bos.toByteArray();
 	}
@@ -306,9 +402,7 @@ public abstract class TElement implements Saveable
 	@Override
 	public void fromBytes(byte[] data) throws IOException 
 	{
-		ByteArrayInputStream bis = new ByteArrayInputStream(data);
-		readBytes(bis);
-		bis.close();
+		readBytes(new ByteBufferInputStream(ByteBuffer.wrap(data)));
 	}
 	
 }
@@ -12,7 +12,10 @@ package com.tameif.tame.element.context;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -21,6 +24,9 @@ import com.tameif.tame.element.TElement;
 import com.tameif.tame.lang.StateSaveable;
 import com.tameif.tame.lang.Value;
 import com.tameif.tame.lang.ValueSet;
+import com.tameif.tame.struct.CaseInsensitiveStringSet;
+import com.tameif.tame.struct.SerialReader;
+import com.tameif.tame.struct.SerialWriter;
 
 /**
  * Holds contextual information for a {@link TElement}.
@@ -29,12 +35,20 @@ import com.tameif.tame.lang.ValueSet;
  */
 public abstract class TElementContext<T extends TElement> implements StateSaveable
 {
-	/** Variable bank. */
+	/** Written in place of a variable bank that was never created. */
+	private static final ValueSet EMPTY_VARIABLES = new ValueSet();
+
+	/** Variable bank. Created on first set, so untouched contexts stay small. */
 	protected ValueSet variables;
 
 	/** Reference to source element. */
 	protected T element;
 
+	/** Names of variables set or cleared since changes were last cleared, or null if none. */
+	private CaseInsensitiveStringSet dirtyVariables;
+	/** If true, a variable may hold a list (lists can change without being set again). */
+	private boolean hasLists;
+
 	/**
 	 * Creates an element context.
 	 * @param element the element reference.
@@ -42,7 +56,9 @@ public abstract class TElementContext<T extends TElement> implements StateSaveab
 	protected TElementContext(T element)
 	{
 		this.element = element;
-		this.variables = new ValueSet();
+		this.variables = null;
+		this.dirtyVariables = null;
+		this.hasLists = false;
 	}
 
 	/**
@@ -61,7 +77,12 @@ public abstract class TElementContext<T extends TElement> implements StateSaveab
 	 */
 	public void setValue(String variableName, Value value)
 	{
+		if (variables == null)
+			variables = new ValueSet();
 		variables.put(variableName, value);
+		markDirty(variableName);
+		if (value.isList())
+			hasLists = true;
 	}
 
 	/**
@@ -71,7 +92,7 @@ public abstract class TElementContext<T extends TElement> implements StateSaveab
 	 */
 	public Value getValue(String variableName)
 	{
-		if (variables.containsKey(variableName))
+		if (variables != null && variables.containsKey(variableName))
 			return variables.get(variableName);
 		return Value.create(false);
 	}
@@ -82,6 +103,8 @@ public abstract class TElementContext<T extends TElement> implements StateSaveab
 	 */
 	public Iterator<String> values()
 	{
+		if (variables == null)
+			return Collections.emptyIterator();
 		return variables.names().iterator();
 	}
 	
@@ -91,8 +114,111 @@ public abstract class TElementContext<T extends TElement> implements StateSaveab
 	 */
 	public void clearValue(String variableName)
 	{
-		if (variables.containsKey(variableName))
+		if (variables != null && variables.containsKey(variableName))
+		{
 			variables.remove(variableName);
+			markDirty(variableName);
+		}
+	}
+
+	/**
+	 * Copies the variables of another context into this one, for copying state.
+	 * Changes not yet written to a delta are copied as well.
+	 * @param source the context to copy from (should be for the same element).
+	 * @param copiedLists the map of lists to their copies (see {@link Value#copy(Value, Map)}).
+	 */
+	public void copyStateFrom(TElementContext<?> source, Map<Object, Object> copiedLists)
+	{
+		variables = source.variables != null ? source.variables.copy(copiedLists) : null;
+		dirtyVariables = null;
+		if (source.dirtyVariables != null) for (String name : source.dirtyVariables)
+			markDirty(name);
+		hasLists = source.hasLists;
+	}
+
+	// Marks a variable as changed.
+	private void markDirty(String variableName)
+	{
+		if (dirtyVariables == null)
+			dirtyVariables = new CaseInsensitiveStringSet(4);
+		dirtyVariables.put(variableName);
+	}
+
+	/**
+	 * Checks if this context has changes that a delta would write.
+	 * Contexts with variables that hold lists always have changes, since lists can change without being set again.
+	 * @return true if so, false if not.
+	 * @see #writeDeltaBytes(AtomicLong, Map, OutputStream)
+	 */
+	public boolean isDirty()
+	{
+		return hasLists || (dirtyVariables != null && !dirtyVariables.isEmpty());
+	}
+
+	/**
+	 * Forgets the changes made to this context so far.
+	 */
+	public void clearDirty()
+	{
+		if (dirtyVariables != null)
+			dirtyVariables.clear();
+	}
+
+	/**
+	 * Writes the variables changed since changes were last cleared (and every variable that holds a list).
+	 * Cleared variables are written as cleared.
+	 * @param referenceCounter the reference counter to use for when unique values are seen.
+	 * @param referenceSet the reference set to use for "seen" value references - maps object reference to counter value.
+	 * @param out the output stream to write to.
+	 * @throws IOException if a write problem occurs.
+	 */
+	public void writeDeltaBytes(AtomicLong referenceCounter, Map<Object, Long> referenceSet, OutputStream out) throws IOException
+	{
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		List<String> names = new ArrayList<>(dirtyVariables != null ? dirtyVariables.size() + 2 : 2);
+		if (dirtyVariables != null) for (String name : dirtyVariables)
+			names.add(name);
+		
+		boolean lists = false;
+		if (hasLists && variables != null) for (Map.Entry<String, Value> entry : variables)
+		{
+			if (!entry.getValue().isList())
+				continue;
+			lists = true;
+			if (dirtyVariables == null || !dirtyVariables.contains(entry.getKey()))
+				names.add(entry.getKey());
+		}
+		hasLists = lists;
+		
+		sw.writeInt(out, names.size());
+		for (String name : names)
+		{
+			sw.writeString(out, name, "UTF-8");
+			boolean set = variables != null && variables.containsKey(name);
+			sw.writeBoolean(out, set);
+			if (set)
+				variables.get(name).writeReferentialBytes(referenceCounter, referenceSet, out);
+		}
+	}
+
+	/**
+	 * Reads and applies changes written by {@link #writeDeltaBytes(AtomicLong, Map, OutputStream)}.
+	 * @param referenceMap the reference map to use for "seen" value references.
+	 * @param in the input stream to read from.
+	 * @throws IOException if a read problem occurs.
+	 */
+	public void readDeltaBytes(Map<Long, Value> referenceMap, InputStream in) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		int size = sr.readInt(in);
+		while (size-- > 0)
+		{
+			String name = sr.readString(in, "UTF-8");
+			if (sr.readBoolean(in))
+				setValue(name, Value.read(referenceMap, in));
+			else
+				clearValue(name);
+		}
 	}
 
 	@Override
@@ -104,13 +230,32 @@ public abstract class TElementContext<T extends TElement> implements StateSaveab
 	@Override
 	public void writeStateBytes(TAMEModule module, AtomicLong referenceCounter, Map<Object, Long> referenceSet, OutputStream out) throws IOException 
 	{
-		variables.writeReferentialBytes(referenceCounter, referenceSet, out);
+		(variables != null ? variables : EMPTY_VARIABLES).writeReferentialBytes(referenceCounter, referenceSet, out);
+	}
+
+	/**
+	 * Writes the state of an element whose context was never created.
+	 * This writes the same bytes that {@link #writeStateBytes(TAMEModule, AtomicLong, Map, OutputStream)} 
+	 * writes for a context with no variables set.
+	 * @param referenceCounter the reference counter (for lists).
+	 * @param referenceSet the set of written references.
+	 * @param out the output stream.
+	 * @throws IOException if a write error occurs.
+	 */
+	public static void writeEmptyStateBytes(AtomicLong referenceCounter, Map<Object, Long> referenceSet, OutputStream out) throws IOException 
+	{
+		EMPTY_VARIABLES.writeReferentialBytes(referenceCounter, referenceSet, out);
 	}
 
 	@Override
 	public void readStateBytes(TAMEModule module, Map<Long, Value> referenceMap, InputStream in) throws IOException 
 	{
+		if (variables == null)
+			variables = new ValueSet();
 		variables.readReferentialBytes(referenceMap, in);
+		hasLists = false;
+		for (Map.Entry<String, Value> entry : variables)
+			hasLists |= entry.getValue().isList();
 	}
 
 }
@@ -13,12 +13,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.tameif.tame.TAMEConstants;
@@ -32,9 +37,9 @@ import com.tameif.tame.exception.ModuleStateException;
 import com.tameif.tame.lang.StateSaveable;
 import com.tameif.tame.lang.Value;
 import com.tameif.tame.struct.CaseInsensitiveStringSet;
-import com.tameif.tame.struct.HashDequeMap;
 import com.tameif.tame.struct.SerialReader;
 import com.tameif.tame.struct.SerialWriter;
+import com.tameif.tame.struct.TokenTrie;
 
 /**
  * An ownership map for all objects.
@@ -42,22 +47,54 @@ import com.tameif.tame.struct.SerialWriter;
  */
 public class TOwnershipMap implements StateSaveable, TAMEConstants
 {
+	/** Written in place of an object's strings when it has none. */
+	private static final CaseInsensitiveStringSet EMPTY_STRINGS = new CaseInsensitiveStringSet(1);
+
 	/** Current player. */
 	private TPlayer currentPlayer;
+	// The saved maps keep the order that entries were added, so that a copy is saved the same way as its source.
 	/** Room stack. */
 	protected Map<TPlayer, Deque<TRoom>> playerToRoomStack;
 	
-	// This must be a queue - order added should be reflected in retrieval and presentation.
-	/** Ownership map - objects owned by elements. */
-	protected HashDequeMap<ObjectContainer, TObject> objectsOwnedByElements;
+	// This must keep order - order added should be reflected in retrieval and presentation.
+	/** Ownership map - objects owned by elements, in order added. */
+	protected Map<ObjectContainer, OwnedList> objectsOwnedByElements;
 
 	/** Map of object to its current names. */
 	protected Map<TObject, CaseInsensitiveStringSet> objectCurrentNames;
 	/** Map of object to its current tags. */
 	protected Map<TObject, CaseInsensitiveStringSet> objectCurrentTags;
 
-	/** Reverse lookup object - not saved. */
-	protected Map<TObject, ObjectContainer> objectsToElement;
+	/** Reverse lookup object (owner and position in the owner's list) - not saved. */
+	protected Map<TObject, OwnedLink> objectsToElement;
+	/** Count of ownership changes, for cursors - not saved. */
+	private int ownershipChangeCount;
+	/** Reusable cursor (created when needed) - not saved. */
+	private ObjectCursor sharedCursor;
+	/** Reverse lookup of current (lowercase) names to objects - not saved. */
+	protected Map<String, List<TObject>> objectsByName;
+	/** Reverse lookup of current names by token, for the interpreter (shares sets with objectsByName) - not saved. */
+	protected TokenTrie<List<TObject>> objectNameTrie;
+
+	/** Shared (read-only) names that back objects without an entry in the current names, or null for none. */
+	protected Map<TObject, CaseInsensitiveStringSet> templateNames;
+	/** Shared (read-only) tags that back objects without an entry in the current tags, or null for none. */
+	protected Map<TObject, CaseInsensitiveStringSet> templateTags;
+	/** Shared (read-only) name lookup for the template names, or null for none. */
+	protected Map<String, List<TObject>> templateObjectsByName;
+	/** Shared (read-only) token name lookup for the template names, or null for none. */
+	protected TokenTrie<List<TObject>> templateNameTrie;
+
+	/** If true, everything changed since changes were last cleared - not saved. */
+	private boolean dirtyAll;
+	/** If true, the current player or a room stack changed since changes were last cleared - not saved. */
+	private boolean dirtyPlayers;
+	/** Owners whose objects changed since changes were last cleared, or null for none - not saved. */
+	private Set<ObjectContainer> dirtyOwners;
+	/** Objects whose names changed since changes were last cleared, or null for none - not saved. */
+	private Set<TObject> dirtyNames;
+	/** Objects whose tags changed since changes were last cleared, or null for none - not saved. */
+	private Set<TObject> dirtyTags;
 
 	/**
 	 * Creates a new ownership.
@@ -65,17 +102,61 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	public TOwnershipMap()
 	{
 		currentPlayer = null;
-		playerToRoomStack = new HashMap<TPlayer, Deque<TRoom>>(3);
-		objectsOwnedByElements =  new HashDequeMap<ObjectContainer, TObject>(20);
-		objectCurrentNames = new HashMap<TObject, CaseInsensitiveStringSet>();
-		objectCurrentTags = new HashMap<TObject, CaseInsensitiveStringSet>();
-		objectsToElement = new HashMap<TObject, ObjectContainer>(20);
+		playerToRoomStack = new LinkedHashMap<TPlayer, Deque<TRoom>>(3);
+		objectsOwnedByElements =  new LinkedHashMap<ObjectContainer, OwnedList>(20);
+		objectCurrentNames = new LinkedHashMap<TObject, CaseInsensitiveStringSet>();
+		objectCurrentTags = new LinkedHashMap<TObject, CaseInsensitiveStringSet>();
+		objectsToElement = new HashMap<TObject, OwnedLink>(20);
+		ownershipChangeCount = 0;
+		sharedCursor = null;
+		objectsByName = new HashMap<String, List<TObject>>(20);
+		objectNameTrie = new TokenTrie<List<TObject>>();
+		templateNames = null;
+		templateTags = null;
+		templateObjectsByName = null;
+		templateNameTrie = null;
+		clearDirty();
+	}
+	
+	/**
+	 * Creates a new ownership that starts with the names and tags of another, without copying them.
+	 * An object's names or tags are copied from the template the first time that they are changed
+	 * in this map, so the template must not change for the lifetime of this map.
+	 * @param template the template ownership map to share names and tags with.
+	 */
+	public TOwnershipMap(TOwnershipMap template)
+	{
+		currentPlayer = null;
+		playerToRoomStack = new LinkedHashMap<TPlayer, Deque<TRoom>>(2);
+		objectsOwnedByElements =  new LinkedHashMap<ObjectContainer, OwnedList>(4);
+		objectCurrentNames = new LinkedHashMap<TObject, CaseInsensitiveStringSet>(2);
+		objectCurrentTags = new LinkedHashMap<TObject, CaseInsensitiveStringSet>(2);
+		objectsToElement = new HashMap<TObject, OwnedLink>(4);
+		ownershipChangeCount = 0;
+		sharedCursor = null;
+		objectsByName = new HashMap<String, List<TObject>>(2);
+		objectNameTrie = new TokenTrie<List<TObject>>();
+		templateNames = template.objectCurrentNames;
+		templateTags = template.objectCurrentTags;
+		templateObjectsByName = template.objectsByName;
+		templateNameTrie = template.objectNameTrie;
+		clearDirty();
 	}
 	
 	/**
-	 * Clears entire ownership table.
+	 * Clears entire ownership table, and stops sharing names and tags with a template.
 	 */
 	public void reset()
+	{
+		clearState();
+		templateNames = null;
+		templateTags = null;
+		templateObjectsByName = null;
+		templateNameTrie = null;
+	}
+	
+	// Clears everything but the template.
+	private void clearState()
 	{
 		currentPlayer = null;
 		playerToRoomStack.clear();
@@ -83,6 +164,10 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 		objectCurrentNames.clear();
 		objectCurrentTags.clear();
 		objectsToElement.clear();
+		ownershipChangeCount++;
+		objectsByName.clear();
+		objectNameTrie.clear();
+		dirtyAll = true;
 	}
 	
 	/**
@@ -91,11 +176,13 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	 */
 	public void removeObject(TObject object)
 	{
-		ObjectContainer element = objectsToElement.remove(object);
-		if (element == null)
+		OwnedLink link = objectsToElement.get(object);
+		if (link == null || link.owner == null)
 			return;
 		
-		objectsOwnedByElements.removeValue(element, object);
+		dirtyOwners = markDirty(dirtyOwners, link.owner);
+		objectsOwnedByElements.get(link.owner).unlink(link);
+		ownershipChangeCount++;
 	}
 	
 	/**
@@ -105,6 +192,7 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	public void removePlayer(TPlayer player)
 	{
 		playerToRoomStack.remove(player);
+		dirtyPlayers = true;
 	}
 
 	/**
@@ -116,8 +204,17 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	public void addObjectToElement(TObject object, ObjectContainer element)
 	{
 		removeObject(object);
-		objectsToElement.put(object, element);
-		objectsOwnedByElements.add(element, object);
+
+		// links are kept after removal, so that moving an object around does not allocate.
+		OwnedLink link;
+		if ((link = objectsToElement.get(object)) == null)
+			objectsToElement.put(object, link = new OwnedLink(object));
+		OwnedList list;
+		if ((list = objectsOwnedByElements.get(element)) == null)
+			objectsOwnedByElements.put(element, list = new OwnedList(element));
+		list.link(link);
+		dirtyOwners = markDirty(dirtyOwners, element);
+		ownershipChangeCount++;
 	}
 	
 	/**
@@ -136,6 +233,7 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 		}
 		stack.clear();
 		stack.push(room);
+		dirtyPlayers = true;
 	}
 	
 	/**
@@ -152,6 +250,7 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 			playerToRoomStack.put(player, stack);
 		}
 		stack.push(room);
+		dirtyPlayers = true;
 	}
 	
 	/**
@@ -169,6 +268,7 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 		TRoom out = stack.pollFirst();
 		if (stack.size() == 0)
 			playerToRoomStack.remove(player);
+		dirtyPlayers = true;
 		return out;
 	}
 	
@@ -180,9 +280,7 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	 */
 	public boolean checkElementHasObject(ObjectContainer element, TObject object)
 	{
-		if (objectsOwnedByElements.containsKey(element))
-			return objectsOwnedByElements.get(element).contains(object);
-		return false;
+		return element != null && getObjectOwner(object) == element;
 	}
 	
 	/**
@@ -192,7 +290,7 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	 */
 	public boolean checkObjectHasNoOwner(TObject object)
 	{
-		return !objectsToElement.containsKey(object);
+		return getObjectOwner(object) == null;
 	}
 	
 	/**
@@ -215,6 +313,7 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	public void setCurrentPlayer(TPlayer player)
 	{
 		currentPlayer = player;
+		dirtyPlayers = true;
 	}
 
 	/**
@@ -248,12 +347,44 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 
 	/**
 	 * Gets the list of objects owned by an element.
+	 * The list is a copy, so this map can be changed while it is read.
 	 * @param element the element in question.
 	 * @return the list of all objects owned by the element.
+	 * @see #getObjectCursor(ObjectContainer)
 	 */
 	public Iterable<TObject> getObjectsOwnedByElement(ObjectContainer element)
 	{
-		return getObjectsInQueue(objectsOwnedByElements.get(element));
+		OwnedList list = objectsOwnedByElements.get(element);
+		List<TObject> out = new ArrayList<TObject>(list != null ? list.size : 1);
+		if (list != null) for (OwnedLink link = list.first; link != null; link = link.next)
+			out.add(link.object);
+		return out; 
+	}
+
+	/**
+	 * Gets a cursor over the objects owned by an element, in the order that they were added, without copying them.
+	 * The cursor fails with a {@link ConcurrentModificationException} if any object changes owners
+	 * while it is read - use {@link #getObjectsOwnedByElement(ObjectContainer)} for that.
+	 * @param element the element in question.
+	 * @return a new cursor.
+	 */
+	public ObjectCursor getObjectCursor(ObjectContainer element)
+	{
+		return (new ObjectCursor()).reset(element);
+	}
+
+	/**
+	 * Gets this map's reusable cursor, moved to the start of the objects owned by an element.
+	 * This returns the same cursor every time, so a read must finish before the next call -
+	 * use {@link #getObjectCursor(ObjectContainer)} for cursors that are read at the same time.
+	 * @param element the element in question.
+	 * @return the shared cursor.
+	 */
+	public ObjectCursor getSharedObjectCursor(ObjectContainer element)
+	{
+		if (sharedCursor == null)
+			sharedCursor = new ObjectCursor();
+		return sharedCursor.reset(element);
 	}
 
 	/**
@@ -263,7 +394,8 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	 */
 	public int getObjectsOwnedByElementCount(ObjectContainer element)
 	{
-		return getObjectsInQueueCount(objectsOwnedByElements.get(element));
+		OwnedList list = objectsOwnedByElements.get(element);
+		return list != null ? list.size : 0;
 	}
 
 	/** 
@@ -276,11 +408,12 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	public void addObjectName(TObject object, String name) 
 	{
 		name = name.trim().replaceAll("\\s+", " ");
-		addStringToObjectMap(objectCurrentNames, object, name);
+		CaseInsensitiveStringSet names = getWritableNames(object);
+		addName(names, object, name);
 		for (String determiner : object.getDeterminers())
 		{
 			determiner = determiner.trim().replaceAll("\\s+", " ");
-			addStringToObjectMap(objectCurrentNames, object, determiner + " " + name);
+			addName(names, object, determiner + " " + name);
 		}
 	}
 
@@ -294,11 +427,11 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	public void removeObjectName(TObject object, String name) 
 	{
 		name = name.trim().replaceAll("\\s+", " ");
-		removeStringFromObjectMap(objectCurrentNames, object, name);
+		removeName(object, name);
 		for (String determiner : object.getDeterminers())
 		{
 			determiner = determiner.trim().replaceAll("\\s+", " ");
-			removeStringFromObjectMap(objectCurrentNames, object, determiner + " " + name);
+			removeName(object, determiner + " " + name);
 		}
 	}
 
@@ -311,7 +444,7 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	 */
 	public boolean checkObjectHasName(TObject object, String name)
 	{
-		return checkStringInObjectMap(objectCurrentNames, object, name);
+		return checkStringInObjectMap(objectCurrentNames, templateNames, object, name);
 	}
 
 	/** 
@@ -323,7 +456,8 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	 */
 	public void addObjectTag(TObject object, String tag) 
 	{
-		addStringToObjectMap(objectCurrentTags, object, tag);
+		getWritableSet(objectCurrentTags, templateTags, object).put(tag);
+		dirtyTags = markDirty(dirtyTags, object);
 	}
 
 	/** 
@@ -335,7 +469,8 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	 */
 	public void removeObjectTag(TObject object, String tag) 
 	{
-		removeStringFromObjectMap(objectCurrentTags, object, tag);
+		removeStringFromObjectMap(objectCurrentTags, templateTags, object, tag);
+		dirtyTags = markDirty(dirtyTags, object);
 	}
 
 	/**
@@ -348,22 +483,156 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 	 */
 	public boolean checkObjectHasTag(TObject object, String tag)
 	{
-		return checkStringInObjectMap(objectCurrentTags, object, tag);
+		return checkStringInObjectMap(objectCurrentTags, templateTags, object, tag);
 	}
 
-	private List<TObject> getObjectsInQueue(Queue<TObject> hash)
+	/**
+	 * Gets the owner of an object.
+	 * @param object the object in question.
+	 * @return the element that owns the object, or null if no owner.
+	 */
+	public ObjectContainer getObjectOwner(TObject object)
 	{
-		List<TObject> out = new ArrayList<TObject>(hash != null ? hash.size() : 1);
-		if (hash != null) for (TObject object : hash)
-			out.add(object);
-		return out; 
+		OwnedLink link = objectsToElement.get(object);
+		return link != null ? link.owner : null;
 	}
-	
-	private int getObjectsInQueueCount(Queue<TObject> hash)
+
+	/**
+	 * Gets the objects owned by an element that have a particular name, in the order that they were added to the element.
+	 * This name is the one referred to in requests.
+	 * The cost of this lookup depends on the amount of objects with the name, not the amount owned by the element.
+	 * The output stops if the size of the output array is reached.
+	 * @param element the owning element.
+	 * @param name the name to look for.
+	 * @param outputArray the output array of found objects.
+	 * @param arrayOffset the starting offset into the array to put them.
+	 * @return the amount of objects found.
+	 */
+	public int getObjectsOwnedByElementWithName(ObjectContainer element, String name, TObject[] outputArray, int arrayOffset)
 	{
-		return hash != null ? hash.size() : 0; 
+		name = name.toLowerCase();
+		List<TObject> objects = objectsByName.get(name);
+		List<TObject> templateObjects = templateObjectsByName != null ? templateObjectsByName.get(name) : null;
+		if (objects == null && templateObjects == null)
+			return 0;
+		return addOwnedObjects(element, objects, templateObjects, outputArray, arrayOffset) - arrayOffset;
 	}
-	
+
+	/**
+	 * Creates a new matcher for finding objects by name, one input token at a time.
+	 * Only objects owned by the provided owners are matched, in the order of the owners.
+	 * The matcher is only valid until this map changes.
+	 * @param owners the owners of the objects to find (null entries are skipped).
+	 * @return a new matcher.
+	 */
+	public NameMatcher createNameMatcher(ObjectContainer ... owners)
+	{
+		return new NameMatcher(owners);
+	}
+
+	// Gets the set of names for an object that can be changed, copying it (and its lookups) from the template if needed.
+	private CaseInsensitiveStringSet getWritableNames(TObject object)
+	{
+		CaseInsensitiveStringSet names;
+		if ((names = objectCurrentNames.get(object)) == null)
+		{
+			names = getWritableSet(objectCurrentNames, templateNames, object);
+			for (String name : names)
+				addNameToIndex(object, name);
+		}
+		return names;
+	}
+
+	// Adds a name to an object's names and the name lookup.
+	private void addName(CaseInsensitiveStringSet names, TObject object, String name)
+	{
+		if (names.contains(name))
+			return;
+		names.put(name);
+		addNameToIndex(object, name);
+		dirtyNames = markDirty(dirtyNames, object);
+	}
+
+	// Removes a name from an object's names and the name lookup.
+	private void removeName(TObject object, String name)
+	{
+		CaseInsensitiveStringSet names = null;
+		if ((names = getReadableSet(objectCurrentNames, templateNames, object)) == null || !names.contains(name))
+			return;
+
+		names = getWritableNames(object);
+		names.remove(name);
+		removeNameFromIndex(object, name);
+		dirtyNames = markDirty(dirtyNames, object);
+
+		// clean up entry if no strings (an empty entry must stay if it hides a template entry).
+		if (names.isEmpty() && (templateNames == null || !templateNames.containsKey(object)))
+			objectCurrentNames.remove(object);
+	}
+
+	// Adds an object to the name lookups.
+	private void addNameToIndex(TObject object, String name)
+	{
+		name = name.toLowerCase();
+		List<TObject> objects;
+		if ((objects = objectsByName.get(name)) == null)
+		{
+			objectsByName.put(name, objects = new ArrayList<TObject>(2));
+			objectNameTrie.put(name, objects);
+		}
+		if (!objects.contains(object))
+			objects.add(object);
+	}
+
+	// Removes an object from the name lookups.
+	private void removeNameFromIndex(TObject object, String name)
+	{
+		name = name.toLowerCase();
+		List<TObject> objects;
+		if ((objects = objectsByName.get(name)) == null)
+			return;
+		objects.remove(object);
+		if (objects.isEmpty())
+		{
+			objectsByName.remove(name);
+			objectNameTrie.remove(name);
+		}
+	}
+
+	// Adds the objects in a list of candidates that are owned by an owner to an array, in the owner's order, and returns the new offset.
+	private int addOwnedObjects(ObjectContainer owner, List<TObject> objects, List<TObject> templateObjects, TObject[] outputArray, int arrayOffset)
+	{
+		int start = arrayOffset;
+		if (objects != null) for (int i = 0; i < objects.size() && arrayOffset < outputArray.length; i++)
+		{
+			TObject object = objects.get(i);
+			if (getObjectOwner(object) == owner)
+				outputArray[arrayOffset++] = object;
+		}
+		// template names only count for objects without names of their own.
+		if (templateObjects != null) for (int i = 0; i < templateObjects.size() && arrayOffset < outputArray.length; i++)
+		{
+			TObject object = templateObjects.get(i);
+			if (getObjectOwner(object) == owner && !objectCurrentNames.containsKey(object))
+				outputArray[arrayOffset++] = object;
+		}
+		
+		// the name lists are in the order that names were added - put the (few) matches back in the owner's order.
+		for (int i = start + 1; i < arrayOffset; i++)
+		{
+			TObject object = outputArray[i];
+			long position = objectsToElement.get(object).position;
+			int j = i - 1;
+			while (j >= start && objectsToElement.get(outputArray[j]).position > position)
+			{
+				outputArray[j + 1] = outputArray[j];
+				j--;
+			}
+			outputArray[j + 1] = object;
+		}
+		return arrayOffset;
+	}
+
 	private void addStringToObjectMap(Map<TObject, CaseInsensitiveStringSet> table, TObject object, String str)
 	{
 		CaseInsensitiveStringSet hash = null;
@@ -372,23 +641,48 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 		hash.put(str);
 	}
 	
-	private void removeStringFromObjectMap(Map<TObject, CaseInsensitiveStringSet> table, TObject object, String str)
+	// Gets the set of strings for an object that can be changed, copying it from the template if needed.
+	private CaseInsensitiveStringSet getWritableSet(Map<TObject, CaseInsensitiveStringSet> table, Map<TObject, CaseInsensitiveStringSet> template, TObject object)
 	{
 		CaseInsensitiveStringSet hash = null;
 		if ((hash = table.get(object)) == null)
+		{
+			CaseInsensitiveStringSet source = template != null ? template.get(object) : null;
+			hash = new CaseInsensitiveStringSet(source != null ? source.size() + 2 : 8);
+			if (source != null) for (String str : source)
+				hash.put(str);
+			table.put(object, hash);
+		}
+		return hash;
+	}
+	
+	// Gets the set of strings for an object that can only be read. 
+	private static CaseInsensitiveStringSet getReadableSet(Map<TObject, CaseInsensitiveStringSet> table, Map<TObject, CaseInsensitiveStringSet> template, TObject object)
+	{
+		CaseInsensitiveStringSet hash = null;
+		if ((hash = table.get(object)) == null && template != null)
+			hash = template.get(object);
+		return hash;
+	}
+	
+	private void removeStringFromObjectMap(Map<TObject, CaseInsensitiveStringSet> table, Map<TObject, CaseInsensitiveStringSet> template, TObject object, String str)
+	{
+		CaseInsensitiveStringSet hash = null;
+		if ((hash = getReadableSet(table, template, object)) == null || !hash.contains(str))
 			return;
 
+		hash = getWritableSet(table, template, object);
 		hash.remove(str);
 
-		// clean up entry if no strings.
-		if (hash.isEmpty())
+		// clean up entry if no strings (an empty entry must stay if it hides a template entry).
+		if (hash.isEmpty() && (template == null || !template.containsKey(object)))
 			table.remove(object);
 	}
 	
-	private boolean checkStringInObjectMap(Map<TObject, CaseInsensitiveStringSet> table, TObject object, String str)
+	private boolean checkStringInObjectMap(Map<TObject, CaseInsensitiveStringSet> table, Map<TObject, CaseInsensitiveStringSet> template, TObject object, String str)
 	{
 		CaseInsensitiveStringSet hash = null;
-		if ((hash = table.get(object)) == null)
+		if ((hash = getReadableSet(table, template, object)) == null)
 			return false;
 
 		return hash.contains(str);
@@ -400,7 +694,14 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
 
 		writeQueueMap(out, objectsOwnedByElements);
-		
+		writePlayers(sw, out);
+		writeStringMap(out, objectCurrentNames, templateNames);
+		writeStringMap(out, objectCurrentTags, templateTags);
+	}
+
+	// Writes the current player and the players' room stacks.
+	private void writePlayers(SerialWriter sw, OutputStream out) throws IOException 
+	{
 		sw.writeBoolean(out, currentPlayer != null);
 		if (currentPlayer != null)
 			sw.writeString(out, currentPlayer.getIdentity(), "UTF-8");
@@ -416,50 +717,72 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 			for (TRoom room : roomList)
 				sw.writeString(out, room.getIdentity(), "UTF-8");
 		}
-		
-		writeStringMap(out, objectCurrentNames);
-		writeStringMap(out, objectCurrentTags);
 	}
 
-	// Writes a map.
-	private void writeQueueMap(OutputStream out, HashDequeMap<? extends ObjectContainer, TObject> map) throws IOException 
+	// Writes a map (empty lists are skipped).
+	private void writeQueueMap(OutputStream out, Map<ObjectContainer, OwnedList> map) throws IOException 
 	{
 		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
-		sw.writeInt(out, map.size());
-		for (Map.Entry<? extends ObjectContainer, Deque<TObject>> elementPair : map.entrySet())
+		
+		int size = 0;
+		for (OwnedList objectList : map.values())
+			if (objectList.size > 0)
+				size++;
+		
+		sw.writeInt(out, size);
+		for (OwnedList objectList : map.values())
 		{
-			ObjectContainer element = elementPair.getKey();
-			Queue<TObject> objectList = elementPair.getValue();
-			
-			sw.writeString(out, ((TElement)element).getIdentity(), "UTF-8");
-			sw.writeInt(out, objectList.size());
-			for (TObject object : objectList)
-				sw.writeString(out, object.getIdentity(), "UTF-8");
+			if (objectList.size == 0)
+				continue;
+			writeOwnedList(sw, out, objectList.owner, objectList);
 		}
 	}
 	
-	// Writes a string map.
-	private void writeStringMap(OutputStream out, Map<TObject, CaseInsensitiveStringSet> map) throws IOException 
+	// Writes an owner's objects, in order.
+	private void writeOwnedList(SerialWriter sw, OutputStream out, ObjectContainer owner, OwnedList objectList) throws IOException 
+	{
+		sw.writeString(out, ((TElement)owner).getIdentity(), "UTF-8");
+		sw.writeInt(out, objectList != null ? objectList.size : 0);
+		if (objectList != null) for (OwnedLink link = objectList.first; link != null; link = link.next)
+			sw.writeString(out, link.object.getIdentity(), "UTF-8");
+	}
+	
+	// Writes a string map, merged with its template.
+	private void writeStringMap(OutputStream out, Map<TObject, CaseInsensitiveStringSet> map, Map<TObject, CaseInsensitiveStringSet> template) throws IOException 
 	{
 		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
-		sw.writeInt(out, map.size());
+		
+		int size = 0;
+		for (CaseInsensitiveStringSet stringList : map.values())
+			if (!stringList.isEmpty())
+				size++;
+		if (template != null) for (TObject object : template.keySet())
+			if (!map.containsKey(object))
+				size++;
+		
+		sw.writeInt(out, size);
 		for (Map.Entry<TObject, CaseInsensitiveStringSet> elementPair : map.entrySet())
-		{
-			TObject object = elementPair.getKey();
-			CaseInsensitiveStringSet stringList = elementPair.getValue();
-			
-			sw.writeString(out, object.getIdentity(), "UTF-8");
-			sw.writeInt(out, stringList.size());
-			for (String str : stringList)
-				sw.writeString(out, str, "UTF-8");
-		}
+			if (!elementPair.getValue().isEmpty())
+				writeStringSet(sw, out, elementPair.getKey(), elementPair.getValue());
+		if (template != null) for (Map.Entry<TObject, CaseInsensitiveStringSet> elementPair : template.entrySet())
+			if (!map.containsKey(elementPair.getKey()))
+				writeStringSet(sw, out, elementPair.getKey(), elementPair.getValue());
+	}
+	
+	// Writes a single object's strings.
+	private void writeStringSet(SerialWriter sw, OutputStream out, TObject object, CaseInsensitiveStringSet stringList) throws IOException 
+	{
+		sw.writeString(out, object.getIdentity(), "UTF-8");
+		sw.writeInt(out, stringList.size());
+		for (String str : stringList)
+			sw.writeString(out, str, "UTF-8");
 	}
 	
 	@Override
 	public void readStateBytes(TAMEModule module, Map<Long, Value> referenceMap, InputStream in) throws IOException 
 	{
 		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
-		reset();
+		clearState();
 		
 		int elementsize = sr.readInt(in);
 		while (elementsize-- > 0)
@@ -480,6 +803,22 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 			}
 		}
 		
+		readPlayers(module, in);
+
+		objectCurrentNames = readStringMap(module, in, templateNames);
+		objectCurrentTags = readStringMap(module, in, templateTags);
+		
+		for (Map.Entry<TObject, CaseInsensitiveStringSet> entry : objectCurrentNames.entrySet())
+			for (String name : entry.getValue())
+				addNameToIndex(entry.getKey(), name);
+	}
+
+	// Reads the current player and the players' room stacks, replacing them.
+	private void readPlayers(TAMEModule module, InputStream in) throws IOException 
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		playerToRoomStack.clear();
+
 		// has current player.
 		if (sr.readBoolean(in))
 		{
@@ -514,19 +853,16 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 			}
 			
 		}
-
-		objectCurrentNames = readStringMap(module, in);
-		objectCurrentTags = readStringMap(module, in);
 	}
 
-	// Reads a string map.
-	private HashMap<TObject, CaseInsensitiveStringSet> readStringMap(TAMEModule module, InputStream in) throws IOException 
+	// Reads a string map, keeping only the objects whose strings differ from the template (if any).
+	private Map<TObject, CaseInsensitiveStringSet> readStringMap(TAMEModule module, InputStream in, Map<TObject, CaseInsensitiveStringSet> template) throws IOException 
 	{
 		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
 		int objsize = sr.readInt(in);
-		HashMap<TObject, CaseInsensitiveStringSet> out = objsize <= 0 
-				? new HashMap<TObject, CaseInsensitiveStringSet>() 
-				: new HashMap<TObject, CaseInsensitiveStringSet>(objsize);
+		Map<TObject, CaseInsensitiveStringSet> out = objsize <= 0 
+				? new LinkedHashMap<TObject, CaseInsensitiveStringSet>() 
+				: new LinkedHashMap<TObject, CaseInsensitiveStringSet>(objsize);
 		while (objsize-- > 0)
 		{
 			String id = sr.readString(in, "UTF-8");
@@ -539,7 +875,499 @@ public class TOwnershipMap implements StateSaveable, TAMEConstants
 				addStringToObjectMap(out, object, sr.readString(in, "UTF-8"));
 		}
 		
+		if (template == null)
+			return out;
+		
+		// saves leave out objects without strings, so those need an empty entry to hide the template's.
+		for (TObject object : template.keySet())
+			if (!out.containsKey(object))
+				out.put(object, new CaseInsensitiveStringSet(1));
+		Iterator<Map.Entry<TObject, CaseInsensitiveStringSet>> it = out.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Map.Entry<TObject, CaseInsensitiveStringSet> entry = it.next();
+			if (sameStrings(entry.getValue(), template.get(entry.getKey())))
+				it.remove();
+		}
+		return out;
+	}
+	
+	// Checks if two sets of strings have the same strings.
+	private static boolean sameStrings(CaseInsensitiveStringSet set, CaseInsensitiveStringSet other)
+	{
+		if (other == null || set.size() != other.size())
+			return false;
+		for (String str : set)
+			if (!other.contains(str))
+				return false;
+		return true;
+	}
+	
+	/**
+	 * Checks if this map shares its starting names and tags with a template.
+	 * @return true if so, false if not.
+	 */
+	public boolean hasTemplate()
+	{
+		return templateNames != null;
+	}
+	
+	/**
+	 * Gets the amount of name and tag sets that this map has its own copy of (not shared with its template).
+	 * @return the amount of sets.
+	 */
+	public int getOwnStringSetCount()
+	{
+		return objectCurrentNames.size() + objectCurrentTags.size();
+	}
+	
+	/**
+	 * Creates a copy of this map, for copying state.
+	 * The copy shares this map's template (if any), and has the same unwritten changes.
+	 * @return a new ownership map.
+	 */
+	public TOwnershipMap copy()
+	{
+		TOwnershipMap out = new TOwnershipMap();
+		out.currentPlayer = currentPlayer;
+		for (Map.Entry<TPlayer, Deque<TRoom>> entry : playerToRoomStack.entrySet())
+			out.playerToRoomStack.put(entry.getKey(), new LinkedList<TRoom>(entry.getValue()));
+		
+		for (OwnedList list : objectsOwnedByElements.values())
+		{
+			OwnedList copy = new OwnedList(list.owner);
+			for (OwnedLink link = list.first; link != null; link = link.next)
+			{
+				OwnedLink linkCopy = new OwnedLink(link.object);
+				copy.link(linkCopy);
+				out.objectsToElement.put(link.object, linkCopy);
+			}
+			out.objectsOwnedByElements.put(list.owner, copy);
+		}
+		
+		copyStringMap(objectCurrentNames, out.objectCurrentNames);
+		copyStringMap(objectCurrentTags, out.objectCurrentTags);
+		for (Map.Entry<String, List<TObject>> entry : objectsByName.entrySet())
+		{
+			List<TObject> objects = new ArrayList<TObject>(entry.getValue());
+			out.objectsByName.put(entry.getKey(), objects);
+			out.objectNameTrie.put(entry.getKey(), objects);
+		}
+		
+		out.templateNames = templateNames;
+		out.templateTags = templateTags;
+		out.templateObjectsByName = templateObjectsByName;
+		out.templateNameTrie = templateNameTrie;
+		
+		out.dirtyAll = dirtyAll;
+		out.dirtyPlayers = dirtyPlayers;
+		if (dirtyOwners != null)
+			out.dirtyOwners = new LinkedHashSet<>(dirtyOwners);
+		if (dirtyNames != null)
+			out.dirtyNames = new LinkedHashSet<>(dirtyNames);
+		if (dirtyTags != null)
+			out.dirtyTags = new LinkedHashSet<>(dirtyTags);
 		return out;
 	}
 	
+	// Copies each object's strings into another map.
+	private static void copyStringMap(Map<TObject, CaseInsensitiveStringSet> source, Map<TObject, CaseInsensitiveStringSet> target)
+	{
+		for (Map.Entry<TObject, CaseInsensitiveStringSet> entry : source.entrySet())
+		{
+			CaseInsensitiveStringSet strings = new CaseInsensitiveStringSet(entry.getValue().size() + 2);
+			for (String str : entry.getValue())
+				strings.put(str);
+			target.put(entry.getKey(), strings);
+		}
+	}
+
+	// Adds something to a set of changed things, and returns the set (created if null).
+	private static <E> Set<E> markDirty(Set<E> set, E element)
+	{
+		if (set == null)
+			set = new LinkedHashSet<>(4);
+		set.add(element);
+		return set;
+	}
+	
+	/**
+	 * Checks if this map has changes that a delta would write.
+	 * @return true if so, false if not.
+	 * @see #writeDeltaBytes(TAMEModule, OutputStream)
+	 */
+	public boolean isDirty()
+	{
+		return dirtyAll 
+			|| dirtyPlayers 
+			|| (dirtyOwners != null && !dirtyOwners.isEmpty()) 
+			|| (dirtyNames != null && !dirtyNames.isEmpty()) 
+			|| (dirtyTags != null && !dirtyTags.isEmpty());
+	}
+
+	/**
+	 * Forgets the changes made to this map so far.
+	 */
+	public void clearDirty()
+	{
+		dirtyAll = false;
+		dirtyPlayers = false;
+		if (dirtyOwners != null)
+			dirtyOwners.clear();
+		if (dirtyNames != null)
+			dirtyNames.clear();
+		if (dirtyTags != null)
+			dirtyTags.clear();
+	}
+
+	/**
+	 * Writes what changed since changes were last cleared: the objects of each changed owner, 
+	 * the room stacks (if changed), and the names and tags of each changed object.
+	 * After a reset, everything is written.
+	 * @param module the source module for reference.
+	 * @param out the output stream to write to.
+	 * @throws IOException if a write problem occurs.
+	 */
+	public void writeDeltaBytes(TAMEModule module, OutputStream out) throws IOException
+	{
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		sw.writeBoolean(out, dirtyAll);
+		if (dirtyAll)
+		{
+			// ownership has no values, so no references.
+			writeStateBytes(module, null, null, out);
+			return;
+		}
+		
+		sw.writeInt(out, dirtyOwners != null ? dirtyOwners.size() : 0);
+		if (dirtyOwners != null) for (ObjectContainer owner : dirtyOwners)
+			writeOwnedList(sw, out, owner, objectsOwnedByElements.get(owner));
+		
+		sw.writeBoolean(out, dirtyPlayers);
+		if (dirtyPlayers)
+			writePlayers(sw, out);
+		
+		writeStringDelta(sw, out, dirtyNames, objectCurrentNames, templateNames);
+		writeStringDelta(sw, out, dirtyTags, objectCurrentTags, templateTags);
+	}
+
+	// Writes the current strings of each changed object.
+	private void writeStringDelta(SerialWriter sw, OutputStream out, Set<TObject> dirty, Map<TObject, CaseInsensitiveStringSet> map, Map<TObject, CaseInsensitiveStringSet> template) throws IOException 
+	{
+		sw.writeInt(out, dirty != null ? dirty.size() : 0);
+		if (dirty != null) for (TObject object : dirty)
+		{
+			CaseInsensitiveStringSet strings;
+			if ((strings = getReadableSet(map, template, object)) == null)
+				strings = EMPTY_STRINGS;
+			writeStringSet(sw, out, object, strings);
+		}
+	}
+
+	/**
+	 * Reads and applies changes written by {@link #writeDeltaBytes(TAMEModule, OutputStream)}.
+	 * @param module the source module for reference.
+	 * @param in the input stream to read from.
+	 * @throws IOException if a read problem occurs.
+	 */
+	public void readDeltaBytes(TAMEModule module, InputStream in) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		if (sr.readBoolean(in))
+		{
+			readStateBytes(module, null, in);
+			return;
+		}
+		
+		int ownersize = sr.readInt(in);
+		while (ownersize-- > 0)
+		{
+			String identity = sr.readString(in, "UTF-8");
+			TElement element = module.getElementByIdentity(identity);
+			if (!(element instanceof ObjectContainer))
+				throw new ModuleStateException("Element %s cannot be found!", identity);
+			
+			ObjectContainer owner = (ObjectContainer)element;
+			OwnedList list;
+			if ((list = objectsOwnedByElements.get(owner)) != null)
+			{
+				while (list.first != null)
+					list.unlink(list.first);
+				ownershipChangeCount++;
+			}
+			
+			int size = sr.readInt(in);
+			while (size-- > 0)
+			{
+				String id = sr.readString(in, "UTF-8");
+				TObject object = module.getObjectByIdentity(id);
+				if (object == null)
+					throw new ModuleStateException("Object %s cannot be found!", id);
+				addObjectToElement(object, owner);
+			}
+		}
+		
+		if (sr.readBoolean(in))
+			readPlayers(module, in);
+		
+		// only the strings that differ are changed, so unchanged objects keep sharing the template.
+		int namesize = sr.readInt(in);
+		while (namesize-- > 0)
+		{
+			TObject object = readDeltaObject(sr, module, in);
+			CaseInsensitiveStringSet names = readDeltaStrings(sr, in);
+			CaseInsensitiveStringSet current;
+			if ((current = getReadableSet(objectCurrentNames, templateNames, object)) != null)
+				for (String name : copyStrings(current))
+					if (!names.contains(name))
+						removeName(object, name);
+			for (String name : names)
+				if (!checkObjectHasName(object, name))
+					addName(getWritableNames(object), object, name);
+		}
+
+		int tagsize = sr.readInt(in);
+		while (tagsize-- > 0)
+		{
+			TObject object = readDeltaObject(sr, module, in);
+			CaseInsensitiveStringSet tags = readDeltaStrings(sr, in);
+			CaseInsensitiveStringSet current;
+			if ((current = getReadableSet(objectCurrentTags, templateTags, object)) != null)
+				for (String tag : copyStrings(current))
+					if (!tags.contains(tag))
+						removeStringFromObjectMap(objectCurrentTags, templateTags, object, tag);
+			for (String tag : tags)
+				if (!checkObjectHasTag(object, tag))
+					getWritableSet(objectCurrentTags, templateTags, object).put(tag);
+		}
+	}
+
+	// Reads an object identity and finds the object.
+	private static TObject readDeltaObject(SerialReader sr, TAMEModule module, InputStream in) throws IOException
+	{
+		String id = sr.readString(in, "UTF-8");
+		TObject object = module.getObjectByIdentity(id);
+		if (object == null)
+			throw new ModuleStateException("Object %s cannot be found!", id);
+		return object;
+	}
+
+	// Reads a set of strings written by writeStringSet (after the object identity).
+	private static CaseInsensitiveStringSet readDeltaStrings(SerialReader sr, InputStream in) throws IOException
+	{
+		int size = sr.readInt(in);
+		CaseInsensitiveStringSet out = new CaseInsensitiveStringSet(Math.max(size, 1));
+		while (size-- > 0)
+			out.put(sr.readString(in, "UTF-8"));
+		return out;
+	}
+	
+	// Copies a set's strings, so that the set can change while going through them.
+	private static List<String> copyStrings(CaseInsensitiveStringSet set)
+	{
+		List<String> out = new ArrayList<>(set.size());
+		for (String str : set)
+			out.add(str);
+		return out;
+	}
+	
+	/**
+	 * A single object's place in its owner's list.
+	 */
+	protected static class OwnedLink
+	{
+		/** The object. */
+		private TObject object;
+		/** The current owner, or null if none. */
+		private ObjectContainer owner;
+		/** Previous object in the owner's list. */
+		private OwnedLink previous;
+		/** Next object in the owner's list. */
+		private OwnedLink next;
+		/** Position in the owner's list (increases in order added). */
+		private long position;
+
+		private OwnedLink(TObject object)
+		{
+			this.object = object;
+			this.owner = null;
+			this.previous = null;
+			this.next = null;
+			this.position = 0L;
+		}
+	}
+
+	/**
+	 * An element's objects, in order added. Removal is constant-time.
+	 */
+	protected static class OwnedList
+	{
+		/** The owning element. */
+		private ObjectContainer owner;
+		/** First object. */
+		private OwnedLink first;
+		/** Last object. */
+		private OwnedLink last;
+		/** Amount of objects. */
+		private int size;
+		/** Position for the next object added. */
+		private long nextPosition;
+
+		private OwnedList(ObjectContainer owner)
+		{
+			this.owner = owner;
+			this.first = null;
+			this.last = null;
+			this.size = 0;
+			this.nextPosition = 0L;
+		}
+
+		// Adds an unowned link to the end.
+		private void link(OwnedLink link)
+		{
+			link.owner = owner;
+			link.previous = last;
+			link.next = null;
+			link.position = nextPosition++;
+			if (last != null)
+				last.next = link;
+			else
+				first = link;
+			last = link;
+			size++;
+		}
+
+		// Removes a link owned by this list.
+		private void unlink(OwnedLink link)
+		{
+			if (link.previous != null)
+				link.previous.next = link.next;
+			else
+				first = link.next;
+			if (link.next != null)
+				link.next.previous = link.previous;
+			else
+				last = link.previous;
+			link.owner = null;
+			link.previous = null;
+			link.next = null;
+			size--;
+		}
+	}
+
+	/**
+	 * Reads the objects owned by an element, in order, without copying them.
+	 * A cursor can be reused for another element via {@link #reset(ObjectContainer)},
+	 * and it is also its own (single-use) {@link Iterable}.
+	 * @see TOwnershipMap#getObjectCursor(ObjectContainer)
+	 */
+	public class ObjectCursor implements Iterator<TObject>, Iterable<TObject>
+	{
+		/** Next link to read. */
+		private OwnedLink nextLink;
+		/** Ownership change count when this cursor was reset. */
+		private int expectedChangeCount;
+
+		private ObjectCursor()
+		{
+			this.nextLink = null;
+			this.expectedChangeCount = ownershipChangeCount;
+		}
+
+		/**
+		 * Moves this cursor to the start of an element's objects.
+		 * @param element the element in question.
+		 * @return itself.
+		 */
+		public ObjectCursor reset(ObjectContainer element)
+		{
+			OwnedList list = objectsOwnedByElements.get(element);
+			nextLink = list != null ? list.first : null;
+			expectedChangeCount = ownershipChangeCount;
+			return this;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return nextLink != null;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @throws ConcurrentModificationException if any object changed owners since this cursor was reset.
+		 */
+		@Override
+		public TObject next()
+		{
+			if (expectedChangeCount != ownershipChangeCount)
+				throw new ConcurrentModificationException("Object ownership changed during iteration.");
+			if (nextLink == null)
+				throw new NoSuchElementException();
+			TObject out = nextLink.object;
+			nextLink = nextLink.next;
+			return out;
+		}
+
+		@Override
+		public Iterator<TObject> iterator()
+		{
+			return this;
+		}
+	}
+
+	/**
+	 * Matches objects by name, one input token at a time, from the start of a name.
+	 * @see TOwnershipMap#createNameMatcher(ObjectContainer...)
+	 */
+	public class NameMatcher
+	{
+		/** Owners to match objects in. */
+		private ObjectContainer[] owners;
+		/** Current node in this map's names. */
+		private TokenTrie.Node<List<TObject>> node;
+		/** Current node in the template names. */
+		private TokenTrie.Node<List<TObject>> templateNode;
+
+		private NameMatcher(ObjectContainer[] owners)
+		{
+			this.owners = owners;
+			this.node = objectNameTrie.getRoot();
+			this.templateNode = templateNameTrie != null ? templateNameTrie.getRoot() : null;
+		}
+
+		/**
+		 * Advances this matcher by one token.
+		 * @param lowercaseToken the next token, already converted to lowercase.
+		 * @return true if any name starts with the tokens matched so far, false if not (and no further token can match).
+		 */
+		public boolean next(String lowercaseToken)
+		{
+			node = node != null ? node.next(lowercaseToken) : null;
+			templateNode = templateNode != null ? templateNode.next(lowercaseToken) : null;
+			return node != null || templateNode != null;
+		}
+
+		/**
+		 * Gets the objects with the name made by the tokens matched so far.
+		 * The output stops if the size of the output array is reached.
+		 * @param outputArray the output array of found objects.
+		 * @param arrayOffset the starting offset into the array to put them.
+		 * @return the amount of objects found.
+		 */
+		public int getObjects(TObject[] outputArray, int arrayOffset)
+		{
+			List<TObject> objects = node != null ? node.getValue() : null;
+			List<TObject> templateObjects = templateNode != null ? templateNode.getValue() : null;
+			if (objects == null && templateObjects == null)
+				return 0;
+
+			int start = arrayOffset;
+			for (ObjectContainer owner : owners)
+				if (owner != null)
+					arrayOffset = addOwnedObjects(owner, objects, templateObjects, outputArray, arrayOffset);
+			return arrayOffset - start;
+		}
+	}
+
 }
@@ -370,7 +370,7 @@ public final class TAMEJSExporter
 			else if (type.equalsIgnoreCase(GENERATE_VERSION))
 				generateResourceVersion(writer, module);
 			else if (type.equalsIgnoreCase(GENERATE_BASE64))
-				generateResourceBinaryString(writer, module);
+				generateResourceBinaryString(writer, module, options);
 			else if (type.equalsIgnoreCase(GENERATE_HEADER))
 				generateResourceHeader(writer, module);
 			else if (type.equalsIgnoreCase(GENERATE_TITLE))
@@ -398,11 +398,12 @@ public final class TAMEJSExporter
 	 * Generates the embedded binary (as Base64).
 	 * @param writer the writer to write to.
 	 * @param module the source module.
+	 * @param options the exporter options.
 	 */
-	private static void generateResourceBinaryString(Writer writer, TAMEModule module) throws IOException
+	private static void generateResourceBinaryString(Writer writer, TAMEModule module, TAMEJSExporterOptions options) throws IOException
 	{
 		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		module.writeBytes(bos);
+		module.writeBytes(bos, options.getModuleFormatVersion());
 		writer.append('"');
 		writer.append(EncodingUtils.asBase64(new ByteArrayInputStream(bos.toByteArray())));
 		writer.append('"');
@@ -11,6 +11,8 @@ package com.tameif.tame.factory;
 
 import java.io.PrintStream;
 
+import com.tameif.tame.TAMEModule;
+
 /**
  * The set of options for exporting a module to JS. 
  * @author Matthew Tropiano
@@ -34,4 +36,15 @@ public interface TAMEJSExporterOptions
 	 */
 	public PrintStream getVerboseStream();
 	
+	/**
+	 * Gets the format version to write embedded module data in.
+	 * @return the module format version.
+	 * @see TAMEModule#FORMAT_VERSION_1
+	 * @see TAMEModule#FORMAT_VERSION_2
+	 */
+	public default int getModuleFormatVersion()
+	{
+		return TAMEModule.FORMAT_VERSION_1;
+	}
+	
 }
@@ -19,13 +19,16 @@ public class BreakInterrupt extends TAMEInterrupt
 {
 	private static final long serialVersionUID = 9182225306806559066L;
 
+	/** Shared instance, thrown by the VM. */
+	public static final BreakInterrupt INSTANCE = new BreakInterrupt();
+
 	public BreakInterrupt()
 	{
-		super("A break interrupt was thrown.");
+		super("A break interrupt was thrown.", false);
 	}
 	
 	public BreakInterrupt(String message)
 	{
-		super(message);
+		super(message, false);
 	}
 }
@@ -19,13 +19,16 @@ public class ContinueInterrupt extends TAMEInterrupt
 {
 	private static final long serialVersionUID = -8027918516813618299L;
 
+	/** Shared instance, thrown by the VM. */
+	public static final ContinueInterrupt INSTANCE = new ContinueInterrupt();
+
 	public ContinueInterrupt()
 	{
-		super("A continue interrupt was thrown.");
+		super("A continue interrupt was thrown.", false);
 	}
 	
 	public ContinueInterrupt(String message)
 	{
-		super(message);
+		super(message, false);
 	}
 }
@@ -19,14 +19,17 @@ public class EndInterrupt extends TAMEInterrupt
 {
 	private static final long serialVersionUID = -3518666904445530889L;
 
+	/** Shared instance, thrown by the VM. */
+	public static final EndInterrupt INSTANCE = new EndInterrupt();
+
 	public EndInterrupt()
 	{
-		super("An end interrupt was thrown.");
+		super("An end interrupt was thrown.", false);
 	}
 	
 	public EndInterrupt(String message)
 	{
-		super(message);
+		super(message, false);
 	}
 
 }
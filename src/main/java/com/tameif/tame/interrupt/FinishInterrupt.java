@@ -19,14 +19,17 @@ public class FinishInterrupt extends TAMEInterrupt
 {
 	private static final long serialVersionUID = -3803861797843170253L;
 
+	/** Shared instance, thrown by the VM. */
+	public static final FinishInterrupt INSTANCE = new FinishInterrupt();
+
 	public FinishInterrupt()
 	{
-		super("A finish interrupt was thrown.");
+		super("A finish interrupt was thrown.", false);
 	}
 	
 	public FinishInterrupt(String message)
 	{
-		super(message);
+		super(message, false);
 	}
 
 }
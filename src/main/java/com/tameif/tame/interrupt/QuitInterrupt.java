@@ -19,13 +19,16 @@ public class QuitInterrupt extends TAMEInterrupt
 {
 	private static final long serialVersionUID = -8310668453377717262L;
 
+	/** Shared instance, thrown by the VM. */
+	public static final QuitInterrupt INSTANCE = new QuitInterrupt();
+
 	public QuitInterrupt()
 	{
-		super("A quit interrupt was thrown.");
+		super("A quit interrupt was thrown.", false);
 	}
 	
 	public QuitInterrupt(String message)
 	{
-		super(message);
+		super(message, false);
 	}
 }
@@ -12,24 +12,44 @@ package com.tameif.tame.lang;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Queue;
 
 import com.tameif.tame.TAMEInterrupt;
+import com.tameif.tame.TAMEProgram;
 import com.tameif.tame.TAMERequest;
 import com.tameif.tame.TAMEResponse;
+import com.tameif.tame.exception.ModuleException;
+import com.tameif.tame.struct.ByteBufferInputStream;
 import com.tameif.tame.struct.SerialReader;
 import com.tameif.tame.struct.SerialWriter;
 
 /**
  * A set of operations in one block.
+ * <p>Blocks read from a version 2 module are decoded the first time that they are used, 
+ * and until then only hold where they are in the module data.
  * @author Matthew Tropiano
  */
 public class Block implements CallableType, Iterable<Operation>, Saveable
 {
 	/** List of operations. */
 	private Queue<Operation> operationQueue; 
+	/** Linked program (not saved), or null if not linked. */
+	private TAMEProgram program; 
+	
+	/** Module block data to decode operations from (not saved), or null if decoded. Never changed, only duplicated. */
+	private volatile ByteBuffer sourceData;
+	/** Offset of this block in the module block data. */
+	private int sourceOffset;
+	/** Constant pool for the module data. */
+	private ConstantPool sourcePool;
+	/** If true, link when decoded. */
+	private boolean linkPending;
+	/** If true, operations are being decoded (by the thread holding this block's lock). */
+	private boolean decoding;
 
 	/**
 	 * Creates a new empty block.
@@ -37,6 +57,29 @@ public class Block implements CallableType, Iterable<Operation>, Saveable
 	public Block()
 	{
 		this.operationQueue = new LinkedList<Operation>();
+		this.program = null;
+		this.sourceData = null;
+		this.sourceOffset = 0;
+		this.sourcePool = null;
+		this.linkPending = false;
+		this.decoding = false;
+	}
+
+	/**
+	 * Creates a block from a serialized module (version 2 and up) that is decoded the first time it is used.
+	 * The data is not copied, so it must not change (it can be a memory-mapped file).
+	 * @param pool the module's constant pool.
+	 * @param data the module's block data.
+	 * @param offset the offset of the block in the block data.
+	 * @return the new block.
+	 */
+	public static Block create(ConstantPool pool, ByteBuffer data, int offset)
+	{
+		Block out = new Block();
+		out.sourcePool = pool;
+		out.sourceOffset = offset;
+		out.sourceData = data;
+		return out;
 	}
 
 	/**
@@ -45,12 +88,15 @@ public class Block implements CallableType, Iterable<Operation>, Saveable
 	 */
 	public void add(Operation statement)
 	{
+		decode();
 		operationQueue.add(statement);
+		program = null;
 	}
 
 	@Override
 	public Iterator<Operation> iterator()
 	{
+		decode();
 		return operationQueue.iterator();
 	}
 
@@ -59,22 +105,122 @@ public class Block implements CallableType, Iterable<Operation>, Saveable
 	 */
 	public int getCount()
 	{
+		decode();
 		return operationQueue.size();
 	}
 
+	/**
+	 * Links this block into a flattened program, which is used for execution from then on.
+	 * Adding a statement to this block afterward unlinks it.
+	 * If this block is not decoded yet, it is linked when it is.
+	 * @see TAMEProgram
+	 */
+	public void link()
+	{
+		if (setLinkPending(true))
+			return;
+		program = TAMEProgram.link(this);
+	}
+	
+	/**
+	 * Unlinks this block, reverting its execution to the tree interpreter.
+	 */
+	public void unlink()
+	{
+		if (setLinkPending(false))
+			return;
+		program = null;
+	}
+	
+	// Sets if this block is linked once decoded. Returns true if not decoded yet, false if it already is.
+	private boolean setLinkPending(boolean link)
+	{
+		if (sourceData == null)
+			return false;
+		synchronized (this)
+		{
+			if (sourceData == null || decoding)
+				return false;
+			linkPending = link;
+			return true;
+		}
+	}
+	
+	// Decodes this block's operations from its module data, if not decoded yet.
+	private void decode()
+	{
+		if (sourceData == null)
+			return;
+		synchronized (this)
+		{
+			ByteBuffer data;
+			if ((data = sourceData) == null || decoding)
+				return;
+			
+			decoding = true;
+			try {
+				// cast to Buffer - ByteBuffer overrides position(int) after Java 8.
+				ByteBuffer buffer = data.duplicate();
+				((Buffer)buffer).position(sourceOffset);
+				readPooledOperations(sourcePool, new ByteBufferInputStream(buffer));
+				if (linkPending)
+					program = TAMEProgram.link(this);
+			} catch (IOException e) {
+				throw new ModuleException("Could not decode block: " + e.getMessage(), e);
+			} finally {
+				decoding = false;
+			}
+			
+			sourcePool = null;
+			linkPending = false;
+			sourceData = null;
+		}
+	}
+	
+	/**
+	 * @return the local variable slot names of the linked program, or null if not linked.
+	 * @see ValueSet#reset(String[])
+	 */
+	public String[] getLocalNames()
+	{
+		decode();
+		return program != null ? program.getLocalNames() : null;
+	}
+	
+	/**
+	 * @return true if this block is linked into a flattened program, false if not.
+	 */
+	public boolean isLinked()
+	{
+		decode();
+		return program != null;
+	}
+	
 	@Override
 	public void execute(TAMERequest request, TAMEResponse response, ValueSet blockLocal) throws TAMEInterrupt
+	{
+		decode();
+		if (program != null)
+			program.execute(request, response, blockLocal);
+		else
+			executeTree(request, response, blockLocal);
+	}
+	
+	/**
+	 * Executes this block's operations one by one (the tree interpreter),
+	 * recursing into the blocks of control operations.
+	 * @param request the request object.
+	 * @param response the response object.
+	 * @param blockLocal the block local variable bank.
+	 * @throws TAMEInterrupt if an interrupt occurs.
+	 */
+	public void executeTree(TAMERequest request, TAMEResponse response, ValueSet blockLocal) throws TAMEInterrupt
 	{
 		for (Operation operation : this)
 		{
-			if (operation.getOperation().isInternal())
-				response.trace(request, TraceType.INTERNAL, "CALL %s %s %s", 
-					operation.getOperation().toString(), 
-					operation.getOperand0() != null ? operation.getOperand0().toString() : "",
-					operation.getOperand1() != null ? operation.getOperand1().toString() : ""
-				);
-			else
-				response.trace(request, TraceType.FUNCTION, "CALL %s %s %s", 
+			TraceType traceType = operation.getOperation().isInternal() ? TraceType.INTERNAL : TraceType.FUNCTION;
+			if (request.traces(traceType))
+				response.trace(request, traceType, "CALL %s %s %s", 
 					operation.getOperation().toString(), 
 					operation.getOperand0() != null ? operation.getOperand0().toString() : "",
 					operation.getOperand1() != null ? operation.getOperand1().toString() : ""
@@ -86,6 +232,7 @@ public class Block implements CallableType, Iterable<Operation>, Saveable
 	@Override
 	public String toString()
 	{
+		decode();
 		return operationQueue.toString();
 	}
 	
@@ -105,6 +252,7 @@ public class Block implements CallableType, Iterable<Operation>, Saveable
 	@Override
 	public void writeBytes(OutputStream out) throws IOException
 	{
+		decode();
 		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
 		sw.writeInt(out, operationQueue.size());
 		for (Operation operation : this)
@@ -114,11 +262,62 @@ public class Block implements CallableType, Iterable<Operation>, Saveable
 	@Override
 	public void readBytes(InputStream in) throws IOException
 	{
+		clearSource();
 		operationQueue.clear();
+		program = null;
 		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
 		int size = sr.readInt(in);
 		while (size-- > 0)
 			add(Operation.create(in));
 	}
 
+	/**
+	 * Writes this block for a serialized module (version 2 and up), 
+	 * with its operands as constant pool indices.
+	 * @param pool the constant pool to add operands to.
+	 * @param out the output stream.
+	 * @throws IOException if a write error occurs.
+	 */
+	public void writePooledBytes(ConstantPool pool, OutputStream out) throws IOException
+	{
+		decode();
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		sw.writeVariableLengthInt(out, operationQueue.size());
+		for (Operation operation : operationQueue)
+			operation.writePooledBytes(pool, out);
+	}
+	
+	/**
+	 * Reads a block from a serialized module (version 2 and up).
+	 * @param pool the constant pool to resolve operands with.
+	 * @param in the input stream.
+	 * @return the read block.
+	 * @throws IOException if a read error occurs.
+	 */
+	static Block readPooled(ConstantPool pool, InputStream in) throws IOException
+	{
+		Block out = new Block();
+		out.readPooledOperations(pool, in);
+		return out;
+	}
+
+	// Reads operations from a serialized module into the operation queue.
+	private void readPooledOperations(ConstantPool pool, InputStream in) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		operationQueue.clear();
+		program = null;
+		int size = sr.readVariableLengthInt(in);
+		while (size-- > 0)
+			operationQueue.add(Operation.readPooled(pool, in));
+	}
+	
+	// Drops the module data, if not decoded yet.
+	private synchronized void clearSource()
+	{
+		sourcePool = null;
+		linkPending = false;
+		sourceData = null;
+	}
+
 }
@@ -9,14 +9,15 @@
  ******************************************************************************/
 package com.tameif.tame.lang;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.tameif.tame.struct.ByteBufferInputStream;
+import com.tameif.tame.struct.ByteBufferOutputStream;
 import com.tameif.tame.struct.SerialReader;
 import com.tameif.tame.struct.SerialWriter;
 
@@ -103,7 +104,7 @@ public class BlockTable implements Saveable
 	@Override
 	public byte[] toBytes() throws IOException
 	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ByteBufferOutputStream bos = new ByteBufferOutputStream();
 		writeBytes(bos);
 		return bos.toByteArray();
 	}
@@ -111,9 +112,7 @@ public class BlockTable implements Saveable
 	@Override
 	public void fromBytes(byte[] data) throws IOException 
 	{
-		ByteArrayInputStream bis = new ByteArrayInputStream(data);
-		readBytes(bis);
-		bis.close();
+		readBytes(new ByteBufferInputStream(ByteBuffer.wrap(data)));
 	}
 
 }
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * 
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.lang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+import com.tameif.tame.exception.ModuleException;
+import com.tameif.tame.struct.ByteBufferInputStream;
+import com.tameif.tame.struct.ByteBufferOutputStream;
+import com.tameif.tame.struct.SerialReader;
+import com.tameif.tame.struct.SerialWriter;
+
+/**
+ * A deduplicated pool of strings and values, shared by everything in a serialized module (version 2 and up).
+ * Strings and values are written once, and referred to by index everywhere else.
+ * <p>
+ * When writing, strings and values are added as they are encountered (values are encoded when added).
+ * When reading, the pool is read first, and indices are resolved against it.
+ * Lists are never shared: each list reference is read as a new list.
+ * @author Matthew Tropiano
+ */
+public class ConstantPool implements Saveable
+{
+	/** UTF-8 charset. */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** Strings, in index order. */
+	private List<String> strings;
+	/** String to index (writing only). */
+	private HashMap<String, Integer> stringIndexMap;
+	/** Values, in index order. */
+	private List<Value> values;
+	/** Value key to index (writing only). */
+	private HashMap<ValueKey, Integer> valueIndexMap;
+	/** Encoded values (writing only). */
+	private ByteBufferOutputStream valueData;
+
+	/**
+	 * Creates a new, empty pool.
+	 */
+	public ConstantPool()
+	{
+		this.strings = new ArrayList<>(256);
+		this.stringIndexMap = new HashMap<>(256);
+		this.values = new ArrayList<>(256);
+		this.valueIndexMap = new HashMap<>(256);
+		this.valueData = new ByteBufferOutputStream(4096);
+	}
+
+	/**
+	 * Creates this object from an input stream, expecting its byte representation.
+	 * @param in the input stream to read from.
+	 * @return the read object.
+	 * @throws IOException if a read error occurs.
+	 */
+	public static ConstantPool create(InputStream in) throws IOException
+	{
+		ConstantPool out = new ConstantPool();
+		out.readBytes(in);
+		return out;
+	}
+
+	/**
+	 * Adds a string to the pool, if not already added.
+	 * @param s the string to add.
+	 * @return the string's index.
+	 */
+	public int addString(String s)
+	{
+		Integer out;
+		if ((out = stringIndexMap.get(s)) != null)
+			return out;
+		int index = strings.size();
+		strings.add(s);
+		stringIndexMap.put(s, index);
+		return index;
+	}
+
+	/**
+	 * Adds a value to the pool, if not already added, and encodes it.
+	 * Lists are always added (and their contents before them).
+	 * @param value the value to add.
+	 * @return the value's index.
+	 * @throws IOException if the value could not be encoded.
+	 */
+	public int addValue(Value value) throws IOException
+	{
+		ValueKey key = value.isList() ? null : new ValueKey(value);
+		Integer out;
+		if (key != null && (out = valueIndexMap.get(key)) != null)
+			return out;
+
+		// write first: lists add their contents before themselves.
+		ByteBufferOutputStream bos = new ByteBufferOutputStream(16);
+		value.writePooledBytes(this, bos);
+		valueData.write(bos.toByteBuffer());
+
+		int index = values.size();
+		values.add(value);
+		if (key != null)
+			valueIndexMap.put(key, index);
+		return index;
+	}
+
+	/**
+	 * Gets a string by index.
+	 * @param index the index.
+	 * @return the corresponding string.
+	 * @throws ModuleException if the index is not in the pool.
+	 */
+	public String getString(int index)
+	{
+		if (index < 0 || index >= strings.size())
+			throw new ModuleException("String index %d is not in the constant pool.", index);
+		return strings.get(index);
+	}
+
+	/**
+	 * Gets a value by index.
+	 * Lists are copied (deeply) on each call, since they can be changed. All other values are shared.
+	 * @param index the index.
+	 * @return the corresponding value.
+	 * @throws ModuleException if the index is not in the pool.
+	 */
+	public Value getValue(int index)
+	{
+		if (index < 0 || index >= values.size())
+			throw new ModuleException("Value index %d is not in the constant pool.", index);
+		return copy(values.get(index));
+	}
+
+	/**
+	 * @return the amount of strings in this pool.
+	 */
+	public int getStringCount()
+	{
+		return strings.size();
+	}
+
+	/**
+	 * @return the amount of values in this pool.
+	 */
+	public int getValueCount()
+	{
+		return values.size();
+	}
+
+	// Copies lists deeply - other values are returned as-is.
+	private static Value copy(Value value)
+	{
+		if (!value.isList())
+			return value;
+		int len = value.length();
+		Value out = Value.createEmptyList(len);
+		for (int i = 0; i < len; i++)
+			out.listAdd(copy(value.listGet(i)));
+		return out;
+	}
+
+	@Override
+	public void writeBytes(OutputStream out) throws IOException
+	{
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		sw.writeVariableLengthInt(out, strings.size());
+		for (String s : strings)
+		{
+			byte[] b = s.getBytes(UTF_8);
+			sw.writeVariableLengthInt(out, b.length);
+			out.write(b);
+		}
+		sw.writeVariableLengthInt(out, values.size());
+		valueData.writeTo(out);
+	}
+
+	@Override
+	public void readBytes(InputStream in) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		strings.clear();
+		stringIndexMap.clear();
+		values.clear();
+		valueIndexMap.clear();
+		valueData.reset();
+
+		int size;
+		size = sr.readVariableLengthInt(in);
+		while (size-- > 0)
+			strings.add(sr.readString(in, sr.readVariableLengthInt(in), UTF_8));
+		size = sr.readVariableLengthInt(in);
+		while (size-- > 0)
+			values.add(Value.readPooled(this, in));
+	}
+
+	@Override
+	public byte[] toBytes() throws IOException
+	{
+		ByteBufferOutputStream bos = new ByteBufferOutputStream();
+		writeBytes(bos);
+		return bos.toByteArray();
+	}
+
+	@Override
+	public void fromBytes(byte[] data) throws IOException
+	{
+		readBytes(new ByteBufferInputStream(ByteBuffer.wrap(data)));
+	}
+
+	/**
+	 * Value key for deduplication - values are only the same if they are the same type
+	 * and the same exact value (not equal by comparison, like 1 and 1.0, or "a" and "A").
+	 */
+	private static class ValueKey
+	{
+		/** Value type. */
+		private final ValueType type;
+		/** Unboxed value (booleans, integers, floats). */
+		private final long primitive;
+		/** Boxed value (strings and names). */
+		private final Object value;
+
+		private ValueKey(Value value)
+		{
+			this.type = value.type;
+			this.primitive = value.value == null ? value.primitive : 0L;
+			this.value = value.value;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * (31 * type.hashCode() + Long.hashCode(primitive)) + Objects.hashCode(value);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof ValueKey))
+				return false;
+			ValueKey key = (ValueKey)obj;
+			return type == key.type && primitive == key.primitive && Objects.equals(value, key.value);
+		}
+	}
+
+}
@@ -12,6 +12,7 @@ package com.tameif.tame.lang;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.regex.Pattern;
 
 import com.tameif.tame.TAMEOperation;
 import com.tameif.tame.TAMEInterrupt;
@@ -42,11 +43,15 @@ public class Operation implements CallableType, Saveable
 	private Block successBlock;
 	/** Failure block for conditionals. */
 	private Block failureBlock;
+	/** Local variable slot for this operation's variable (not saved - set when linked), or -1 if none. */
+	private int localSlot;
+	/** Precompiled RegEx for this operation's pattern argument (not saved - set when linked), or null if none. */
+	private Pattern pattern;
 
 	// Private blank constructor for state reader.
 	private Operation()
 	{
-		// Nothing.
+		this.localSlot = -1;
 	}
 	
 	// Hidden constructor.
@@ -60,6 +65,7 @@ public class Operation implements CallableType, Saveable
 		this.stepBlock = stepBlock;
 		this.successBlock = successBlock;
 		this.failureBlock = failureBlock;
+		this.localSlot = -1;
 	}
 
 	/**
@@ -212,6 +218,44 @@ public class Operation implements CallableType, Saveable
 		return failureBlock;
 	}
 	
+	/**
+	 * Gets the local variable slot for this operation's variable, set when its block is linked.
+	 * @return the slot, or -1 if none.
+	 * @see ValueSet#get(int, String)
+	 */
+	public int getLocalSlot()
+	{
+		return localSlot;
+	}
+	
+	/**
+	 * Sets the local variable slot for this operation's variable.
+	 * @param localSlot the slot, or -1 for none.
+	 */
+	public void setLocalSlot(int localSlot)
+	{
+		this.localSlot = localSlot;
+	}
+	
+	/**
+	 * Gets the precompiled RegEx for this operation's pattern argument, set when its block is linked.
+	 * The pattern is only valid for a pattern argument that matches {@link Pattern#pattern()}.
+	 * @return the pattern, or null if none.
+	 */
+	public Pattern getPattern()
+	{
+		return pattern;
+	}
+	
+	/**
+	 * Sets the precompiled RegEx for this operation's pattern argument.
+	 * @param pattern the pattern, or null for none.
+	 */
+	public void setPattern(Pattern pattern)
+	{
+		this.pattern = pattern;
+	}
+	
 	@Override
 	public String toString()
 	{
@@ -242,16 +286,7 @@ public class Operation implements CallableType, Saveable
 	{
 		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
 		sw.writeVariableLengthInt(out, operation.ordinal());
-		
-		byte blockflags = 0;
-		blockflags |= operand0 != null ? 0x01 : 0x00;
-		blockflags |= operand1 != null ? 0x02 : 0x00;
-		blockflags |= initBlock != null ? 0x04 : 0x00;
-		blockflags |= conditionalBlock != null ? 0x08 : 0x00;
-		blockflags |= stepBlock != null ? 0x10 : 0x00;
-		blockflags |= successBlock != null ? 0x20 : 0x00;
-		blockflags |= failureBlock != null ? 0x40 : 0x00;
-		sw.writeByte(out, blockflags);
+		sw.writeByte(out, getFlags());
 		
 		if (operand0 != null)
 			operand0.writeBytes(out);
@@ -296,4 +331,81 @@ public class Operation implements CallableType, Saveable
 		
 	}
 
+	/**
+	 * Writes this operation for a serialized module (version 2 and up), 
+	 * with its operands as constant pool indices.
+	 * @param pool the constant pool to add operands to.
+	 * @param out the output stream.
+	 * @throws IOException if a write error occurs.
+	 */
+	void writePooledBytes(ConstantPool pool, OutputStream out) throws IOException
+	{
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		sw.writeVariableLengthInt(out, operation.ordinal());
+		sw.writeByte(out, getFlags());
+		
+		if (operand0 != null)
+			sw.writeVariableLengthInt(out, pool.addValue(operand0));
+		if (operand1 != null)
+			sw.writeVariableLengthInt(out, pool.addValue(operand1));
+		if (initBlock != null)
+			initBlock.writePooledBytes(pool, out);
+		if (conditionalBlock != null)
+			conditionalBlock.writePooledBytes(pool, out);
+		if (stepBlock != null)
+			stepBlock.writePooledBytes(pool, out);
+		if (successBlock != null)
+			successBlock.writePooledBytes(pool, out);
+		if (failureBlock != null)
+			failureBlock.writePooledBytes(pool, out);
+	}
+	
+	/**
+	 * Reads an operation from a serialized module (version 2 and up).
+	 * @param pool the constant pool to resolve operands with.
+	 * @param in the input stream.
+	 * @return the read operation.
+	 * @throws IOException if a read error occurs.
+	 */
+	static Operation readPooled(ConstantPool pool, InputStream in) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		Operation out = new Operation();
+		out.operation = TAMEOperation.VALUES[sr.readVariableLengthInt(in)];
+		
+		byte objectbits = sr.readByte(in);
+		
+		if ((objectbits & 0x01) != 0)
+			out.operand0 = pool.getValue(sr.readVariableLengthInt(in));
+		if ((objectbits & 0x02) != 0)
+			out.operand1 = pool.getValue(sr.readVariableLengthInt(in));
+	
+		if ((objectbits & 0x04) != 0)
+			out.initBlock = Block.readPooled(pool, in);
+		if ((objectbits & 0x08) != 0)
+			out.conditionalBlock = Block.readPooled(pool, in);
+		if ((objectbits & 0x10) != 0)
+			out.stepBlock = Block.readPooled(pool, in);
+		if ((objectbits & 0x20) != 0)
+			out.successBlock = Block.readPooled(pool, in);
+		if ((objectbits & 0x40) != 0)
+			out.failureBlock = Block.readPooled(pool, in);
+		
+		return out;
+	}
+	
+	// Gets the flags for what operands and blocks are present.
+	private byte getFlags()
+	{
+		byte blockflags = 0;
+		blockflags |= operand0 != null ? 0x01 : 0x00;
+		blockflags |= operand1 != null ? 0x02 : 0x00;
+		blockflags |= initBlock != null ? 0x04 : 0x00;
+		blockflags |= conditionalBlock != null ? 0x08 : 0x00;
+		blockflags |= stepBlock != null ? 0x10 : 0x00;
+		blockflags |= successBlock != null ? 0x20 : 0x00;
+		blockflags |= failureBlock != null ? 0x40 : 0x00;
+		return blockflags;
+	}
+
 }
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * 
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.lang;
+
+/**
+ * Describes a source of random numbers for a module context.
+ * Its state is saved with the context's save state, so that a restored context 
+ * continues with the same numbers that the saved one would have.
+ * <p>Sources are used by one request at a time, and do not need to be thread-safe.
+ * @author Matthew Tropiano
+ */
+public interface RandomSource extends Saveable
+{
+	/**
+	 * Resets this source's state from a seed.
+	 * Sources of the same type with the same seed produce the same numbers.
+	 * @param seed the seed.
+	 */
+	public void setSeed(long seed);
+
+	/**
+	 * @return the next random long (all values equally likely).
+	 */
+	public long nextLong();
+
+	/**
+	 * @return the next random double, from 0.0 (inclusive) to 1.0 (exclusive).
+	 */
+	public double nextDouble();
+
+	/**
+	 * Creates a new source, seeded from this one, that produces different numbers from this one.
+	 * This source's state changes.
+	 * @return the new source.
+	 */
+	public RandomSource split();
+
+	/**
+	 * Creates a new source in the same state as this one, that produces the same numbers as this one.
+	 * This source's state does not change.
+	 * @return the new source.
+	 */
+	public RandomSource copy();
+
+}
@@ -9,14 +9,16 @@
  ******************************************************************************/
 package com.tameif.tame.lang;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.tameif.tame.struct.ByteBufferInputStream;
+import com.tameif.tame.struct.ByteBufferOutputStream;
+
 /**
  * Describes an object that can be saved/loaded but preserves value references.
  * @author Matthew Tropiano
@@ -49,7 +51,7 @@ public interface ReferenceSaveable
 	 */
 	default byte[] toReferentialBytes(AtomicLong referenceCounter, Map<Object, Long> referenceSet) throws IOException
 	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ByteBufferOutputStream bos = new ByteBufferOutputStream();
 		writeReferentialBytes(referenceCounter, referenceSet, bos);
 		return bos.toByteArray();
 	}
@@ -62,9 +64,7 @@ public interface ReferenceSaveable
 	 */
 	default void fromReferentialBytes(Map<Long, Value> referenceMap, byte[] data) throws IOException
 	{
-		ByteArrayInputStream bis = new ByteArrayInputStream(data);
-		readReferentialBytes(referenceMap, bis);
-		bis.close();
+		readReferentialBytes(referenceMap, new ByteBufferInputStream(ByteBuffer.wrap(data)));
 	}
 	
 }
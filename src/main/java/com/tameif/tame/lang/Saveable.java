@@ -9,11 +9,13 @@
  ******************************************************************************/
 package com.tameif.tame.lang;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import com.tameif.tame.struct.ByteBufferInputStream;
+import com.tameif.tame.struct.ByteBufferOutputStream;
 
 /**
  * Describes an object that can be saved/loaded.
@@ -42,7 +44,7 @@ public interface Saveable
 	 */
 	default byte[] toBytes() throws IOException
 	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ByteBufferOutputStream bos = new ByteBufferOutputStream();
 		writeBytes(bos);
 		return bos.toByteArray();
 	}
@@ -54,9 +56,7 @@ public interface Saveable
 	 */
 	default void fromBytes(byte[] data) throws IOException
 	{
-		ByteArrayInputStream bis = new ByteArrayInputStream(data);
-		readBytes(bis);
-		bis.close();
+		readBytes(new ByteBufferInputStream(ByteBuffer.wrap(data)));
 	}
 	
 }
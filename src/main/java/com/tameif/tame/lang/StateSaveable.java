@@ -9,15 +9,16 @@
  ******************************************************************************/
 package com.tameif.tame.lang;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.tameif.tame.TAMEModule;
+import com.tameif.tame.struct.ByteBufferInputStream;
+import com.tameif.tame.struct.ByteBufferOutputStream;
 
 /**
  * Describes an object whose state that can be saved/loaded.
@@ -54,7 +55,7 @@ public interface StateSaveable
 	 */
 	default byte[] toStateBytes(TAMEModule module, AtomicLong referenceCounter, Map<Object, Long> referenceSet) throws IOException
 	{
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ByteBufferOutputStream bos = new ByteBufferOutputStream();
 		writeStateBytes(module, referenceCounter, referenceSet, bos);
 		return bos.toByteArray();
 	}
@@ -68,9 +69,7 @@ public interface StateSaveable
 	 */
 	default void fromStateBytes(TAMEModule module, Map<Long, Value> referenceMap, byte[] data) throws IOException
 	{
-		ByteArrayInputStream bis = new ByteArrayInputStream(data);
-		readStateBytes(module, referenceMap, bis);
-		bis.close();
+		readStateBytes(module, referenceMap, new ByteBufferInputStream(ByteBuffer.wrap(data)));
 	}
 
 }
@@ -21,20 +21,59 @@ import com.tameif.tame.TAMEConstants;
 import com.tameif.tame.exception.ModuleException;
 import com.tameif.tame.exception.ModuleStateException;
 import com.tameif.tame.exception.UnexpectedValueTypeException;
+import com.tameif.tame.struct.CaseInsensitiveStringMap;
 import com.tameif.tame.struct.SerialReader;
 import com.tameif.tame.struct.SerialWriter;
 import com.tameif.tame.struct.ValueUtils;
 
 /**
  * All values in the interpreter are of this type, which stores a type.
+ * <p>
+ * Booleans, integers, and floats are stored unboxed. Values are never changed after they are created 
+ * (lists are the exception - their contents are shared by reference), so common values 
+ * (true, false, small integers, zero, NaN, and the empty string) are shared instances.
+ * Shared instances cannot be read into - use {@link #read(InputStream)} or {@link #read(Map, InputStream)} to read values.
  * @author Matthew Tropiano
  */
 public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 { 	
+	/** Smallest shared integer value. */
+	private static final int SHARED_INTEGER_MIN = -128;
+	/** Largest shared integer value. */
+	private static final int SHARED_INTEGER_MAX = 1023;
+	/** Shared integer values. */
+	private static final Value[] SHARED_INTEGERS;
+	
+	/** Boolean true. */
+	public static final Value TRUE;
+	/** Boolean false. */
+	public static final Value FALSE;
+	/** Float zero. */
+	public static final Value ZERO_FLOAT;
+	/** Float NaN. */
+	public static final Value NAN;
+	/** Empty string. */
+	public static final Value EMPTY_STRING;
+
+	static
+	{
+		SHARED_INTEGERS = new Value[SHARED_INTEGER_MAX - SHARED_INTEGER_MIN + 1];
+		for (int i = 0; i < SHARED_INTEGERS.length; i++)
+			SHARED_INTEGERS[i] = new Value(ValueType.INTEGER, i + SHARED_INTEGER_MIN);
+		TRUE = new Value(ValueType.BOOLEAN, 1L);
+		FALSE = new Value(ValueType.BOOLEAN, 0L);
+		ZERO_FLOAT = new Value(ValueType.FLOAT, Double.doubleToLongBits(0.0));
+		NAN = new Value(ValueType.FLOAT, Double.doubleToLongBits(Double.NaN));
+		EMPTY_STRING = new Value();
+		EMPTY_STRING.set(ValueType.STRING, "");
+	}
+	
 	/** Value type. */
 	protected ValueType type;
-	/** Value itself. */
+	/** Value itself (null for booleans, integers, and floats). */
 	protected Object value;
+	/** Unboxed value for booleans (0 or 1), integers, and floats (as bits), or for elements, the remembered element symbol plus one. */
+	protected long primitive;
 	
 	/** Generated hashcode - created only when necessary. */
 	private int hash;
@@ -46,83 +85,90 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 	{
 		this.type = null;
 		this.value = null;
+		this.primitive = 0L;
+		this.hash = 0;
+	}
+	
+	/**
+	 * Creates an unboxed value.
+	 * @param type the value type (boolean, integer, or float).
+	 * @param primitive the unboxed value.
+	 */
+	private Value(ValueType type, long primitive)
+	{
+		this.type = type;
+		this.value = null;
+		this.primitive = primitive;
 		this.hash = 0;
 	}
 	
 	/**
 	 * Creates a boolean value.
 	 * @param value the boolean value.
-	 * @return the new value.
+	 * @return the value.
 	 */
 	public static Value create(boolean value)
 	{
-		Value out = new Value();
-		out.set(ValueType.BOOLEAN, value);
-		return out;
+		return value ? TRUE : FALSE;
 	}
 
 	/**
 	 * Creates an integer value.
 	 * @param value the integer value.
-	 * @return the new value.
+	 * @return the value.
 	 */
 	public static Value create(int value)
 	{
-		Value out = new Value();
-		out.set(ValueType.INTEGER, Long.valueOf(value));
-		return out;
+		return create((long)value);
 	}
 
 	/**
 	 * Creates a long integer value.
 	 * @param value the long value.
-	 * @return the new value.
+	 * @return the value.
 	 */
 	public static Value create(long value)
 	{
-		Value out = new Value();
-		out.set(ValueType.INTEGER, value);
-		return out;
+		if (value >= SHARED_INTEGER_MIN && value <= SHARED_INTEGER_MAX)
+			return SHARED_INTEGERS[(int)value - SHARED_INTEGER_MIN];
+		return new Value(ValueType.INTEGER, value);
 	}
 
 	/**
 	 * Creates a value typed as float.
 	 * @param value the float value.
-	 * @return the new value.
+	 * @return the value.
 	 */
 	public static Value create(float value)
 	{
-		Value out = new Value();
-		// Get rid of -0.0.
-		if (value == -0.0f)
-			value = 0.0f;
-		out.set(ValueType.FLOAT, (double)value);
-		return out;
+		return create((double)value);
 	}
 
 	/**
 	 * Creates a value typed as float.
 	 * @param value the double value.
-	 * @return the new value.
+	 * @return the value.
 	 */
 	public static Value create(double value)
 	{
-		Value out = new Value();
-		// Get rid of -0.0.
-		if (value == -0.0)
-			value = 0.0;
-		out.set(ValueType.FLOAT, value);
-		return out;
+		// Also gets rid of -0.0.
+		if (value == 0.0)
+			return ZERO_FLOAT;
+		if (Double.isNaN(value))
+			return NAN;
+		return new Value(ValueType.FLOAT, Double.doubleToLongBits(value));
 	}
 
 	/**
 	 * Creates a value typed as string.
 	 * @param value the string value.
-	 * @return the new value.
+	 * @return the value.
 	 * @throws IllegalArgumentException if value is null.
 	 */
 	public static Value create(String value)
 	{
+		if (value != null && value.length() == 0)
+			return EMPTY_STRING;
 		Value out = new Value();
 		out.set(ValueType.STRING, value);
 		return out;
@@ -242,19 +288,22 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 
 	/**
 	 * Creates a variable reference value.
+	 * Lowercase names are interned, so that variable lookups can match them by reference.
 	 * @param name the variable name.
 	 * @return the new value that represents a variable reference.
+	 * @see CaseInsensitiveStringMap#intern(String)
 	 */
 	public static Value createVariable(String name)
 	{
 		Value out = new Value();
-		out.set(ValueType.VARIABLE, name);
+		out.set(ValueType.VARIABLE, CaseInsensitiveStringMap.intern(name));
 		return out;
 	}
 
 	/**
 	 * Creates a copy of a value.
 	 * Reference-passed values only copy their reference, not creating new.
+	 * Values of all other types cannot change, so they are returned as-is.
 	 * @param inputValue the input value.
 	 * @return the new value that is a copy of the input value.
 	 * @see #isReferenceCopied()
@@ -267,33 +316,41 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 			out.set(inputValue.type, inputValue.value);
 			return out;
 		}
-		else switch (inputValue.type)
+		else if (inputValue.type == null)
+			throw new UnexpectedValueTypeException("Unknown value type.");
+		else
+			return inputValue;
+	}
+
+	/**
+	 * Creates a deep copy of a value, for copying state.
+	 * Lists are copied along with the lists in them, and each list is copied once, 
+	 * so values that shared a list share its copy (the same way that saved states keep references).
+	 * Values of all other types cannot change, so they are returned as-is.
+	 * @param inputValue the input value.
+	 * @param copiedLists the map of lists to their copies, which must compare keys by identity (see {@link java.util.IdentityHashMap}).
+	 * @return the copy of the input value.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Value copy(Value inputValue, Map<Object, Object> copiedLists)
+	{
+		if (!inputValue.isReferenceCopied())
+			return inputValue;
+		
+		Object list;
+		if ((list = copiedLists.get(inputValue.value)) == null)
 		{
-			case BOOLEAN:
-				return create((Boolean)inputValue.value);
-			case INTEGER:
-				return create((Long)inputValue.value);
-			case FLOAT:
-				return create((Double)inputValue.value);
-			case STRING:
-				return create((String)inputValue.value);
-			case OBJECT:
-				return createObject((String)inputValue.value);
-			case PLAYER:
-				return createPlayer((String)inputValue.value);
-			case CONTAINER:
-				return createContainer((String)inputValue.value);
-			case ROOM:
-				return createRoom((String)inputValue.value);
-			case WORLD:
-				return createWorld();
-			case ACTION:
-				return createAction((String)inputValue.value);
-			case VARIABLE:
-				return createVariable((String)inputValue.value);
-			default:
-				throw new UnexpectedValueTypeException("Unknown value type.");
+			ArrayList<Value> source = (ArrayList<Value>)inputValue.value;
+			ArrayList<Value> target = new ArrayList<Value>(source.size());
+			// added before its contents, in case the list contains itself.
+			copiedLists.put(source, target);
+			for (int i = 0; i < source.size(); i++)
+				target.add(copy(source.get(i), copiedLists));
+			list = target;
 		}
+		Value out = new Value();
+		out.set(ValueType.LIST, list);
+		return out;
 	}
 
 	/**
@@ -351,7 +408,7 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 					hash += 31 * listGet(i).hashCode(); 
 			}
 			else
-				hash += 31 * String.valueOf(value).hashCode();
+				hash += 31 * getValueString().hashCode();
 		}
 		return hash;
 	}
@@ -389,8 +446,12 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 			return false;
 		else if (otherValue.isStrictlyNaN())
 			return false;
+		else if (type != otherValue.type)
+			return false;
+		else if (value != null)
+			return value.equals(otherValue.value);
 		else
-			return type == otherValue.type && value.equals(otherValue.value);
+			return primitive == otherValue.primitive;
 	}
 	
 	@Override
@@ -473,9 +534,18 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 		
 	}
 
+	/**
+	 * Reads this value's representation from an input stream, looking up value references in a map.
+	 * Shared values cannot be read into, so new values should be read with {@link #read(Map, InputStream)}.
+	 * @param referenceMap the reference map to use for "seen" value references.
+	 * @param in the input stream.
+	 * @throws IOException if a read problem occurs.
+	 * @throws IllegalStateException if this is a shared value.
+	 */
 	@Override
 	public void readReferentialBytes(Map<Long, Value> referenceMap, InputStream in) throws IOException
 	{
+		checkNotShared();
 		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
 		
 		boolean isRef = sr.readBoolean(in);
@@ -488,6 +558,7 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 			
 			Value refValue = referenceMap.get(refid);
 			set(refValue.type, refValue.value);
+			primitive = refValue.primitive;
 		}
 		else
 		{
@@ -505,12 +576,37 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 		writeValueData(null, null, out);
 	}
 
+	/**
+	 * Reads this value's representation from an input stream.
+	 * Shared values cannot be read into, so new values should be read with {@link #read(InputStream)}.
+	 * @param in the input stream.
+	 * @throws IOException if a read problem occurs.
+	 * @throws IllegalStateException if this is a shared value.
+	 */
 	@Override
 	public void readBytes(InputStream in) throws IOException 
 	{
+		checkNotShared();
 		readValueData(null, in);
 	}
 
+	// Throws an exception if this is a shared value, which must never change.
+	private void checkNotShared()
+	{
+		if (isShared())
+			throw new IllegalStateException("Shared value " + this + " cannot be changed.");
+	}
+	
+	// Checks if this is one of the shared values.
+	private boolean isShared()
+	{
+		if (this == TRUE || this == FALSE || this == ZERO_FLOAT || this == NAN || this == EMPTY_STRING)
+			return true;
+		return type == ValueType.INTEGER 
+			&& primitive >= SHARED_INTEGER_MIN && primitive <= SHARED_INTEGER_MAX 
+			&& SHARED_INTEGERS[(int)primitive - SHARED_INTEGER_MIN] == this;
+	}
+
 	// Writes the value data.
 	@SuppressWarnings("unchecked")
 	private void writeValueData(AtomicLong referenceCounter, Map<Object, Long> referenceSet, OutputStream out) throws IOException
@@ -523,13 +619,13 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 			default:
 				throw new IOException("Unimplemented value type serialization.");
 			case BOOLEAN:
-				sw.writeBoolean(out, (Boolean)value);
+				sw.writeBoolean(out, primitive != 0L);
 				break;
 			case INTEGER:
-				sw.writeLong(out, (Long)value);
+				sw.writeLong(out, primitive);
 				break;
 			case FLOAT:
-				sw.writeDouble(out, (Double)value);
+				sw.writeDouble(out, Double.longBitsToDouble(primitive));
 				break;
 			case LIST:
 				ArrayList<Value> list = (ArrayList<Value>)value;
@@ -561,17 +657,20 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 	{
 		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
 		type = ValueType.VALUES[sr.readByte(in)];
+		value = null;
+		primitive = 0L;
+		hash = 0;
 		
 		switch (type)
 		{
 			case BOOLEAN:
-				value = sr.readBoolean(in);
+				primitive = sr.readBoolean(in) ? 1L : 0L;
 				break;
 			case INTEGER:
-				value = sr.readLong(in);
+				primitive = sr.readLong(in);
 				break;
 			case FLOAT:
-				value = sr.readDouble(in);
+				primitive = Double.doubleToLongBits(sr.readDouble(in));
 				break;
 			case LIST:
 			{
@@ -590,15 +689,116 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 			case ROOM:
 			case WORLD:
 			case ACTION:
-			case VARIABLE:
 				value = sr.readString(in, "UTF-8");
 				break;
+			case VARIABLE:
+				value = CaseInsensitiveStringMap.intern(sr.readString(in, "UTF-8"));
+				break;
 			default:
 				throw new ModuleException("Bad value type. Internal error!");
 		}
 	
 	}
 
+	/**
+	 * Writes this value's data for a constant pool, referring to strings and list contents by their pool index.
+	 * @param pool the pool that this is being added to.
+	 * @param out the output stream.
+	 * @throws IOException if a write error occurs.
+	 * @see ConstantPool#addValue(Value)
+	 */
+	@SuppressWarnings("unchecked")
+	void writePooledBytes(ConstantPool pool, OutputStream out) throws IOException
+	{
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		sw.writeByte(out, (byte)type.ordinal());
+
+		switch (type)
+		{
+			default:
+				throw new IOException("Unimplemented value type serialization.");
+			case BOOLEAN:
+				sw.writeBoolean(out, primitive != 0L);
+				break;
+			case INTEGER:
+				sw.writeLong(out, primitive);
+				break;
+			case FLOAT:
+				sw.writeDouble(out, Double.longBitsToDouble(primitive));
+				break;
+			case LIST:
+				ArrayList<Value> list = (ArrayList<Value>)value;
+				int[] indices = new int[list.size()];
+				for (int i = 0; i < indices.length; i++)
+					indices[i] = pool.addValue(list.get(i));
+				sw.writeVariableLengthInt(out, indices.length);
+				for (int i = 0; i < indices.length; i++)
+					sw.writeVariableLengthInt(out, indices[i]);
+				break;
+			case STRING:
+			case OBJECT:
+			case CONTAINER:
+			case PLAYER:
+			case ROOM:
+			case WORLD:
+			case ACTION:
+			case VARIABLE:
+				sw.writeVariableLengthInt(out, pool.addString(value.toString()));
+				break;
+		}
+	}
+
+	/**
+	 * Reads a value's data from a constant pool.
+	 * The strings in the pool, and all values before this one, must already be read.
+	 * @param pool the pool that this is being read into.
+	 * @param in the input stream.
+	 * @return a new value.
+	 * @throws IOException if a read error occurs.
+	 */
+	static Value readPooled(ConstantPool pool, InputStream in) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		Value out = new Value();
+		out.type = ValueType.VALUES[sr.readByte(in)];
+
+		switch (out.type)
+		{
+			case BOOLEAN:
+				out.primitive = sr.readBoolean(in) ? 1L : 0L;
+				break;
+			case INTEGER:
+				out.primitive = sr.readLong(in);
+				break;
+			case FLOAT:
+				out.primitive = Double.doubleToLongBits(sr.readDouble(in));
+				break;
+			case LIST:
+			{
+				int len = sr.readVariableLengthInt(in);
+				out.value = new ArrayList<Value>(len);
+				while (len-- > 0)
+					out.listAdd(pool.getValue(sr.readVariableLengthInt(in)));
+				break;
+			}
+			case STRING:
+			case OBJECT:
+			case CONTAINER:
+			case PLAYER:
+			case ROOM:
+			case WORLD:
+			case ACTION:
+				out.value = pool.getString(sr.readVariableLengthInt(in));
+				break;
+			case VARIABLE:
+				out.value = CaseInsensitiveStringMap.intern(pool.getString(sr.readVariableLengthInt(in)));
+				break;
+			default:
+				throw new ModuleException("Bad value type. Internal error!");
+		}
+		return out;
+	}
+
 	/**
 	 * Returns this value's type.
 	 * @return this value's type.
@@ -609,11 +809,21 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 	}
 
 	/**
-	 * @return the underlying object wrapping the value.
+	 * @return the underlying object wrapping the value (booleans, integers, and floats are boxed on each call).
 	 */
 	public Object getValue() 
 	{
-		return value;
+		switch (type)
+		{
+			case BOOLEAN:
+				return primitive != 0L;
+			case INTEGER:
+				return primitive;
+			case FLOAT:
+				return Double.longBitsToDouble(primitive);
+			default:
+				return value;
+		}
 	}
 	
 	/**
@@ -623,7 +833,7 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 	public boolean asBoolean()
 	{
 		if (isBoolean())
-			return (Boolean)value;
+			return primitive != 0L;
 		else if (isNumeric())
 		{
 			double d = asDouble();
@@ -641,14 +851,12 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 	 */
 	public long asLong()
 	{
+		if (isInteger() || isBoolean())
+			return primitive;
 		if (isInfinite() || isNaN())
 			return 0L;
-		if (isBoolean())
-			return asBoolean() ? 1L : 0L;
-		if (isInteger())
-			return (Long)value;
 		if (isFloatingPoint())
-			return (long)(double)(Double)value;
+			return (long)Double.longBitsToDouble(primitive);
 		if (isString())
 		{
 			try {
@@ -667,11 +875,11 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 	public double asDouble()
 	{
 		if (isBoolean())
-			return asBoolean() ? 1.0 : 0.0;
+			return (double)primitive;
 		if (isInteger())
-			return (double)(Long)value;
+			return (double)primitive;
 		if (isFloatingPoint())
-			return (Double)value;
+			return Double.longBitsToDouble(primitive);
 		if (isString())
 		{
 			if (((String)value).equalsIgnoreCase("NaN"))
@@ -714,7 +922,23 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 			return sb.toString();
 		}
 		else
-			return String.valueOf(value);
+			return getValueString();
+	}
+
+	// Gets the string of the underlying value, as String.valueOf(getValue()) would, without boxing.
+	private String getValueString()
+	{
+		switch (type)
+		{
+			case BOOLEAN:
+				return primitive != 0L ? "true" : "false";
+			case INTEGER:
+				return Long.toString(primitive);
+			case FLOAT:
+				return Double.toString(Double.longBitsToDouble(primitive));
+			default:
+				return String.valueOf(value);
+		}
 	}
 
 	/**
@@ -847,6 +1071,29 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 			|| type == ValueType.WORLD;
 	}
 	
+	/**
+	 * Gets the element symbol remembered by this element value, so that it does not need to be looked up by identity again.
+	 * A symbol is only a hint: it must be checked against the element's identity, since the same value could be used with another module.
+	 * @return the remembered symbol, or -1 if none or this is not an element value.
+	 * @see #setElementSymbol(int)
+	 */
+	public int getElementSymbol()
+	{
+		return isElement() ? (int)primitive - 1 : -1;
+	}
+	
+	/**
+	 * Remembers the element symbol for this element value.
+	 * Does nothing if this is not an element value. This does not change this value's identity, equality, or hash.
+	 * @param symbol the element symbol.
+	 * @see com.tameif.tame.TAMEModule#getElementSymbol(String)
+	 */
+	public void setElementSymbol(int symbol)
+	{
+		if (isElement())
+			primitive = symbol + 1;
+	}
+	
 	/**
 	 * Returns if this value represents an object container.
 	 * @return true if so, false if not.
@@ -1066,7 +1313,7 @@ public class Value implements Comparable<Value>, Saveable, ReferenceSaveable
 	@Override
 	public String toString()
 	{
-		return type + "[" + ValueUtils.escapeString(String.valueOf(value)) + "]";
+		return type + "[" + ValueUtils.escapeString(getValueString()) + "]";
 	}
 	
 	/**
@@ -12,6 +12,9 @@ package com.tameif.tame.lang;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -26,11 +29,19 @@ import com.tameif.tame.struct.Sizable;
 /**
  * Convenience class for Value lookup tables.
  * All variable names are case-insensitive!
+ * <p>
+ * A set can also have numbered slots for a fixed list of names (see {@link #reset(String[])}), 
+ * which is how linked blocks store their local variables: operations that know their variable's slot
+ * read and write it by index, and everything else still works by name.
  * @author Matthew Tropiano
  */
 public class ValueSet implements ReferenceSaveable, Iterable<Map.Entry<String, Value>>, Sizable
 {
 	private CaseInsensitiveStringMap<Value> valueMap; 
+	/** Slot names (lowercase), or null for no slots. */
+	private String[] slotNames;
+	/** Slot values (null if not set). Can be longer than the amount of slots. */
+	private Value[] slotValues;
 	
 	/**
 	 * Creates a new ValueHash.
@@ -38,6 +49,8 @@ public class ValueSet implements ReferenceSaveable, Iterable<Map.Entry<String, V
 	public ValueSet()
 	{
 		this.valueMap = new CaseInsensitiveStringMap<>(4);
+		this.slotNames = null;
+		this.slotValues = null;
 	}
 	
 	/**
@@ -64,12 +77,62 @@ public class ValueSet implements ReferenceSaveable, Iterable<Map.Entry<String, V
 			put(pair.getKey(), Value.create(pair.getValue()));
 	}
 
+	/**
+	 * Creates a deep copy of this hash, for copying state.
+	 * @param copiedLists the map of lists to their copies (see {@link Value#copy(Value, Map)}).
+	 * @return a new hash with copies of this one's values.
+	 */
+	public ValueSet copy(Map<Object, Object> copiedLists)
+	{
+		ValueSet out = new ValueSet();
+		for (Map.Entry<String, Value> pair : valueMap)
+			out.valueMap.put(pair.getKey(), Value.copy(pair.getValue(), copiedLists));
+		// slot names never change, so they can be shared.
+		out.slotNames = slotNames;
+		if (slotValues != null)
+		{
+			out.slotValues = new Value[slotValues.length];
+			for (int i = 0; i < slotValues.length; i++)
+				if (slotValues[i] != null)
+					out.slotValues[i] = Value.copy(slotValues[i], copiedLists);
+		}
+		return out;
+	}
+
 	/**
 	 * Clears this hash.
 	 */
 	public void clear() 
 	{
-		valueMap.clear();
+		if (!valueMap.isEmpty())
+			valueMap.clear();
+		if (slotValues != null)
+			Arrays.fill(slotValues, null);
+	}
+
+	/**
+	 * Clears this hash and sets its slots, so that it can be reused.
+	 * @param slotNames the new slot names (lowercase, no duplicates), or null for no slots.
+	 */
+	public void reset(String[] slotNames)
+	{
+		clear();
+		this.slotNames = slotNames;
+		if (slotNames != null && (slotValues == null || slotValues.length < slotNames.length))
+			slotValues = new Value[slotNames.length];
+	}
+
+	/**
+	 * Gets the slot for a variable name.
+	 * @param variableName the variable name.
+	 * @return the slot index, or -1 if this set has no slot for that name.
+	 */
+	public int getSlot(String variableName)
+	{
+		if (slotNames != null) for (int i = 0; i < slotNames.length; i++)
+			if (slotNames[i].equalsIgnoreCase(variableName))
+				return i;
+		return -1;
 	}
 
 	/**
@@ -79,6 +142,19 @@ public class ValueSet implements ReferenceSaveable, Iterable<Map.Entry<String, V
 	 */
 	public Value get(String variableName)
 	{
+		return get(getSlot(variableName), variableName);
+	}
+
+	/**
+	 * Gets a value on this hash, by slot if this set has slots.
+	 * @param slot the variable's slot, or -1 if not known.
+	 * @param variableName the variable name, used if this set has no slots or the slot is not known.
+	 * @return the corresponding value, or null.
+	 */
+	public Value get(int slot, String variableName)
+	{
+		if (slot >= 0 && slotNames != null)
+			return slotValues[slot];
 		return valueMap.get(variableName);
 	}
 
@@ -89,7 +165,21 @@ public class ValueSet implements ReferenceSaveable, Iterable<Map.Entry<String, V
 	 */
 	public void put(String variableName, Value value) 
 	{
-		valueMap.put(variableName, value);
+		put(getSlot(variableName), variableName, value);
+	}
+
+	/**
+	 * Sets a value on this hash, by slot if this set has slots.
+	 * @param slot the variable's slot, or -1 if not known.
+	 * @param variableName the variable name, used if this set has no slots or the slot is not known.
+	 * @param value the value.
+	 */
+	public void put(int slot, String variableName, Value value) 
+	{
+		if (slot >= 0 && slotNames != null)
+			slotValues[slot] = value;
+		else
+			valueMap.put(variableName, value);
 	}
 
 	/**
@@ -98,7 +188,20 @@ public class ValueSet implements ReferenceSaveable, Iterable<Map.Entry<String, V
 	 */
 	public void remove(String variableName)
 	{
-		valueMap.remove(variableName);
+		remove(getSlot(variableName), variableName);
+	}
+
+	/**
+	 * Clears a variable from the hash, by slot if this set has slots.
+	 * @param slot the variable's slot, or -1 if not known.
+	 * @param variableName the variable name, used if this set has no slots or the slot is not known.
+	 */
+	public void remove(int slot, String variableName)
+	{
+		if (slot >= 0 && slotNames != null)
+			slotValues[slot] = null;
+		else
+			valueMap.remove(variableName);
 	}
 
 	/**
@@ -108,6 +211,19 @@ public class ValueSet implements ReferenceSaveable, Iterable<Map.Entry<String, V
 	 */
 	public boolean containsKey(String variableName)
 	{
+		return containsKey(getSlot(variableName), variableName);
+	}
+
+	/**
+	 * Checks if a variable is defined on this hash, by slot if this set has slots.
+	 * @param slot the variable's slot, or -1 if not known.
+	 * @param variableName the variable name, used if this set has no slots or the slot is not known.
+	 * @return if the variable exists or not.
+	 */
+	public boolean containsKey(int slot, String variableName)
+	{
+		if (slot >= 0 && slotNames != null)
+			return slotValues[slot] != null;
 		return valueMap.containsKey(variableName);
 	}
 
@@ -116,13 +232,26 @@ public class ValueSet implements ReferenceSaveable, Iterable<Map.Entry<String, V
 	 */
 	public List<String> names()
 	{
-		return valueMap.keys();
+		List<String> out = valueMap.keys();
+		if (slotNames != null) for (int i = 0; i < slotNames.length; i++)
+			if (slotValues[i] != null)
+				out.add(slotNames[i]);
+		return out;
 	}
 
 	@Override
 	public Iterator<Entry<String, Value>> iterator()
 	{
-		return valueMap.iterator();
+		if (slotNames == null)
+			return valueMap.iterator();
+		
+		List<Entry<String, Value>> out = new ArrayList<>(size());
+		for (Entry<String, Value> entry : valueMap)
+			out.add(entry);
+		for (int i = 0; i < slotNames.length; i++)
+			if (slotValues[i] != null)
+				out.add(new AbstractMap.SimpleImmutableEntry<>(slotNames[i], slotValues[i]));
+		return out.iterator();
 	}
 
 	@Override
@@ -154,7 +283,11 @@ public class ValueSet implements ReferenceSaveable, Iterable<Map.Entry<String, V
 	@Override
 	public int size()
 	{
-		return valueMap.size();
+		int out = valueMap.size();
+		if (slotNames != null) for (int i = 0; i < slotNames.length; i++)
+			if (slotValues[i] != null)
+				out++;
+		return out;
 	}
 
 	@Override
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * 
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.lang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.tameif.tame.exception.ModuleStateException;
+import com.tameif.tame.struct.SerialReader;
+import com.tameif.tame.struct.SerialWriter;
+
+/**
+ * The default random source: xoshiro256** (Blackman and Vigna).
+ * Fast, not synchronized, and its whole state is four longs.
+ * @author Matthew Tropiano
+ */
+public class XoshiroRandom implements RandomSource
+{
+	/** State, part 0. */
+	private long s0;
+	/** State, part 1. */
+	private long s1;
+	/** State, part 2. */
+	private long s2;
+	/** State, part 3. */
+	private long s3;
+
+	/**
+	 * Creates a new random source with an arbitrary seed.
+	 */
+	public XoshiroRandom()
+	{
+		this(ThreadLocalRandom.current().nextLong());
+	}
+
+	/**
+	 * Creates a new random source from a seed.
+	 * @param seed the seed.
+	 */
+	public XoshiroRandom(long seed)
+	{
+		setSeed(seed);
+	}
+
+	@Override
+	public void setSeed(long seed)
+	{
+		// SplitMix64, as recommended for seeding - never makes an all-zero state.
+		s0 = mix(seed += 0x9E3779B97F4A7C15L);
+		s1 = mix(seed += 0x9E3779B97F4A7C15L);
+		s2 = mix(seed += 0x9E3779B97F4A7C15L);
+		s3 = mix(seed += 0x9E3779B97F4A7C15L);
+	}
+
+	@Override
+	public long nextLong()
+	{
+		long out = Long.rotateLeft(s1 * 5, 7) * 9;
+		long t = s1 << 17;
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		return out;
+	}
+
+	@Override
+	public double nextDouble()
+	{
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	@Override
+	public RandomSource split()
+	{
+		return new XoshiroRandom(nextLong());
+	}
+
+	@Override
+	public RandomSource copy()
+	{
+		XoshiroRandom out = new XoshiroRandom(0L);
+		out.s0 = s0;
+		out.s1 = s1;
+		out.s2 = s2;
+		out.s3 = s3;
+		return out;
+	}
+
+	@Override
+	public void writeBytes(OutputStream out) throws IOException
+	{
+		SerialWriter sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		sw.writeLong(out, s0);
+		sw.writeLong(out, s1);
+		sw.writeLong(out, s2);
+		sw.writeLong(out, s3);
+	}
+
+	@Override
+	public void readBytes(InputStream in) throws IOException
+	{
+		SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		long r0 = sr.readLong(in);
+		long r1 = sr.readLong(in);
+		long r2 = sr.readLong(in);
+		long r3 = sr.readLong(in);
+		if ((r0 | r1 | r2 | r3) == 0L)
+			throw new ModuleStateException("Bad random state - all zero.");
+		s0 = r0;
+		s1 = r1;
+		s2 = r2;
+		s3 = r3;
+	}
+
+	// SplitMix64 output function.
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.struct;
+
+import java.util.Arrays;
+
+/**
+ * A stack backed by an array that grows as needed.
+ * Unlike a {@link java.util.LinkedList}, pushing does not allocate once the array is big enough,
+ * so a stack can be cleared and reused without generating garbage.
+ * @author Matthew Tropiano
+ * @param <T> the type of object stored.
+ */
+public class ArrayStack<T> implements Sizable
+{
+	/** The stack items, bottom first. */
+	private Object[] items;
+	/** The amount of items on the stack. */
+	private int size;
+
+	/**
+	 * Creates a new, empty stack.
+	 * @param capacity the initial capacity.
+	 */
+	public ArrayStack(int capacity)
+	{
+		this.items = new Object[Math.max(capacity, 1)];
+		this.size = 0;
+	}
+
+	/**
+	 * Pushes an item onto the top of the stack.
+	 * @param item the item to push.
+	 */
+	public void push(T item)
+	{
+		if (size == items.length)
+			items = Arrays.copyOf(items, items.length * 2);
+		items[size++] = item;
+	}
+
+	/**
+	 * Removes the item on the top of the stack and returns it.
+	 * @return the removed item, or null if the stack is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public T pop()
+	{
+		if (size == 0)
+			return null;
+		T out = (T)items[--size];
+		items[size] = null;
+		return out;
+	}
+
+	/**
+	 * Looks at the item on the top of the stack.
+	 * @return the top item, or null if the stack is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public T peek()
+	{
+		return size > 0 ? (T)items[size - 1] : null;
+	}
+
+	/**
+	 * Removes all items from the stack.
+	 * The stack keeps its current capacity.
+	 */
+	public void clear()
+	{
+		Arrays.fill(items, 0, size, null);
+		size = 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+}
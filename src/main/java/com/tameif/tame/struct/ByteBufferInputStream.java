@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.struct;
+
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream that reads from a {@link ByteBuffer}, from its position to its limit,
+ * advancing its position. Bytes are read straight from the buffer, so a memory-mapped file
+ * can be decoded with stream readers without copying it first.
+ * <p>This stream does not need to be closed, and is not thread-safe (neither are buffers).
+ * @author Matthew Tropiano
+ */
+public class ByteBufferInputStream extends InputStream
+{
+	/** The buffer to read from. */
+	private ByteBuffer buffer;
+	/** Marked position. */
+	private int mark;
+
+	/**
+	 * Creates a new stream that reads from a buffer.
+	 * @param buffer the buffer to read from.
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer)
+	{
+		this.buffer = buffer;
+		this.mark = buffer.position();
+	}
+
+	/**
+	 * @return the buffer that this reads from.
+	 */
+	public ByteBuffer getBuffer()
+	{
+		return buffer;
+	}
+
+	@Override
+	public int read()
+	{
+		return buffer.hasRemaining() ? buffer.get() & 0x0ff : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len)
+	{
+		if (len == 0)
+			return 0;
+		if (!buffer.hasRemaining())
+			return -1;
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public long skip(long n)
+	{
+		if (n <= 0)
+			return 0;
+		int len = (int)Math.min(n, buffer.remaining());
+		// cast to Buffer - ByteBuffer overrides position(int) after Java 8.
+		((Buffer)buffer).position(buffer.position() + len);
+		return len;
+	}
+
+	@Override
+	public int available()
+	{
+		return buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return true;
+	}
+
+	@Override
+	public void mark(int readlimit)
+	{
+		mark = buffer.position();
+	}
+
+	@Override
+	public void reset()
+	{
+		((Buffer)buffer).position(mark);
+	}
+
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.struct;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * An output stream that writes to a growable {@link ByteBuffer}.
+ * Unlike {@link java.io.ByteArrayOutputStream}, nothing is synchronized, and {@link SerialWriter}
+ * puts primitive values straight into the buffer instead of going through byte arrays.
+ * <p>This stream does not need to be closed, and is not thread-safe.
+ * @author Matthew Tropiano
+ */
+public class ByteBufferOutputStream extends OutputStream
+{
+	/** The buffer to write to (little-endian). */
+	private ByteBuffer buffer;
+
+	/**
+	 * Creates a new stream with a default starting capacity.
+	 */
+	public ByteBufferOutputStream()
+	{
+		this(256);
+	}
+
+	/**
+	 * Creates a new stream.
+	 * @param capacity the starting capacity in bytes.
+	 */
+	public ByteBufferOutputStream(int capacity)
+	{
+		this.buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Makes room for more bytes, growing the buffer if needed.
+	 * @param length the amount of bytes to make room for.
+	 * @return the buffer to put them into (little-endian, positioned after the written bytes).
+	 */
+	public ByteBuffer reserve(int length)
+	{
+		if (buffer.remaining() < length)
+		{
+			ByteBuffer next = ByteBuffer.allocate(Math.max(buffer.capacity() << 1, buffer.position() + length)).order(ByteOrder.LITTLE_ENDIAN);
+			// cast to Buffer - ByteBuffer overrides flip() after Java 8.
+			((Buffer)buffer).flip();
+			next.put(buffer);
+			buffer = next;
+		}
+		return buffer;
+	}
+
+	@Override
+	public void write(int b)
+	{
+		reserve(1).put((byte)b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len)
+	{
+		reserve(len).put(b, off, len);
+	}
+
+	/**
+	 * Writes the remaining bytes in a buffer, advancing its position.
+	 * @param src the buffer to write.
+	 */
+	public void write(ByteBuffer src)
+	{
+		reserve(src.remaining()).put(src);
+	}
+
+	/**
+	 * @return the amount of bytes written.
+	 */
+	public int size()
+	{
+		return buffer.position();
+	}
+
+	/**
+	 * Discards all written bytes, keeping the buffer for reuse.
+	 */
+	public void reset()
+	{
+		((Buffer)buffer).clear();
+	}
+
+	/**
+	 * Gets the written bytes as a buffer, without copying them.
+	 * The returned buffer is only valid until the next write or reset.
+	 * @return a new read-only buffer over the written bytes.
+	 */
+	public ByteBuffer toByteBuffer()
+	{
+		ByteBuffer out = buffer.asReadOnlyBuffer();
+		((Buffer)out).flip();
+		return out;
+	}
+
+	/**
+	 * @return a copy of the written bytes.
+	 */
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	/**
+	 * Writes the written bytes to another stream.
+	 * @param out the output stream.
+	 * @throws IOException if a write error occurs.
+	 */
+	public void writeTo(OutputStream out) throws IOException
+	{
+		out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+	}
+
+}
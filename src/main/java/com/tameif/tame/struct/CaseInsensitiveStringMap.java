@@ -1,51 +1,130 @@
 package com.tameif.tame.struct;
 
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Case-insensitive set map of string to value.
+ * <p>
+ * Lookups go through an open-addressing table that hashes and compares keys case-insensitively,
+ * so ASCII keys never need to be lowercased (and copied) to be found. Keys are kept lowercase,
+ * and iterate in the same order that a {@link HashMap} of the lowercase keys would, since module
+ * and save state bytes are written in that order.
  * @author Matthew Tropiano
  * @param <V> the value type.
  */
 public class CaseInsensitiveStringMap<V> implements Iterable<Map.Entry<String, V>>, Sizable
 {
-	/** Internal map. */
-	private Map<String, V> map;
+	/** If ASCII letters lowercase to ASCII letters in the default locale (they do not in some). */
+	private static final boolean ASCII_FOLDING = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toLowerCase().equals("abcdefghijklmnopqrstuvwxyz");
+	/** Most keys held in the pool of interned keys. */
+	private static final int MAX_INTERNED_KEYS = 4096;
+	/** Pool of interned keys (lowercase only, and never more than MAX_INTERNED_KEYS). */
+	private static final Map<String, String> INTERNED_KEYS = new ConcurrentHashMap<>(256);
+
+	/** Internal map of lowercase key to entry, for iteration order. */
+	private Map<String, Node<V>> map;
+	/** Lookup table (open addressing, linear probing), or null until the first entry is added. Length is a power of two. */
+	private Node<V>[] table;
 
 	public CaseInsensitiveStringMap(int capacity)
 	{
-		this.map = new HashMap<String, V>(capacity);
+		this.map = new HashMap<String, Node<V>>(capacity);
+		this.table = null;
+	}
+
+	/**
+	 * Gets the shared instance of a lowercase key.
+	 * Meant for keys that are known when a module is loaded, like variable names in compiled operands, 
+	 * so that they are found by reference in every map that they are stored in.
+	 * Keys that are not already lowercase are returned as-is, and so are new keys once the pool is full,
+	 * since the pool is never cleared. Either way, lookups with the returned key still work.
+	 * @param key the key.
+	 * @return the interned key, or the same key if it was not interned.
+	 */
+	public static String intern(String key)
+	{
+		if (!isFolded(key))
+			return key;
+		String out;
+		if ((out = INTERNED_KEYS.get(key)) != null)
+			return out;
+		if (INTERNED_KEYS.size() >= MAX_INTERNED_KEYS)
+			return key;
+		return (out = INTERNED_KEYS.putIfAbsent(key, key)) != null ? out : key;
 	}
 
-	public void clear() 
+	public void clear()
 	{
-		map.clear();
+		if (!map.isEmpty())
+		{
+			map.clear();
+			Arrays.fill(table, null);
+		}
 	}
 
 	public V get(String variableName)
 	{
-		return map.get(variableName.toLowerCase());
+		Node<V> node = find(variableName);
+		return node != null ? node.value : null;
 	}
 
-	public void put(String variableName, V value) 
+	public void put(String variableName, V value)
 	{
-		map.put(variableName.toLowerCase(), value);
+		Node<V> node;
+		if ((node = find(variableName)) != null)
+		{
+			node.value = value;
+			return;
+		}
+
+		String key = isFolded(variableName) ? variableName : variableName.toLowerCase();
+		node = new Node<>(key, value);
+		map.put(key, node);
+		if (table == null)
+			rehash(4);
+		else if (map.size() * 2 > table.length)
+			rehash(table.length << 1);
+		else
+			insert(table, node);
 	}
 
 	public void remove(String variableName)
 	{
-		map.remove(variableName.toLowerCase());
+		Node<V> node;
+		if ((node = find(variableName)) == null)
+			return;
+
+		map.remove(node.key);
+		int mask = table.length - 1;
+		int i = indexOf(node);
+		table[i] = null;
+
+		// shift back any following entries that can no longer be found.
+		Node<V> next;
+		for (int j = (i + 1) & mask; (next = table[j]) != null; j = (j + 1) & mask)
+		{
+			int home = spread(next.hash) & mask;
+			if (((j - home) & mask) >= ((j - i) & mask))
+			{
+				table[i] = next;
+				table[j] = null;
+				i = j;
+			}
+		}
 	}
 
 	public boolean containsKey(String variableName)
 	{
-		return map.containsKey(variableName.toLowerCase());
+		return find(variableName) != null;
 	}
 
 	public List<String> keys()
@@ -56,7 +135,21 @@ public class CaseInsensitiveStringMap<V> implements Iterable<Map.Entry<String, V
 	@Override
 	public Iterator<Entry<String, V>> iterator()
 	{
-		return map.entrySet().iterator();
+		final Iterator<Node<V>> it = map.values().iterator();
+		return new Iterator<Entry<String, V>>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return it.hasNext();
+			}
+
+			@Override
+			public Entry<String, V> next()
+			{
+				return it.next();
+			}
+		};
 	}
 
 	/**
@@ -64,7 +157,34 @@ public class CaseInsensitiveStringMap<V> implements Iterable<Map.Entry<String, V
 z	 */
 	public Collection<V> values()
 	{
-		return map.values();
+		return new AbstractCollection<V>()
+		{
+			@Override
+			public Iterator<V> iterator()
+			{
+				final Iterator<Node<V>> it = map.values().iterator();
+				return new Iterator<V>()
+				{
+					@Override
+					public boolean hasNext()
+					{
+						return it.hasNext();
+					}
+
+					@Override
+					public V next()
+					{
+						return it.next().value;
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return map.size();
+			}
+		};
 	}
 
 	@Override
@@ -74,9 +194,155 @@ z	 */
 	}
 
 	@Override
-	public boolean isEmpty() 
+	public boolean isEmpty()
 	{
 		return map.isEmpty();
 	}
-	
+
+	// Finds the entry for a key, or null if none.
+	private Node<V> find(String key)
+	{
+		if (table == null)
+			return null;
+		if (!ASCII_FOLDING)
+			return map.get(key.toLowerCase());
+
+		// folded hash - same as the lowercase key's hash, if the key is ASCII.
+		int hash = 0;
+		int len = key.length();
+		for (int i = 0; i < len; i++)
+		{
+			char c = key.charAt(i);
+			if (c >= 0x80)
+				return map.get(key.toLowerCase());
+			hash = 31 * hash + (c >= 'A' && c <= 'Z' ? c + 32 : c);
+		}
+
+		int mask = table.length - 1;
+		Node<V> node;
+		for (int i = spread(hash) & mask; (node = table[i]) != null; i = (i + 1) & mask)
+			if (node.hash == hash && (node.key == key || matches(node.key, key)))
+				return node;
+		return null;
+	}
+
+	// Gets the table index of an entry in the table.
+	private int indexOf(Node<V> node)
+	{
+		int mask = table.length - 1;
+		int i = spread(node.hash) & mask;
+		while (table[i] != node)
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	// Rebuilds the lookup table at a new size.
+	private void rehash(int length)
+	{
+		Node<V>[] newTable = createTable(length);
+		for (Node<V> node : map.values())
+			insert(newTable, node);
+		table = newTable;
+	}
+
+	// Checks if a lowercase key matches an ASCII key, ignoring case.
+	private static boolean matches(String lowerKey, String key)
+	{
+		int len = key.length();
+		if (lowerKey.length() != len)
+			return false;
+		for (int i = 0; i < len; i++)
+		{
+			char c = key.charAt(i);
+			if (lowerKey.charAt(i) != (c >= 'A' && c <= 'Z' ? c + 32 : c))
+				return false;
+		}
+		return true;
+	}
+
+	// Checks if a key is already lowercase (and ASCII, so that it is certainly its own lowercase).
+	private static boolean isFolded(String key)
+	{
+		if (!ASCII_FOLDING)
+			return false;
+		int len = key.length();
+		for (int i = 0; i < len; i++)
+		{
+			char c = key.charAt(i);
+			if (c >= 0x80 || (c >= 'A' && c <= 'Z'))
+				return false;
+		}
+		return true;
+	}
+
+	// Adds an entry to a lookup table.
+	private static <V> void insert(Node<V>[] table, Node<V> node)
+	{
+		int mask = table.length - 1;
+		int i = spread(node.hash) & mask;
+		while (table[i] != null)
+			i = (i + 1) & mask;
+		table[i] = node;
+	}
+
+	// Spreads the bits of a hash.
+	private static int spread(int hash)
+	{
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> Node<V>[] createTable(int length)
+	{
+		return (Node<V>[])new Node<?>[length];
+	}
+
+	/**
+	 * A single map entry.
+	 * @param <V> the value type.
+	 */
+	private static class Node<V> implements Map.Entry<String, V>
+	{
+		/** Lowercase key. */
+		private final String key;
+		/** Lowercase key hash. */
+		private final int hash;
+		/** Value. */
+		private V value;
+
+		private Node(String key, V value)
+		{
+			this.key = key;
+			this.hash = key.hashCode();
+			this.value = value;
+		}
+
+		@Override
+		public String getKey()
+		{
+			return key;
+		}
+
+		@Override
+		public V getValue()
+		{
+			return value;
+		}
+
+		@Override
+		public V setValue(V value)
+		{
+			V out = this.value;
+			this.value = value;
+			return out;
+		}
+
+		@Override
+		public String toString()
+		{
+			return key + "=" + value;
+		}
+	}
+
 }
@@ -1,17 +1,17 @@
 package com.tameif.tame.struct;
 
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * Case-insensitive set of strings.
+ * Backed by a {@link CaseInsensitiveStringMap}, so checking for a string does not copy it.
  * @author Matthew Tropiano
  */
 public class CaseInsensitiveStringSet implements Iterable<String>, Sizable
 {
-	/** Internal set. */
-	private Set<String> set;
+	/** Internal map. */
+	private CaseInsensitiveStringMap<Boolean> map;
 
 	public CaseInsensitiveStringSet() 
 	{
@@ -20,45 +20,59 @@ public class CaseInsensitiveStringSet implements Iterable<String>, Sizable
 
 	public CaseInsensitiveStringSet(int capacity)
 	{
-		this.set = new HashSet<>(capacity);
+		this.map = new CaseInsensitiveStringMap<>(capacity);
 	}
 
 	public boolean contains(String str)
 	{
-		return set.contains(str.toLowerCase());
+		return map.containsKey(str);
 	}
 
 	public void put(String str)
 	{
-		set.add(str.toLowerCase());
+		map.put(str, Boolean.TRUE);
 	}
 
 	public void clear() 
 	{
-		set.clear();
+		map.clear();
 	}
 
 	public void remove(String str)
 	{
-		set.remove(str.toLowerCase());
+		map.remove(str);
 	}
 
 	@Override
 	public Iterator<String> iterator()
 	{
-		return set.iterator();
+		final Iterator<Map.Entry<String, Boolean>> it = map.iterator();
+		return new Iterator<String>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return it.hasNext();
+			}
+
+			@Override
+			public String next()
+			{
+				return it.next().getKey();
+			}
+		};
 	}
 
 	@Override
 	public int size() 
 	{
-		return set.size();
+		return map.size();
 	}
 
 	@Override
 	public boolean isEmpty() 
 	{
-		return set.isEmpty();
+		return map.isEmpty();
 	}
 
 }
@@ -2,8 +2,12 @@ package com.tameif.tame.struct;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Encoding utils.
@@ -11,6 +15,8 @@ import java.security.NoSuchAlgorithmException;
  */
 public final class EncodingUtils
 {
+	/** Charsets by name. */
+	private static final ConcurrentHashMap<String, Charset> CHARSETS = new ConcurrentHashMap<>(4);
 
 	/**
 	 * Returns a hash of a set of bytes digested by an encryption algorithm.
@@ -42,6 +48,56 @@ public final class EncodingUtils
 		return digest(bytes, "SHA-1");
 	}
 
+	/**
+	 * Returns a hash of the remaining bytes in a buffer digested by an encryption algorithm.
+	 * The bytes are digested from the buffer directly (the buffer's position is not changed).
+	 * Can return null if this Java implementation cannot perform this.
+	 * @param buffer the bytes to encode.
+	 * @param algorithmName the name to the algorithm to use.
+	 * @return the resultant byte digest, or null if the algorithm is not supported.
+	 */
+	public static byte[] digest(ByteBuffer buffer, String algorithmName)
+	{
+		try {
+			MessageDigest digest = MessageDigest.getInstance(algorithmName);
+			digest.update(buffer.duplicate());
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a 20-byte SHA-1 hash of the remaining bytes in a buffer.
+	 * @param buffer the input bytes.
+	 * @return the resultant 20-byte digest.
+	 * @see #digest(ByteBuffer, String)
+	 */
+	public static byte[] sha1(ByteBuffer buffer)
+	{
+		return digest(buffer, "SHA-1");
+	}
+
+	/**
+	 * Gets a charset by name. Each charset is looked up once, and cached.
+	 * @param name the charset name.
+	 * @return the corresponding charset.
+	 * @throws UnsupportedEncodingException if the charset is not supported.
+	 */
+	public static Charset charset(String name) throws UnsupportedEncodingException
+	{
+		Charset out;
+		if ((out = CHARSETS.get(name)) != null)
+			return out;
+		try {
+			out = Charset.forName(name);
+		} catch (IllegalArgumentException e) {
+			throw new UnsupportedEncodingException(name);
+		}
+		CHARSETS.put(name, out);
+		return out;
+	}
+
 	/**
 	 * Encodes a series of bytes as a Base64 encoded string.
 	 * Uses + and / as characters 62 and 63.
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.struct;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A first-in, first-out queue backed by a circular array that grows as needed.
+ * Once the array is big enough, adding and removing items does not allocate, 
+ * so a queue can be cleared and reused without generating garbage.
+ * Null items are not allowed.
+ * @author Matthew Tropiano
+ * @param <T> the type of object stored.
+ */
+public class RingQueue<T> extends AbstractQueue<T> implements Sizable
+{
+	/** The queue items. */
+	private Object[] items;
+	/** Index of the first item. */
+	private int head;
+	/** The amount of items in the queue. */
+	private int size;
+
+	/**
+	 * Creates a new, empty queue.
+	 * @param capacity the initial capacity.
+	 */
+	public RingQueue(int capacity)
+	{
+		this.items = new Object[Math.max(capacity, 1)];
+		this.head = 0;
+		this.size = 0;
+	}
+
+	@Override
+	public boolean offer(T item)
+	{
+		if (item == null)
+			throw new NullPointerException("Item cannot be null.");
+		if (size == items.length)
+			grow();
+		items[(head + size) % items.length] = item;
+		size++;
+		return true;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T poll()
+	{
+		if (size == 0)
+			return null;
+		T out = (T)items[head];
+		items[head] = null;
+		head = (head + 1) % items.length;
+		size--;
+		return out;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T peek()
+	{
+		return size > 0 ? (T)items[head] : null;
+	}
+
+	/**
+	 * Removes all items from the queue.
+	 * The queue keeps its current capacity.
+	 */
+	@Override
+	public void clear()
+	{
+		for (int i = 0; i < size; i++)
+			items[(head + i) % items.length] = null;
+		head = 0;
+		size = 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	@Override
+	public Iterator<T> iterator()
+	{
+		return new Iterator<T>()
+		{
+			private int next = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return next < size;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public T next()
+			{
+				if (next >= size)
+					throw new NoSuchElementException();
+				return (T)items[(head + next++) % items.length];
+			}
+		};
+	}
+
+	// Doubles the capacity, unwrapping the items to the start of the new array.
+	private void grow()
+	{
+		Object[] out = new Object[items.length * 2];
+		int firstPart = Math.min(size, items.length - head);
+		System.arraycopy(items, head, out, 0, firstPart);
+		System.arraycopy(items, 0, out, firstPart, size - firstPart);
+		items = out;
+		head = 0;
+	}
+
+}
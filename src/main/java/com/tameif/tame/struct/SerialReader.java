@@ -8,10 +8,14 @@ package com.tameif.tame.struct;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 
 /**
  * Assists in endian reading from an input stream.
+ * <p>Values are read straight from the buffer when reading from a {@link ByteBufferInputStream}.
  * @author Matthew Tropiano
  */
 public class SerialReader
@@ -19,8 +23,6 @@ public class SerialReader
 	private static final int SIZEOF_INT = Integer.SIZE/Byte.SIZE;
 	private static final int SIZEOF_SHORT = Short.SIZE/Byte.SIZE;
 	private static final int SIZEOF_LONG = Long.SIZE/Byte.SIZE;
-	private static final int SIZEOF_FLOAT = Float.SIZE/Byte.SIZE;
-	private static final int SIZEOF_DOUBLE = Double.SIZE/Byte.SIZE;
 
     public static final boolean LITTLE_ENDIAN =	true;
     public static final boolean BIG_ENDIAN = false;
@@ -54,7 +56,7 @@ public class SerialReader
 	 * @return the byte read or -1 if the end of the stream is reached.
 	 * @throws IOException if a read error occurs.
 	 */
-	protected synchronized int byteRead(InputStream in) throws IOException
+	protected int byteRead(InputStream in) throws IOException
 	{
 		return in.read();
 	}
@@ -83,9 +85,31 @@ public class SerialReader
 	 * 		is reached before a single byte is read.
 	 * @throws IOException if a read error occurs.
 	 */
-	protected synchronized int byteRead(InputStream in, byte[] b, int maxlen) throws IOException
+	protected int byteRead(InputStream in, byte[] b, int maxlen) throws IOException
 	{
-		return in.read(b, 0, maxlen);
+		// streams may return fewer bytes than asked for before their end.
+		int total = 0;
+		int buf;
+		while (total < maxlen && (buf = in.read(b, total, maxlen - total)) > 0)
+			total += buf;
+		return total == 0 && maxlen > 0 ? -1 : total;
+	}
+
+	// Gets the buffer behind a buffer stream, checking that it has enough bytes left, or null if not a buffer stream.
+	private static ByteBuffer bufferOf(InputStream in, int length, String message) throws IOException
+	{
+		if (!(in instanceof ByteBufferInputStream))
+			return null;
+		ByteBuffer buffer = ((ByteBufferInputStream)in).getBuffer();
+		if (length < 0 || buffer.remaining() < length)
+			throw new IOException(message);
+		return buffer;
+	}
+
+	// Checks if values read straight from a buffer need their bytes reversed.
+	private boolean reversed(ByteBuffer buffer)
+	{
+		return (buffer.order() == ByteOrder.LITTLE_ENDIAN) != endianMode;
 	}
 
 	// Casts a short to a char.
@@ -176,7 +200,7 @@ public class SerialReader
 	 */
 	public String readString(InputStream in, String encoding) throws IOException
 	{
-	    return new String(readByteArray(in), encoding);
+	    return readString(in, EncodingUtils.charset(encoding));
 	}
 
 	/**
@@ -189,7 +213,7 @@ public class SerialReader
 	 */
 	public String readString(InputStream in, Charset charset) throws IOException
 	{
-	    return new String(readByteArray(in), charset);
+	    return readString(in, readInt(in), charset);
 	}
 
 	/**
@@ -203,7 +227,7 @@ public class SerialReader
 	 */
 	public String readString(InputStream in, int bytes, String encoding) throws IOException
 	{
-	    return new String(readBytes(in, bytes), encoding);
+	    return new String(readBytes(in, bytes), EncodingUtils.charset(encoding));
 	}
 
 	/**
@@ -217,6 +241,14 @@ public class SerialReader
 	 */
 	public String readString(InputStream in, int bytes, Charset charset) throws IOException
 	{
+		ByteBuffer buffer;
+		if ((buffer = bufferOf(in, bytes, "Not enough bytes for a string.")) != null && buffer.hasArray())
+		{
+			// decode in place.
+			String out = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), bytes, charset);
+			((Buffer)buffer).position(buffer.position() + bytes);
+			return out;
+		}
 	    return new String(readBytes(in, bytes), charset);
 	}
 
@@ -277,8 +309,11 @@ public class SerialReader
 	 */
 	public long readLong(InputStream in) throws IOException
 	{
-	    byte[] buffer = new byte[SIZEOF_LONG];
-	    int buf = byteRead(in, buffer);
+		ByteBuffer bb;
+		if ((bb = bufferOf(in, SIZEOF_LONG, "Not enough bytes for a long.")) != null)
+			return reversed(bb) ? Long.reverseBytes(bb.getLong()) : bb.getLong();
+	    byte[] buffer = CACHE.get().buffer;
+	    int buf = byteRead(in, buffer, SIZEOF_LONG);
 	    if (buf < SIZEOF_LONG) 
 	    	throw new IOException("Not enough bytes for a long.");
 	    return bytesToLong(buffer, endianMode);
@@ -319,12 +354,13 @@ public class SerialReader
 	 */
 	public byte readByte(InputStream in) throws IOException
 	{
-		Cache cache = CACHE.get();
-	    int buf = byteRead(in, cache.buffer, 1);
-	    if (buf < 1)
-	    	throw new IOException("not enough bytes");
-	    else if (buf < 1) throw new IOException("Not enough bytes for a byte.");
-	    return cache.buffer[0];
+		ByteBuffer bb;
+		if ((bb = bufferOf(in, 1, "Not enough bytes for a byte.")) != null)
+			return bb.get();
+	    int buf = byteRead(in);
+	    if (buf < 0)
+	    	throw new IOException("Not enough bytes for a byte.");
+	    return (byte)buf;
 	}
 
 	/**
@@ -377,6 +413,12 @@ public class SerialReader
 	public byte[] readBytes(InputStream in, int n) throws IOException
 	{
 	    byte[] out = new byte[n];
+		ByteBuffer bb;
+		if ((bb = bufferOf(in, n, "Not enough bytes to read.")) != null)
+		{
+			bb.get(out);
+			return out;
+		}
 	    int buf = byteRead(in, out);
 	    if (buf < n) 
 	    	throw new IOException("Not enough bytes to read.");
@@ -402,8 +444,11 @@ public class SerialReader
 	 */
 	public int readInt(InputStream in) throws IOException
 	{
-	    byte[] buffer = new byte[SIZEOF_INT];
-	    int buf = byteRead(in, buffer);
+		ByteBuffer bb;
+		if ((bb = bufferOf(in, SIZEOF_INT, "Not enough bytes for an int.")) != null)
+			return reversed(bb) ? Integer.reverseBytes(bb.getInt()) : bb.getInt();
+	    byte[] buffer = CACHE.get().buffer;
+	    int buf = byteRead(in, buffer, SIZEOF_INT);
 	    if (buf < SIZEOF_INT) 
 	    	throw new IOException("Not enough bytes for an int.");
 	    return bytesToInt(buffer, endianMode);
@@ -465,11 +510,7 @@ public class SerialReader
 	 */
 	public float readFloat(InputStream in) throws IOException
 	{
-	    byte[] buffer = new byte[SIZEOF_FLOAT];
-	    int buf = byteRead(in, buffer);
-	    if (buf < SIZEOF_FLOAT) 
-	    	throw new IOException("Not enough bytes for a float.");
-	    return bytesToFloat(buffer, endianMode);
+	    return Float.intBitsToFloat(readInt(in));
 	}
 
 	/**
@@ -507,11 +548,7 @@ public class SerialReader
 	 */
 	public double readDouble(InputStream in) throws IOException
 	{
-	    byte[] buffer = new byte[SIZEOF_DOUBLE];
-	    int buf = byteRead(in, buffer);
-	    if (buf < SIZEOF_DOUBLE) 
-	    	throw new IOException("Not enough bytes for a double.");
-	    return Double.longBitsToDouble(bytesToLong(buffer, endianMode));
+	    return Double.longBitsToDouble(readLong(in));
 	}
 
 	/**
@@ -549,8 +586,11 @@ public class SerialReader
 	 */
 	public short readShort(InputStream in) throws IOException
 	{
-	    byte[] buffer = new byte[SIZEOF_SHORT];
-	    int buf = byteRead(in, buffer);
+		ByteBuffer bb;
+		if ((bb = bufferOf(in, SIZEOF_SHORT, "Not enough bytes for a short.")) != null)
+			return reversed(bb) ? Short.reverseBytes(bb.getShort()) : bb.getShort();
+	    byte[] buffer = CACHE.get().buffer;
+	    int buf = byteRead(in, buffer, SIZEOF_SHORT);
 	    if (buf < SIZEOF_SHORT) 
 	    	throw new IOException("Not enough bytes for a short.");
 	    return bytesToShort(buffer, endianMode);
@@ -683,11 +723,6 @@ public class SerialReader
 		return (value & test) == test;
 	}
 
-	private static float bytesToFloat(byte[] b, boolean endianMode)
-	{
-	    return Float.intBitsToFloat(bytesToInt(b, endianMode));
-	}
-
 	private static short bytesToShort(byte[] b, boolean endianMode)
 	{
 		short out = 0;
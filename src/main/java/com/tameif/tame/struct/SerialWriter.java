@@ -12,6 +12,7 @@ import java.nio.charset.Charset;
 
 /**
  * Assists in endian writing to an output stream.
+ * <p>Values are put straight into the buffer when writing to a {@link ByteBufferOutputStream}.
  * @author Matthew Tropiano
  */
 public class SerialWriter
@@ -66,7 +67,7 @@ public class SerialWriter
 	 */
 	public void writeString(OutputStream out, String s, String encodingType) throws IOException
 	{
-		writeByteArray(out, s.getBytes(encodingType));
+		writeByteArray(out, s.getBytes(EncodingUtils.charset(encodingType)));
 	}
 	
 	/**
@@ -182,6 +183,11 @@ public class SerialWriter
 	 */
 	public void writeInt(OutputStream out, int i) throws IOException
 	{
+		if (out instanceof ByteBufferOutputStream)
+		{
+			((ByteBufferOutputStream)out).reserve(SIZEOF_INT).putInt(endianMode ? i : Integer.reverseBytes(i));
+			return;
+		}
 		byte[] buffer = CACHE.get().buffer;
 		intToBytes(i, endianMode, buffer, 0);
 		out.write(buffer, 0, 4);
@@ -205,10 +211,9 @@ public class SerialWriter
 			out.write(0);
 			return;
 		}
-		byte[] b;
+		byte[] b = CACHE.get().buffer;
 		int z = i, x = 0;
 		while (z > 0) {z >>= 7; x++;}
-		b = new byte[x];
 		for (int n = x-1; n >= 0; n--)
 		{
 			b[n] = (byte)(i & 0x7f);
@@ -216,7 +221,7 @@ public class SerialWriter
 	    	if (n != x-1)
 	    		b[n] |= (byte)(0x80);
 		}
-		out.write(b);
+		out.write(b, 0, x);
 	}
 
 	/**
@@ -237,12 +242,11 @@ public class SerialWriter
 			out.write(0);
 			return;
 		}
-		byte[] b;
+		byte[] b = CACHE.get().buffer;
 		long z = i;
 		int x = 0;
 		while (z > 0) {z >>= 7; x++;}
-		b = new byte[x];
-		
+
 		for (int n = x-1; n >= 0; n--)
 		{
 			b[n] = (byte)(i & 0x7f);
@@ -250,7 +254,7 @@ public class SerialWriter
 	    	if (n != x-1)
 	    		b[n] |= (byte)(0x80);
 		}
-		out.write(b);
+		out.write(b, 0, x);
 	}
 
 	/**
@@ -275,9 +279,14 @@ public class SerialWriter
 	 */
 	public void writeLong(OutputStream out, long l) throws IOException
 	{
+		if (out instanceof ByteBufferOutputStream)
+		{
+			((ByteBufferOutputStream)out).reserve(SIZEOF_LONG).putLong(endianMode ? l : Long.reverseBytes(l));
+			return;
+		}
 		byte[] buffer = CACHE.get().buffer;
 		longToBytes(l, endianMode, buffer, 0);
-		out.write(buffer);
+		out.write(buffer, 0, SIZEOF_LONG);
 	}
 
 	/**
@@ -352,6 +361,11 @@ public class SerialWriter
 	 */
 	public void writeShort(OutputStream out, short s) throws IOException
 	{
+		if (out instanceof ByteBufferOutputStream)
+		{
+			((ByteBufferOutputStream)out).reserve(SIZEOF_SHORT).putShort(endianMode ? s : Short.reverseBytes(s));
+			return;
+		}
 		byte[] buffer = CACHE.get().buffer;
 		shortToBytes(s, endianMode, buffer, 0);
 		out.write(buffer, 0, 2);
@@ -459,7 +473,8 @@ public class SerialWriter
 		byte[] buffer;
 		private Cache()
 		{
-			this.buffer = new byte[8];
+			// big enough for variable-length longs.
+			this.buffer = new byte[10];
 		}
 	}
 	
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.struct;
+
+import java.util.HashMap;
+
+/**
+ * A case-insensitive trie of space-separated names, keyed by whole words (tokens).
+ * <p>
+ * Interpreter input can be matched by walking down from the {@link #getRoot() root} one
+ * (already lowercase) token at a time, so that each step of a longest-match search is one lookup,
+ * and no intermediate strings are built.
+ * @author Matthew Tropiano
+ * @param <V> the value type stored at each name.
+ */
+public class TokenTrie<V>
+{
+	/**
+	 * A single node in the trie.
+	 * @param <V> the value type stored at each name.
+	 */
+	public static class Node<V>
+	{
+		/** Parent node. */
+		private Node<V> parent;
+		/** This node's token in the parent. */
+		private String token;
+		/** Child nodes, by token (created when needed). */
+		private HashMap<String, Node<V>> children;
+		/** Value for the name that ends here, or null if no name ends here. */
+		private V value;
+
+		private Node(Node<V> parent, String token)
+		{
+			this.parent = parent;
+			this.token = token;
+			this.children = null;
+			this.value = null;
+		}
+
+		/**
+		 * Gets the next node for the next token in a name.
+		 * @param lowercaseToken the next token, already converted to lowercase.
+		 * @return the next node, or null if no names continue with this token.
+		 */
+		public Node<V> next(String lowercaseToken)
+		{
+			return children != null ? children.get(lowercaseToken) : null;
+		}
+
+		/**
+		 * @return the value for the name that ends at this node, or null if no name ends here.
+		 */
+		public V getValue()
+		{
+			return value;
+		}
+
+		private boolean isEmpty()
+		{
+			return value == null && (children == null || children.isEmpty());
+		}
+	}
+
+	/** The root node. */
+	private Node<V> root;
+
+	/**
+	 * Creates a new, empty trie.
+	 */
+	public TokenTrie()
+	{
+		this.root = new Node<>(null, null);
+	}
+
+	/**
+	 * @return the root node for walking the trie.
+	 */
+	public Node<V> getRoot()
+	{
+		return root;
+	}
+
+	/**
+	 * Gets the value stored for a name.
+	 * @param name the name (tokens separated by single spaces).
+	 * @return the corresponding value, or null if none.
+	 */
+	public V get(String name)
+	{
+		Node<V> node = find(name);
+		return node != null ? node.value : null;
+	}
+
+	/**
+	 * Sets the value stored for a name, replacing the previous one.
+	 * @param name the name (tokens separated by single spaces).
+	 * @param value the value to store (cannot be null).
+	 * @throws IllegalArgumentException if value is null.
+	 */
+	public void put(String name, V value)
+	{
+		if (value == null)
+			throw new IllegalArgumentException("Value cannot be null.");
+
+		Node<V> node = root;
+		for (String token : split(name))
+		{
+			Node<V> next;
+			if (node.children == null)
+				node.children = new HashMap<>(4);
+			if ((next = node.children.get(token)) == null)
+				node.children.put(token, next = new Node<>(node, token));
+			node = next;
+		}
+		node.value = value;
+	}
+
+	/**
+	 * Removes the value stored for a name.
+	 * @param name the name (tokens separated by single spaces).
+	 * @return the removed value, or null if none.
+	 */
+	public V remove(String name)
+	{
+		Node<V> node = find(name);
+		if (node == null)
+			return null;
+
+		V out = node.value;
+		node.value = null;
+
+		// prune empty branches.
+		while (node.parent != null && node.isEmpty())
+		{
+			node.parent.children.remove(node.token);
+			node = node.parent;
+		}
+		return out;
+	}
+
+	/**
+	 * Removes all names.
+	 */
+	public void clear()
+	{
+		root.children = null;
+		root.value = null;
+	}
+
+	// Finds a node.
+	private Node<V> find(String name)
+	{
+		Node<V> node = root;
+		for (String token : split(name))
+			if ((node = node.next(token)) == null)
+				return null;
+		return node;
+	}
+
+	// Splits a name into lowercase tokens.
+	private static String[] split(String name)
+	{
+		return name.toLowerCase().split(" ", -1);
+	}
+
+}
@@ -9,7 +9,13 @@
  ******************************************************************************/
 package com.tameif.tame.util;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -17,22 +23,47 @@ import java.util.regex.PatternSyntaxException;
  * A caching structure for all RegEx patterns.
  * <p>RegExs, when compiled into {@link Pattern}s, can be reused several times.
  * This cache is for automatic building/returning existing patterns by String.
- * <p>All operations are thread-safe.
+ * <p>The cache is bounded: when it grows past its capacity, the least-recently-used patterns
+ * are evicted, so scripts that build expressions while running cannot grow it forever.
+ * Patterns that are known when a module is linked are attached to their operations, and do not go through here.
+ * <p>All operations are thread-safe. Lookups do not lock.
  * @author Matthew Tropiano
  */
 public final class PatternCache
 {
 	// Can't instantiate.
 	private PatternCache() {}
-	
+
+	/** Default capacity. */
+	public static final int DEFAULT_CAPACITY = 256;
+
 	/** The main cache map. */
-	private static HashMap<String, Pattern> cacheMap;
-	
+	private static ConcurrentHashMap<String, Entry> cacheMap;
+	/** Use clock, for recency (ticks on misses, so hits do not contend on it). */
+	private static AtomicLong clock;
+	/** Lock for eviction. */
+	private static ReentrantLock evictionLock;
+	/** Cache capacity. */
+	private static volatile int capacity;
+
+	/** Cache hits. */
+	private static LongAdder hits;
+	/** Cache misses (patterns compiled). */
+	private static LongAdder misses;
+	/** Evicted patterns. */
+	private static LongAdder evictions;
+
 	static
 	{
-		cacheMap = new HashMap<>(8);
+		cacheMap = new ConcurrentHashMap<>(8);
+		clock = new AtomicLong(0L);
+		evictionLock = new ReentrantLock();
+		capacity = DEFAULT_CAPACITY;
+		hits = new LongAdder();
+		misses = new LongAdder();
+		evictions = new LongAdder();
 	}
-	
+
 	/**
 	 * Gets an existing, compiled pattern or a newly-compiled one for the provided expression.
 	 * Also useful for pre-warming oft-used expressions.
@@ -42,20 +73,153 @@ public final class PatternCache
 	 */
 	public static Pattern get(String regex)
 	{
-		if (cacheMap.containsKey(regex))
-			return cacheMap.get(regex);
-		
-		Pattern out;
-		synchronized (cacheMap)
+		Entry entry;
+		if ((entry = cacheMap.get(regex)) != null)
+		{
+			hits.increment();
+			long now = clock.get();
+			if (entry.lastUse != now)
+				entry.lastUse = now;
+			return entry.pattern;
+		}
+
+		misses.increment();
+		entry = cacheMap.computeIfAbsent(regex, (r) -> new Entry(Pattern.compile(r)));
+		entry.lastUse = clock.incrementAndGet();
+		if (cacheMap.size() > capacity)
+			evict();
+		return entry.pattern;
+	}
+
+	/**
+	 * Sets the maximum amount of patterns to keep.
+	 * If the cache is bigger than this, patterns are evicted.
+	 * @param capacity the new capacity.
+	 * @throws IllegalArgumentException if capacity is less than 1.
+	 */
+	public static void setCapacity(int capacity)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be 1 or greater.");
+		PatternCache.capacity = capacity;
+		if (cacheMap.size() > capacity)
+			evict();
+	}
+
+	/**
+	 * @return the maximum amount of patterns to keep.
+	 */
+	public static int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * @return the amount of patterns in the cache.
+	 */
+	public static int size()
+	{
+		return cacheMap.size();
+	}
+
+	/**
+	 * @return the amount of lookups that found a cached pattern.
+	 */
+	public static long getHits()
+	{
+		return hits.sum();
+	}
+
+	/**
+	 * @return the amount of lookups that did not find a cached pattern.
+	 */
+	public static long getMisses()
+	{
+		return misses.sum();
+	}
+
+	/**
+	 * @return the amount of patterns evicted from the cache.
+	 */
+	public static long getEvictions()
+	{
+		return evictions.sum();
+	}
+
+	/**
+	 * Clears the cache and resets its hit/miss/eviction counts.
+	 */
+	public static void clear()
+	{
+		cacheMap.clear();
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	// Evicts the least-recently-used patterns, down to three-quarters of the capacity.
+	// Only one thread evicts at a time - others carry on.
+	private static void evict()
+	{
+		if (!evictionLock.tryLock())
+			return;
+		try {
+			int target = Math.max(1, capacity * 3 / 4);
+			int excess = cacheMap.size() - target;
+			if (excess <= 0)
+				return;
+
+			// snapshot use times - they can change while sorting.
+			List<Victim> victims = new ArrayList<>(cacheMap.size());
+			for (Map.Entry<String, Entry> e : cacheMap.entrySet())
+				victims.add(new Victim(e.getKey(), e.getValue()));
+			victims.sort((a, b) -> Long.compare(a.lastUse, b.lastUse));
+			for (int i = 0; i < excess && i < victims.size(); i++)
+			{
+				Victim victim = victims.get(i);
+				if (cacheMap.remove(victim.regex, victim.entry))
+					evictions.increment();
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * A cached pattern.
+	 */
+	private static class Entry
+	{
+		/** The pattern. */
+		private final Pattern pattern;
+		/** Clock value at last use. */
+		private volatile long lastUse;
+
+		private Entry(Pattern pattern)
+		{
+			this.pattern = pattern;
+			this.lastUse = 0L;
+		}
+	}
+
+	/**
+	 * An eviction candidate.
+	 */
+	private static class Victim
+	{
+		/** The expression. */
+		private final String regex;
+		/** The cached entry. */
+		private final Entry entry;
+		/** Clock value at last use, when collected. */
+		private final long lastUse;
+
+		private Victim(String regex, Entry entry)
 		{
-			// return to threads compiling the same pattern
-			if (cacheMap.containsKey(regex))
-				return cacheMap.get(regex);
-			
-			cacheMap.put(regex, out = Pattern.compile(regex));
+			this.regex = regex;
+			this.entry = entry;
+			this.lastUse = entry.lastUse;
 		}
-		
-		return out;
 	}
 
 }
@@ -519,6 +519,311 @@ TBinaryReader.readModuleV1 = function(dataReader, moduleOut)
 	moduleOut.elements = elements;
 };
 
+/**
+ * Reads the constant pool of a version 2 module.
+ * @param dataReader (TDataReader) the data reader already positioned for reading.
+ * @return (object) the pool: {strings: [string], values: [TValue]}.
+ * @throws TAMEError on a read error, RangeError on a read error (incomplete data).
+ */
+TBinaryReader.readConstantPool = function(dataReader)
+{
+	let out = {strings: [], values: []};
+	
+	let size = TBinaryReader.readVariableLengthInt(dataReader);
+	while (size--)
+	{
+		let len = TBinaryReader.readVariableLengthInt(dataReader);
+		out.strings.push(TBinaryReader.utf8BytesToString(dataReader.readBytes(len)));
+	}
+
+	size = TBinaryReader.readVariableLengthInt(dataReader);
+	while (size--)
+	{
+		let type = dataReader.readUInt8();
+		let value;
+		switch (type)
+		{
+			case 0:
+				value = TValue.createBoolean(dataReader.readBoolean());
+				break;
+			case 1:
+				value = TValue.createInteger(dataReader.readInt64());
+				break;
+			case 2:
+				value = TValue.createFloat(dataReader.readFloat64());
+				break;
+			case 3:
+				value = TValue.createString(TBinaryReader.readPooledString(dataReader, out));
+				break;
+			case 4:
+				value = TValue.createList([]);
+				let len = TBinaryReader.readVariableLengthInt(dataReader);
+				while (len--)
+					TValue.listAdd(value, TBinaryReader.readPooledValue(dataReader, out));
+				break;
+			case 5:
+				value = TValue.createObject(TBinaryReader.readPooledString(dataReader, out));
+				break;
+			case 6:
+				value = TValue.createContainer(TBinaryReader.readPooledString(dataReader, out));
+				break;
+			case 7:
+				value = TValue.createPlayer(TBinaryReader.readPooledString(dataReader, out));
+				break;
+			case 8:
+				value = TValue.createRoom(TBinaryReader.readPooledString(dataReader, out));
+				break;
+			case 9:
+				value = TValue.createWorld(TBinaryReader.readPooledString(dataReader, out));
+				break;
+			case 10:
+				value = TValue.createAction(TBinaryReader.readPooledString(dataReader, out));
+				break;
+			case 11:
+				value = TValue.createVariable(TBinaryReader.readPooledString(dataReader, out));
+				break;
+			default:
+				throw TAMEError.Module("Bad value type. Internal error!");
+		}
+		out.values.push(value);
+	}
+	
+	return out;
+};
+
+/**
+ * Reads a constant pool index and returns the string at that index.
+ * @param dataReader (TDataReader) the data reader already positioned for reading.
+ * @param pool (object) the constant pool.
+ * @return (string) the string.
+ * @throws TAMEError on a bad index, RangeError on a read error (incomplete data).
+ */
+TBinaryReader.readPooledString = function(dataReader, pool)
+{
+	let index = TBinaryReader.readVariableLengthInt(dataReader);
+	if (index >= pool.strings.length)
+		throw TAMEError.Module("String index "+index+" is not in the constant pool.");
+	return pool.strings[index];
+};
+
+/**
+ * Reads a constant pool index and returns the value at that index.
+ * Lists are copied, since they can be changed.
+ * @param dataReader (TDataReader) the data reader already positioned for reading.
+ * @param pool (object) the constant pool.
+ * @return (object) the value.
+ * @throws TAMEError on a bad index, RangeError on a read error (incomplete data).
+ */
+TBinaryReader.readPooledValue = function(dataReader, pool)
+{
+	let index = TBinaryReader.readVariableLengthInt(dataReader);
+	if (index >= pool.values.length)
+		throw TAMEError.Module("Value index "+index+" is not in the constant pool.");
+	
+	let COPY = function(value)
+	{
+		if (!TValue.isList(value))
+			return value;
+		let out = TValue.createList([]);
+		let len = TValue.length(value);
+		for (let i = 0; i < len; i++)
+			TValue.listAdd(out, COPY(TValue.listGet(value, i)));
+		return out;
+	};
+	
+	return COPY(pool.values[index]);
+};
+
+/**
+ * Reads a set of pooled strings.
+ * @param dataReader (TDataReader) the data reader already positioned for reading.
+ * @param pool (object) the constant pool.
+ * @return (Array) the strings.
+ * @throws TAMEError on a read error, RangeError on a read error (incomplete data).
+ */
+TBinaryReader.readPooledStringArray = function(dataReader, pool)
+{
+	let out = [];
+	let size = TBinaryReader.readVariableLengthInt(dataReader);
+	while (size--)
+		out.push(TBinaryReader.readPooledString(dataReader, pool));
+	return out;
+};
+
+/**
+ * Reads a version 2 operation.
+ * @param dataReader (TDataReader) the data reader already positioned for reading.
+ * @param pool (object) the constant pool.
+ * @return (object) a deserialized operation.
+ * @throws TAMEError on a read error, RangeError on a read error (incomplete data).
+ */
+TBinaryReader.readPooledOperation = function(dataReader, pool)
+{
+	let out = {};
+	out.opcode = TBinaryReader.readVariableLengthInt(dataReader);
+
+	let bits = dataReader.readUInt8();
+	if ((bits & 0x01) !== 0)
+		out.operand0 = TBinaryReader.readPooledValue(dataReader, pool);
+	if ((bits & 0x02) !== 0)
+		out.operand1 = TBinaryReader.readPooledValue(dataReader, pool);
+
+	if ((bits & 0x04) !== 0)
+		out.initBlock = TBinaryReader.readPooledBlock(dataReader, pool);
+	if ((bits & 0x08) !== 0)
+		out.conditionalBlock = TBinaryReader.readPooledBlock(dataReader, pool);
+	if ((bits & 0x10) !== 0)
+		out.stepBlock = TBinaryReader.readPooledBlock(dataReader, pool);
+	if ((bits & 0x20) !== 0)
+		out.successBlock = TBinaryReader.readPooledBlock(dataReader, pool);
+	if ((bits & 0x40) !== 0)
+		out.failureBlock = TBinaryReader.readPooledBlock(dataReader, pool);
+	
+	return out;
+};
+
+/**
+ * Reads a version 2 block.
+ * @param dataReader (TDataReader) the data reader already positioned for reading.
+ * @param pool (object) the constant pool.
+ * @return (Array) a deserialized block of operations.
+ * @throws TAMEError on a read error, RangeError on a read error (incomplete data).
+ */
+TBinaryReader.readPooledBlock = function(dataReader, pool)
+{
+	let out = [];
+	let size = TBinaryReader.readVariableLengthInt(dataReader);
+	while (size--)
+		out.push(TBinaryReader.readPooledOperation(dataReader, pool));
+	return out;
+};
+
+/**
+ * Reads a version 2 element into an object (after its identity).
+ * Blocks are read from the block data, by offset.
+ * @param dataReader (TDataReader) the data reader already positioned for reading.
+ * @param blockReader (TDataReader) the data reader for the block data.
+ * @param pool (object) the constant pool.
+ * @param element (object) the element object to read data into.
+ * @return (string) the identity of the element's parent, or null if none.
+ * @throws TAMEError on a read error, RangeError on a read error (incomplete data).
+ */
+TBinaryReader.readPooledElement = function(dataReader, blockReader, pool, element)
+{
+	let READBLOCK = function()
+	{
+		blockReader.pos = TBinaryReader.readVariableLengthInt(dataReader);
+		return TBinaryReader.readPooledBlock(blockReader, pool);
+	};
+
+	let bits = dataReader.readUInt8();
+	element.archetype = ((bits & 0x01) !== 0);
+	let parent = ((bits & 0x02) !== 0) ? TBinaryReader.readPooledString(dataReader, pool) : null;
+	
+	element.blockTable = {};
+	let size = TBinaryReader.readVariableLengthInt(dataReader);
+	while (size--)
+	{
+		let key = TBinaryReader.BlockEntryType[dataReader.readUInt8()] + '(';
+		let count = TBinaryReader.readVariableLengthInt(dataReader);
+		while (count--)
+		{
+			key += TValue.toString(TBinaryReader.readPooledValue(dataReader, pool));
+			if (count > 0)
+				key += ',';
+		}
+		key += ')';
+		element.blockTable[key] = READBLOCK();
+	}
+
+	element.functionTable = {};
+	size = TBinaryReader.readVariableLengthInt(dataReader);
+	while (size--)
+	{
+		let name = TBinaryReader.readPooledString(dataReader, pool).toLowerCase();
+		let functionEntry = {};
+		functionEntry.arguments = TBinaryReader.readPooledStringArray(dataReader, pool);
+		functionEntry.block = READBLOCK();
+		element.functionTable[name] = functionEntry;
+	}
+	
+	return parent;
+};
+
+/**
+ * Reads a version 2 module (digests, constant pool, blocks, actions, elements).
+ * @param dataReader (TDataReader) the data reader already positioned for reading.
+ * @param moduleOut (object) the output object to add parsed elements from {actions, elements}.
+ * @throws TAMEError on a read error, RangeError on a read error (incomplete data).
+ */
+TBinaryReader.readModuleV2 = function(dataReader, moduleOut)
+{
+	moduleOut.digest = dataReader.readBytes(20);
+	dataReader.readBytes(20); // data digest
+	let bytes = dataReader.readInt32();
+	let reader = dataReader.split(bytes);
+	
+	let pool = TBinaryReader.readConstantPool(reader);
+	let blockBytes = reader.readInt32();
+	let blockReader = reader.split(blockBytes);
+	reader.pos += blockBytes;
+	
+	let actions = [];
+	let elements = [];
+	
+	let READELEMENT = function(tameType)
+	{
+		let out = {};
+		out.tameType = tameType;
+		out.identity = TBinaryReader.readPooledString(reader, pool);
+		let parent = TBinaryReader.readPooledElement(reader, blockReader, pool, out);
+		if (tameType === "TObject")
+		{
+			out.names = TBinaryReader.readPooledStringArray(reader, pool);
+			out.determiners = TBinaryReader.readPooledStringArray(reader, pool);
+			out.tags = TBinaryReader.readPooledStringArray(reader, pool);
+		}
+		if (parent !== null)
+			out.parent = parent;
+		return out;
+	};
+	
+	let READELEMENTS = function(tameType)
+	{
+		let count = TBinaryReader.readVariableLengthInt(reader);
+		while (count--)
+			elements.push(READELEMENT(tameType));
+	};
+
+	let world = READELEMENT("TWorld");
+
+	let count = TBinaryReader.readVariableLengthInt(reader);
+	while (count--)
+	{
+		let action = {};
+		action.tameType = "TAction";
+		action.identity = TBinaryReader.readPooledString(reader, pool);
+		action.type = reader.readUInt8();
+
+		let bits = reader.readUInt8();
+		action.strict = ((bits & 0x01) !== 0);
+		action.reversed = ((bits & 0x02) !== 0);
+
+		action.names = TBinaryReader.readPooledStringArray(reader, pool);
+		action.extraStrings = TBinaryReader.readPooledStringArray(reader, pool);
+		actions.push(action);
+	}
+	
+	READELEMENTS("TPlayer");
+	READELEMENTS("TRoom");
+	READELEMENTS("TObject");
+	READELEMENTS("TContainer");
+	elements[world.identity] = world;
+	
+	moduleOut.actions = actions;
+	moduleOut.elements = elements;
+};
+
 /**
  * Reads a module header from a binary data reader.
  * @param dataReader (TDataReader) the data reader already positioned for reading.
@@ -557,6 +862,8 @@ TBinaryReader.readModule = function(dataView)
 	let version = reader.readUInt8();
 	if (version === 1)
 		TBinaryReader.readModuleV1(reader, out);
+	else if (version === 2)
+		TBinaryReader.readModuleV2(reader, out);
 	else
 		throw TAMEError.Module("Module does not have a recognized version.");
 	
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame;
+
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.tameif.tame.factory.TAMEScriptReader;
+
+/**
+ * Tests the task queues of {@link TAMEEngine} sessions.
+ * @author Matthew Tropiano
+ */
+public final class TAMEEngineTest
+{
+	/** Seconds to wait for a task before calling it stuck. */
+	private static final long TIMEOUT_SECONDS = 5;
+
+	public static void main(String[] args) throws Exception
+	{
+		PrintStream out = System.out;
+		TAMEModule module = TAMEScriptReader.read("world { start() { textln(\"Hello.\"); } }\n");
+		module.link();
+
+		int failures = 0;
+		failures += checkSubmitFromCallback(out, module, false);
+		failures += checkSubmitFromCallback(out, module, true);
+
+		out.println(failures == 0 ? "All passed." : failures + " failed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// Submits to a full session from a callback on the task that filled it.
+	// The task must leave the queue before its future completes, else submit() waits forever and trySubmit() is rejected.
+	private static int checkSubmitFromCallback(PrintStream out, TAMEModule module, boolean trying) throws Exception
+	{
+		String name = "callback " + (trying ? "trySubmit()" : "submit()") + " on a full session";
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		TAMEEngine engine = new TAMEEngine(new TAMESessionFactory(module), executor, 1);
+		boolean passed = false;
+		try {
+			TAMESession session = engine.createSession("session");
+			CountDownLatch latch = new CountDownLatch(1);
+			CompletableFuture<Integer> first = session.submit((context) ->
+			{
+				latch.await();
+				return 1;
+			});
+			// attached before the first task finishes, so it runs on the session's drain.
+			CompletableFuture<CompletableFuture<Integer>> second = first.thenApply((result) ->
+				trying ? session.trySubmit((context) -> result + 1) : session.submit((context) -> result + 1)
+			);
+			latch.countDown();
+			passed = second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).get(TIMEOUT_SECONDS, TimeUnit.SECONDS) == 2;
+		} catch (TimeoutException | ExecutionException e) {
+			passed = false;
+		} finally {
+			if (passed)
+				engine.close();
+			executor.shutdownNow();
+		}
+		out.println((passed ? "OK   " : "FAIL ") + name);
+		return passed ? 0 : 1;
+	}
+
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.tameif.tame.factory.TAMEScriptParseException;
+import com.tameif.tame.factory.TAMEScriptReader;
+import com.tameif.tame.lang.Cue;
+import com.tameif.tame.lang.TraceType;
+
+/**
+ * Runs every test script through the linked (flattened) interpreter and the tree interpreter,
+ * and from a version 2 module (lazily-decoded blocks), and compares the resulting cues, including traces.
+ * @author Matthew Tropiano
+ */
+public final class TAMEProgramTest
+{
+	/** Scripts that have nondeterministic output. */
+	private static final List<String> SKIPPED = Arrays.asList("functiontest.tscript", "grandom.tscript", "time.tscript");
+
+	public static void main(String[] args) throws Exception
+	{
+		PrintStream out = System.out;
+		File dir = new File(args.length > 0 ? args[0] : "src/test/scripts/tame");
+
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".tscript"));
+		Arrays.sort(files);
+
+		int failures = 0;
+		for (File file : files)
+		{
+			if (SKIPPED.contains(file.getName()))
+				continue;
+
+			TAMEModule module;
+			try {
+				module = TAMEScriptReader.read(file);
+			} catch (TAMEScriptParseException e) {
+				out.println("SKIP " + file.getName() + ": " + e.getMessage());
+				continue;
+			}
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			module.writeBytes(bos);
+
+			ByteArrayOutputStream pooledBos = new ByteArrayOutputStream();
+			module.writeBytes(pooledBos, TAMEModule.FORMAT_VERSION_2);
+
+			TAMEModule linked = TAMEModule.create(new ByteArrayInputStream(bos.toByteArray()));
+			TAMEModule tree = TAMEModule.create(new ByteArrayInputStream(bos.toByteArray()));
+			tree.unlink();
+			TAMEModule pooled = TAMEModule.create(new ByteArrayInputStream(pooledBos.toByteArray()));
+
+			List<String> linkedCues = run(linked);
+			List<String> treeCues = run(tree);
+			List<String> pooledCues = run(pooled);
+			if (linkedCues.equals(treeCues) && linkedCues.equals(pooledCues) && Arrays.equals(linked.getDigest(), pooled.getDigest()))
+			{
+				out.println("OK   " + file.getName() + " (" + linkedCues.size() + " cues)");
+			}
+			else
+			{
+				out.println("FAIL " + file.getName());
+				if (!linkedCues.equals(treeCues))
+					printDifference(out, "tree:   ", linkedCues, treeCues);
+				else if (!linkedCues.equals(pooledCues))
+					printDifference(out, "v2:     ", linkedCues, pooledCues);
+				else
+					out.println("\tv2 digest does not match");
+				failures++;
+			}
+		}
+
+		out.println(failures == 0 ? "All passed." : failures + " failed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// Runs init and every available action name, collecting cues.
+	private static List<String> run(TAMEModule module)
+	{
+		List<String> out = new LinkedList<>();
+		TAMEModuleContext context = new TAMEModuleContext(module);
+		try {
+			collect(out, TAMELogic.handleInit(context, TraceType.VALUES));
+			for (String name : context.getAvailableActionNames())
+				collect(out, TAMELogic.handleRequest(context, name, TraceType.VALUES));
+		} catch (RuntimeException e) {
+			out.add("exception:" + e.getClass().getSimpleName());
+		}
+		return out;
+	}
+
+	// Prints the first different cue.
+	private static void printDifference(PrintStream out, String label, List<String> linkedCues, List<String> otherCues)
+	{
+		for (int i = 0; i < Math.max(linkedCues.size(), otherCues.size()); i++)
+		{
+			String l = i < linkedCues.size() ? linkedCues.get(i) : null;
+			String t = i < otherCues.size() ? otherCues.get(i) : null;
+			if (l == null || !l.equals(t))
+			{
+				out.println("\tlinked: " + l);
+				out.println("\t" + label + t);
+				break;
+			}
+		}
+	}
+
+	private static void collect(List<String> out, TAMEResponse response)
+	{
+		for (Cue cue : response.getCues())
+			out.add(cue.getType() + ":" + cue.getContent());
+		out.add("ops:" + response.getOperationsExecuted());
+	}
+
+}
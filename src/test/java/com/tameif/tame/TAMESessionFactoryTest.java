@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.tameif.tame.factory.TAMEScriptParseException;
+import com.tameif.tame.factory.TAMEScriptReader;
+import com.tameif.tame.element.TObject;
+import com.tameif.tame.element.TPlayer;
+import com.tameif.tame.element.TRoom;
+import com.tameif.tame.element.context.TWorldContext;
+import com.tameif.tame.lang.Cue;
+import com.tameif.tame.lang.Value;
+
+/**
+ * Runs every test script through contexts made by a {@link TAMESessionFactory} and through 
+ * regular contexts, and compares the resulting cues, also after a save and restore.
+ * Sessions are restored from a delta written after each request, and contexts from a full save.
+ * @author Matthew Tropiano
+ */
+public final class TAMESessionFactoryTest
+{
+	/** Scripts that have nondeterministic output. */
+	private static final List<String> SKIPPED = Arrays.asList("time.tscript");
+	/** Random seed for both contexts (their random states must also survive the save and restore). */
+	private static final long SEED = 0x5EEDL;
+
+	public static void main(String[] args) throws Exception
+	{
+		PrintStream out = System.out;
+		File dir = new File(args.length > 0 ? args[0] : "src/test/scripts/tame");
+
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".tscript"));
+		Arrays.sort(files);
+
+		int failures = 0;
+		for (File file : files)
+		{
+			if (SKIPPED.contains(file.getName()))
+				continue;
+
+			TAMEModule module;
+			try {
+				module = TAMEScriptReader.read(file);
+			} catch (TAMEScriptParseException e) {
+				out.println("SKIP " + file.getName() + ": " + e.getMessage());
+				continue;
+			}
+			module.link();
+			TAMESessionFactory factory = new TAMESessionFactory(module);
+
+			// two sessions from the same factory, so that changes in one cannot leak into the other.
+			factory.create();
+			List<String> sessionCues = run(factory.create(), factory);
+			List<String> contextCues = run(new TAMEModuleContext(module), null);
+			if (sessionCues.equals(contextCues))
+			{
+				out.println("OK   " + file.getName() + " (" + sessionCues.size() + " cues)");
+			}
+			else
+			{
+				out.println("FAIL " + file.getName());
+				for (int i = 0; i < Math.max(sessionCues.size(), contextCues.size()); i++)
+				{
+					String s = i < sessionCues.size() ? sessionCues.get(i) : null;
+					String c = i < contextCues.size() ? contextCues.get(i) : null;
+					if (s == null || !s.equals(c))
+					{
+						out.println("\tsession: " + s);
+						out.println("\tcontext: " + c);
+						break;
+					}
+				}
+				failures++;
+			}
+		}
+
+		failures += checkInitShared(out);
+		failures += checkInitOrder(out, new File(dir, "initorder.tscript"));
+		failures += checkCopy(out);
+
+		out.println(failures == 0 ? "All passed." : failures + " failed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// Runs init and every available action name, then saves, restores, and runs every action name again.
+	private static List<String> run(TAMEModuleContext context, TAMESessionFactory factory) throws IOException
+	{
+		List<String> out = new LinkedList<>();
+		List<byte[]> deltas = new ArrayList<>();
+		context.getRandom().setSeed(SEED);
+		try {
+			collect(out, TAMELogic.handleInit(context, false));
+			deltas.add(context.toDeltaBytes());
+			for (String name : context.getAvailableActionNames())
+			{
+				collect(out, TAMELogic.handleRequest(context, name, false));
+				deltas.add(context.toDeltaBytes());
+			}
+
+			TAMEModuleContext restored;
+			if (factory != null)
+			{
+				restored = factory.create();
+				for (byte[] delta : deltas)
+					restored.readDeltaBytes(new ByteArrayInputStream(delta));
+			}
+			else
+			{
+				ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				context.writeBytes(bos);
+				restored = new TAMEModuleContext(context.getModule());
+				restored.readBytes(new ByteArrayInputStream(bos.toByteArray()));
+			}
+			out.add("random:" + restored.getRandom().nextLong());
+
+			for (String name : restored.getAvailableActionNames())
+				collect(out, TAMELogic.handleRequest(restored, name, false));
+		} catch (RuntimeException | StackOverflowError e) {
+			out.add("exception:" + e.getClass().getSimpleName());
+		}
+		return out;
+	}
+
+	// Checks that init and saving only create contexts for the elements that init runs on, so the rest stay shared.
+	private static int checkInitShared(PrintStream out) throws IOException
+	{
+		TAMEModule module = TAMEScriptReader.read(
+			"object o_plain named \"plain\";\n" +
+			"object o_counted named \"counted\" { init() { count = 1; } }\n" +
+			"world { start() { textln(o_counted.count); } }\n"
+		);
+		module.link();
+		TAMEModuleContext context = new TAMESessionFactory(module).create();
+		context.getRandom().setSeed(SEED);
+		TAMELogic.handleInit(context, false);
+		TAMEModuleContext full = new TAMEModuleContext(module);
+		full.getRandom().setSeed(SEED);
+		TAMELogic.handleInit(full, false);
+
+		TObject plain = module.getObjectByIdentity("o_plain");
+		int failures = 0;
+		failures += check(out, "init: element without init has no context", !context.hasContext(plain));
+		failures += check(out, "init: element with init has a context", context.hasContext(module.getObjectByIdentity("o_counted")));
+		byte[] saved = context.toBytes();
+		failures += check(out, "save: element without init has no context", !context.hasContext(plain));
+		failures += check(out, "save: same as a context with every element's context", Arrays.equals(saved, full.toBytes()));
+		failures += check(out, "save: only created contexts listed", context.getObjectContexts().size() == 1);
+		return failures;
+	}
+
+	// Checks that init blocks run by element type, then in declaration order, then the world's.
+	private static int checkInitOrder(PrintStream out, File file) throws IOException
+	{
+		TAMEModule module = TAMEScriptReader.read(file);
+		module.link();
+		String expected = "c_first c_second o_second o_first o_third r_first p_second p_first world";
+		return check(out, "init order", firstText(TAMELogic.handleInit(new TAMEModuleContext(module), false)).equals(expected))
+			+ check(out, "init order, shared session", firstText(TAMELogic.handleInit(new TAMESessionFactory(module).create(), false)).equals(expected));
+	}
+
+	// Checks that a copied context starts in the same state as its source, and that neither changes the other.
+	private static int checkCopy(PrintStream out) throws IOException
+	{
+		TAMEModule module = TAMEScriptReader.read(
+			"object o_lamp named \"lamp\" tagged \"light\";\n" +
+			"object o_box named \"box\";\n" +
+			"room r_start;\n" +
+			"player p_main;\n" +
+			"world { init() { setPlayer(p_main); setRoom(p_main, r_start); giveObject(r_start, o_lamp); giveObject(p_main, o_box); count = 0; shared = [1, 2]; other = shared; } }\n"
+		);
+		module.link();
+		TObject lamp = module.getObjectByIdentity("o_lamp");
+		TObject box = module.getObjectByIdentity("o_box");
+		TRoom room = module.getRoomByIdentity("r_start");
+		TPlayer player = module.getPlayerByIdentity("p_main");
+
+		TAMEModuleContext source = new TAMESessionFactory(module).create();
+		TAMELogic.handleInit(source, false);
+		source.toDeltaBytes();
+		// unwritten changes, to be written by both.
+		source.getWorldContext().setValue("count", Value.create(1));
+		source.getOwnershipMap().addObjectTag(box, "heavy");
+
+		TAMEModuleContext copy = source.copy();
+		int failures = 0;
+		failures += check(out, "copy: same save", Arrays.equals(source.toBytes(), copy.toBytes()));
+		failures += check(out, "copy: same unwritten changes", Arrays.equals(source.copy().toDeltaBytes(), copy.copy().toDeltaBytes()));
+
+		// lists shared in the source stay shared in the copy, but not with the source.
+		TWorldContext copyWorld = copy.getWorldContext();
+		TWorldContext sourceWorld = source.getWorldContext();
+		copyWorld.getValue("shared").listAdd(Value.create(3));
+		failures += check(out, "copy: shared list stays shared", copyWorld.getValue("other").length() == 3);
+		failures += check(out, "copy: list not shared with source", sourceWorld.getValue("shared").length() == 2 && sourceWorld.getValue("other").length() == 2);
+		sourceWorld.getValue("other").listAdd(Value.create(4));
+		failures += check(out, "copy: source list not shared with copy", sourceWorld.getValue("shared").length() == 3 && copyWorld.getValue("shared").length() == 3);
+
+		// variables, both ways.
+		copyWorld.setValue("count", Value.create(5));
+		failures += check(out, "copy: variable change not in source", sourceWorld.getValue("count").asLong() == 1);
+		sourceWorld.setValue("count", Value.create(7));
+		source.getObjectContext(lamp).setValue("lit", Value.create(true));
+		failures += check(out, "copy: variable change not in copy", copyWorld.getValue("count").asLong() == 5 && !copy.getObjectContext(lamp).getValue("lit").asBoolean());
+
+		// ownership, names, and tags, both ways.
+		copy.getOwnershipMap().addObjectToElement(lamp, player);
+		copy.getOwnershipMap().addObjectName(lamp, "lantern");
+		copy.getOwnershipMap().removeObjectTag(lamp, "light");
+		failures += check(out, "copy: ownership change not in source", source.getOwnershipMap().getObjectOwner(lamp) == room);
+		failures += check(out, "copy: name and tag change not in source", !source.getOwnershipMap().checkObjectHasName(lamp, "lantern") && source.getOwnershipMap().checkObjectHasTag(lamp, "light"));
+		source.getOwnershipMap().addObjectToElement(box, room);
+		source.getOwnershipMap().removeObjectName(box, "box");
+		source.getOwnershipMap().addObjectTag(box, "open");
+		failures += check(out, "copy: ownership change not in copy", copy.getOwnershipMap().getObjectOwner(box) == player && copy.getOwnershipMap().getObjectOwner(lamp) == player);
+		failures += check(out, "copy: name and tag change not in copy", copy.getOwnershipMap().checkObjectHasName(box, "box") && !copy.getOwnershipMap().checkObjectHasTag(box, "open") && copy.getOwnershipMap().checkObjectHasTag(box, "heavy"));
+		failures += check(out, "copy: current player and room", copy.getOwnershipMap().getCurrentPlayer() == player && copy.getOwnershipMap().getCurrentRoom() == room);
+
+		// deltas written by the copy leave the source's changes (and delta count) alone, and both replay after the same delta.
+		byte[] copyDelta = copy.toDeltaBytes();
+		byte[] sourceDelta = source.toDeltaBytes();
+		TAMEModuleContext copyReplay = replayed(module, copyDelta);
+		TAMEModuleContext sourceReplay = replayed(module, sourceDelta);
+		failures += check(out, "copy: copy delta replays", Arrays.equals(copy.toBytes(), copyReplay.toBytes()));
+		failures += check(out, "copy: source delta replays", Arrays.equals(source.toBytes(), sourceReplay.toBytes()));
+		return failures;
+	}
+
+	// Creates a session, runs init, writes its first delta, then reads a delta after it.
+	private static TAMEModuleContext replayed(TAMEModule module, byte[] delta) throws IOException
+	{
+		TAMEModuleContext out = new TAMESessionFactory(module).create();
+		TAMELogic.handleInit(out, false);
+		out.toDeltaBytes();
+		out.readDeltaBytes(new ByteArrayInputStream(delta));
+		return out;
+	}
+
+	// Gets the content of the first text cue in a response, trimmed.
+	private static String firstText(TAMEResponse response)
+	{
+		for (Cue cue : response.getCues())
+			if (TAMEConstants.CUE_TEXT.equals(cue.getType()))
+				return cue.getContent().trim();
+		return "";
+	}
+
+	private static int check(PrintStream out, String name, boolean passed)
+	{
+		out.println((passed ? "OK   " : "FAIL ") + name);
+		return passed ? 0 : 1;
+	}
+
+	private static void collect(List<String> out, TAMEResponse response)
+	{
+		for (Cue cue : response.getCues())
+			out.add(cue.getType() + ":" + cue.getContent());
+		out.add("ops:" + response.getOperationsExecuted());
+	}
+
+}
@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.tameif.tame.element.TObject;
+import com.tameif.tame.element.context.TOwnershipMap;
+import com.tameif.tame.exception.ModuleStateException;
+import com.tameif.tame.factory.TAMEScriptReader;
+import com.tameif.tame.lang.Cue;
+import com.tameif.tame.lang.Value;
+
+/**
+ * Tests hibernating and restoring sessions in a {@link TAMESessionStore}.
+ * @author Matthew Tropiano
+ */
+public final class TAMESessionStoreTest
+{
+	/** Milliseconds to wait for a session to be hibernated. */
+	private static final long TIMEOUT_MILLIS = 5000L;
+	/** Sessions by id, so that checks can refer to the same session twice. */
+	private static final Map<String, TAMESession> SESSIONS = new HashMap<>();
+
+	public static void main(String[] args) throws Exception
+	{
+		PrintStream out = System.out;
+		TAMEModule module = TAMEScriptReader.read(
+			"action general a_count named \"count\";\n" +
+			"object o_lamp named \"lamp\" { init() { lit = false; } }\n" +
+			"room r_start;\n" +
+			"player p_main;\n" +
+			"world {\n" +
+			"	init() { setPlayer(p_main); setRoom(p_main, r_start); giveObject(r_start, o_lamp); count = 0; names = [\"alpha\", \"beta\", \"gamma\"]; }\n" +
+			"	onAction(a_count) { count = count + 1; textln(count); }\n" +
+			"}\n"
+		);
+		module.link();
+		TAMESessionFactory factory = new TAMESessionFactory(module);
+
+		File dir = Files.createTempDirectory("tamestore").toFile();
+		int failures = 0;
+		try {
+			failures += checkArenaRoundTrip(out, factory);
+			failures += checkSpillRoundTrip(out, factory, dir);
+			failures += checkMoveToFile(out, factory, dir);
+			failures += checkRestoreFailure(out, factory, dir);
+			failures += checkTemplateShared(out, factory);
+			failures += checkEviction(out, factory);
+		} finally {
+			for (File file : dir.listFiles())
+				file.delete();
+			dir.delete();
+		}
+
+		out.println(failures == 0 ? "All passed." : failures + " failed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// Hibernates and restores a context in the arena.
+	private static int checkArenaRoundTrip(PrintStream out, TAMESessionFactory factory) throws IOException
+	{
+		TAMESessionStore store = new TAMESessionStore(factory, 1 << 16, null);
+		TAMESession session = session("arena", store);
+		TAMEModuleContext context = played(factory, 3);
+		byte[] expected = context.toBytes();
+
+		int failures = 0;
+		failures += check(out, "arena: hibernate", store.hibernate(session, context));
+		failures += check(out, "arena: stored", store.getHibernatedCount() == 1 && store.getMemoryUsed() > 0 && store.getSpilledCount() == 0);
+		failures += check(out, "arena: restore", Arrays.equals(expected, store.restore(session).toBytes()));
+		failures += check(out, "arena: freed", store.getHibernatedCount() == 0 && store.getMemoryUsed() == 0 && store.getResidentCount() == 1);
+		failures += check(out, "arena: restore twice", throwsStateException(store, session));
+		return failures;
+	}
+
+	// Hibernates and restores a context in a file.
+	private static int checkSpillRoundTrip(PrintStream out, TAMESessionFactory factory, File dir) throws IOException
+	{
+		TAMESessionStore store = new TAMESessionStore(factory, 0, dir);
+		TAMESession session = session("spill", store);
+		TAMEModuleContext context = played(factory, 2);
+		byte[] expected = context.toBytes();
+
+		int failures = 0;
+		failures += check(out, "spill: hibernate", store.hibernate(session, context));
+		failures += check(out, "spill: in a file", store.getSpilledCount() == 1 && dir.listFiles().length == 1);
+		failures += check(out, "spill: restore", Arrays.equals(expected, store.restore(session).toBytes()));
+		failures += check(out, "spill: file deleted", store.getSpilledCount() == 0 && dir.listFiles().length == 0);
+
+		store.hibernate(session("discarded", store), played(factory, 1));
+		store.hibernate(session("cleared", store), played(factory, 1));
+		store.discard(session("discarded", store));
+		failures += check(out, "spill: discard deletes file", dir.listFiles().length == 1);
+		store.clear();
+		failures += check(out, "spill: clear deletes files", dir.listFiles().length == 0 && store.getHibernatedCount() == 0);
+		return failures;
+	}
+
+	// Fills the arena, so that the oldest save is moved to a file to make room.
+	private static int checkMoveToFile(PrintStream out, TAMESessionFactory factory, File dir) throws IOException
+	{
+		TAMESessionStore probe = new TAMESessionStore(factory, 1 << 16, null);
+		probe.hibernate(session("probe", probe), played(factory, 1));
+		int size = probe.getMemoryUsed();
+
+		// room for one save, not two.
+		TAMESessionStore store = new TAMESessionStore(factory, size + size / 2, dir);
+		TAMESession first = session("first", store);
+		TAMESession second = session("second", store);
+		TAMEModuleContext firstContext = played(factory, 1);
+		TAMEModuleContext secondContext = played(factory, 1);
+		secondContext.getWorldContext().setValue("marker", Value.create(2));
+		byte[] firstExpected = firstContext.toBytes();
+		byte[] secondExpected = secondContext.toBytes();
+
+		store.hibernate(first, firstContext);
+		store.hibernate(second, secondContext);
+
+		int failures = 0;
+		failures += check(out, "move: oldest moved to a file", store.getSpilledCount() == 1 && dir.listFiles().length == 1 && store.getHibernatedCount() == 2);
+		failures += check(out, "move: restore moved", Arrays.equals(firstExpected, store.restore(first).toBytes()));
+		failures += check(out, "move: restore in arena", Arrays.equals(secondExpected, store.restore(second).toBytes()));
+		failures += check(out, "move: all freed", store.getHibernatedCount() == 0 && store.getMemoryUsed() == 0 && dir.listFiles().length == 0);
+		return failures;
+	}
+
+	// A save that cannot be read is kept, so that its session can be restored once it can.
+	private static int checkRestoreFailure(PrintStream out, TAMESessionFactory factory, File dir) throws IOException
+	{
+		TAMESessionStore store = new TAMESessionStore(factory, 0, dir);
+		TAMESession session = session("failure", store);
+		TAMEModuleContext context = played(factory, 4);
+		byte[] expected = context.toBytes();
+		store.hibernate(session, context);
+
+		File file = dir.listFiles()[0];
+		byte[] saved = Files.readAllBytes(file.toPath());
+		byte[] corrupt = saved.clone();
+		for (int i = 0; i < corrupt.length; i++)
+			corrupt[i] ^= 0x5A;
+		Files.write(file.toPath(), corrupt);
+
+		int failures = 0;
+		failures += check(out, "failure: corrupt save", throwsStateException(store, session));
+		failures += check(out, "failure: save kept", store.getHibernatedCount() == 1 && store.getSpilledCount() == 1 && file.exists() && store.getResidentCount() == 0);
+
+		file.delete();
+		boolean missing = false;
+		try {
+			store.restore(session);
+		} catch (IOException e) {
+			missing = true;
+		}
+		failures += check(out, "failure: missing file", missing && store.getHibernatedCount() == 1);
+
+		Files.write(file.toPath(), saved);
+		failures += check(out, "failure: restore after fix", Arrays.equals(expected, store.restore(session).toBytes()));
+		failures += check(out, "failure: freed", store.getHibernatedCount() == 0 && !file.exists());
+		return failures;
+	}
+
+	// A restored context shares its names and tags with the factory's template, apart from the ones that changed.
+	private static int checkTemplateShared(PrintStream out, TAMESessionFactory factory) throws IOException
+	{
+		TAMESessionStore store = new TAMESessionStore(factory, 1 << 16, null);
+		TAMESession session = session("template", store);
+		TAMEModuleContext context = played(factory, 1);
+		byte[] expected = context.toBytes();
+		store.hibernate(session, context);
+		TAMEModuleContext unchanged = store.restore(session);
+		TOwnershipMap restored = unchanged.getOwnershipMap();
+		TObject lamp = factory.getModule().getObjectByIdentity("o_lamp");
+
+		int failures = 0;
+		failures += check(out, "template: restored shares template", restored.hasTemplate() && restored.getOwnStringSetCount() == 0);
+		failures += check(out, "template: names from template", restored.checkObjectHasName(lamp, "lamp"));
+		failures += check(out, "template: same save", Arrays.equals(expected, unchanged.toBytes()));
+
+		context = played(factory, 1);
+		context.getOwnershipMap().removeObjectName(lamp, "lamp");
+		context.getOwnershipMap().addObjectTag(lamp, "bright");
+		expected = context.toBytes();
+		store.hibernate(session, context);
+		TAMEModuleContext changed = store.restore(session);
+		restored = changed.getOwnershipMap();
+		failures += check(out, "template: only changed sets copied", restored.hasTemplate() && restored.getOwnStringSetCount() == 2);
+		failures += check(out, "template: changes restored", !restored.checkObjectHasName(lamp, "lamp") && restored.checkObjectHasTag(lamp, "bright"));
+		failures += check(out, "template: same save after changes", Arrays.equals(expected, changed.toBytes()));
+		return failures;
+	}
+
+	// Sessions past the resident limit are hibernated, least-recently-used first, and restored on their next task.
+	private static int checkEviction(PrintStream out, TAMESessionFactory factory) throws Exception
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		TAMESessionStore store = new TAMESessionStore(factory, 1 << 20, null);
+		store.setResidentLimit(2);
+		TAMEEngine engine = new TAMEEngine(factory, executor, 4, store);
+		int failures = 0;
+		try {
+			TAMESession first = engine.createSession("first");
+			TAMESession second = engine.createSession("second");
+			TAMESession third = engine.createSession("third");
+			first.submitInit().get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			first.submitRequest("count").get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			second.submitInit().get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			third.submitInit().get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+			failures += check(out, "evict: least-recently-used", waitForHibernation(first) && !second.isHibernated() && !third.isHibernated());
+
+			TAMEResponse response = first.submitRequest("count").get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			failures += check(out, "evict: restored on next task", !first.isHibernated() && "2".equals(firstText(response)));
+			failures += check(out, "evict: next least-recently-used", waitForHibernation(second) && !third.isHibernated());
+			failures += check(out, "evict: counts", store.getHibernationCount() == 2 && store.getRestoreCount() == 1 && store.getResidentCount() == 2);
+		} finally {
+			engine.close();
+			executor.shutdownNow();
+		}
+		return failures;
+	}
+
+	// Creates a context and runs init and a few requests on it.
+	private static TAMEModuleContext played(TAMESessionFactory factory, int count)
+	{
+		TAMEModuleContext out = factory.create();
+		TAMELogic.handleInit(out, false);
+		for (int i = 0; i < count; i++)
+			TAMELogic.handleRequest(out, "count", false);
+		return out;
+	}
+
+	// Creates a session that is only used as a key in a store.
+	private static TAMESession session(String id, TAMESessionStore store)
+	{
+		return SESSIONS.computeIfAbsent(id, (key) -> new TAMESession(key, null, Runnable::run, 1, store));
+	}
+
+	private static boolean throwsStateException(TAMESessionStore store, TAMESession session) throws IOException
+	{
+		try {
+			store.restore(session);
+			return false;
+		} catch (ModuleStateException e) {
+			return true;
+		}
+	}
+
+	private static boolean waitForHibernation(TAMESession session) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!session.isHibernated() && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		return session.isHibernated();
+	}
+
+	private static String firstText(TAMEResponse response)
+	{
+		for (Cue cue : response.getCues())
+			if (TAMEConstants.CUE_TEXT.equals(cue.getType()))
+				return cue.getContent().trim();
+		return "";
+	}
+
+	private static int check(PrintStream out, String name, boolean passed)
+	{
+		out.println((passed ? "OK   " : "FAIL ") + name);
+		return passed ? 0 : 1;
+	}
+
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.benchmark;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small benchmark harness.
+ * Each benchmark is warmed up for a fixed amount of time, then measured for a fixed amount of time.
+ * Time per operation and bytes allocated per operation (if the VM reports it) are recorded.
+ * @author Matthew Tropiano
+ */
+public final class BenchmarkRunner
+{
+	/**
+	 * A single benchmarked operation.
+	 */
+	@FunctionalInterface
+	public interface Task
+	{
+		/**
+		 * Runs one operation.
+		 * @throws Exception if something goes wrong.
+		 */
+		void run() throws Exception;
+	}
+
+	/**
+	 * A single benchmark result.
+	 */
+	public static class Result
+	{
+		private String name;
+		private long operations;
+		private long nanos;
+		private long bytes;
+
+		private Result(String name, long operations, long nanos, long bytes)
+		{
+			this.name = name;
+			this.operations = operations;
+			this.nanos = nanos;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return the benchmark name.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the amount of operations measured.
+		 */
+		public long getOperations()
+		{
+			return operations;
+		}
+
+		/**
+		 * @return the average nanoseconds per operation.
+		 */
+		public double getNanosPerOperation()
+		{
+			return (double)nanos / operations;
+		}
+
+		/**
+		 * @return the average bytes allocated per operation, or -1 if unknown.
+		 */
+		public double getBytesPerOperation()
+		{
+			return bytes < 0 ? -1.0 : (double)bytes / operations;
+		}
+	}
+
+	/** Warmup time in nanos. */
+	private long warmupNanos;
+	/** Measurement time in nanos. */
+	private long measureNanos;
+	/** Name filter (substring), or null. */
+	private String filter;
+	/** Results. */
+	private List<Result> results;
+
+	/**
+	 * Creates a new runner.
+	 * @param warmupMillis the warmup time per benchmark in milliseconds.
+	 * @param measureMillis the measurement time per benchmark in milliseconds.
+	 * @param filter if not null, only benchmarks with names that contain this string are run.
+	 */
+	public BenchmarkRunner(long warmupMillis, long measureMillis, String filter)
+	{
+		this.warmupNanos = warmupMillis * 1000000L;
+		this.measureNanos = measureMillis * 1000000L;
+		this.filter = filter;
+		this.results = new ArrayList<>();
+	}
+
+	/**
+	 * Checks if a benchmark would be run by this runner.
+	 * @param name the benchmark name.
+	 * @return true if so, false if not.
+	 */
+	public boolean accepts(String name)
+	{
+		return filter == null || name.contains(filter);
+	}
+
+	/**
+	 * Runs a benchmark and records its result.
+	 * @param name the benchmark name.
+	 * @param task the operation to measure.
+	 * @return the result, or null if filtered out.
+	 * @throws Exception if the task throws an exception.
+	 */
+	public Result run(String name, Task task) throws Exception
+	{
+		if (!accepts(name))
+			return null;
+
+		long end = System.nanoTime() + warmupNanos;
+		while (System.nanoTime() < end)
+			task.run();
+
+		long operations = 0;
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		long now = start;
+		end = start + measureNanos;
+		do {
+			task.run();
+			operations++;
+		} while ((now = System.nanoTime()) < end);
+		long after = allocatedBytes();
+
+		Result out = new Result(name, operations, now - start, bytes < 0 ? -1L : after - bytes);
+		results.add(out);
+		System.err.printf("%-48s %14.1f ns/op %14.1f B/op\n", name, out.getNanosPerOperation(), out.getBytesPerOperation());
+		return out;
+	}
+
+	/**
+	 * @return the results recorded so far.
+	 */
+	public List<Result> getResults()
+	{
+		return results;
+	}
+
+	/**
+	 * Writes the results as JSON.
+	 * @param out the output stream.
+	 */
+	public void writeJSON(PrintStream out)
+	{
+		out.println("{");
+		out.printf("\t\"java.version\": \"%s\",\n", escape(System.getProperty("java.version")));
+		out.printf("\t\"timestamp\": %d,\n", System.currentTimeMillis());
+		out.println("\t\"results\": [");
+		for (int i = 0; i < results.size(); i++)
+		{
+			Result result = results.get(i);
+			out.printf("\t\t{\"name\": \"%s\", \"operations\": %d, \"nsPerOp\": %.3f, \"bytesPerOp\": %.3f}%s\n",
+				escape(result.name), result.operations, result.getNanosPerOperation(), result.getBytesPerOperation(),
+				i < results.size() - 1 ? "," : ""
+			);
+		}
+		out.println("\t]");
+		out.println("}");
+	}
+
+	// Escapes a JSON string.
+	private static String escape(String s)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c < 0x20)
+				sb.append(String.format("\\u%04x", (int)c));
+			else
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the amount of bytes allocated by the current thread, if the VM supports it.
+	 * @return the amount of bytes, or -1 if not supported.
+	 */
+	public static long allocatedBytes()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1L;
+	}
+
+}
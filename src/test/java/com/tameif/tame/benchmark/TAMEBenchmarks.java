@@ -0,0 +1,371 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import com.tameif.tame.TAMELogic;
+import com.tameif.tame.TAMEModule;
+import com.tameif.tame.TAMEModuleContext;
+import com.tameif.tame.TAMEResponse;
+import com.tameif.tame.TAMESessionFactory;
+import com.tameif.tame.element.TObject;
+import com.tameif.tame.element.TRoom;
+import com.tameif.tame.element.TWorld;
+import com.tameif.tame.element.context.TOwnershipMap;
+import com.tameif.tame.factory.TAMEScriptParseException;
+import com.tameif.tame.factory.TAMEScriptReader;
+import com.tameif.tame.lang.Block;
+import com.tameif.tame.lang.BlockEntry;
+import com.tameif.tame.lang.BlockEntryType;
+import com.tameif.tame.lang.FunctionEntry;
+import com.tameif.tame.lang.TraceType;
+import com.tameif.tame.lang.Value;
+import com.tameif.tame.lang.ValueSet;
+
+/**
+ * The main benchmark suite.
+ * Covers the full request pipeline on the test scripts, script compilation, module and
+ * save state serialization, and hot operations in the virtual machine.
+ * <p>Usage: TAMEBenchmarks [options]
+ * <ul>
+ * <li>--output [file] - write JSON results to a file (default is STDOUT).</li>
+ * <li>--warmup [millis] - warmup time per benchmark.</li>
+ * <li>--measure [millis] - measurement time per benchmark.</li>
+ * <li>--filter [string] - only run benchmarks whose names contain this string.</li>
+ * <li>--scripts [dir] - the test scripts directory.</li>
+ * </ul>
+ * @author Matthew Tropiano
+ */
+public final class TAMEBenchmarks
+{
+	private static final String OPERATIONS_SCRIPT = "src/test/scripts/benchmark/operations.tscript";
+	private static final String INTERPRETER_SCRIPT = "src/test/scripts/tame/example.tscript";
+	private static final String CROWDED_SCRIPT = "src/test/scripts/benchmark/crowdedroom.tscript";
+	private static final String INTERPRETER_LONG_INPUT = "look at the old book and then look at it again and again because it is a very interesting old book that I would like to read";
+	private static final String[] OPERATION_GROUPS = {"math", "string", "regex", "list", "loop", "function", "break"};
+	private static final TraceType[] NO_TRACE = new TraceType[0];
+
+	/** Sink for results, so that nothing gets optimized away. */
+	static volatile Object sink;
+
+	public static void main(String[] args) throws Exception
+	{
+		String outPath = null;
+		long warmup = 500L;
+		long measure = 1000L;
+		String filter = null;
+		File scriptDir = new File("src/test/scripts/tame");
+
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("--output"))
+				outPath = args[++i];
+			else if (args[i].equals("--warmup"))
+				warmup = Long.parseLong(args[++i]);
+			else if (args[i].equals("--measure"))
+				measure = Long.parseLong(args[++i]);
+			else if (args[i].equals("--filter"))
+				filter = args[++i];
+			else if (args[i].equals("--scripts"))
+				scriptDir = new File(args[++i]);
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner(warmup, measure, filter);
+		benchmarkScripts(runner, scriptDir);
+		benchmarkOperations(runner);
+		benchmarkInterpreter(runner);
+		benchmarkOwnership(runner);
+		benchmarkLineage(runner);
+		benchmarkValues(runner);
+
+		if (outPath != null)
+		{
+			File outFile = new File(outPath);
+			if (outFile.getAbsoluteFile().getParentFile() != null)
+				outFile.getAbsoluteFile().getParentFile().mkdirs();
+			try (PrintStream out = new PrintStream(new FileOutputStream(outFile), true, "UTF-8"))
+			{
+				runner.writeJSON(out);
+			}
+			System.err.println("Wrote " + outFile.getPath());
+		}
+		else
+		{
+			runner.writeJSON(System.out);
+		}
+	}
+
+	/**
+	 * Benchmarks for each test script: compile, module read/write,
+	 * context save/restore, context creation, and a full run (init plus every action name).
+	 */
+	private static void benchmarkScripts(BenchmarkRunner runner, File scriptDir) throws Exception
+	{
+		File[] files = scriptDir.listFiles((d, name) -> name.endsWith(".tscript"));
+		if (files == null)
+			return;
+		Arrays.sort(files);
+
+		for (File file : files)
+		{
+			String name = file.getName().substring(0, file.getName().length() - ".tscript".length());
+			String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+			String streamName = file.getPath();
+
+			final TAMEModule module;
+			try {
+				module = TAMEScriptReader.read(streamName, text);
+			} catch (TAMEScriptParseException e) {
+				System.err.println("Skipping " + file.getName() + ": " + e.getMessage());
+				continue;
+			}
+
+			runner.run("compile." + name, () -> sink = TAMEScriptReader.read(streamName, text));
+
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			module.writeBytes(bos);
+			final byte[] moduleBytes = bos.toByteArray();
+			runner.run("module.write." + name, () ->
+			{
+				ByteArrayOutputStream out = new ByteArrayOutputStream(moduleBytes.length);
+				module.writeBytes(out);
+				sink = out;
+			});
+			runner.run("module.read." + name, () -> sink = TAMEModule.create(new ByteArrayInputStream(moduleBytes)));
+
+			bos = new ByteArrayOutputStream();
+			module.writeBytes(bos, TAMEModule.FORMAT_VERSION_2);
+			final byte[] moduleBytesV2 = bos.toByteArray();
+			runner.run("module.read.v2." + name, () -> sink = TAMEModule.create(new ByteArrayInputStream(moduleBytesV2)));
+
+			final ByteBuffer moduleBufferV2 = ByteBuffer.allocateDirect(moduleBytesV2.length);
+			moduleBufferV2.put(moduleBytesV2);
+			((Buffer)moduleBufferV2).flip();
+			runner.run("module.load.v2." + name, () -> sink = TAMEModule.load(moduleBufferV2));
+			runner.run("module.load.v2.trusted." + name, () -> sink = TAMEModule.load(moduleBufferV2, false));
+
+			final TAMEModule linked = TAMEModule.create(new ByteArrayInputStream(moduleBytes));
+			final TAMEModuleContext context = new TAMEModuleContext(linked);
+			final String[] actionNames = context.getAvailableActionNames();
+			bos = new ByteArrayOutputStream();
+			try {
+				TAMELogic.handleInit(context, NO_TRACE);
+				for (String actionName : actionNames)
+					TAMELogic.handleRequest(new TAMEModuleContext(linked), actionName, NO_TRACE);
+				context.writeBytes(bos);
+			} catch (RuntimeException | StackOverflowError e) {
+				System.err.println("Skipping execution of " + file.getName() + ": " + e);
+				continue;
+			}
+			final byte[] stateBytes = bos.toByteArray();
+			runner.run("state.write." + name, () ->
+			{
+				ByteArrayOutputStream out = new ByteArrayOutputStream(stateBytes.length);
+				context.writeBytes(out);
+				sink = out;
+			});
+			runner.run("state.read." + name, () -> context.readBytes(new ByteArrayInputStream(stateBytes)));
+			runner.run("state.read.buffer." + name, () -> context.fromBytes(stateBytes));
+			// a turn that changes one variable: a delta instead of a whole save.
+			context.markSnapshot();
+			runner.run("state.delta." + name, () ->
+			{
+				context.getWorldContext().setValue("_benchmark", Value.create(1));
+				ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+				context.writeDeltaBytes(out);
+				sink = out;
+			});
+
+			final TAMESessionFactory factory = new TAMESessionFactory(linked);
+			runner.run("context.create." + name, () -> sink = new TAMEModuleContext(linked));
+			runner.run("session.create." + name, () -> sink = factory.create());
+
+			// forking a context: a direct copy, versus a save read into a new session.
+			runner.run("context.copy." + name, () -> sink = context.copy());
+			runner.run("context.copy.roundtrip." + name, () ->
+			{
+				TAMEModuleContext c = factory.create();
+				c.fromBytes(context.toBytes());
+				sink = c;
+			});
+
+			runner.run("request." + name, () ->
+			{
+				TAMEModuleContext c = new TAMEModuleContext(linked);
+				sink = TAMELogic.handleInit(c, NO_TRACE);
+				for (String actionName : actionNames)
+					sink = TAMELogic.handleRequest(c, actionName, NO_TRACE);
+			});
+		}
+	}
+
+	/**
+	 * Benchmarks for groups of VM operations, via the operations benchmark script.
+	 */
+	private static void benchmarkOperations(BenchmarkRunner runner) throws Exception
+	{
+		TAMEModule module = TAMEScriptReader.read(new File(OPERATIONS_SCRIPT));
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		module.writeBytes(bos);
+		TAMEModule linked = TAMEModule.create(new ByteArrayInputStream(bos.toByteArray()));
+
+		final TAMEModuleContext context = new TAMEModuleContext(linked);
+		TAMELogic.handleInit(context, NO_TRACE);
+		for (String group : OPERATION_GROUPS)
+			runner.run("ops." + group, () -> sink = TAMELogic.handleRequest(context, group, NO_TRACE));
+		runner.run("ops.loop.traced", () -> sink = TAMELogic.handleRequest(context, "loop", TraceType.VALUES));
+		final TAMEResponse reused = TAMELogic.handleRequest(context, "loop", NO_TRACE);
+		runner.run("ops.loop.reused", () -> sink = TAMELogic.handleRequest(context, "loop", reused, NO_TRACE));
+
+		linked.unlink();
+		for (String group : OPERATION_GROUPS)
+			runner.run("ops.tree." + group, () -> sink = TAMELogic.handleRequest(context, group, NO_TRACE));
+		linked.link();
+	}
+
+	/**
+	 * Benchmarks for input interpretation, on short and long inputs.
+	 */
+	private static void benchmarkInterpreter(BenchmarkRunner runner) throws Exception
+	{
+		TAMEModule module = TAMEScriptReader.read(new File(INTERPRETER_SCRIPT));
+		module.link();
+		final TAMEModuleContext context = new TAMEModuleContext(module);
+		TAMELogic.handleInit(context, NO_TRACE);
+		TAMELogic.handleRequest(context, "take old book", NO_TRACE);
+		
+		runner.run("interpret.short", () -> sink = TAMELogic.handleRequest(context, "examine old book", NO_TRACE));
+		runner.run("interpret.ditransitive", () -> sink = TAMELogic.handleRequest(context, "use the old book with the huge incinerator", NO_TRACE));
+		runner.run("interpret.long", () -> sink = TAMELogic.handleRequest(context, INTERPRETER_LONG_INPUT, NO_TRACE));
+
+		TAMEModule crowded = TAMEScriptReader.read(new File(CROWDED_SCRIPT));
+		crowded.link();
+		final TAMEModuleContext crowdedContext = new TAMEModuleContext(crowded);
+		TAMELogic.handleInit(crowdedContext, NO_TRACE);
+		final TObject[] found = new TObject[2];
+		runner.run("interpret.crowded", () -> sink = TAMELogic.handleRequest(crowdedContext, "examine brass lamp", NO_TRACE));
+		runner.run("lookup.accessible.crowded", () -> sink = crowdedContext.getAccessibleObjectsByName("lamp", found, 0));
+	}
+
+	/**
+	 * Benchmarks for scanning and changing the objects owned by an element, and resolving elements, in a room with many objects.
+	 */
+	private static void benchmarkOwnership(BenchmarkRunner runner) throws Exception
+	{
+		TAMEModule crowded = TAMEScriptReader.read(new File(CROWDED_SCRIPT));
+		crowded.link();
+		final TAMEModuleContext context = new TAMEModuleContext(crowded);
+		TAMELogic.handleInit(context, NO_TRACE);
+		final TOwnershipMap ownership = context.getOwnershipMap();
+		final TRoom hall = crowded.getRoomByIdentity("r_hall");
+		final TWorld world = crowded.getWorld();
+		final TObject middle = crowded.getObjectByIdentity("o_item150");
+		
+		runner.run("ownership.scan.crowded", () ->
+		{
+			int count = 0;
+			for (TObject object : ownership.getObjectCursor(hall))
+				if (object == middle)
+					count++;
+			sink = count;
+		});
+		runner.run("ownership.snapshot.crowded", () -> sink = ownership.getObjectsOwnedByElement(hall));
+		runner.run("ownership.move.crowded", () ->
+		{
+			ownership.addObjectToElement(middle, world);
+			ownership.addObjectToElement(middle, hall);
+		});
+		runner.run("ownership.check.crowded", () -> sink = ownership.checkElementHasObject(hall, middle));
+
+		final Value middleValue = Value.createObject("O_Item150");
+		runner.run("resolve.object.crowded", () -> sink = context.resolveObject(middleValue));
+		runner.run("resolve.context.crowded", () -> sink = context.resolveObjectContext(middleValue));
+		runner.run("resolve.identity.crowded", () -> sink = context.resolveObjectContext("O_Item150"));
+	}
+
+	/**
+	 * Benchmarks for resolving blocks and functions through a deep object lineage, with and without lineage tables.
+	 */
+	private static void benchmarkLineage(BenchmarkRunner runner) throws Exception
+	{
+		TAMEModule module = new TAMEModule();
+		module.setWorld(new TWorld());
+		TObject root = new TObject("o_lineage0");
+		root.setArchetype(true);
+		root.addBlock(BlockEntry.create(BlockEntryType.ONACTION, Value.createAction("a_lineage")), new Block());
+		root.addFunction("lineageFunction", FunctionEntry.create(new Block()));
+		module.addObject(root);
+		TObject leaf = root;
+		for (int i = 1; i <= 8; i++)
+			module.addObject(leaf = new TObject("o_lineage" + i, leaf));
+		module.link();
+		
+		final TObject last = leaf;
+		final Value action = Value.createAction("a_lineage");
+		runner.run("lineage.block.deep", () -> sink = last.resolveBlock(BlockEntry.create(BlockEntryType.ONACTION, action)));
+		runner.run("lineage.block.missing", () -> sink = last.resolveBlock(BlockEntry.create(BlockEntryType.ONACTIONWITH, action, action)));
+		runner.run("lineage.function.deep", () -> sink = last.resolveFunction("LineageFunction"));
+		module.unlink();
+		runner.run("lineage.tree.block.deep", () -> sink = last.resolveBlock(BlockEntry.create(BlockEntryType.ONACTION, action)));
+		runner.run("lineage.tree.block.missing", () -> sink = last.resolveBlock(BlockEntry.create(BlockEntryType.ONACTIONWITH, action, action)));
+		runner.run("lineage.tree.function.deep", () -> sink = last.resolveFunction("LineageFunction"));
+	}
+
+	/**
+	 * Micro-benchmarks for values and value sets.
+	 */
+	private static void benchmarkValues(BenchmarkRunner runner) throws Exception
+	{
+		final Value i1 = Value.create(12345);
+		final Value i2 = Value.create(678);
+		final Value f1 = Value.create(3.5);
+		final Value s1 = Value.create("apple");
+
+		runner.run("value.add.int", () -> sink = Value.add(i1, i2));
+		runner.run("value.multiply.int", () -> sink = Value.multiply(i1, i2));
+		runner.run("value.divide.float", () -> sink = Value.divide(i1, f1));
+		runner.run("value.add.string", () -> sink = Value.add(s1, i2));
+		runner.run("value.less", () -> sink = Value.less(i1, f1));
+		runner.run("value.equals", () -> sink = Value.equals(i1, i2));
+
+		final ValueSet set = new ValueSet();
+		final String[] names = {"x", "y", "counter", "Result", "someLongerVariableName", "i", "j", "list"};
+		for (String n : names)
+			set.put(n, Value.create(n.length()));
+		runner.run("valueset.get", () ->
+		{
+			for (String n : names)
+				sink = set.get(n);
+		});
+		runner.run("valueset.put", () ->
+		{
+			for (String n : names)
+				set.put(n, i1);
+		});
+		runner.run("valueset.create", () ->
+		{
+			ValueSet vs = new ValueSet();
+			vs.put("x", i1);
+			vs.put("y", i2);
+			sink = vs;
+		});
+	}
+
+}
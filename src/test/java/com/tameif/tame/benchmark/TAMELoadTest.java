@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.benchmark;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.tameif.tame.TAMEEngine;
+import com.tameif.tame.TAMELogic;
+import com.tameif.tame.TAMEModule;
+import com.tameif.tame.TAMEModuleContext;
+import com.tameif.tame.TAMEResponse;
+import com.tameif.tame.TAMESession;
+import com.tameif.tame.TAMESessionFactory;
+import com.tameif.tame.TAMESessionStore;
+import com.tameif.tame.factory.TAMEScriptReader;
+import com.tameif.tame.lang.Cue;
+
+/**
+ * Replays console transcripts across many concurrent sessions of a {@link TAMEEngine}.
+ * <p>A transcript is a text file with one input per line, as typed into the console shell.
+ * Blank lines, lines that start with "#" (comments), and lines that start with "!" (shell commands) are skipped.
+ * <p>Session N replays transcript (N mod transcript count). Every session's cues are checked against a
+ * single-threaded run of the same transcript, so the module should be deterministic.
+ * <p>Usage: TAMELoadTest [options] [transcripts...]
+ * <ul>
+ * <li>--script [file] - the module script (default is the example script).</li>
+ * <li>--sessions [n] - the amount of sessions (default 1000).</li>
+ * <li>--repeat [n] - times each session replays its transcript (default 1).</li>
+ * <li>--queue [n] - the per-session queue limit (default {@link TAMEEngine#DEFAULT_QUEUE_LIMIT}).</li>
+ * <li>--threads [n] - use a fixed pool of this many threads (default is {@link TAMEEngine#createDefaultExecutor()}).</li>
+ * <li>--resident [n] - hibernate sessions past this many resident ones (default is no hibernation).</li>
+ * <li>--budget [bytes] - memory budget for hibernated sessions (default 16 MB).</li>
+ * <li>--spill [dir] - directory for hibernated sessions past the memory budget (default none).</li>
+ * </ul>
+ * @author Matthew Tropiano
+ */
+public final class TAMELoadTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		PrintStream out = System.out;
+		File script = new File("src/test/scripts/tame/example.tscript");
+		int sessionCount = 1000;
+		int repeat = 1;
+		int queueLimit = TAMEEngine.DEFAULT_QUEUE_LIMIT;
+		int threads = 0;
+		int residentLimit = 0;
+		int budget = 16 << 20;
+		File spillDirectory = null;
+		List<File> transcriptFiles = new ArrayList<>();
+
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("--script"))
+				script = new File(args[++i]);
+			else if (args[i].equals("--sessions"))
+				sessionCount = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--repeat"))
+				repeat = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--queue"))
+				queueLimit = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--threads"))
+				threads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--resident"))
+				residentLimit = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--budget"))
+				budget = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--spill"))
+				spillDirectory = new File(args[++i]);
+			else
+				transcriptFiles.add(new File(args[i]));
+		}
+		if (transcriptFiles.isEmpty())
+			transcriptFiles.add(new File("src/test/scripts/transcripts/example.txt"));
+
+		TAMEModule module = TAMEScriptReader.read(script);
+		module.link();
+		TAMESessionFactory factory = new TAMESessionFactory(module);
+
+		List<String[]> transcripts = new ArrayList<>();
+		List<List<String>> expected = new ArrayList<>();
+		int maxLength = 0;
+		for (File file : transcriptFiles)
+		{
+			String[] lines = readTranscript(file);
+			transcripts.add(lines);
+			expected.add(reference(factory, lines, repeat));
+			maxLength = Math.max(maxLength, lines.length * repeat);
+		}
+
+		ExecutorService executor = threads > 0 ? Executors.newFixedThreadPool(threads) : null;
+		TAMESessionStore store = null;
+		if (residentLimit > 0)
+		{
+			store = new TAMESessionStore(factory, budget, spillDirectory);
+			store.setResidentLimit(residentLimit);
+		}
+		TAMEEngine engine = new TAMEEngine(factory, executor, queueLimit, store);
+
+		final int sessions = sessionCount;
+		final List<List<String>> actual = new ArrayList<>(sessions);
+		final long[] latencies = new long[sessions * (maxLength + 1)];
+		final AtomicInteger latencyCount = new AtomicInteger(0);
+		final AtomicInteger errors = new AtomicInteger(0);
+		List<CompletableFuture<?>> last = new ArrayList<>(sessions);
+
+		long nanos = System.nanoTime();
+
+		TAMESession[] sessionList = new TAMESession[sessions];
+		for (int s = 0; s < sessions; s++)
+		{
+			sessionList[s] = engine.createSession("session" + s);
+			List<String> cues = new ArrayList<>();
+			actual.add(cues);
+			last.add(track(sessionList[s].submitInit(), cues, latencies, latencyCount, errors));
+		}
+
+		// Round-robin: the next line for every session, so the queues fill and apply back-pressure.
+		for (int step = 0; step < maxLength; step++)
+		{
+			for (int s = 0; s < sessions; s++)
+			{
+				String[] lines = transcripts.get(s % transcripts.size());
+				if (step >= lines.length * repeat)
+					continue;
+				last.set(s, track(sessionList[s].submitRequest(lines[step % lines.length]), actual.get(s), latencies, latencyCount, errors));
+			}
+		}
+
+		for (CompletableFuture<?> future : last)
+			future.handle((r, t) -> null).join();
+		nanos = System.nanoTime() - nanos;
+		int resident = 0, hibernated = 0, spilled = 0, memoryUsed = 0;
+		if (store != null)
+		{
+			resident = store.getResidentCount();
+			hibernated = store.getHibernatedCount();
+			spilled = store.getSpilledCount();
+			memoryUsed = store.getMemoryUsed();
+		}
+		engine.close();
+		if (executor != null)
+			executor.shutdown();
+
+		int mismatches = 0;
+		for (int s = 0; s < sessions; s++)
+			if (!expected.get(s % expected.size()).equals(actual.get(s)))
+				mismatches++;
+
+		int count = latencyCount.get();
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+
+		out.printf("sessions:     %d\n", sessions);
+		out.printf("requests:     %d\n", count);
+		out.printf("elapsed:      %.1f ms\n", nanos / 1000000.0);
+		out.printf("throughput:   %.1f requests/s\n", count / (nanos / 1000000000.0));
+		out.printf("latency p50:  %.1f us\n", percentile(sorted, 0.50) / 1000.0);
+		out.printf("latency p99:  %.1f us\n", percentile(sorted, 0.99) / 1000.0);
+		out.printf("latency max:  %.1f us\n", count > 0 ? sorted[count - 1] / 1000.0 : 0.0);
+		if (store != null)
+		{
+			out.printf("resident:     %d\n", resident);
+			out.printf("hibernated:   %d (%d spilled, %d bytes in memory)\n", hibernated, spilled, memoryUsed);
+			out.printf("hibernations: %d\n", store.getHibernationCount());
+			out.printf("restores:     %d (avg %.1f us, max %.1f us)\n", store.getRestoreCount(), store.getRestoreNanosAverage() / 1000.0, store.getRestoreNanosMax() / 1000.0);
+		}
+		out.printf("errors:       %d\n", errors.get());
+		out.printf("mismatches:   %d\n", mismatches);
+		if (errors.get() > 0 || mismatches > 0)
+			System.exit(1);
+	}
+
+	// Reads transcript lines.
+	private static String[] readTranscript(File file) throws Exception
+	{
+		List<String> out = new ArrayList<>();
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+		{
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#") || line.startsWith("!"))
+				continue;
+			out.add(line);
+		}
+		return out.toArray(new String[out.size()]);
+	}
+
+	// Single-threaded run of a transcript.
+	private static List<String> reference(TAMESessionFactory factory, String[] lines, int repeat)
+	{
+		List<String> out = new ArrayList<>();
+		TAMEModuleContext context = factory.create();
+		collect(out, TAMELogic.handleInit(context, false));
+		for (int i = 0; i < lines.length * repeat; i++)
+			collect(out, TAMELogic.handleRequest(context, lines[i % lines.length], false));
+		return out;
+	}
+
+	// Records cues and submit-to-completion latency. Runs on the session's thread, so cues stay in order.
+	private static CompletableFuture<?> track(CompletableFuture<TAMEResponse> future, List<String> cues, long[] latencies, AtomicInteger latencyCount, AtomicInteger errors)
+	{
+		final long start = System.nanoTime();
+		return future.handle((response, t) ->
+		{
+			latencies[latencyCount.getAndIncrement()] = System.nanoTime() - start;
+			if (t != null)
+				errors.incrementAndGet();
+			else
+				collect(cues, response);
+			return null;
+		});
+	}
+
+	private static void collect(List<String> out, TAMEResponse response)
+	{
+		for (Cue cue : response.getCues())
+			out.add(cue.getType() + ":" + cue.getContent());
+	}
+
+	private static long percentile(long[] sorted, double p)
+	{
+		if (sorted.length == 0)
+			return 0L;
+		return sorted[Math.min(sorted.length - 1, (int)(sorted.length * p))];
+	}
+
+}
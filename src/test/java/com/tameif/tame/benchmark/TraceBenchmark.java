@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.benchmark;
+
+import java.io.File;
+import java.io.PrintStream;
+
+import com.tameif.tame.TAMELogic;
+import com.tameif.tame.TAMEModule;
+import com.tameif.tame.TAMEModuleContext;
+import com.tameif.tame.factory.TAMEScriptReader;
+import com.tameif.tame.lang.TraceType;
+
+/**
+ * Compares time and allocation of traced versus untraced requests.
+ * Usage: TraceBenchmark [script] [input] [iterations]
+ * @author Matthew Tropiano
+ */
+public final class TraceBenchmark
+{
+	private static final TraceType[] NO_TRACE = new TraceType[0];
+
+	public static void main(String[] args) throws Exception
+	{
+		PrintStream out = System.out;
+		File script = new File(args.length > 0 ? args[0] : "src/test/scripts/tame/looptest.tscript");
+		String input = args.length > 1 ? args[1] : "loop";
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+
+		TAMEModule module = TAMEScriptReader.read(script);
+		module.link();
+
+		run(module, input, iterations / 4, NO_TRACE); // warmup
+		run(module, input, iterations / 4, TraceType.VALUES);
+
+		long[] untraced = run(module, input, iterations, NO_TRACE);
+		long[] traced = run(module, input, iterations, TraceType.VALUES);
+
+		out.printf("%-10s %12s %14s\n", "mode", "ns/request", "bytes/request");
+		out.printf("%-10s %12d %14d\n", "untraced", untraced[0] / iterations, untraced[1] / iterations);
+		out.printf("%-10s %12d %14d\n", "traced", traced[0] / iterations, traced[1] / iterations);
+	}
+
+	// Returns elapsed nanos and allocated bytes.
+	private static long[] run(TAMEModule module, String input, int iterations, TraceType ... traceTypes)
+	{
+		TAMEModuleContext context = new TAMEModuleContext(module);
+		TAMELogic.handleInit(context);
+
+		long bytes = BenchmarkRunner.allocatedBytes();
+		long nanos = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			TAMELogic.handleRequest(context, input, traceTypes);
+		nanos = System.nanoTime() - nanos;
+		bytes = BenchmarkRunner.allocatedBytes() - bytes;
+		return new long[]{nanos, bytes};
+	}
+
+}
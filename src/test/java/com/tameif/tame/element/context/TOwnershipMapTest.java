@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.element.context;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import com.tameif.tame.element.TObject;
+import com.tameif.tame.element.TPlayer;
+import com.tameif.tame.element.TRoom;
+
+/**
+ * Tests that name lookups in ownership maps return objects in their owner's order.
+ * @author Matthew Tropiano
+ */
+public final class TOwnershipMapTest
+{
+	private static final TRoom ROOM = new TRoom("r_room");
+	private static final TPlayer PLAYER = new TPlayer("p_player");
+	private static final TObject A = new TObject("o_a");
+	private static final TObject B = new TObject("o_b");
+	private static final TObject C = new TObject("o_c");
+
+	public static void main(String[] args)
+	{
+		PrintStream out = System.out;
+		int failures = 0;
+
+		// names are added in a different order than the objects are added to the room.
+		TOwnershipMap map = new TOwnershipMap();
+		map.addObjectName(C, "lamp");
+		map.addObjectName(A, "lamp");
+		map.addObjectName(B, "lamp");
+		map.addObjectToElement(A, ROOM);
+		map.addObjectToElement(B, ROOM);
+		map.addObjectToElement(C, ROOM);
+		failures += check(out, "owner order", byName(map, "lamp"), A, B, C);
+
+		map.addObjectToElement(A, PLAYER);
+		map.addObjectToElement(A, ROOM);
+		failures += check(out, "owner order after moving", byName(map, "lamp"), B, C, A);
+
+		map.addObjectToElement(B, PLAYER);
+		failures += check(out, "matcher, owners then objects", byMatcher(map, "lamp", PLAYER, ROOM), B, C, A);
+
+		// template names and this map's own names are in separate lists.
+		TOwnershipMap template = new TOwnershipMap();
+		template.addObjectName(A, "lamp");
+		template.addObjectName(B, "lamp");
+		template.addObjectName(C, "lamp");
+		TOwnershipMap shared = new TOwnershipMap(template);
+		shared.addObjectName(C, "light");
+		shared.addObjectToElement(C, ROOM);
+		shared.addObjectToElement(B, ROOM);
+		shared.addObjectToElement(A, ROOM);
+		failures += check(out, "owner order with template", byName(shared, "lamp"), C, B, A);
+
+		TOwnershipMap copy = map.copy();
+		failures += check(out, "owner order in copy", byName(copy, "lamp"), C, A);
+
+		// the shared cursor is one object, moved to each owner's start.
+		TOwnershipMap.ObjectCursor cursor = map.getSharedObjectCursor(PLAYER);
+		failures += check(out, "shared cursor", read(cursor), B);
+		failures += check(out, "shared cursor reused", read(map.getSharedObjectCursor(ROOM)), C, A);
+		failures += check(out, "shared cursor is one object", cursor == map.getSharedObjectCursor(ROOM));
+		failures += check(out, "copy has its own cursor", cursor != copy.getSharedObjectCursor(ROOM));
+
+		out.println(failures == 0 ? "All passed." : failures + " failed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	private static TObject[] byName(TOwnershipMap map, String name)
+	{
+		TObject[] found = new TObject[8];
+		return Arrays.copyOf(found, map.getObjectsOwnedByElementWithName(ROOM, name, found, 0));
+	}
+
+	private static TObject[] read(TOwnershipMap.ObjectCursor cursor)
+	{
+		TObject[] found = new TObject[8];
+		int count = 0;
+		for (TObject object : cursor)
+			found[count++] = object;
+		return Arrays.copyOf(found, count);
+	}
+
+	private static TObject[] byMatcher(TOwnershipMap map, String name, TPlayer player, TRoom room)
+	{
+		TObject[] found = new TObject[8];
+		TOwnershipMap.NameMatcher matcher = map.createNameMatcher(player, room);
+		for (String token : name.split(" "))
+			matcher.next(token);
+		return Arrays.copyOf(found, matcher.getObjects(found, 0));
+	}
+
+	private static int check(PrintStream out, String name, TObject[] actual, TObject ... expected)
+	{
+		boolean passed = Arrays.equals(actual, expected);
+		out.println((passed ? "OK   " : "FAIL ") + name + (passed ? "" : ": " + Arrays.toString(actual)));
+		return passed ? 0 : 1;
+	}
+
+	private static int check(PrintStream out, String name, boolean passed)
+	{
+		out.println((passed ? "OK   " : "FAIL ") + name);
+		return passed ? 0 : 1;
+	}
+
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.lang;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+
+/**
+ * Tests that shared values cannot be changed by reading into them.
+ * @author Matthew Tropiano
+ */
+public final class ValueTest
+{
+
+	public static void main(String[] args) throws IOException
+	{
+		PrintStream out = System.out;
+		int failures = 0;
+
+		byte[] seven = Value.create(7).toBytes();
+		Value[] shared = {Value.create(5), Value.create(true), Value.create(false), Value.create(0.0), Value.create(Double.NaN), Value.create("")};
+		boolean refused = true;
+		for (Value value : shared)
+			refused &= readRefused(value, seven);
+		failures += check(out, "shared values refuse reads", refused);
+		failures += check(out, "shared values unchanged", Value.create(5).asLong() == 5L && Value.create(true).asBoolean() && Value.create("").asString().isEmpty());
+
+		boolean threw = false;
+		try {
+			Value.create(5).readReferentialBytes(new HashMap<>(), new ByteArrayInputStream(seven));
+		} catch (IllegalStateException e) {
+			threw = true;
+		}
+		failures += check(out, "shared value refuses referential read", threw && Value.create(5).asLong() == 5L);
+
+		Value large = Value.create(5000);
+		large.fromBytes(seven);
+		failures += check(out, "unshared value can be read into", large.asLong() == 7L && Value.create(5000).asLong() == 5000L);
+
+		Value read = Value.read(new ByteArrayInputStream(Value.create(5).toBytes()));
+		failures += check(out, "read makes a new value", read.equals(Value.create(5)) && read != Value.create(5));
+
+		out.println(failures == 0 ? "All passed." : failures + " failed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// Tries to read data into a value, and checks that it was refused.
+	private static boolean readRefused(Value value, byte[] data) throws IOException
+	{
+		try {
+			value.fromBytes(data);
+			return false;
+		} catch (IllegalStateException e) {
+			return true;
+		}
+	}
+
+	private static int check(PrintStream out, String name, boolean passed)
+	{
+		out.println((passed ? "OK   " : "FAIL ") + name);
+		return passed ? 0 : 1;
+	}
+
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.struct;
+
+import java.io.PrintStream;
+
+/**
+ * Tests array stacks.
+ * @author Matthew Tropiano
+ */
+public final class ArrayStackTest
+{
+
+	public static void main(String[] args)
+	{
+		PrintStream out = System.out;
+		int failures = 0;
+
+		ArrayStack<Integer> stack = new ArrayStack<>(2);
+		failures += check(out, "new stack is empty", stack.isEmpty() && stack.size() == 0);
+		failures += check(out, "pop on empty", stack.pop() == null);
+		failures += check(out, "peek on empty", stack.peek() == null);
+
+		// grows past the initial capacity more than once.
+		for (int i = 0; i < 10; i++)
+			stack.push(i);
+		failures += check(out, "size after growth", stack.size() == 10);
+		failures += check(out, "peek after growth", stack.peek() == 9 && stack.size() == 10);
+
+		boolean ordered = true;
+		for (int i = 9; i >= 0; i--)
+			ordered &= stack.pop() == i;
+		failures += check(out, "pop order after growth", ordered);
+		failures += check(out, "empty after popping all", stack.isEmpty() && stack.pop() == null);
+
+		// reuse after clear.
+		stack.push(1);
+		stack.push(2);
+		stack.clear();
+		failures += check(out, "clear", stack.isEmpty() && stack.peek() == null);
+		stack.push(3);
+		failures += check(out, "push after clear", stack.size() == 1 && stack.pop() == 3);
+
+		ArrayStack<Integer> small = new ArrayStack<>(0);
+		small.push(1);
+		small.push(2);
+		failures += check(out, "zero initial capacity", small.pop() == 2 && small.pop() == 1);
+
+		out.println(failures == 0 ? "All passed." : failures + " failed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	private static int check(PrintStream out, String name, boolean passed)
+	{
+		out.println((passed ? "OK   " : "FAIL ") + name);
+		return passed ? 0 : 1;
+	}
+
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.struct;
+
+import java.io.PrintStream;
+
+import com.tameif.tame.lang.Value;
+
+/**
+ * Tests case-insensitive maps and their key pool.
+ * @author Matthew Tropiano
+ */
+public final class CaseInsensitiveStringMapTest
+{
+
+	public static void main(String[] args)
+	{
+		PrintStream out = System.out;
+		int failures = 0;
+
+		CaseInsensitiveStringMap<Integer> map = new CaseInsensitiveStringMap<>(4);
+		map.put("Apple", 1);
+		map.put("banana", 2);
+		failures += check(out, "get, other case", map.get("APPLE") == 1 && map.get("Banana") == 2);
+		failures += check(out, "stored key is lowercase", map.keys().contains("apple"));
+		map.put("aPPLE", 3);
+		failures += check(out, "put replaces, other case", map.size() == 2 && map.get("apple") == 3);
+		map.remove("BANANA");
+		failures += check(out, "remove, other case", !map.containsKey("banana") && map.size() == 1);
+
+		// lowercase keys are pooled, others are left alone (no lowercase copy is kept).
+		String pooled = CaseInsensitiveStringMap.intern(new String("pooled_key"));
+		failures += check(out, "intern, lowercase", CaseInsensitiveStringMap.intern(new String("pooled_key")) == pooled);
+		String mixed = new String("Mixed_Key");
+		failures += check(out, "intern, not lowercase", CaseInsensitiveStringMap.intern(mixed) == mixed);
+
+		// only variable names are pooled.
+		failures += check(out, "variable names pooled", Value.createVariable(new String("some_var")).asString() == Value.createVariable(new String("some_var")).asString());
+		String text = new String("some_text");
+		failures += check(out, "strings not pooled", Value.create(text).asString() == text);
+
+		// the pool stops growing once full, and keys still work after that.
+		for (int i = 0; i < 10000; i++)
+			CaseInsensitiveStringMap.intern("filler_" + i);
+		String late = new String("late_key");
+		failures += check(out, "intern, pool full", CaseInsensitiveStringMap.intern(late) == late && CaseInsensitiveStringMap.intern(new String("late_key")) != late);
+		failures += check(out, "pooled before full", CaseInsensitiveStringMap.intern(new String("pooled_key")) == pooled);
+		map.put(late, 4);
+		failures += check(out, "unpooled key lookup", map.get(new String("LATE_KEY")) == 4);
+
+		out.println(failures == 0 ? "All passed." : failures + " failed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	private static int check(PrintStream out, String name, boolean passed)
+	{
+		out.println((passed ? "OK   " : "FAIL ") + name);
+		return passed ? 0 : 1;
+	}
+
+}
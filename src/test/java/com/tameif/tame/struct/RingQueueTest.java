@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.struct;
+
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Tests ring queues.
+ * @author Matthew Tropiano
+ */
+public final class RingQueueTest
+{
+
+	public static void main(String[] args)
+	{
+		PrintStream out = System.out;
+		int failures = 0;
+
+		RingQueue<Integer> queue = new RingQueue<>(4);
+		failures += check(out, "new queue is empty", queue.isEmpty() && queue.size() == 0);
+		failures += check(out, "poll on empty", queue.poll() == null);
+		failures += check(out, "peek on empty", queue.peek() == null);
+
+		// move the head so that the items wrap around the end of the array.
+		queue.offer(0);
+		queue.offer(1);
+		queue.offer(2);
+		queue.poll();
+		queue.poll();
+		queue.offer(3);
+		queue.offer(4);
+		queue.offer(5);
+		failures += check(out, "wrap-around order", contents(queue).equals("2 3 4 5"));
+		failures += check(out, "wrap-around peek", queue.peek() == 2 && queue.size() == 4);
+
+		// grow while wrapped.
+		queue.offer(6);
+		queue.offer(7);
+		failures += check(out, "growth while wrapped", contents(queue).equals("2 3 4 5 6 7"));
+
+		boolean ordered = true;
+		for (int i = 2; i <= 7; i++)
+			ordered &= queue.poll() == i;
+		failures += check(out, "poll order after growth", ordered);
+		failures += check(out, "empty after polling all", queue.isEmpty() && queue.poll() == null);
+
+		// wrap, then clear and reuse.
+		for (int i = 0; i < 5; i++)
+		{
+			queue.offer(i);
+			queue.poll();
+		}
+		queue.offer(8);
+		queue.offer(9);
+		queue.clear();
+		failures += check(out, "clear", queue.isEmpty() && queue.peek() == null && !queue.iterator().hasNext());
+		queue.offer(10);
+		failures += check(out, "offer after clear", queue.size() == 1 && queue.poll() == 10);
+
+		boolean threw = false;
+		try {
+			queue.offer(null);
+		} catch (NullPointerException e) {
+			threw = true;
+		}
+		failures += check(out, "null item rejected", threw && queue.isEmpty());
+
+		threw = false;
+		try {
+			queue.remove();
+		} catch (NoSuchElementException e) {
+			threw = true;
+		}
+		failures += check(out, "remove on empty", threw);
+
+		out.println(failures == 0 ? "All passed." : failures + " failed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// Lists the queue's items, head first, without removing them.
+	private static String contents(RingQueue<Integer> queue)
+	{
+		StringBuilder sb = new StringBuilder();
+		Iterator<Integer> it = queue.iterator();
+		while (it.hasNext())
+		{
+			sb.append(it.next());
+			if (it.hasNext())
+				sb.append(' ');
+		}
+		return sb.toString();
+	}
+
+	private static int check(PrintStream out, String name, boolean passed)
+	{
+		out.println((passed ? "OK   " : "FAIL ") + name);
+		return passed ? 0 : 1;
+	}
+
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.struct;
+
+import java.io.PrintStream;
+
+/**
+ * Tests token tries.
+ * @author Matthew Tropiano
+ */
+public final class TokenTrieTest
+{
+
+	public static void main(String[] args)
+	{
+		PrintStream out = System.out;
+		TokenTrie<String> trie = new TokenTrie<>();
+		trie.put("look", "look");
+		trie.put("look at", "look at");
+		trie.put("Look At Me", "look at me");
+		trie.put("pick up", "pick up");
+
+		int failures = 0;
+		failures += check(out, "exact get", "look at".equals(trie.get("look at")));
+		failures += check(out, "case-insensitive get", "look at me".equals(trie.get("LOOK at ME")));
+		failures += check(out, "prefix without a value", trie.get("pick") == null);
+		failures += check(out, "unknown name", trie.get("look under") == null);
+
+		// a walk takes the longest name that matches, like the interpreter does.
+		failures += check(out, "longest match, full", "look at me".equals(longestMatch(trie, "look at me now")));
+		failures += check(out, "longest match, shorter", "look at".equals(longestMatch(trie, "look at the lamp")));
+		failures += check(out, "longest match, shortest", "look".equals(longestMatch(trie, "look around")));
+		failures += check(out, "longest match, prefix only", longestMatch(trie, "pick the lamp") == null);
+
+		// removing a name keeps the names that share its prefix.
+		failures += check(out, "remove returns value", "look at".equals(trie.remove("look at")));
+		failures += check(out, "removed name is gone", trie.get("look at") == null);
+		failures += check(out, "longer name kept", "look at me".equals(trie.get("look at me")));
+		failures += check(out, "shorter name kept", "look".equals(trie.get("look")));
+		failures += check(out, "longest match after remove", "look".equals(longestMatch(trie, "look at the lamp")));
+		failures += check(out, "remove unknown", trie.remove("pick") == null && "pick up".equals(trie.get("pick up")));
+
+		// removing the last name on a branch prunes it.
+		trie.remove("pick up");
+		failures += check(out, "pruned branch", trie.getRoot().next("pick") == null);
+
+		trie.clear();
+		failures += check(out, "clear", trie.get("look") == null && trie.getRoot().next("look") == null);
+
+		boolean threw = false;
+		try {
+			trie.put("look", null);
+		} catch (IllegalArgumentException e) {
+			threw = true;
+		}
+		failures += check(out, "null value rejected", threw);
+
+		out.println(failures == 0 ? "All passed." : failures + " failed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	// Walks the trie one token at a time and returns the value of the longest name matched.
+	private static String longestMatch(TokenTrie<String> trie, String input)
+	{
+		String out = null;
+		TokenTrie.Node<String> node = trie.getRoot();
+		for (String token : input.toLowerCase().split(" "))
+		{
+			if ((node = node.next(token)) == null)
+				break;
+			if (node.getValue() != null)
+				out = node.getValue();
+		}
+		return out;
+	}
+
+	private static int check(PrintStream out, String name, boolean passed)
+	{
+		out.println((passed ? "OK   " : "FAIL ") + name);
+		return passed ? 0 : 1;
+	}
+
+}
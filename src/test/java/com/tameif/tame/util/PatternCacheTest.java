@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2015-2019 Matt Tropiano
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * See AUTHORS.TXT for full credits.
+ ******************************************************************************/
+package com.tameif.tame.util;
+
+import java.io.PrintStream;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Tests the pattern cache.
+ * @author Matthew Tropiano
+ */
+public final class PatternCacheTest
+{
+
+	public static void main(String[] args)
+	{
+		PrintStream out = System.out;
+		int failures = 0;
+
+		PatternCache.clear();
+		PatternCache.setCapacity(8);
+
+		Pattern first = PatternCache.get("a+b");
+		failures += check(out, "miss compiles", PatternCache.getMisses() == 1 && PatternCache.getHits() == 0 && PatternCache.size() == 1);
+		failures += check(out, "hit returns same pattern", PatternCache.get("a+b") == first && PatternCache.getHits() == 1);
+
+		// fill to capacity, then use the oldest pattern so that it is the most recent.
+		Pattern[] patterns = new Pattern[8];
+		patterns[0] = first;
+		for (int i = 1; i < 8; i++)
+			patterns[i] = PatternCache.get("p" + i);
+		failures += check(out, "filled to capacity", PatternCache.size() == 8 && PatternCache.getEvictions() == 0);
+		PatternCache.get("a+b");
+
+		// one more evicts the least-recently-used down to three-quarters of the capacity.
+		PatternCache.get("p8");
+		failures += check(out, "evicts down to 3/4 capacity", PatternCache.size() == 6 && PatternCache.getEvictions() == 3);
+
+		long hits = PatternCache.getHits();
+		failures += check(out, "recently used kept", PatternCache.get("a+b") == first && PatternCache.getHits() == hits + 1);
+		failures += check(out, "newest kept", PatternCache.get("p7") == patterns[7] && PatternCache.getHits() == hits + 2);
+		long misses = PatternCache.getMisses();
+		failures += check(out, "least recently used evicted", PatternCache.get("p1") != patterns[1] && PatternCache.getMisses() == misses + 1);
+
+		// many one-off expressions never grow it past capacity.
+		for (int i = 0; i < 1000; i++)
+			PatternCache.get("x" + i);
+		failures += check(out, "bounded", PatternCache.size() <= PatternCache.getCapacity());
+
+		PatternCache.setCapacity(2);
+		failures += check(out, "shrinking capacity evicts", PatternCache.size() <= 2);
+
+		boolean threw = false;
+		try {
+			PatternCache.get("(");
+		} catch (PatternSyntaxException e) {
+			threw = true;
+		}
+		failures += check(out, "bad expression not cached", threw && PatternCache.size() <= 2);
+
+		PatternCache.clear();
+		failures += check(out, "clear", PatternCache.size() == 0 && PatternCache.getHits() == 0 && PatternCache.getMisses() == 0 && PatternCache.getEvictions() == 0);
+		PatternCache.setCapacity(PatternCache.DEFAULT_CAPACITY);
+
+		out.println(failures == 0 ? "All passed." : failures + " failed.");
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	private static int check(PrintStream out, String name, boolean passed)
+	{
+		out.println((passed ? "OK   " : "FAIL ") + name);
+		return passed ? 0 : 1;
+	}
+
+}